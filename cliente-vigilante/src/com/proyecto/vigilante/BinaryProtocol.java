@@ -0,0 +1,239 @@
+package com.proyecto.vigilante;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lado cliente del protocolo binario de los servidores (se negocia con
+ * "PROTOCOL:BINARY"). Cada respuesta es una trama:
+ *   [u8 tipo][varint longitud][contenido]
+ * Las detecciones llegan con secuencia y timestamp en delta (zigzag),
+ * cámara, clase y modelo como referencias a diccionarios de la conexión y
+ * la confianza como entero ×10000, seguidas de los metadatos opcionales del
+ * frame (caja, número de frame, latencia y modelo) y de la pista del
+ * seguimiento según un byte de flags.
+ * El formato completo está documentado en BinaryProtocol.java del servidor.
+ */
+final class BinaryProtocol {
+
+    static final int DETECTIONS = 1;
+    static final int IMAGE = 2;
+    static final int TEXT = 3;
+    static final int ERROR = 4;
+    static final int HEARTBEAT = 5;
+
+    static final int MAX_DICTIONARY_SIZE = 4096;
+    static final double CONFIDENCE_SCALE = 10_000.0;
+
+    static final int FLAG_BOX = 1;
+    static final int FLAG_FRAME = 2;
+    static final int FLAG_LATENCY = 4;
+    static final int FLAG_MODEL = 8;
+    static final int FLAG_TRACK = 16;
+
+    // Eventos de seguimiento por código (ObjectTracker.EVENT_* del servidor)
+    private static final String[] EVENT_NAMES = {"", "aparece", "cambia", "sigue", "desaparece"};
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Lector de tramas de una conexión. Los diccionarios solo son válidos
+     * mientras dura la conexión: al reconectar hay que crear otro Decoder.
+     */
+    static final class Decoder {
+        private final InputStream in;
+        private final List<String> cameras = new ArrayList<>();
+        private final List<String> classes = new ArrayList<>();
+        private final List<String> models = new ArrayList<>();
+        private long remaining; // Bytes sin leer de la trama actual
+
+        Decoder(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Lee la cabecera de la siguiente trama (descartando lo que quedara
+         * de la anterior) y devuelve su tipo
+         */
+        int nextFrame() throws IOException {
+            while (remaining > 0) {
+                readByte();
+            }
+
+            int type = in.read();
+            if (type == -1) {
+                throw new EOFException("Conexión cerrada por el servidor");
+            }
+
+            remaining = Long.MAX_VALUE; // La longitud no cuenta como contenido
+            long length = readVarint();
+            remaining = length;
+            return type;
+        }
+
+        /**
+         * Contenido de una trama TEXT o ERROR
+         */
+        String readText() throws IOException {
+            return readUtf8((int) remaining);
+        }
+
+        /**
+         * Registros de una trama DETECTIONS (la cabecera next/gap/more se descarta)
+         */
+        List<DetectionDTO> readDetections() throws IOException {
+            readVarint(); // next
+            readVarint(); // gap
+            readByte();   // more
+            int count = (int) readVarint();
+
+            List<DetectionDTO> detections = new ArrayList<>(count);
+            long sequence = 0;
+            long timestamp = 0;
+
+            for (int i = 0; i < count; i++) {
+                sequence += unzigzag(readVarint());
+                timestamp += unzigzag(readVarint());
+                String camara = readReference(cameras);
+                String objeto = readReference(classes);
+                String imagen = readString();
+                double confidence = readVarint() / CONFIDENCE_SCALE;
+                long captureNanos = timestamp * 1_000_000L + readVarint();
+                int flags = readByte();
+
+                int boxX = 0, boxY = 0, boxWidth = 0, boxHeight = 0;
+                if ((flags & FLAG_BOX) != 0) {
+                    boxX = (int) unzigzag(readVarint());
+                    boxY = (int) unzigzag(readVarint());
+                    boxWidth = (int) unzigzag(readVarint());
+                    boxHeight = (int) unzigzag(readVarint());
+                }
+                long frameSequence = (flags & FLAG_FRAME) != 0 ? readVarint() : 0;
+                long latencyMicros = (flags & FLAG_LATENCY) != 0 ? readVarint() : 0;
+                String modelVersion = (flags & FLAG_MODEL) != 0 ? readReference(models) : null;
+
+                long trackId = 0;
+                String event = "";
+                if ((flags & FLAG_TRACK) != 0) {
+                    trackId = readVarint();
+                    int code = readByte();
+                    event = code < EVENT_NAMES.length ? EVENT_NAMES[code] : "";
+                }
+
+                String fecha = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())
+                        .format(DATE_FORMAT);
+                detections.add(new DetectionDTO(sequence, camara, objeto, fecha, imagen, confidence,
+                        captureNanos, frameSequence, latencyMicros, modelVersion, boxX, boxY, boxWidth, boxHeight,
+                        trackId, event));
+            }
+
+            return detections;
+        }
+
+        /**
+         * Cabecera de una trama IMAGE: devuelve {offset, total}; los bytes
+         * de la imagen (getRemaining()) se leen después con read()
+         */
+        long[] readImageHeader() throws IOException {
+            long offset = readVarint();
+            long total = readVarint();
+            return new long[] { offset, total };
+        }
+
+        long getRemaining() {
+            return remaining;
+        }
+
+        int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int r = in.read(bytes, offset, (int) Math.min(length, remaining));
+            if (r > 0) {
+                remaining -= r;
+            }
+            return r;
+        }
+
+        private String readReference(List<String> dictionary) throws IOException {
+            int id = (int) readVarint();
+
+            if (id > 0) {
+                if (id > dictionary.size()) {
+                    throw new IOException("Referencia de diccionario inválida: " + id);
+                }
+                return dictionary.get(id - 1);
+            }
+
+            String value = readString();
+            if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.add(value);
+            }
+            return value;
+        }
+
+        private String readString() throws IOException {
+            return readUtf8((int) readVarint());
+        }
+
+        private String readUtf8(int length) throws IOException {
+            if (length > remaining) {
+                throw new IOException("Cadena más larga que la trama");
+            }
+
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int r = in.read(bytes, read, length - read);
+                if (r == -1) {
+                    throw new EOFException("Fin de stream dentro de una trama");
+                }
+                read += r;
+            }
+            remaining -= length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Varint demasiado largo");
+        }
+
+        private int readByte() throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("Trama truncada");
+            }
+
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Fin de stream dentro de una trama");
+            }
+            remaining--;
+            return b;
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
\ No newline at end of file
@@ -2,20 +2,65 @@ package com.proyecto.vigilante;
 
 /**
  * DTO que representa una detección realizada por el sistema distribuido.
- * Contiene la cámara que detectó, el objeto reconocido, la fecha/hora
- * y el nombre de archivo de la imagen asociada.
+ * Contiene la secuencia asignada por el servidor (-1 si no se conoce), la cámara que detectó, el objeto reconocido, la fecha/hora,
+ * el nombre de archivo de la imagen asociada y la confianza del modelo
+ * (0 a 1; NaN si el servidor no la envía).
+ * Si el servidor los conoce, incluye también los metadatos del frame: instante
+ * de captura en nanosegundos desde epoch, número de frame de la cámara,
+ * latencia del detector en microsegundos y versión del modelo (0 o null si no
+ * se conocen), y la caja del objeto en la imagen (centro y tamaño en píxeles;
+ * ancho 0 si no se conoce).
+ * Con el seguimiento del servidor activo, cada detección es un evento de una
+ * pista (objeto seguido): identificador de la pista y evento ("aparece",
+ * "cambia", "sigue" o "desaparece"); 0 y "" si no hay seguimiento.
  */
 public class DetectionDTO {
+    private final long sequence;
     private final String camara;
     private final String objeto;
     private final String fecha;
     private final String imagen;
+    private final double confidence;
+    private final long captureNanos;
+    private final long frameSequence;
+    private final long latencyMicros;
+    private final String modelVersion;
+    private final int boxX;
+    private final int boxY;
+    private final int boxWidth;
+    private final int boxHeight;
+    private final long trackId;
+    private final String event;
 
-    public DetectionDTO(String camara, String objeto, String fecha, String imagen) {
+    public DetectionDTO(long sequence, String camara, String objeto, String fecha, String imagen,
+                        double confidence) {
+        this(sequence, camara, objeto, fecha, imagen, confidence, 0, 0, 0, null, 0, 0, 0, 0, 0, "");
+    }
+
+    public DetectionDTO(long sequence, String camara, String objeto, String fecha, String imagen,
+                        double confidence, long captureNanos, long frameSequence, long latencyMicros,
+                        String modelVersion, int boxX, int boxY, int boxWidth, int boxHeight,
+                        long trackId, String event) {
+        this.sequence = sequence;
         this.camara = camara;
         this.objeto = objeto;
         this.fecha = fecha;
         this.imagen = imagen;
+        this.confidence = confidence;
+        this.captureNanos = captureNanos;
+        this.frameSequence = frameSequence;
+        this.latencyMicros = latencyMicros;
+        this.modelVersion = modelVersion;
+        this.boxX = boxX;
+        this.boxY = boxY;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.trackId = trackId;
+        this.event = event;
+    }
+
+    public long getSequence() {
+        return sequence;
     }
 
     public String getCamara() {
@@ -33,4 +78,52 @@ public class DetectionDTO {
     public String getImagen() {
         return imagen;
     }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    public long getFrameSequence() {
+        return frameSequence;
+    }
+
+    public long getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    public boolean hasBox() {
+        return boxWidth > 0 && boxHeight > 0;
+    }
+
+    public int getBoxX() {
+        return boxX;
+    }
+
+    public int getBoxY() {
+        return boxY;
+    }
+
+    public int getBoxWidth() {
+        return boxWidth;
+    }
+
+    public int getBoxHeight() {
+        return boxHeight;
+    }
+
+    public long getTrackId() {
+        return trackId;
+    }
+
+    public String getEvent() {
+        return event;
+    }
 }
\ No newline at end of file
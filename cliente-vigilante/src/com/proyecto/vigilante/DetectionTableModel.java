@@ -1,32 +1,180 @@
 // Modelo de tabla para conectar List<DetectionDTO> y JTable
 package com.proyecto.vigilante;
 
+import javax.swing.Timer;
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * TableModel para mostrar la lista de detecciones en un JTable.
  * Columnas: Objeto | Cámara | Fecha hora | Imagen
+ *
+ * Las filas se guardan en un buffer circular de capacidad fija: solo se
+ * añaden al final y, al llenarse, se descartan las más antiguas. Cada cambio
+ * notifica únicamente el rango afectado (fireTableRowsInserted/Deleted), así
+ * que la tabla conserva la selección y el scroll. Las detecciones pueden
+ * llegar desde cualquier hilo; se acumulan y se aplican en el EDT como mucho
+ * una vez por frame. Ordenar y filtrar se hace con un TableRowSorter, que
+ * solo mantiene un índice sobre las filas del modelo.
  */
 public class DetectionTableModel extends AbstractTableModel {
 
+    public static final int DEFAULT_CAPACITY = 5000;
+    public static final int DATE_COLUMN = 2;
+    private static final int FRAME_MILLIS = 16; // ~60 actualizaciones por segundo como máximo
+
+    /**
+     * Orden cronológico de la columna "Fecha hora" (dd/MM/yyyy HH:mm:ss) sin
+     * parsear las fechas: compara año, mes, día y hora por posiciones
+     */
+    public static final Comparator<String> DATE_ORDER = (a, b) -> {
+        if (a.length() < 19 || b.length() < 19) {
+            return a.compareTo(b);
+        }
+        int c = compareRegion(a, b, 6, 10);
+        if (c == 0) c = compareRegion(a, b, 3, 5);
+        if (c == 0) c = compareRegion(a, b, 0, 2);
+        if (c == 0) c = compareRegion(a, b, 11, 19);
+        return c;
+    };
+
     private final String[] columns = {"Objeto", "Cámara", "Fecha hora", "Imagen"};
-    private List<DetectionDTO> data = new ArrayList<>();
+    private final DetectionDTO[] rows;
+    private int head; // Índice de la fila más antigua
+    private int size;
+    private long lastSequence = -1;
+
+    // Detecciones pendientes de aplicar en el EDT
+    private final ConcurrentLinkedQueue<DetectionDTO> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Timer flushTimer;
+
+    public DetectionTableModel() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DetectionTableModel(int capacity) {
+        this.rows = new DetectionDTO[Math.max(1, capacity)];
+        this.flushTimer = new Timer(FRAME_MILLIS, e -> flush());
+        this.flushTimer.setRepeats(false);
+    }
 
-    public void setDetections(List<DetectionDTO> detections) {
-        this.data = detections != null ? detections : new ArrayList<>();
+    /**
+     * Añade una detección al final. Puede llamarse desde cualquier hilo; la
+     * tabla se actualiza en el siguiente frame.
+     */
+    public void addDetection(DetectionDTO detection) {
+        pending.add(detection);
+        scheduleFlush();
+    }
+
+    /**
+     * Añade varias detecciones (p. ej. una respuesta de GET_LOGS). Las que ya
+     * están en la tabla (misma secuencia o anterior) se omiten.
+     */
+    public void addDetections(Collection<DetectionDTO> detections) {
+        pending.addAll(detections);
+        scheduleFlush();
+    }
+
+    /**
+     * Vacía la tabla (p. ej. si el servidor se reinició). Debe llamarse en el EDT.
+     */
+    public void clear() {
+        pending.clear();
+        Arrays.fill(rows, null);
+        head = 0;
+        size = 0;
+        lastSequence = -1;
         fireTableDataChanged();
     }
 
+    /**
+     * Última secuencia mostrada (-1 si no hay ninguna con secuencia)
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            flushTimer.start();
+        }
+    }
+
+    /**
+     * Aplica en el EDT todo lo acumulado desde el último frame
+     */
+    private void flush() {
+        flushScheduled.set(false);
+
+        List<DetectionDTO> batch = new ArrayList<>();
+        DetectionDTO detection;
+        while ((detection = pending.poll()) != null) {
+            // Las respuestas de GET_LOGS y la suscripción pueden solaparse
+            if (detection.getSequence() >= 0) {
+                if (detection.getSequence() <= lastSequence) {
+                    continue;
+                }
+                lastSequence = detection.getSequence();
+            }
+            batch.add(detection);
+        }
+
+        if (!batch.isEmpty()) {
+            append(batch);
+        }
+    }
+
+    private void append(List<DetectionDTO> batch) {
+        int capacity = rows.length;
+
+        // Si el lote no cabe, solo se conservan sus últimas filas
+        int skip = Math.max(0, batch.size() - capacity);
+        int incoming = batch.size() - skip;
+
+        int removed = Math.min(size, Math.max(0, size + incoming - capacity));
+        if (removed > 0) {
+            for (int i = 0; i < removed; i++) {
+                rows[(head + i) % capacity] = null;
+            }
+            head = (head + removed) % capacity;
+            size -= removed;
+            fireTableRowsDeleted(0, removed - 1);
+        }
+
+        int first = size;
+        for (int i = skip; i < batch.size(); i++) {
+            rows[(head + size) % capacity] = batch.get(i);
+            size++;
+        }
+        fireTableRowsInserted(first, size - 1);
+    }
+
+    private static int compareRegion(String a, String b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int c = a.charAt(i) - b.charAt(i);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
     public DetectionDTO getDetectionAt(int row) {
-        if (row < 0 || row >= data.size()) return null;
-        return data.get(row);
+        if (row < 0 || row >= size) return null;
+        return rows[(head + row) % rows.length];
     }
 
     @Override
     public int getRowCount() {
-        return data.size();
+        return size;
     }
 
     @Override
@@ -39,9 +187,14 @@ public class DetectionTableModel extends AbstractTableModel {
         return columns[column];
     }
 
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return String.class;
+    }
+
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        DetectionDTO d = data.get(rowIndex);
+        DetectionDTO d = getDetectionAt(rowIndex);
         return switch (columnIndex) {
             case 0 -> d.getObjeto();
             case 1 -> d.getCamara();
@@ -4,14 +4,33 @@ package com.proyecto.vigilante;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Panel para mostrar una imagen de detección.
  * Escala la imagen al tamaño disponible del panel.
+ *
+ * La versión escalada se calcula fuera del EDT (reducción bilineal
+ * progresiva, en pasos de como mucho la mitad) en una imagen compatible con
+ * la pantalla, y se reutiliza en cada repintado mientras no cambien la
+ * imagen ni el tamaño del panel. Hasta que está lista se pinta un escalado
+ * bilineal directo como provisional.
  */
 public class ImagePanel extends JPanel {
 
+    // Un único hilo: los escalados obsoletos se descartan antes de empezar
+    private static final ExecutorService scaler = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Vigilante-Escalado");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private BufferedImage image;
+    private BufferedImage scaled;      // image al tamaño actual (null hasta calcularla)
+    private int requestedW;
+    private int requestedH;
+    private volatile int generation;   // Cambia con cada imagen o tamaño pedido
 
     public ImagePanel() {
         setBackground(Color.DARK_GRAY);
@@ -19,6 +38,10 @@ public class ImagePanel extends JPanel {
 
     public void setImage(BufferedImage img) {
         this.image = img;
+        this.scaled = null;
+        this.requestedW = 0;
+        this.requestedH = 0;
+        generation++;
         repaint();
     }
 
@@ -42,11 +65,88 @@ public class ImagePanel extends JPanel {
             int newW = (int) (imgW * scale);
             int newH = (int) (imgH * scale);
 
+            if (newW <= 0 || newH <= 0) {
+                return;
+            }
+
             int x = (panelW - newW) / 2;
             int y = (panelH - newH) / 2;
 
-            Image scaled = image.getScaledInstance(newW, newH, Image.SCALE_SMOOTH);
-            g.drawImage(scaled, x, y, this);
+            if (scaled != null && scaled.getWidth() == newW && scaled.getHeight() == newH) {
+                g.drawImage(scaled, x, y, this);
+                return;
+            }
+
+            // Provisional mientras se calcula el escalado de calidad
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(scaled != null ? scaled : image, x, y, newW, newH, this);
+            g2.dispose();
+
+            requestScale(newW, newH);
+        }
+    }
+
+    /**
+     * Pide el escalado de la imagen actual a w x h (se ignora si ya está pedido)
+     */
+    private void requestScale(int w, int h) {
+        if (w == requestedW && h == requestedH) {
+            return;
         }
+        requestedW = w;
+        requestedH = h;
+
+        int request = ++generation;
+        BufferedImage source = image;
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+
+        scaler.execute(() -> {
+            if (request != generation) {
+                return; // Ya hay otra petición más reciente
+            }
+
+            BufferedImage result = scale(source, w, h, gc);
+
+            SwingUtilities.invokeLater(() -> {
+                if (request == generation) {
+                    scaled = result;
+                    repaint();
+                }
+            });
+        });
+    }
+
+    /**
+     * Escalado bilineal progresivo: al reducir, cada paso divide como mucho
+     * a la mitad para que el bilineal no se salte píxeles. El resultado es
+     * una imagen compatible con la pantalla (se dibuja sin conversiones).
+     */
+    static BufferedImage scale(BufferedImage source, int w, int h, GraphicsConfiguration gc) {
+        int transparency = source.getTransparency();
+        int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+        BufferedImage current = source;
+        int currentW = source.getWidth();
+        int currentH = source.getHeight();
+
+        do {
+            currentW = currentW > w ? Math.max(w, currentW / 2) : w;
+            currentH = currentH > h ? Math.max(h, currentH / 2) : h;
+
+            boolean last = currentW == w && currentH == h;
+            BufferedImage next = last && gc != null
+                    ? gc.createCompatibleImage(w, h, transparency)
+                    : new BufferedImage(currentW, currentH, type);
+
+            Graphics2D g2 = next.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(current, 0, 0, currentW, currentH, null);
+            g2.dispose();
+
+            current = next;
+        } while (currentW != w || currentH != h);
+
+        return current;
     }
 }
@@ -0,0 +1,84 @@
+// Caché de imágenes decodificadas y precarga de las filas vecinas
+package com.proyecto.vigilante;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caché LRU pequeña de imágenes ya descargadas y decodificadas (miniaturas
+ * e imágenes completas), más la precarga en segundo plano de las miniaturas
+ * de las filas cercanas a la seleccionada: al moverse por la tabla la
+ * imagen siguiente suele estar ya en memoria.
+ * Cada nueva precarga descarta las pendientes de la anterior.
+ */
+public class ImagePreloader {
+
+    private static final int MAX_ENTRIES = 16;
+
+    private final VigilanteClient client;
+    private final Map<String, BufferedImage> cache;
+    private final ThreadPoolExecutor executor;
+
+    public ImagePreloader(VigilanteClient client) {
+        this.client = client;
+        this.cache = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "Vigilante-Precarga");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Imagen en caché (miniatura o completa), o null
+     */
+    public BufferedImage get(String imageName, boolean full) {
+        synchronized (cache) {
+            return cache.get(key(imageName, full));
+        }
+    }
+
+    public void put(String imageName, boolean full, BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(key(imageName, full), image);
+        }
+    }
+
+    /**
+     * Descarga en segundo plano las miniaturas que no estén ya en caché
+     */
+    public void preload(Collection<String> imageNames) {
+        executor.getQueue().clear();
+
+        for (String imageName : imageNames) {
+            executor.execute(() -> {
+                if (get(imageName, false) != null) {
+                    return;
+                }
+                try {
+                    put(imageName, false, client.fetchThumbnail(imageName));
+                } catch (IOException e) {
+                    // Se reintentará al seleccionar la fila
+                }
+            });
+        }
+    }
+
+    private static String key(String imageName, boolean full) {
+        return (full ? "full:" : "thumb:") + imageName;
+    }
+}
\ No newline at end of file
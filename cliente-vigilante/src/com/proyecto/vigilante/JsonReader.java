@@ -0,0 +1,309 @@
+package com.proyecto.vigilante;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lector de JSON incremental (sin dependencias) que consume bytes UTF-8
+ * directamente del InputStream de la conexión: no hace falta leer antes la
+ * línea completa, así que las respuestas grandes no se copian en memoria.
+ * Solo lee lo necesario para el valor pedido (como mucho un byte de más,
+ * que se conserva en peeked), por lo que la conexión sigue siendo usable
+ * para la respuesta siguiente.
+ *
+ * Uso: beginArray()/beginObject(), hasNext(), nextName(), nextString(),
+ * nextDouble(), nextLong(), skipValue() y endArray()/endObject().
+ */
+final class JsonReader {
+
+    private final InputStream in;
+    private final StringBuilder text = new StringBuilder(64); // Reutilizado entre cadenas
+    private int peeked = -2; // -2: no hay byte adelantado
+
+    JsonReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Siguiente carácter significativo (sin consumirlo). No salta saltos de
+     * línea, que separan las respuestas.
+     */
+    int peek() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\t' || c == '\r') {
+            c = read();
+        }
+        if (c == -1) {
+            throw new EOFException("Conexión cerrada por el servidor");
+        }
+        peeked = c;
+        return c;
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    /**
+     * Si quedan elementos en el array u objeto actual (consume la coma)
+     */
+    boolean hasNext() throws IOException {
+        int c = skipWhitespace();
+
+        if (c == ',') {
+            read();
+            c = skipWhitespace();
+        }
+        return c != ']' && c != '}' && c != -1;
+    }
+
+    String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Cadena (con los escapes resueltos); null si el valor es null
+     */
+    String nextString() throws IOException {
+        int c = skipWhitespace();
+
+        if (c == 'n') {
+            skipLiteral();
+            return null;
+        }
+        expect('"');
+        text.setLength(0);
+
+        while ((c = readRequired()) != '"') {
+            if (c == '\\') {
+                readEscape();
+            } else if (c < 0x80) {
+                text.append((char) c);
+            } else {
+                readUtf8(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Número; NaN si el valor es null
+     */
+    double nextDouble() throws IOException {
+        if (skipWhitespace() == 'n') {
+            skipLiteral();
+            return Double.NaN;
+        }
+
+        try {
+            return Double.parseDouble(readNumber());
+        } catch (NumberFormatException e) {
+            throw new IOException("Número inválido: " + text);
+        }
+    }
+
+    /**
+     * Número entero; -1 si el valor es null
+     */
+    long nextLong() throws IOException {
+        if (skipWhitespace() == 'n') {
+            skipLiteral();
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(readNumber());
+        } catch (NumberFormatException e) {
+            throw new IOException("Número entero inválido: " + text);
+        }
+    }
+
+    /**
+     * Salta el siguiente valor, sea del tipo que sea (incluidos objetos y arrays anidados)
+     */
+    void skipValue() throws IOException {
+        int c = skipWhitespace();
+
+        if (c == '"') {
+            nextString();
+        } else if (c == '{' || c == '[') {
+            read();
+            int depth = 1;
+            while (depth > 0) {
+                c = readRequired();
+                if (c == '"') {
+                    peeked = c;
+                    nextString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        } else {
+            skipLiteral();
+        }
+    }
+
+    /**
+     * Resto de la línea actual como texto (respuestas que no son JSON, p. ej. "ERROR:..")
+     */
+    String nextLine() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = read()) != '\n' && c != -1) {
+            if (c < 0x80) {
+                text.append((char) c);
+            } else {
+                readUtf8(c);
+            }
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Consume el resto de la línea actual, incluido el salto de línea
+     */
+    void skipLine() throws IOException {
+        int c;
+        while ((c = read()) != '\n' && c != -1) {
+            // Descartar
+        }
+    }
+
+    private String readNumber() throws IOException {
+        text.setLength(0);
+
+        int c = peekByte();
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            text.append((char) read());
+            c = peekByte();
+        }
+        return text.toString();
+    }
+
+    /**
+     * Número, true, false o null: hasta el siguiente separador
+     */
+    private void skipLiteral() throws IOException {
+        int c = peekByte();
+        while (c != ',' && c != '}' && c != ']' && c != -1 && c > ' ') {
+            read();
+            c = peekByte();
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = readRequired();
+
+        switch (c) {
+            case 'n' -> text.append('\n');
+            case 'r' -> text.append('\r');
+            case 't' -> text.append('\t');
+            case 'b' -> text.append('\b');
+            case 'f' -> text.append('\f');
+            case 'u' -> {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readRequired(), 16);
+                    if (digit < 0) {
+                        throw new IOException("Escape \\u inválido");
+                    }
+                    value = (value << 4) | digit;
+                }
+                text.append((char) value); // Los pares surrogate llegan como dos escapes
+            }
+            default -> text.append((char) c); // \" \\ \/
+        }
+    }
+
+    /**
+     * Decodifica un carácter UTF-8 de 2 a 4 bytes cuyo primer byte es lead
+     */
+    private void readUtf8(int lead) throws IOException {
+        int extra;
+        int codePoint;
+
+        if ((lead & 0xE0) == 0xC0) {
+            extra = 1;
+            codePoint = lead & 0x1F;
+        } else if ((lead & 0xF0) == 0xE0) {
+            extra = 2;
+            codePoint = lead & 0x0F;
+        } else if ((lead & 0xF8) == 0xF0) {
+            extra = 3;
+            codePoint = lead & 0x07;
+        } else {
+            text.append('\uFFFD');
+            return;
+        }
+
+        for (int i = 0; i < extra; i++) {
+            codePoint = (codePoint << 6) | (readRequired() & 0x3F);
+        }
+        text.appendCodePoint(Character.isValidCodePoint(codePoint) ? codePoint : 0xFFFD);
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = skipWhitespace();
+        if (c != expected) {
+            throw new IOException("JSON inválido: se esperaba '" + expected + "' y llegó " + describe(c));
+        }
+        read();
+    }
+
+    /**
+     * Salta espacios y saltos de línea y devuelve el siguiente byte sin consumirlo
+     */
+    private int skipWhitespace() throws IOException {
+        int c = peekByte();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            read();
+            c = peekByte();
+        }
+        return c;
+    }
+
+    private int peekByte() throws IOException {
+        if (peeked == -2) {
+            peeked = in.read();
+        }
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private int readRequired() throws IOException {
+        int c = read();
+        if (c == -1) {
+            throw new EOFException("Fin de stream dentro de un valor JSON");
+        }
+        return c;
+    }
+
+    private static String describe(int c) {
+        return c == -1 ? "el fin del stream" : "'" + (char) c + "'";
+    }
+}
\ No newline at end of file
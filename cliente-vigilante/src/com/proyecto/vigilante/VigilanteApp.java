@@ -2,30 +2,56 @@
 package com.proyecto.vigilante;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Aplicación Swing del Cliente Vigilante.
  * Muestra una tabla con detecciones y la imagen asociada al registro seleccionado.
+ * Al seleccionar un registro se descarga solo la miniatura; la imagen completa
+ * se pide bajo demanda (botón "Imagen completa" o doble clic sobre la imagen).
+ * Refrescar y el modo en vivo solo añaden las detecciones nuevas, así que la
+ * selección y el scroll se conservan. Las miniaturas de las filas vecinas a
+ * la seleccionada se precargan en segundo plano.
  */
 public class VigilanteApp extends JFrame {
 
+    private static final int PRELOAD_DISTANCE = 2; // Filas precargadas por encima y por debajo
+
     private final VigilanteClient client;
+    private final ImagePreloader preloader;
     private final DetectionTableModel tableModel;
     private final JTable table;
+    private final TableRowSorter<DetectionTableModel> sorter;
+    private final JTextField filterField;
     private final ImagePanel imagePanel;
     private final JLabel statusLabel;
+    private final JButton btnFullImage;
+    private final JToggleButton btnLive;
+    private DetectionDTO selectedDetection;
 
     public VigilanteApp(String host, int logPort, int imgPort) {
         super("Cliente-Vigilante-App");
 
         this.client = new VigilanteClient(host, logPort, imgPort);
+        this.preloader = new ImagePreloader(client);
         this.tableModel = new DetectionTableModel();
         this.table = new JTable(tableModel);
+        this.sorter = new TableRowSorter<>(tableModel);
+        this.filterField = new JTextField(12);
         this.imagePanel = new ImagePanel();
         this.statusLabel = new JLabel(" ", SwingConstants.CENTER);
+        this.btnFullImage = new JButton("Imagen completa");
+        this.btnLive = new JToggleButton("En vivo");
 
         configureWindow();
         initUI();
@@ -44,6 +70,9 @@ public class VigilanteApp extends JFrame {
         // Panel izquierdo: tabla + controles
         JPanel leftPanel = new JPanel(new BorderLayout());
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Ordenar/filtrar: el sorter mantiene solo un índice de filas, el modelo no se copia
+        sorter.setComparator(DetectionTableModel.DATE_COLUMN, DetectionTableModel.DATE_ORDER);
+        table.setRowSorter(sorter);
         JScrollPane scroll = new JScrollPane(table);
         leftPanel.add(scroll, BorderLayout.CENTER);
 
@@ -52,6 +81,39 @@ public class VigilanteApp extends JFrame {
         btnRefresh.addActionListener(e -> loadLogs());
         controlsPanel.add(btnRefresh);
 
+        btnFullImage.setEnabled(false);
+        btnFullImage.addActionListener(e -> loadFullImage());
+        controlsPanel.add(btnFullImage);
+
+        // En vivo: el servidor envía cada detección nueva (SUBSCRIBE) sin refrescar
+        btnLive.addActionListener(e -> {
+            if (btnLive.isSelected()) {
+                startLive();
+            } else {
+                client.unsubscribe();
+            }
+        });
+        controlsPanel.add(btnLive);
+
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+        });
+        controlsPanel.add(new JLabel("Filtrar:"));
+        controlsPanel.add(filterField);
+
         leftPanel.add(controlsPanel, BorderLayout.NORTH);
 
         // Panel derecho: imagen + estado
@@ -59,6 +121,16 @@ public class VigilanteApp extends JFrame {
         rightPanel.add(imagePanel, BorderLayout.CENTER);
         rightPanel.add(statusLabel, BorderLayout.SOUTH);
 
+        // Doble clic sobre la miniatura: descargar la imagen completa
+        imagePanel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    loadFullImage();
+                }
+            }
+        });
+
         mainPanel.add(leftPanel, BorderLayout.CENTER);
         mainPanel.add(rightPanel, BorderLayout.EAST);
 
@@ -67,9 +139,13 @@ public class VigilanteApp extends JFrame {
             if (!e.getValueIsAdjusting()) {
                 int row = table.getSelectedRow();
                 if (row >= 0) {
-                    DetectionDTO det = tableModel.getDetectionAt(row);
-                    if (det != null) {
-                        loadImage(det);
+                    DetectionDTO det = tableModel.getDetectionAt(table.convertRowIndexToModel(row));
+                    // La fila seleccionada cambia de índice cuando se descartan las más antiguas
+                    if (det != null && det != selectedDetection) {
+                        selectedDetection = det;
+                        btnFullImage.setEnabled(true);
+                        loadImage(det, false);
+                        preloadNeighbours(row);
                     }
                 }
             }
@@ -78,10 +154,35 @@ public class VigilanteApp extends JFrame {
         getContentPane().add(mainPanel);
     }
 
-    /** Carga logs del servidor usando SwingWorker para no bloquear la UI. */
+    /** Precarga las miniaturas de las filas visibles cercanas a viewRow. */
+    private void preloadNeighbours(int viewRow) {
+        List<String> names = new ArrayList<>();
+
+        for (int distance = 1; distance <= PRELOAD_DISTANCE; distance++) {
+            for (int row : new int[] { viewRow + distance, viewRow - distance }) {
+                if (row >= 0 && row < table.getRowCount()) {
+                    DetectionDTO det = tableModel.getDetectionAt(table.convertRowIndexToModel(row));
+                    if (det != null && !det.getImagen().isEmpty()) {
+                        names.add(det.getImagen());
+                    }
+                }
+            }
+        }
+        preloader.preload(names);
+    }
+
+    /** Filtra las filas visibles por el texto (en cualquier columna). */
+    private void applyFilter() {
+        String text = filterField.getText().trim();
+        sorter.setRowFilter(text.isEmpty() ? null : RowFilter.regexFilter("(?i)" + Pattern.quote(text)));
+    }
+
+    /**
+     * Carga logs del servidor usando SwingWorker para no bloquear la UI.
+     * Solo se añaden las detecciones que la tabla todavía no tiene.
+     */
     private void loadLogs() {
         statusLabel.setText("Cargando registros desde el servidor...");
-        imagePanel.setImage(null);
 
         SwingWorker<List<DetectionDTO>, Void> worker = new SwingWorker<>() {
             @Override
@@ -93,7 +194,17 @@ public class VigilanteApp extends JFrame {
             protected void done() {
                 try {
                     List<DetectionDTO> logs = get();
-                    tableModel.setDetections(logs);
+
+                    // Secuencias menores que las mostradas: el servidor se reinició
+                    if (!logs.isEmpty() && logs.get(logs.size() - 1).getSequence() >= 0
+                            && logs.get(logs.size() - 1).getSequence() < tableModel.getLastSequence()) {
+                        tableModel.clear();
+                        imagePanel.setImage(null);
+                        selectedDetection = null;
+                        btnFullImage.setEnabled(false);
+                    }
+
+                    tableModel.addDetections(logs);
                     statusLabel.setText("Registros cargados: " + logs.size());
                 } catch (Exception ex) {
                     ex.printStackTrace();
@@ -110,27 +221,90 @@ public class VigilanteApp extends JFrame {
         worker.execute();
     }
 
-    /** Carga la imagen asociada a una detección seleccionada. */
-    private void loadImage(DetectionDTO det) {
+    /** Recibe las detecciones nuevas en un hilo aparte y las añade a la tabla. */
+    private void startLive() {
+        statusLabel.setText("Recibiendo detecciones en vivo...");
+
+        Thread liveThread = new Thread(() -> {
+            try {
+                // El modelo agrupa las detecciones y actualiza la tabla una vez por frame
+                client.subscribe("", tableModel::addDetection);
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    // Si el botón sigue activo, la conexión se perdió
+                    if (btnLive.isSelected()) {
+                        btnLive.setSelected(false);
+                        statusLabel.setText("Modo en vivo interrumpido: " + ex.getMessage());
+                    } else {
+                        statusLabel.setText("Modo en vivo detenido.");
+                    }
+                });
+            }
+        }, "Vigilante-Live");
+        liveThread.setDaemon(true);
+        liveThread.start();
+    }
+
+    /** Descarga la imagen completa de la detección seleccionada. */
+    private void loadFullImage() {
+        if (selectedDetection != null) {
+            loadImage(selectedDetection, true);
+        }
+    }
+
+    /**
+     * Carga la imagen asociada a una detección seleccionada: la miniatura
+     * (o la imagen completa si no hay miniatura) o, con full, la imagen completa.
+     */
+    private void loadImage(DetectionDTO det, boolean full) {
+        if (det.getImagen().isEmpty()) {
+            // La retención del servidor ya borró la imagen
+            imagePanel.setImage(null);
+            statusLabel.setText("Imagen no disponible (borrada por la retención del servidor).");
+            return;
+        }
+
+        // Primero la caché (precarga o selección anterior)
+        BufferedImage cached = preloader.get(det.getImagen(), full);
+        boolean cachedThumbnail = !full && cached != null;
+        if (cached == null && !full) {
+            cached = preloader.get(det.getImagen(), true);
+        }
+        if (cached != null) {
+            showImage(det, cached, cachedThumbnail);
+            return;
+        }
+
         statusLabel.setText("Cargando imagen " + det.getImagen() + "...");
         imagePanel.setImage(null);
 
         SwingWorker<BufferedImage, Void> worker = new SwingWorker<>() {
+            private boolean thumbnail;
+
             @Override
             protected BufferedImage doInBackground() throws Exception {
-                return client.fetchImage(det.getImagen());
+                if (!full) {
+                    BufferedImage thumb = client.fetchThumbnail(det.getImagen());
+                    if (thumb != null) {
+                        thumbnail = true;
+                        preloader.put(det.getImagen(), false, thumb);
+                        return thumb;
+                    }
+                }
+                BufferedImage img = client.fetchImage(det.getImagen());
+                preloader.put(det.getImagen(), true, img);
+                return img;
             }
 
             @Override
             protected void done() {
+                if (det != selectedDetection) {
+                    return; // Se seleccionó otra fila mientras se descargaba
+                }
                 try {
                     BufferedImage img = get();
                     if (img != null) {
-                        imagePanel.setImage(img);
-                        statusLabel.setText(String.format(
-                                "Cámara: %s | Objeto: %s | Fecha: %s | Imagen: %s",
-                                det.getCamara(), det.getObjeto(), det.getFecha(), det.getImagen()
-                        ));
+                        showImage(det, img, thumbnail);
                     } else {
                         statusLabel.setText("No se pudo decodificar la imagen.");
                     }
@@ -149,6 +323,42 @@ public class VigilanteApp extends JFrame {
         worker.execute();
     }
 
+    private void showImage(DetectionDTO det, BufferedImage img, boolean thumbnail) {
+        imagePanel.setImage(img);
+        statusLabel.setText(String.format(
+                "Cámara: %s | Objeto: %s%s | Fecha: %s | Imagen: %s%s%s",
+                det.getCamara(), det.getObjeto(),
+                Double.isNaN(det.getConfidence()) ? ""
+                        : String.format(" (%.0f%%)", det.getConfidence() * 100),
+                det.getFecha(), det.getImagen(),
+                thumbnail ? " (miniatura)" : "",
+                describeFrame(det)
+        ));
+    }
+
+    /**
+     * Pista y metadatos del frame que envía el servidor (vacío si no los conoce)
+     */
+    private static String describeFrame(DetectionDTO det) {
+        StringBuilder text = new StringBuilder();
+        if (det.getTrackId() > 0) {
+            text.append(" | Pista: #").append(det.getTrackId());
+            if (!det.getEvent().isEmpty()) {
+                text.append(" (").append(det.getEvent()).append(")");
+            }
+        }
+        if (det.getFrameSequence() > 0) {
+            text.append(" | Frame: ").append(det.getFrameSequence());
+        }
+        if (det.getLatencyMicros() > 0) {
+            text.append(String.format(" | Detector: %.1f ms", det.getLatencyMicros() / 1000.0));
+        }
+        if (det.getModelVersion() != null) {
+            text.append(" | Modelo: ").append(det.getModelVersion());
+        }
+        return text.toString();
+    }
+
     public static void main(String[] args) {
         // Configuración por defecto
         String host = "127.0.0.1";
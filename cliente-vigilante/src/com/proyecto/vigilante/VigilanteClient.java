@@ -3,50 +3,180 @@ package com.proyecto.vigilante;
 
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import javax.imageio.ImageIO;
 
 /**
  * Cliente de red que se comunica con:
- *  - Servidor de logs (puerto logPort)     → comando: GET_LOGS\n
- *  - Servidor de imágenes (puerto imgPort)→ comando: GET_IMAGE:<nombre>\n
+ *  - Servidor de logs (puerto logPort)     → comandos: GET_LOGS\n, SUBSCRIBE\n
+ *  - Servidor de imágenes (puerto imgPort)→ comandos: GET_IMAGE:<nombre>\n, GET_THUMB:<nombre>\n
  *
  * Este módulo abstrae el uso de sockets para la capa de presentación.
+ * Las conexiones son persistentes: se abren una vez y se reutilizan para
+ * todos los comandos; si una falla, se reconecta y se reintenta una vez.
+ * Al abrir cada conexión se negocia el protocolo binario (BinaryProtocol);
+ * si el servidor no lo soporta se sigue con el protocolo de texto.
  */
 public class VigilanteClient {
 
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    private static final int MAX_IMAGE_ATTEMPTS = 3;
+    private static final int LIVE_READ_TIMEOUT_MS = 45000; // El servidor envía HEARTBEAT cada 15 s
+
     private final String host;
     private final int logPort;
     private final int imgPort;
+    private final Connection logConnection;
+    private final Connection imgConnection;
+    private final boolean binary;
+    private volatile Connection liveConnection; // Suscripción en curso (una conexión por suscripción)
 
     public VigilanteClient(String host, int logPort, int imgPort) {
+        this(host, logPort, imgPort, true);
+    }
+
+    /**
+     * @param binary si se intenta negociar el protocolo binario (false: siempre texto)
+     */
+    public VigilanteClient(String host, int logPort, int imgPort, boolean binary) {
         this.host = host;
         this.logPort = logPort;
         this.imgPort = imgPort;
+        this.binary = binary;
+        this.logConnection = new Connection(binary);
+        this.imgConnection = new Connection(binary);
     }
 
     /**
      * Pide los últimos logs al servidor de logs.
      * Protocolo:
      *  Cliente: "GET_LOGS\n"
-     *  Servidor: una línea JSON con un array de detecciones.
+     *  Servidor: una línea JSON con un array de detecciones
+     *            (en binario, una trama DETECTIONS).
      */
     public List<DetectionDTO> fetchLogs() throws IOException {
-        try (Socket s = new Socket(host, logPort);
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()));
-             BufferedReader br = new BufferedReader(new InputStreamReader(s.getInputStream()))) {
+        synchronized (logConnection) {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    logConnection.open(host, logPort);
+                    logConnection.sendCommand("GET_LOGS");
+
+                    if (logConnection.decoder != null) {
+                        return readDetectionsFrame(logConnection.decoder);
+                    }
+
+                    return readDetectionArray(logConnection.json);
+                } catch (IOException e) {
+                    // La conexión pudo cerrarse por inactividad: reconectar una vez
+                    logConnection.close();
+                    if (attempt > 0) {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Recibe las detecciones nuevas en cuanto el servidor las registra.
+     * Protocolo:
+     *  Cliente: "SUBSCRIBE [camera=..] [class=..] [minConf=..]\n"
+     *  Servidor: "SUBSCRIBED:<seq>\n", después una detección JSON por línea
+     *            y "HEARTBEAT\n" periódicamente si no hay detecciones
+     *            (en binario: trama TEXT, tramas DETECTIONS y tramas HEARTBEAT)
+     * Bloquea hasta que se llama a unsubscribe() o se pierde la conexión
+     * (en ese caso lanza IOException); listener se invoca desde este hilo.
+     */
+    public void subscribe(String filters, Consumer<DetectionDTO> listener) throws IOException {
+        Connection connection = new Connection(binary);
+        liveConnection = connection;
+
+        try {
+            connection.open(host, logPort, LIVE_READ_TIMEOUT_MS);
+            connection.sendCommand(filters.isBlank() ? "SUBSCRIBE" : "SUBSCRIBE " + filters.trim());
+
+            if (connection.decoder != null) {
+                receiveDetectionFrames(connection.decoder, listener);
+            }
+
+            String header = connection.readLine().trim();
+            if (!header.startsWith("SUBSCRIBED:")) {
+                throw new IOException("Suscripción rechazada: " + header);
+            }
 
-            bw.write("GET_LOGS\n");
-            bw.flush();
+            JsonReader reader = connection.json;
+            while (true) {
+                if (reader.peek() == '{') {
+                    DetectionDTO detection = readDetection(reader);
+                    reader.skipLine();
+                    listener.accept(detection);
+                    continue;
+                }
+
+                String line = reader.nextLine();
+                if (line.startsWith("ERROR:")) {
+                    throw new IOException(line.substring("ERROR:".length()));
+                }
+                // HEARTBEAT: nada que hacer
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Bucle de una suscripción en modo binario (solo termina con IOException)
+     */
+    private void receiveDetectionFrames(BinaryProtocol.Decoder decoder,
+                                        Consumer<DetectionDTO> listener) throws IOException {
+        int type = decoder.nextFrame();
+        String header = type == BinaryProtocol.TEXT || type == BinaryProtocol.ERROR ? decoder.readText() : "";
+        if (type != BinaryProtocol.TEXT || !header.startsWith("SUBSCRIBED:")) {
+            throw new IOException("Suscripción rechazada: " + header);
+        }
 
-            String jsonLine = br.readLine();
-            if (jsonLine == null || jsonLine.trim().isEmpty()) {
-                return new ArrayList<>();
+        while (true) {
+            type = decoder.nextFrame();
+
+            if (type == BinaryProtocol.DETECTIONS) {
+                for (DetectionDTO detection : decoder.readDetections()) {
+                    listener.accept(detection);
+                }
+            } else if (type == BinaryProtocol.ERROR) {
+                throw new IOException(decoder.readText());
             }
+            // HEARTBEAT: nada que hacer
+        }
+    }
+
+    /**
+     * Respuesta binaria a un comando de lectura de detecciones
+     */
+    private List<DetectionDTO> readDetectionsFrame(BinaryProtocol.Decoder decoder) throws IOException {
+        int type = decoder.nextFrame();
 
-            return parseJsonArray(jsonLine.trim());
+        if (type == BinaryProtocol.ERROR) {
+            throw new IOException(decoder.readText());
+        }
+        if (type != BinaryProtocol.DETECTIONS) {
+            throw new IOException("Trama inesperada: " + type);
+        }
+        return decoder.readDetections();
+    }
+
+    /**
+     * Termina la suscripción en curso (subscribe() retorna con IOException)
+     */
+    public void unsubscribe() {
+        Connection connection = liveConnection;
+        if (connection != null) {
+            connection.close();
         }
     }
 
@@ -55,126 +185,405 @@ public class VigilanteClient {
      * Protocolo:
      *  Cliente: "GET_IMAGE:<nombre>\n"
      *  Servidor: "FILESIZE:n\n" + n bytes de la imagen
+     * Si la conexión se corta a mitad de la transferencia, se reconecta y se
+     * piden solo los bytes que faltan:
+     *  Cliente: "GET_IMAGE_RANGE:<nombre>:<offset>:<len>\n"
+     *  Servidor: "RANGE:offset:len:total\n" + len bytes
+     * En binario ambas respuestas son una trama IMAGE (offset, total y los bytes).
      */
     public BufferedImage fetchImage(String imageName) throws IOException {
-        try (Socket s = new Socket(host, imgPort)) {
-            OutputStream out = s.getOutputStream();
-            InputStream in = s.getInputStream();
+        return download(new ImageTransfer("GET_IMAGE", imageName));
+    }
 
-            // Enviar comando
-            String cmd = "GET_IMAGE:" + imageName + "\n";
-            out.write(cmd.getBytes("UTF-8"));
-            out.flush();
+    /**
+     * Pide la miniatura de una imagen (unos KB en lugar de la imagen completa).
+     * Protocolo:
+     *  Cliente: "GET_THUMB:<nombre>\n"
+     *  Servidor: "FILESIZE:n\n" + n bytes de la miniatura
+     * Devuelve null si el servidor no tiene miniatura para esa imagen.
+     */
+    public BufferedImage fetchThumbnail(String imageName) throws IOException {
+        try {
+            return download(new ImageTransfer("GET_THUMB", imageName));
+        } catch (ImageNotAvailableException e) {
+            return null;
+        }
+    }
 
-            // Leer cabecera FILESIZE:n\n desde InputStream (no usar BufferedReader
-            // para no mezclar buffer de texto y binario)
-            StringBuilder headerBuilder = new StringBuilder();
-            int b;
-            while ((b = in.read()) != -1) {
-                if (b == '\n') {
+    private BufferedImage download(ImageTransfer transfer) throws IOException {
+        synchronized (imgConnection) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    imgConnection.open(host, imgPort);
+                    readImage(transfer);
                     break;
+                } catch (ImageNotAvailableException e) {
+                    // Error del servidor: la conexión sigue siendo válida
+                    throw e;
+                } catch (IOException e) {
+                    imgConnection.close();
+                    if (attempt >= MAX_IMAGE_ATTEMPTS) {
+                        throw e;
+                    }
                 }
-                headerBuilder.append((char) b);
             }
-            String header = headerBuilder.toString().trim();
+        }
 
-            if (!header.startsWith("FILESIZE:")) {
-                throw new IOException("Cabecera inválida recibida: " + header);
-            }
+        ByteArrayInputStream bais = new ByteArrayInputStream(transfer.bytes);
+        return ImageIO.read(bais);
+    }
+
+    private void readImage(ImageTransfer transfer) throws IOException {
+        // Enviar comando: imagen completa o solo lo que falta (las miniaturas
+        // son pequeñas y se piden de nuevo enteras)
+        boolean full = transfer.bytes == null || !transfer.isResumable();
+        if (full) {
+            imgConnection.sendCommand(transfer.command + ":" + transfer.imageName);
+        } else {
+            imgConnection.sendCommand("GET_IMAGE_RANGE:" + transfer.imageName + ":" +
+                    transfer.received + ":" + (transfer.bytes.length - transfer.received));
+        }
+
+        if (imgConnection.decoder != null) {
+            readImageFrame(imgConnection.decoder, transfer, full);
+            return;
+        }
 
+        // Leer cabecera desde el InputStream (no usar BufferedReader
+        // para no mezclar buffer de texto y binario)
+        String header = imgConnection.readLine().trim();
+
+        if (header.startsWith("ERROR:")) {
+            throw new ImageNotAvailableException(header.substring("ERROR:".length()));
+        }
+
+        if (header.startsWith("FILESIZE:")) {
             int size = Integer.parseInt(header.substring("FILESIZE:".length()));
-            byte[] bytes = new byte[size];
+            transfer.bytes = new byte[size];
+            transfer.received = 0;
+        } else if (header.startsWith("RANGE:")) {
+            String[] parts = header.substring("RANGE:".length()).split(":");
+            long offset = Long.parseLong(parts[0]);
+            long total = Long.parseLong(parts[2]);
 
-            int totalRead = 0;
-            while (totalRead < size) {
-                int r = in.read(bytes, totalRead, size - totalRead);
-                if (r == -1) {
-                    throw new EOFException("Fin de stream antes de leer toda la imagen");
-                }
-                totalRead += r;
+            if (offset != transfer.received || total != transfer.bytes.length) {
+                // La imagen cambió en el servidor: empezar de nuevo
+                transfer.bytes = null;
+                throw new IOException("La imagen cambió durante la descarga");
             }
+        } else {
+            throw new IOException("Cabecera inválida recibida: " + header);
+        }
 
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            return ImageIO.read(bais);
+        while (transfer.received < transfer.bytes.length) {
+            int r = imgConnection.read(transfer.bytes, transfer.received, transfer.bytes.length - transfer.received);
+            if (r == -1) {
+                throw new EOFException("Fin de stream antes de leer toda la imagen");
+            }
+            transfer.received += r;
+        }
+    }
+
+    private void readImageFrame(BinaryProtocol.Decoder decoder, ImageTransfer transfer,
+                                boolean full) throws IOException {
+        int type = decoder.nextFrame();
+
+        if (type == BinaryProtocol.ERROR) {
+            throw new ImageNotAvailableException(decoder.readText());
+        }
+        if (type != BinaryProtocol.IMAGE) {
+            throw new IOException("Trama inesperada: " + type);
+        }
+
+        long[] header = decoder.readImageHeader();
+        long offset = header[0];
+        long total = header[1];
+
+        if (full) {
+            transfer.bytes = new byte[(int) total];
+            transfer.received = 0;
+        } else if (offset != transfer.received || total != transfer.bytes.length) {
+            // La imagen cambió en el servidor: empezar de nuevo
+            transfer.bytes = null;
+            throw new IOException("La imagen cambió durante la descarga");
+        }
+
+        if (offset + decoder.getRemaining() > total) {
+            throw new IOException("Trama IMAGE inválida");
+        }
+
+        while (decoder.getRemaining() > 0) {
+            int r = decoder.read(transfer.bytes, transfer.received, transfer.bytes.length - transfer.received);
+            if (r == -1) {
+                throw new EOFException("Fin de stream antes de leer toda la imagen");
+            }
+            transfer.received += r;
         }
     }
 
     /**
-     * Parser simple para el JSON esperado:
+     * Cierra las conexiones con el servidor
+     */
+    public void close() {
+        synchronized (logConnection) {
+            logConnection.close();
+        }
+        synchronized (imgConnection) {
+            imgConnection.close();
+        }
+        unsubscribe();
+    }
+
+    /**
+     * Lee una respuesta JSON de una línea con un array de detecciones:
      * [
-     *   {"camara":"CAM1","objeto":"Persona","fecha":"2025-11-16 14:00","imagen":"cam_CAM1_001.jpg"},
+     *   {"seq":1,"camara":"CAM1","objeto":"Persona","fecha":"16/11/2025 14:00:00","imagen":"cam_CAM1_001.jpg","confidence":0.87},
      *   ...
      * ]
-     *
-     * No usa librerías externas, solo parsing manual de strings.
+     * Se parsea a medida que llegan los bytes, sin leer antes la línea
+     * completa. Si la respuesta es "ERROR:..." lanza IOException.
      */
-    private List<DetectionDTO> parseJsonArray(String json) {
+    static List<DetectionDTO> readDetectionArray(JsonReader reader) throws IOException {
         List<DetectionDTO> list = new ArrayList<>();
 
-        json = json.trim();
-        if (!json.startsWith("[") || !json.endsWith("]")) {
+        if (reader.peek() != '[') {
+            String line = reader.nextLine();
+            if (line.startsWith("ERROR:")) {
+                throw new IOException(line.substring("ERROR:".length()));
+            }
             return list;
         }
 
-        String inner = json.substring(1, json.length() - 1).trim();
-        if (inner.isEmpty()) {
-            return list;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            list.add(readDetection(reader));
+        }
+        reader.endArray();
+        reader.skipLine();
+
+        return list;
+    }
+
+    /**
+     * Lee un objeto JSON de detección; los campos desconocidos se ignoran
+     */
+    private static DetectionDTO readDetection(JsonReader reader) throws IOException {
+        long sequence = -1;
+        String camara = "";
+        String objeto = "";
+        String fecha  = "";
+        String imagen = "";
+        double confidence = Double.NaN;
+        long captureNanos = 0;
+        long frameSequence = 0;
+        long latencyMicros = 0;
+        String modelVersion = null;
+        int[] box = new int[4];
+        long trackId = 0;
+        String event = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "seq":
+                    sequence = reader.nextLong();
+                    break;
+                case "camara":
+                    camara = orEmpty(reader.nextString());
+                    break;
+                case "objeto":
+                    objeto = orEmpty(reader.nextString());
+                    break;
+                case "fecha":
+                    fecha = orEmpty(reader.nextString());
+                    break;
+                case "imagen":
+                    imagen = orEmpty(reader.nextString());
+                    break;
+                case "confidence":
+                    confidence = reader.nextDouble();
+                    break;
+                case "captureNanos":
+                    captureNanos = Math.max(0, reader.nextLong());
+                    break;
+                case "frame":
+                    frameSequence = Math.max(0, reader.nextLong());
+                    break;
+                case "latencyUs":
+                    latencyMicros = Math.max(0, reader.nextLong());
+                    break;
+                case "model":
+                    modelVersion = reader.nextString();
+                    break;
+                case "track":
+                    trackId = Math.max(0, reader.nextLong());
+                    break;
+                case "event":
+                    event = orEmpty(reader.nextString());
+                    break;
+                case "box":
+                    // [x,y,ancho,alto]; se ignoran valores de más
+                    reader.beginArray();
+                    for (int i = 0; reader.hasNext(); i++) {
+                        if (i < box.length) {
+                            box[i] = (int) reader.nextLong();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return new DetectionDTO(sequence, camara, objeto, fecha, imagen, confidence,
+                captureNanos, frameSequence, latencyMicros, modelVersion, box[0], box[1], box[2], box[3],
+                trackId, event);
+    }
+
+    /**
+     * Conexión persistente con uno de los servidores
+     */
+    private static class Connection {
+        private final boolean binary;
+        private volatile Socket socket; // close() puede llamarse desde otro hilo
+        private InputStream in;
+        private OutputStream out;
+        JsonReader json;
+        BinaryProtocol.Decoder decoder; // null si la conexión usa el protocolo de texto
+
+        Connection(boolean binary) {
+            this.binary = binary;
+        }
+
+        void open(String host, int port) throws IOException {
+            open(host, port, READ_TIMEOUT_MS);
+        }
+
+        void open(String host, int port, int readTimeoutMs) throws IOException {
+            if (socket != null && !socket.isClosed()) {
+                return;
+            }
+
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(readTimeoutMs);
+            socket.setTcpNoDelay(true);
+            in = new ConnectionInput(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+            json = new JsonReader(in);
+            decoder = null;
+
+            if (binary) {
+                negotiate();
+            }
+        }
+
+        /**
+         * PROTOCOL:BINARY; los servidores antiguos responden "ERROR:Comando desconocido"
+         * y la conexión sigue en modo texto
+         */
+        private void negotiate() throws IOException {
+            sendCommand("PROTOCOL:BINARY");
+            String reply = readLine().trim();
+
+            if (reply.equals("OK:BINARY")) {
+                decoder = new BinaryProtocol.Decoder(in);
+            } else if (reply.equals("ERROR:Servidor ocupado")) {
+                throw new IOException("Servidor ocupado");
+            }
+        }
+
+        void sendCommand(String command) throws IOException {
+            out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
         }
 
-        // Separar cada objeto: tolerar "},{", "}, {", "},\n{", etc.
-        String[] objects = inner
-                .replace("}, {", "}@@@{")
-                .replace("},\n{", "}@@@{")
-                .replace("},{", "}@@@{")
-                .split("@@@");
-
-        for (String obj : objects) {
-            obj = obj.trim();
-            if (obj.startsWith("{")) obj = obj.substring(1);
-            if (obj.endsWith("}")) obj = obj.substring(0, obj.length() - 1);
-
-            String camara = "";
-            String objeto = "";
-            String fecha  = "";
-            String imagen = "";
-
-            String[] fields = obj.split(",");
-            for (String field : fields) {
-                String[] kv = field.split(":", 2);
-                if (kv.length != 2) continue;
-                String key = stripQuotes(kv[0].trim());
-                String value = stripQuotes(kv[1].trim());
-
-                switch (key) {
-                    case "camara":
-                        camara = value;
-                        break;
-                    case "objeto":
-                        objeto = value;
-                        break;
-                    case "fecha":
-                        fecha = value;
-                        break;
-                    case "imagen":
-                        imagen = value;
-                        break;
-                    default:
-                        break;
+        /**
+         * Lee una línea de texto (sin el salto de línea)
+         */
+        String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    throw new EOFException("Conexión cerrada por el servidor");
                 }
+                line.write(b);
             }
+            return line.toString(StandardCharsets.UTF_8);
+        }
+
+        int read(byte[] bytes, int offset, int length) throws IOException {
+            return in.read(bytes, offset, length);
+        }
 
-            if (!camara.isEmpty() || !objeto.isEmpty() || !fecha.isEmpty() || !imagen.isEmpty()) {
-                list.add(new DetectionDTO(camara, objeto, fecha, imagen));
+        void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Ignorar
+                }
+                socket = null;
             }
         }
+    }
 
-        return list;
+    /**
+     * BufferedInputStream con read() sin sincronizar cuando hay datos en el
+     * buffer: JsonReader y BinaryProtocol leen byte a byte y cada conexión
+     * se lee desde un único hilo
+     */
+    static final class ConnectionInput extends BufferedInputStream {
+        ConnectionInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pos < count) {
+                return buf[pos++] & 0xFF;
+            }
+            return super.read();
+        }
+    }
+
+    /**
+     * Descarga de una imagen en curso: permite reanudarla tras un corte
+     */
+    private static class ImageTransfer {
+        final String command;
+        final String imageName;
+        byte[] bytes;
+        int received;
+
+        ImageTransfer(String command, String imageName) {
+            this.command = command;
+            this.imageName = imageName;
+        }
+
+        boolean isResumable() {
+            return command.equals("GET_IMAGE");
+        }
+    }
+
+    /**
+     * El servidor respondió con un error (imagen inexistente, nombre inválido...)
+     */
+    private static class ImageNotAvailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ImageNotAvailableException(String message) {
+            super(message);
+        }
     }
 
-    private String stripQuotes(String s) {
-        s = s.trim();
-        if (s.startsWith("\"")) s = s.substring(1);
-        if (s.endsWith("\"")) s = s.substring(0, s.length() - 1);
-        return s;
+    private static String orEmpty(String s) {
+        return s != null ? s : "";
     }
 }
\ No newline at end of file
@@ -0,0 +1,231 @@
+package com.proyecto.vigilante;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Medición de la lectura de una respuesta GET_LOGS en el cliente: el parser
+ * anterior (readLine byte a byte, separación de objetos por "},{" y de
+ * campos por ',') frente a JsonReader. Cada uno lee de un stream en
+ * memoria envuelto como lo hacía su conexión: BufferedInputStream antes,
+ * ConnectionInput ahora.
+ * Por defecto la respuesta tiene 1000 detecciones con los campos del
+ * formato anterior; también puede leerse de un archivo (por ejemplo
+ * detections-1000.json de ProtocolBenchmark). Antes de medir se comprueba
+ * que ambos parsers obtienen las mismas cámaras, clases, fechas e imágenes.
+ * No es una prueba: no se ejecuta con test-protocol.
+ * Uso: java com.proyecto.vigilante.JsonReaderBenchmark [archivo JSON] [rondas] [respuestas por ronda]
+ */
+public class JsonReaderBenchmark {
+
+    private static final int DETECTIONS = 1000;
+
+    public static void main(String[] args) throws IOException {
+        byte[] response = args.length > 0 && !args[0].isEmpty()
+                ? Files.readAllBytes(new File(args[0]).toPath())
+                : response(DETECTIONS);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int responses = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        List<DetectionDTO> before = parseOld(response);
+        List<DetectionDTO> after = parseNew(response);
+        if (!sameFields(before, after)) {
+            System.err.println("[BENCH] Los parsers no obtienen las mismas detecciones (" +
+                    before.size() + " frente a " + after.size() + ")");
+            System.exit(1);
+        }
+        System.out.println("[BENCH] Respuesta de " + after.size() + " detecciones, " + response.length + " bytes");
+
+        for (int round = 1; round <= rounds; round++) {
+            // La primera mitad de las rondas sirve de calentamiento
+            String label = round <= rounds / 2 ? "calentamiento" : "ronda " + round;
+
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < responses; i++) {
+                parseOld(response);
+            }
+            report(label, "parseJsonArray", start, allocated, responses);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < responses; i++) {
+                parseNew(response);
+            }
+            report(label, "JsonReader", start, allocated, responses);
+        }
+    }
+
+    private static List<DetectionDTO> parseNew(byte[] response) throws IOException {
+        InputStream in = new VigilanteClient.ConnectionInput(new ByteArrayInputStream(response));
+        return VigilanteClient.readDetectionArray(new JsonReader(in));
+    }
+
+    /**
+     * El camino anterior: Connection.readLine y parseJsonArray
+     */
+    private static List<DetectionDTO> parseOld(byte[] response) throws IOException {
+        String jsonLine = readLine(new BufferedInputStream(new ByteArrayInputStream(response)));
+        if (jsonLine.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return parseJsonArray(jsonLine.trim());
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Conexión cerrada por el servidor");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<DetectionDTO> parseJsonArray(String json) {
+        List<DetectionDTO> list = new ArrayList<>();
+
+        json = json.trim();
+        if (!json.startsWith("[") || !json.endsWith("]")) {
+            return list;
+        }
+
+        String inner = json.substring(1, json.length() - 1).trim();
+        if (inner.isEmpty()) {
+            return list;
+        }
+
+        // Separar cada objeto: tolerar "},{", "}, {", "},\n{", etc.
+        String[] objects = inner
+                .replace("}, {", "}@@@{")
+                .replace("},\n{", "}@@@{")
+                .replace("},{", "}@@@{")
+                .split("@@@");
+
+        for (String obj : objects) {
+            DetectionDTO detection = parseJsonObject(obj);
+            if (detection != null) {
+                list.add(detection);
+            }
+        }
+
+        return list;
+    }
+
+    private static DetectionDTO parseJsonObject(String obj) {
+        obj = obj.trim();
+        if (obj.startsWith("{")) obj = obj.substring(1);
+        if (obj.endsWith("}")) obj = obj.substring(0, obj.length() - 1);
+
+        String camara = "";
+        String objeto = "";
+        String fecha  = "";
+        String imagen = "";
+
+        String[] fields = obj.split(",");
+        for (String field : fields) {
+            String[] kv = field.split(":", 2);
+            if (kv.length != 2) continue;
+            String key = stripQuotes(kv[0].trim());
+            String value = stripQuotes(kv[1].trim());
+
+            switch (key) {
+                case "camara":
+                    camara = value;
+                    break;
+                case "objeto":
+                    objeto = value;
+                    break;
+                case "fecha":
+                    fecha = value;
+                    break;
+                case "imagen":
+                    imagen = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (!camara.isEmpty() || !objeto.isEmpty() || !fecha.isEmpty() || !imagen.isEmpty()) {
+            return new DetectionDTO(0, camara, objeto, fecha, imagen, 0); // El formato anterior no leía seq ni confidence
+        }
+
+        return null;
+    }
+
+    private static String stripQuotes(String s) {
+        s = s.trim();
+        if (s.startsWith("\"")) s = s.substring(1);
+        if (s.endsWith("\"")) s = s.substring(0, s.length() - 1);
+        return s;
+    }
+
+    /**
+     * Línea GET_LOGS con los campos que enviaba el servidor antes de las cajas y los metadatos del frame
+     */
+    private static byte[] response(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int camera = i % 4 + 1;
+            json.append(String.format(Locale.ROOT,
+                    "{\"seq\":%d,\"camara\":\"CAM%d\",\"objeto\":\"%s\",\"fecha\":\"16/11/2025 14:%02d:%02d\"," +
+                    "\"imagen\":\"cam_CAM%d_%d.jpg\",\"confidence\":%.2f}",
+                    i + 1, camera, i % 3 == 0 ? "CARRO" : "PERSONA", i / 60 % 60, i % 60,
+                    camera, i, 0.4 + (i % 60) / 100.0));
+        }
+        json.append("]\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean sameFields(List<DetectionDTO> before, List<DetectionDTO> after) {
+        if (before.size() != after.size()) {
+            return false;
+        }
+        for (int i = 0; i < before.size(); i++) {
+            DetectionDTO a = before.get(i);
+            DetectionDTO b = after.get(i);
+            if (!a.getCamara().equals(b.getCamara()) || !a.getObjeto().equals(b.getObjeto())
+                    || !a.getFecha().equals(b.getFecha()) || !a.getImagen().equals(b.getImagen())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void report(String label, String parser, long start, long allocated, int responses) {
+        double micros = (System.nanoTime() - start) / 1_000.0 / responses;
+        long bytes = allocatedBytes();
+        String allocation = bytes < 0 || allocated < 0 ? "n/d"
+                : String.format(Locale.ROOT, "%,d B", (bytes - allocated) / responses);
+        System.out.println(String.format(Locale.ROOT, "[BENCH] %-13s %-14s %8.1f us/respuesta  %s/respuesta",
+                label, parser, micros, allocation));
+    }
+
+    /**
+     * Bytes asignados por este hilo (-1 si la JVM no lo permite)
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.proyecto.vigilante;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Medición del coste de decodificar en el cliente las respuestas que escribe
+ * ProtocolBenchmark (servidor-testeo/test): JSON con JsonReader frente a la
+ * trama DETECTIONS binaria, para respuestas de 100 y 1000 detecciones.
+ * Cada respuesta binaria se decodifica con un Decoder nuevo, como la primera
+ * de una conexión (con la definición de los diccionarios). Ambos leen de
+ * un ConnectionInput, como en una conexión real.
+ * No es una prueba: no se ejecuta con test-protocol.
+ * Uso: java com.proyecto.vigilante.ProtocolParseBenchmark <directorio> [respuestas por medida]
+ */
+public class ProtocolParseBenchmark {
+
+    private static final int[] SIZES = {100, 1000};
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "fixtures");
+        int responses = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+
+        for (int size : SIZES) {
+            byte[] json = Files.readAllBytes(new File(directory, "detections-" + size + ".json").toPath());
+            byte[] binary = Files.readAllBytes(new File(directory, "detections-" + size + ".bin").toPath());
+
+            // Ambos formatos deben dar las mismas detecciones
+            int jsonCount = parseJson(json).size();
+            int binaryCount = parseBinary(binary).size();
+            if (jsonCount != size || binaryCount != size) {
+                System.err.println("[BENCH] Se esperaban " + size + " detecciones: JSON " + jsonCount +
+                        ", binario " + binaryCount);
+                System.exit(1);
+            }
+
+            // Calentamiento y medida
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < responses; i++) {
+                    parseJson(json);
+                }
+                long jsonNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < responses; i++) {
+                    parseBinary(binary);
+                }
+                long binaryNanos = System.nanoTime() - start;
+
+                if (round == 1) {
+                    System.out.println(String.format(Locale.ROOT,
+                            "[BENCH] %4d detecciones: decodificar JSON %8.1f us  binario %8.1f us por respuesta",
+                            size, jsonNanos / 1_000.0 / responses, binaryNanos / 1_000.0 / responses));
+                }
+            }
+        }
+    }
+
+    private static List<DetectionDTO> parseJson(byte[] response) throws IOException {
+        return VigilanteClient.readDetectionArray(new JsonReader(input(response)));
+    }
+
+    private static List<DetectionDTO> parseBinary(byte[] response) throws IOException {
+        BinaryProtocol.Decoder decoder = new BinaryProtocol.Decoder(input(response));
+        decoder.nextFrame();
+        return decoder.readDetections();
+    }
+
+    private static InputStream input(byte[] response) {
+        return new VigilanteClient.ConnectionInput(new ByteArrayInputStream(response));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.proyecto.vigilante;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Prueba de ida y vuelta del protocolo: decodifica con los lectores del
+ * cliente las respuestas que genera el servidor (ProtocolFixtures en
+ * servidor-testeo/test) y compara cada campo con los que el servidor
+ * codificó (expected.txt). Sin JUnit: sale con código 1 si algo falla.
+ * Uso: java com.proyecto.vigilante.ProtocolRoundTripTest <directorio de fixtures>
+ */
+public class ProtocolRoundTripTest {
+
+    private static int passed;
+    private static int failed;
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "fixtures");
+        List<String[]> expected = new ArrayList<>();
+        for (String line : Files.readAllLines(new File(directory, "expected.txt").toPath(), StandardCharsets.UTF_8)) {
+            expected.add(line.split("\t", -1));
+        }
+
+        // Binario: dos tramas de la misma conexión (los diccionarios se comparten)
+        List<DetectionDTO> binary = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(new File(directory, "detections.bin")))) {
+            BinaryProtocol.Decoder decoder = new BinaryProtocol.Decoder(in);
+            for (int i = 0; i < 2; i++) {
+                equal(BinaryProtocol.DETECTIONS, decoder.nextFrame(), "binario: trama " + i);
+                binary.addAll(decoder.readDetections());
+            }
+        }
+        compare("binario", expected, binary, 0.00005);
+
+        // JSON: respuesta de GET_LOGS
+        List<DetectionDTO> json;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(new File(directory, "detections.json")))) {
+            json = VigilanteClient.readDetectionArray(new JsonReader(in));
+        }
+        compare("json", expected, json, 0.005);
+
+        System.out.println("[TEST] ProtocolRoundTripTest: " + passed + " correctas, " + failed + " fallidas");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compara campo a campo; la confianza viaja redondeada (4 decimales en
+     * binario, 2 en JSON)
+     */
+    private static void compare(String format, List<String[]> expected, List<DetectionDTO> actual,
+                                double confidenceTolerance) {
+        equal(expected.size(), actual.size(), format + ": detecciones");
+
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            String[] e = expected.get(i);
+            DetectionDTO d = actual.get(i);
+            String prefix = format + " #" + i + " ";
+
+            equal(Long.parseLong(e[0]), d.getSequence(), prefix + "secuencia");
+            equal(e[1], d.getCamara(), prefix + "cámara");
+            equal(e[2], d.getObjeto(), prefix + "clase");
+            equal(e[3], d.getFecha(), prefix + "fecha");
+            equal(e[4], d.getImagen(), prefix + "imagen");
+            check(Math.abs(Double.parseDouble(e[5]) - d.getConfidence()) <= confidenceTolerance,
+                    prefix + "confianza: esperado <" + e[5] + "> obtenido <" + d.getConfidence() + ">");
+            equal(Long.parseLong(e[6]), d.getCaptureNanos(), prefix + "captura");
+            equal(Long.parseLong(e[7]), d.getFrameSequence(), prefix + "frame");
+            equal(Long.parseLong(e[8]), d.getLatencyMicros(), prefix + "latencia");
+            equal(e[9], String.valueOf(d.getModelVersion()), prefix + "modelo");
+            equal(Integer.parseInt(e[10]), d.getBoxX(), prefix + "caja x");
+            equal(Integer.parseInt(e[11]), d.getBoxY(), prefix + "caja y");
+            equal(Integer.parseInt(e[12]), d.getBoxWidth(), prefix + "caja ancho");
+            equal(Integer.parseInt(e[13]), d.getBoxHeight(), prefix + "caja alto");
+            equal(Long.parseLong(e[14]), d.getTrackId(), prefix + "pista");
+            equal(e[15], d.getEvent(), prefix + "evento");
+        }
+    }
+
+    private static void equal(Object expected, Object actual, String description) {
+        check(Objects.equals(expected, actual), description + ": esperado <" + expected + "> obtenido <" + actual + ">");
+    }
+
+    private static void check(boolean condition, String description) {
+        if (condition) {
+            passed++;
+        } else {
+            failed++;
+            System.err.println("[FALLO] " + description);
+        }
+    }
+}
\ No newline at end of file
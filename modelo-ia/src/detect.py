@@ -1,68 +1,87 @@
 import sys
 import os
+import struct
+import numpy as np
 from pathlib import Path
 from ultralytics import YOLO
 
-def detect_objects(image_path, model_path=None, conf_threshold=0.01):
-    """
-    Detecta objetos en una imagen usando YOLOv8
+def find_model_path():
+    """Busca el modelo YOLO en múltiples ubicaciones"""
+    script_dir = Path(__file__).parent
+    possible_paths = [
+        script_dir.parent / 'yolov8n.pt',         # YOLO base primero
+        script_dir.parent / 'models' / 'best.pt',  # Modelo entrenado
+        Path('/app/models/best.pt'),              # Docker
+    ]
     
-    Args:
-        image_path: Ruta a la imagen a analizar
-        model_path: Ruta al modelo YOLO (opcional, busca automáticamente)
-        conf_threshold: Umbral mínimo de confianza (0.01 = 1%)
+    for path in possible_paths:
+        if path.exists():
+            model_path = str(path)
+            print(f"INFO: Usando modelo: {model_path}", file=sys.stderr)
+            return model_path
     
-    Returns:
-        Lista de detecciones encontradas
-    """
-    # Buscar modelo en múltiples ubicaciones
+    print("ERROR: No se encontró ningún modelo", file=sys.stderr)
+    sys.exit(1)
+
+def load_model(model_path=None):
+    """Carga el modelo YOLO (una sola vez por proceso)"""
     if model_path is None:
-        script_dir = Path(__file__).parent
-        possible_paths = [
-            script_dir.parent / 'yolov8n.pt',         # YOLO base primero
-            script_dir.parent / 'models' / 'best.pt',  # Modelo entrenado
-            Path('/app/models/best.pt'),              # Docker
-        ]
-        
-        model_path = None
-        for path in possible_paths:
-            if path.exists():
-                model_path = str(path)
-                print(f"INFO: Usando modelo: {model_path}", file=sys.stderr)
-                break
-        
-        if model_path is None:
-            print("ERROR: No se encontró ningún modelo", file=sys.stderr)
-            sys.exit(1)
+        model_path = find_model_path()
     
-    # Validar imagen
-    if not os.path.exists(image_path):
-        print(f"ERROR: Imagen no encontrada: {image_path}", file=sys.stderr)
-        sys.exit(1)
-    
-    # Cargar modelo
     try:
         model = YOLO(model_path)
         print(f"INFO: Modelo cargado exitosamente", file=sys.stderr)
+        return model
     except Exception as e:
         print(f"ERROR al cargar modelo: {e}", file=sys.stderr)
         sys.exit(1)
+
+def model_version(model_path):
+    """
+    Versión del modelo que se informa con cada respuesta: la variable de
+    entorno MODEL_VERSION o, si no está, el nombre del fichero y su fecha
+    de modificación (cambia al reentrenar y copiar un best.pt nuevo)
+    """
+    version = os.environ.get('MODEL_VERSION')
+    if version:
+        return version.strip()
     
-    # Ejecutar detección
+    path = Path(model_path)
     try:
-        results = model(image_path, conf=conf_threshold, verbose=False)
-    except Exception as e:
-        print(f"ERROR en detección: {e}", file=sys.stderr)
-        sys.exit(1)
+        return f"{path.stem}@{int(path.stat().st_mtime)}"
+    except OSError:
+        return path.stem
+
+def run_detection(model, source, conf_threshold=0.01):
+    """
+    Ejecuta el modelo ya cargado sobre una imagen
     
-    # Procesar resultados
+    Args:
+        model: Modelo YOLO cargado con load_model
+        source: Ruta a la imagen o array BGR (alto, ancho, canales)
+        conf_threshold: Umbral mínimo de confianza (0.01 = 1%)
+    
+    Returns:
+        Lista de detecciones encontradas
+    """
+    return run_detection_batch(model, [source], conf_threshold)[0]
+
+def run_detection_batch(model, sources, conf_threshold=0.01):
+    """
+    Ejecuta el modelo sobre varias imágenes en una sola llamada (lote)
+    
+    Returns:
+        Una lista de detecciones por cada imagen, en el mismo orden
+    """
+    results = model(sources, conf=conf_threshold, verbose=False)
+    return [parse_result(model, result) for result in results]
+
+def parse_result(model, result):
+    """Convierte el resultado de YOLO de una imagen en lista de detecciones"""
     detections = []
-    for result in results:
-        boxes = result.boxes
-        
-        if boxes is None or len(boxes) == 0:
-            continue
-        
+    boxes = result.boxes
+    
+    if boxes is not None and len(boxes) > 0:
         for box in boxes:
             cls_id = int(box.cls[0])
             conf = float(box.conf[0])
@@ -86,20 +105,176 @@ def detect_objects(image_path, model_path=None, conf_threshold=0.01):
     
     return detections
 
+def detect_objects(image_path, model_path=None, conf_threshold=0.01):
+    """
+    Detecta objetos en una imagen usando YOLOv8
+    
+    Args:
+        image_path: Ruta a la imagen a analizar
+        model_path: Ruta al modelo YOLO (opcional, busca automáticamente)
+        conf_threshold: Umbral mínimo de confianza (0.01 = 1%)
+    
+    Returns:
+        Lista de detecciones encontradas
+    """
+    # Validar imagen
+    if not os.path.exists(image_path):
+        print(f"ERROR: Imagen no encontrada: {image_path}", file=sys.stderr)
+        sys.exit(1)
+    
+    # Cargar modelo
+    model = load_model(model_path)
+    
+    # Ejecutar detección
+    try:
+        return run_detection(model, image_path, conf_threshold)
+    except Exception as e:
+        print(f"ERROR en detección: {e}", file=sys.stderr)
+        sys.exit(1)
+
+def format_detections(detections):
+    """Formatea detecciones en CSV: CLASE,CONFIANZA,X,Y,W,H (una por línea)"""
+    if not detections:
+        return "NO_DETECTIONS"
+    
+    return "\n".join(
+        f"{det['class_name']},{det['confidence']:.2f},{det['x']},{det['y']},{det['w']},{det['h']}"
+        for det in detections
+    )
+
 def print_detections(detections):
     """Imprime detecciones en formato CSV: CLASE,CONFIANZA,X,Y,W,H"""
-    if not detections:
-        print("NO_DETECTIONS")
-        return
+    print(format_detections(detections))
+
+def read_exact(stream, size):
+    """Lee exactamente size bytes del stream (None si se cerró)"""
+    data = b''
+    while len(data) < size:
+        chunk = stream.read(size - len(data))
+        if not chunk:
+            return None
+        data += chunk
+    return data
+
+def decode_raw_frame(data):
+    """Reconstruye un frame BGR (Mat de OpenCV) sin pasar por disco"""
+    rows, cols, channels = struct.unpack('>III', data[:12])
+    pixels = np.frombuffer(data, dtype=np.uint8, count=rows * cols * channels, offset=12)
+    return pixels.reshape((rows, cols, channels))
+
+def decode_source(request):
+    """Convierte una petición 'P' o 'R' en una fuente para el modelo"""
+    request_type = bytes(request[:1])
+    
+    if request_type == b'P':
+        return bytes(request[1:]).decode('utf-8')
+    if request_type == b'R':
+        return decode_raw_frame(request[1:])
+    
+    raise ValueError(f"Tipo de petición desconocido: {request_type!r}")
+
+def decode_batch(data):
+    """Separa un lote: [int32 cantidad] y por cada petición [int32 longitud][petición]"""
+    (count,) = struct.unpack('>I', data[:4])
+    requests = []
+    offset = 4
+    
+    for _ in range(count):
+        (length,) = struct.unpack('>I', data[offset:offset + 4])
+        offset += 4
+        requests.append(data[offset:offset + length])
+        offset += length
+    
+    return requests
+
+def handle_requests(model, requests, version=None):
+    """
+    Ejecuta una o varias peticiones en una sola llamada al modelo.
+    Si se indica la versión del modelo, las respuestas correctas empiezan
+    por la línea MODEL:<versión>
+    """
+    responses = [None] * len(requests)
+    sources = []
+    positions = []
+    
+    for i, request in enumerate(requests):
+        try:
+            sources.append(decode_source(request))
+            positions.append(i)
+        except Exception as e:
+            responses[i] = f"ERROR: {e}"
+    
+    if sources:
+        try:
+            for i, detections in zip(positions, run_detection_batch(model, sources)):
+                responses[i] = format_detections(detections)
+                if version:
+                    responses[i] = f"MODEL:{version}\n{responses[i]}"
+        except Exception as e:
+            for i in positions:
+                responses[i] = f"ERROR en detección: {e}"
+    
+    return responses
+
+def serve(model_path=None):
+    """
+    Modo worker persistente: carga el modelo una sola vez y atiende
+    peticiones enmarcadas por stdin/stdout hasta que se cierre stdin.
+    
+    Petición:  [int32 longitud][1 byte tipo][datos]
+               tipo 'P' -> datos = ruta de imagen en UTF-8
+               tipo 'R' -> datos = [int32 filas][int32 columnas][int32 canales][bytes BGR]
+               tipo 'B' -> datos = [int32 cantidad] + por petición [int32 longitud][petición]
+    Respuesta: [int32 longitud][texto UTF-8: línea MODEL:<versión> + CSV]
+               (un lote recibe una respuesta por petición, en el mismo orden)
+    """
+    # stdout queda reservado para el protocolo; cualquier print va a stderr
+    protocol_out = os.fdopen(os.dup(sys.stdout.fileno()), 'wb')
+    sys.stdout = sys.stderr
+    protocol_in = sys.stdin.buffer
+    
+    if model_path is None:
+        model_path = find_model_path()
+    model = load_model(model_path)
+    version = model_version(model_path)
+    print(f"INFO: Worker de detección listo (modelo {version})", file=sys.stderr)
     
-    for det in detections:
-        print(f"{det['class_name']},{det['confidence']:.2f},{det['x']},{det['y']},{det['w']},{det['h']}")
+    while True:
+        header = read_exact(protocol_in, 4)
+        if header is None:
+            break
+        
+        (length,) = struct.unpack('>I', header)
+        payload = read_exact(protocol_in, length)
+        if payload is None or length == 0:
+            break
+        
+        payload = memoryview(payload)
+        
+        try:
+            if bytes(payload[:1]) == b'B':
+                requests = decode_batch(payload[1:])
+            else:
+                requests = [payload]
+        except Exception as e:
+            print(f"ERROR: Lote mal formado: {e}", file=sys.stderr)
+            break
+        
+        for response in handle_requests(model, requests, version):
+            data = response.encode('utf-8')
+            protocol_out.write(struct.pack('>I', len(data)))
+            protocol_out.write(data)
+        protocol_out.flush()
 
 def main():
     if len(sys.argv) < 2:
-        print("Uso: python detect.py <imagen>", file=sys.stderr)
+        print("Uso: python detect.py <imagen> | --server", file=sys.stderr)
         sys.exit(1)
     
+    if sys.argv[1] == '--server':
+        serve()
+        return
+    
     image_path = sys.argv[1]
     detections = detect_objects(image_path)
     print_detections(detections)
@@ -10,30 +10,62 @@ TESTEO_SERVER_HOST = '127.0.0.1'
 LOG_PORT = 9001
 IMAGE_PORT = 9002
 FLASK_SERVER_URL = 'http://127.0.0.1:5000/api/receive'
+MIN_CONFIDENCE = 0.6
+HEARTBEAT_TIMEOUT = 45  # El servidor envía HEARTBEAT cada 15 s sin detecciones
 
-def fetch_logs_from_testeo():
-    """Obtiene logs del servidor de testeo Java."""
+def fetch_logs_from_testeo(cursor):
+    """Obtiene del servidor de testeo Java los logs posteriores al cursor.
+    Devuelve (logs, nuevo_cursor)."""
     try:
         with socket.socket(socket.AF_INET, socket.SOCK_STREAM) as s:
             s.settimeout(5)
             s.connect((TESTEO_SERVER_HOST, LOG_PORT))
             
-            # Enviar comando GET_LOGS
-            s.sendall(b'GET_LOGS\n')
+            # Enviar comando GET_SINCE (no borra el log del servidor)
+            s.sendall(f'GET_SINCE:{cursor}\n'.encode('utf-8'))
             
-            # Recibir respuesta JSON
-            response = s.recv(65536).decode('utf-8')
+            # Recibir respuesta JSON (una línea)
+            response = s.makefile('r', encoding='utf-8').readline()
             
             if not response:
-                return []
+                return [], cursor
             
-            # Parsear JSON
-            logs = json.loads(response)
-            return logs
+            # Parsear JSON: {"next":N,"gap":G,"items":[...]}
+            result = json.loads(response)
+            if result.get('gap', 0) > 0:
+                print(f"[!] Se perdieron {result['gap']} logs sobrescritos en el servidor")
+            return result.get('items', []), result.get('next', cursor)
             
     except Exception as e:
         print(f"Error obteniendo logs: {e}")
-        return []
+        return [], cursor
+
+def subscribe_to_testeo(cursor, on_subscribed=None):
+    """Se suscribe al servidor de logs y devuelve las detecciones a medida que
+    se registran (generador). Pide también las posteriores al cursor, así que
+    al reconectar no se pierde nada. Los filtros se aplican en el servidor.
+    on_subscribed recibe la última secuencia del servidor (SUBSCRIBED:<seq>)."""
+    with socket.socket(socket.AF_INET, socket.SOCK_STREAM) as s:
+        s.settimeout(HEARTBEAT_TIMEOUT)
+        s.connect((TESTEO_SERVER_HOST, LOG_PORT))
+        s.sendall(f'SUBSCRIBE minConf={MIN_CONFIDENCE} after={cursor}\n'.encode('utf-8'))
+        
+        stream = s.makefile('r', encoding='utf-8')
+        header = stream.readline().strip()
+        if not header.startswith('SUBSCRIBED:'):
+            raise ConnectionError(f"Suscripción rechazada: {header}")
+        if on_subscribed:
+            on_subscribed(int(header.split(':', 1)[1]))
+        
+        for line in stream:
+            line = line.strip()
+            if not line or line == 'HEARTBEAT':
+                continue
+            if line.startswith('ERROR:'):
+                raise ConnectionError(line)
+            yield json.loads(line)
+        
+        raise ConnectionError("Conexión cerrada por el servidor")
 
 def fetch_image_from_testeo(image_name):
     """Obtiene una imagen del servidor de imágenes."""
@@ -100,8 +132,36 @@ def send_to_flask(detected_object, image_base64, confidence=0.95):
         print(f"✗ Error enviando a Flask: {e}")
         return False
 
+def process_log(log, processed_images):
+    """Descarga la imagen de una detección y la envía a Flask."""
+    image_name = log.get('imagen', '')
+    detected_object = log.get('objeto', 'Desconocido')
+    confidence = log.get('confidence', 0.0)
+    
+    # Solo subir si confianza > 0.6
+    if confidence < MIN_CONFIDENCE:
+        print(f"[!] Ignorado por baja confianza: {image_name} ({confidence})")
+        return
+    
+    # Evitar duplicados
+    if image_name in processed_images:
+        return
+    
+    print(f"[→] Procesando: {image_name} ({detected_object}) Confianza: {confidence}")
+    
+    # Obtener imagen
+    image_base64 = fetch_image_from_testeo(image_name)
+    
+    if image_base64:
+        # Enviar a Flask
+        if send_to_flask(detected_object, image_base64, confidence):
+            processed_images.add(image_name)
+    else:
+        print(f"[!] No se pudo obtener imagen: {image_name}")
+
 def main():
-    """Bucle principal del puente."""
+    """Bucle principal del puente: suscripción push al servidor de testeo;
+    si el servidor no la admite, consulta periódica con GET_SINCE."""
     print("=" * 60)
     print("PUENTE: Servidor Testeo → Servidor Flask")
     print("=" * 60)
@@ -111,40 +171,34 @@ def main():
     print("=" * 60)
     
     processed_images = set()  # Para evitar enviar duplicados
+    cursor = 0  # Última secuencia recibida del servidor de testeo
+    use_subscription = True
+    
+    def on_subscribed(server_sequence):
+        # Secuencia menor que el cursor: el servidor se reinició sin journal y
+        # envía el historial desde el principio
+        nonlocal cursor
+        if server_sequence < cursor:
+            print(f"[!] El servidor va por la secuencia {server_sequence} (cursor {cursor}); se reinicia el cursor")
+            cursor = 0
     
     while True:
         try:
+            if use_subscription:
+                # Las detecciones llegan en cuanto se registran
+                for log in subscribe_to_testeo(cursor, on_subscribed):
+                    cursor = max(cursor, log.get('seq', cursor))
+                    process_log(log, processed_images)
+                continue
+            
             # Obtener logs del servidor de testeo
-            logs = fetch_logs_from_testeo()
+            logs, cursor = fetch_logs_from_testeo(cursor)
             
             if logs:
                 print(f"\n[INFO] Recibidos {len(logs)} logs del servidor de testeo")
                 
                 for log in logs:
-                    image_name = log.get('imagen', '')
-                    detected_object = log.get('objeto', 'Desconocido')
-                    confidence = log.get('confidence', 0.0)
-                    
-                    # Solo subir si confianza > 0.6
-                    if confidence < 0.6:
-                        print(f"[!] Ignorado por baja confianza: {image_name} ({confidence})")
-                        continue
-                    
-                    # Evitar duplicados
-                    if image_name in processed_images:
-                        continue
-                    
-                    print(f"[→] Procesando: {image_name} ({detected_object}) Confianza: {confidence}")
-                    
-                    # Obtener imagen
-                    image_base64 = fetch_image_from_testeo(image_name)
-                    
-                    if image_base64:
-                        # Enviar a Flask
-                        if send_to_flask(detected_object, image_base64, confidence):
-                            processed_images.add(image_name)
-                    else:
-                        print(f"[!] No se pudo obtener imagen: {image_name}")
+                    process_log(log, processed_images)
             
             # Esperar antes de la siguiente consulta
             time.sleep(2)
@@ -152,6 +206,12 @@ def main():
         except KeyboardInterrupt:
             print("\n[INFO] Deteniendo puente...")
             break
+        except ConnectionError as e:
+            print(f"[!] Suscripción interrumpida: {e}")
+            if 'Comando desconocido' in str(e):
+                print("[INFO] El servidor no admite SUBSCRIBE; se consultará periódicamente")
+                use_subscription = False
+            time.sleep(1)
         except Exception as e:
             print(f"[ERROR] {e}")
             time.sleep(5)
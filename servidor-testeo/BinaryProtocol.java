@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Protocolo binario opcional de los servidores de logs e imágenes.
+ * El cliente lo negocia con "PROTOCOL:BINARY" (respuesta "OK:BINARY" en texto);
+ * desde ese momento los comandos siguen siendo líneas de texto pero todas las
+ * respuestas de la conexión son tramas:
+ *   [u8 tipo][varint longitud][contenido]
+ * Tipos:
+ *   DETECTIONS  [varint next][varint gap][u8 more][varint n] + n registros
+ *   IMAGE       [varint offset][varint total] + bytes de la imagen
+ *   TEXT        línea UTF-8 (respuestas sin formato propio, p. ej. GET_COUNT)
+ *   ERROR       mensaje UTF-8
+ *   HEARTBEAT   vacío (suscripciones sin actividad)
+ * Registro de detección:
+ *   [zigzag Δseq][zigzag Δtimestamp][ref cámara][ref clase][cadena imagen][varint confianza×10000]
+ *   [varint nanos][u8 flags] + según flags:
+ *     BOX      [zigzag x][zigzag y][zigzag ancho][zigzag alto] (centro y tamaño)
+ *     FRAME    [varint número de frame]
+ *     LATENCY  [varint latencia del detector en µs]
+ *     MODEL    [ref versión del modelo]
+ *     TRACK    [varint pista][u8 evento] (ObjectTracker.EVENT_*)
+ *   nanos es la parte submilisegundo del instante de captura
+ *   (captureNanos = timestamp × 1000000 + nanos).
+ * Los deltas son respecto al registro anterior de la misma trama (el primero,
+ * respecto a 0). Cámaras, clases y modelos se internan en diccionarios de la conexión:
+ * la referencia 0 va seguida del valor como cadena y le asigna el siguiente
+ * identificador (1, 2, ...); las siguientes apariciones envían solo el
+ * identificador. Las cadenas son [varint longitud][UTF-8].
+ */
+public final class BinaryProtocol {
+    public static final byte DETECTIONS = 1;
+    public static final byte IMAGE = 2;
+    public static final byte TEXT = 3;
+    public static final byte ERROR = 4;
+    public static final byte HEARTBEAT = 5;
+    
+    public static final int MAX_DICTIONARY_SIZE = 4096; // Luego los valores nuevos van siempre literales
+    public static final int CONFIDENCE_SCALE = 10_000;
+    
+    // Campos opcionales del registro de detección
+    public static final int FLAG_BOX = 1;
+    public static final int FLAG_FRAME = 2;
+    public static final int FLAG_LATENCY = 4;
+    public static final int FLAG_MODEL = 8;
+    public static final int FLAG_TRACK = 16;
+    
+    private BinaryProtocol() {
+    }
+    
+    /**
+     * Bytes que ocupa un varint
+     */
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    /**
+     * Codificador de una conexión: conserva los diccionarios entre tramas.
+     * No es thread-safe (cada conexión se atiende en un único hilo).
+     */
+    public static final class Encoder {
+        private final Map<String, Integer> cameras;
+        private final Map<String, Integer> classes;
+        private final Map<String, Integer> models;
+        private final byte[] header;
+        private byte[] buffer;
+        private int size;
+        
+        public Encoder() {
+            this.cameras = new HashMap<>();
+            this.classes = new HashMap<>();
+            this.models = new HashMap<>();
+            this.header = new byte[1 + 10];
+            this.buffer = new byte[8192];
+        }
+        
+        /**
+         * Trama DETECTIONS: cursor siguiente, registros perdidos, si hay más páginas y los registros
+         */
+        public void writeDetections(OutputStream out, long next, long gap, boolean more,
+                                    List<Detection> detections) throws IOException {
+            size = 0;
+            putVarint(Math.max(0, next));
+            putVarint(Math.max(0, gap));
+            putByte(more ? 1 : 0);
+            putVarint(detections.size());
+            
+            long previousSequence = 0;
+            long previousTimestamp = 0;
+            
+            for (Detection detection : detections) {
+                putVarint(zigzag(detection.getSequence() - previousSequence));
+                putVarint(zigzag(detection.getTimestamp() - previousTimestamp));
+                putReference(cameras, detection.getCamara());
+                putReference(classes, detection.getObjeto());
+                String imagen = detection.getImagen();
+                putString(imagen != null ? imagen : ""); // Vacía si ya se borró
+                putVarint(Math.max(0, Math.round(detection.getConfidence() * CONFIDENCE_SCALE)));
+                putFrameInfo(detection);
+                
+                previousSequence = detection.getSequence();
+                previousTimestamp = detection.getTimestamp();
+            }
+            
+            writeFrame(out, DETECTIONS);
+        }
+        
+        /**
+         * Parte submilisegundo de la captura, flags y campos opcionales del registro
+         */
+        private void putFrameInfo(Detection detection) {
+            putVarint(detection.getCaptureNanos() - detection.getTimestamp() * 1_000_000L);
+            
+            int flags = 0;
+            if (detection.hasBox()) flags |= FLAG_BOX;
+            if (detection.getFrameSequence() > 0) flags |= FLAG_FRAME;
+            if (detection.getLatencyMicros() > 0) flags |= FLAG_LATENCY;
+            if (detection.getModelVersion() != null) flags |= FLAG_MODEL;
+            if (detection.getTrackId() > 0) flags |= FLAG_TRACK;
+            putByte(flags);
+            
+            if ((flags & FLAG_BOX) != 0) {
+                putVarint(zigzag(detection.getBoxX()));
+                putVarint(zigzag(detection.getBoxY()));
+                putVarint(zigzag(detection.getBoxWidth()));
+                putVarint(zigzag(detection.getBoxHeight()));
+            }
+            if ((flags & FLAG_FRAME) != 0) {
+                putVarint(detection.getFrameSequence());
+            }
+            if ((flags & FLAG_LATENCY) != 0) {
+                putVarint(detection.getLatencyMicros());
+            }
+            if ((flags & FLAG_MODEL) != 0) {
+                putReference(models, detection.getModelVersion());
+            }
+            if ((flags & FLAG_TRACK) != 0) {
+                putVarint(detection.getTrackId());
+                putByte(detection.getEvent());
+            }
+        }
+        
+        /**
+         * Cabecera de una trama IMAGE; los count bytes de la imagen se envían a continuación
+         */
+        public void writeImageHeader(OutputStream out, long offset, long count, long total) throws IOException {
+            size = 0;
+            putVarint(offset);
+            putVarint(total);
+            writeHeader(out, IMAGE, size + count);
+            out.write(buffer, 0, size);
+        }
+        
+        /**
+         * Trama TEXT o ERROR con un mensaje UTF-8
+         */
+        public void writeMessage(OutputStream out, byte type, String message) throws IOException {
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            writeHeader(out, type, bytes.length);
+            out.write(bytes);
+        }
+        
+        public void writeHeartbeat(OutputStream out) throws IOException {
+            writeHeader(out, HEARTBEAT, 0);
+        }
+        
+        private void writeFrame(OutputStream out, byte type) throws IOException {
+            writeHeader(out, type, size);
+            out.write(buffer, 0, size);
+        }
+        
+        private void writeHeader(OutputStream out, byte type, long length) throws IOException {
+            header[0] = type;
+            int position = 1;
+            
+            while ((length & ~0x7FL) != 0) {
+                header[position++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            header[position++] = (byte) length;
+            out.write(header, 0, position);
+        }
+        
+        /**
+         * Referencia a un diccionario: el identificador, o 0 seguido del valor
+         */
+        private void putReference(Map<String, Integer> dictionary, String value) {
+            Integer id = dictionary.get(value);
+            
+            if (id != null) {
+                putVarint(id);
+                return;
+            }
+            
+            putVarint(0);
+            putString(value);
+            
+            if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.put(value, dictionary.size() + 1);
+            }
+        }
+        
+        private void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+        
+        private void putVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+        
+        private void putByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+        
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+        
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, size + extra)];
+                System.arraycopy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Configuración de una cámara leída de cameras_config.txt
+ * Formato: CAM_ID,URL[,clave=valor...]
+ *   motion=0.01   fracción mínima de píxeles que deben cambiar para analizar el frame (0 = sin filtro)
+ *   keyframe=10   segundos máximos sin analizar aunque no haya movimiento
+ *   track=30      segundos entre eventos de un objeto que sigue a la vista
+ *                 (0 = sin seguimiento: se registra cada detección)
+ */
+public class CameraConfig {
+    public static final double DEFAULT_MOTION_THRESHOLD = 0.01;
+    public static final int DEFAULT_KEYFRAME_SECONDS = 10;
+    
+    private final String id;
+    private final String url;
+    private double motionThreshold;
+    private int keyframeSeconds;
+    private int trackIntervalSeconds;
+    
+    public CameraConfig(String id, String url) {
+        this.id = id;
+        this.url = url;
+        this.motionThreshold = DEFAULT_MOTION_THRESHOLD;
+        this.keyframeSeconds = DEFAULT_KEYFRAME_SECONDS;
+        this.trackIntervalSeconds = ObjectTracker.DEFAULT_INTERVAL_SECONDS;
+    }
+    
+    /**
+     * Parsea una línea del archivo de configuración.
+     * Devuelve null si la línea no es válida.
+     */
+    public static CameraConfig parse(String line) {
+        String[] parts = line.split(",");
+        
+        if (parts.length < 2) {
+            return null;
+        }
+        
+        CameraConfig config = new CameraConfig(parts[0].trim(), parts[1].trim());
+        
+        for (int i = 2; i < parts.length; i++) {
+            String[] option = parts[i].split("=", 2);
+            
+            if (option.length != 2) {
+                System.err.println("[CONFIG] Opción ignorada para " + config.id + ": " + parts[i]);
+                continue;
+            }
+            
+            String key = option[0].trim();
+            String value = option[1].trim();
+            
+            try {
+                switch (key) {
+                    case "motion":
+                        config.motionThreshold = Double.parseDouble(value);
+                        break;
+                    case "keyframe":
+                        config.keyframeSeconds = Integer.parseInt(value);
+                        break;
+                    case "track":
+                        config.trackIntervalSeconds = Integer.parseInt(value);
+                        break;
+                    default:
+                        System.err.println("[CONFIG] Opción desconocida para " + config.id + ": " + key);
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("[CONFIG] Valor inválido para " + key + " en " + config.id + ": " + value);
+            }
+        }
+        
+        return config;
+    }
+    
+    public String getId() { return id; }
+    public String getUrl() { return url; }
+    public double getMotionThreshold() { return motionThreshold; }
+    public int getKeyframeSeconds() { return keyframeSeconds; }
+    public int getTrackIntervalSeconds() { return trackIntervalSeconds; }
+    
+    @Override
+    public String toString() {
+        return id + " -> " + url + " (motion=" + motionThreshold + ", keyframe=" + keyframeSeconds + "s, track="
+            + trackIntervalSeconds + "s)";
+    }
+}
@@ -5,45 +5,67 @@ import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.highgui.HighGui;
 
 import java.io.*;
-import java.util.UUID;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Procesador de cámara individual que se ejecuta en su propio hilo.
+ * Procesador de cámara individual que se ejecuta en el CameraScheduler.
  * Lee frames de una cámara RTSP, llama al script de IA para detección,
  * y registra los resultados.
  */
 public class CameraProcessor implements Runnable {
     private final String cameraId;
     private final String rtspUrl;
-    private final String pythonScriptPath;
+    private final DetectionBatcher detectionBatcher;
     private final String tempFramePath;
-    private final String detectionImagesPath;
-    private final DetectionLog detectionLog;
+    private final CameraScheduler scheduler;
     private final int frameSkip; // Procesar 1 de cada N frames
+    private final boolean rawFrameTransport; // Enviar píxeles BGR en memoria en vez de JPEG temporal
+    private byte[] frameBuffer; // Buffer reutilizable para los píxeles del frame
+    private final FrameSlot frameSlot; // Último frame capturado (descarta los antiguos)
+    private final MotionDetector motionDetector; // Evita inferencias sobre escenas estáticas
+    private final SamplingController samplingController; // Reparte el presupuesto global de inferencias
+    private final ImageStore imageStore; // Guarda la imagen de cada frame con detecciones (asíncrono)
+    private volatile long capturedFrames; // Frames leídos de la fuente (número de frame de las detecciones); un solo hilo escribe
+    private volatile long analyzedFrames; // Frames pasados al filtro de movimiento y al detector
+    private final DetectionParser detectionParser; // Lee las respuestas del detector sin split
+    private final ObjectTracker objectTracker; // Suprime las detecciones repetidas del mismo objeto
     private volatile boolean running;
     
-    public CameraProcessor(String cameraId, String rtspUrl, 
-                          String pythonScriptPath, 
+    public CameraProcessor(CameraConfig config, 
+                          DetectionBatcher detectionBatcher, 
                           String tempFramePath,
-                          String detectionImagesPath,
-                          int frameSkip) {
-        this.cameraId = cameraId;
-        this.rtspUrl = rtspUrl;
-        this.pythonScriptPath = pythonScriptPath;
+                          int frameSkip,
+                          boolean rawFrameTransport,
+                          CameraScheduler scheduler,
+                          SamplingController samplingController,
+                          ImageStore imageStore) {
+        this.cameraId = config.getId();
+        this.rtspUrl = config.getUrl();
+        this.detectionBatcher = detectionBatcher;
         this.tempFramePath = tempFramePath;
-        this.detectionImagesPath = detectionImagesPath;
-        this.detectionLog = DetectionLog.getInstance();
+        this.scheduler = scheduler;
         this.frameSkip = frameSkip;
+        this.rawFrameTransport = rawFrameTransport;
+        this.frameSlot = new FrameSlot();
+        this.motionDetector = new MotionDetector(config.getMotionThreshold(), config.getKeyframeSeconds());
+        this.samplingController = samplingController;
+        this.imageStore = imageStore;
+        this.detectionParser = new DetectionParser(cameraId);
+        this.objectTracker = new ObjectTracker(cameraId, config.getTrackIntervalSeconds());
         this.running = true;
         
         // Crear directorio temporal si no existe
         new File(tempFramePath).mkdirs();
-        new File(detectionImagesPath).mkdirs();
     }
     
     @Override
     public void run() {
         System.out.println("[" + cameraId + "] Iniciando procesamiento de cámara: " + rtspUrl);
+        samplingController.register(cameraId);
         
         // Verificar si es una URL RTSP/HTTP, ID de cámara, o archivo local
         boolean isStreamUrl = rtspUrl.startsWith("rtsp://") || rtspUrl.startsWith("http://") || rtspUrl.startsWith("https://");
@@ -56,13 +78,19 @@ public class CameraProcessor implements Runnable {
         } else {
             processVideoFile();
         }
+        
+        samplingController.unregister(cameraId);
+        motionDetector.release();
     }
     
     private void processWebcam(int cameraIndex) {
+        VideoCapture capture = new VideoCapture();
+        CaptureTask captureTask = null;
+        String windowName = "Cámara: " + cameraId;
+        
         try {
             System.out.println("[" + cameraId + "] Abriendo webcam con índice: " + cameraIndex);
             
-            VideoCapture capture = new VideoCapture();
             capture.open(cameraIndex);
             
             if (!capture.isOpened()) {
@@ -77,57 +105,37 @@ public class CameraProcessor implements Runnable {
             // Configurar propiedades de captura
             capture.set(Videoio.CAP_PROP_BUFFERSIZE, 1);
             
-            Mat frame = new Mat();
-            int frameCount = 0;
+            // La captura corre en su propio hilo (y muestra la ventana); aquí solo se analiza el frame más reciente
+            captureTask = startCaptureTask(capture, windowName, 500);
             
-            // Crear ventana para mostrar el video
-            String windowName = "Cámara: " + cameraId;
-            
-            while (running && capture.isOpened()) {
-                boolean success = capture.read(frame);
+            while (running && !captureTask.isDone()) {
+                // Esperar el turno de la cámara antes de tomar el frame, para que sea reciente
+                samplingController.awaitTurn(cameraId);
+                FrameSlot.CapturedFrame captured = frameSlot.take(1000);
                 
-                if (!success || frame.empty()) {
-                    System.err.println("[" + cameraId + "] ERROR al leer frame de webcam");
-                    Thread.sleep(500);
+                if (captured == null) {
                     continue;
                 }
                 
-                frameCount++;
-                
-                // Mostrar solo la mitad de los frames para evitar lag
-                if (frameCount % 2 == 0) {
-                    HighGui.imshow(windowName, frame);
-                    HighGui.waitKey(1);
-                }
-                
-                // Procesar solo 1 de cada N frames para IA (más pesado)
-                if (frameCount % frameSkip != 0) {
-                    continue;
-                }
-                
-                // Guardar frame temporalmente para procesamiento de IA
-                String tempImagePath = tempFramePath + "/" + cameraId + "_frame.jpg";
-                boolean saved = Imgcodecs.imwrite(tempImagePath, frame);
-                
-                if (!saved) {
-                    System.err.println("[" + cameraId + "] ERROR: No se pudo guardar el frame");
-                    continue;
-                }
-                
-                // Llamar al script de detección
-                String detectionResult = callDetectionScript(tempImagePath);
-                
-                if (detectionResult != null && !detectionResult.trim().isEmpty()) {
-                    processDetectionResult(detectionResult, frame);
+                try {
+                    analyzeFrame(captured.getFrame(), captured.getSequence(), captured.getCaptureEpochNanos());
+                } finally {
+                    captured.release();
                 }
             }
-            
-            HighGui.destroyWindow(windowName);
-            capture.release();
-            
+        
+        } catch (InterruptedException e) {
+            System.out.println("[" + cameraId + "] Hilo interrumpido");
         } catch (Exception e) {
             System.err.println("[" + cameraId + "] ERROR en webcam: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            // Primero se detiene la captura: la ventana y el VideoCapture son suyos mientras lee
+            if (captureTask != null) {
+                stopCaptureTask(captureTask);
+                HighGui.destroyWindow(windowName);
+            }
+            capture.release();
         }
     }
     
@@ -168,6 +176,7 @@ public class CameraProcessor implements Runnable {
             
             while (running && capture.isOpened()) {
                 boolean success = capture.read(frame);
+                long captureNanos = System.nanoTime();
                 
                 if (!success || frame.empty()) {
                     errorCount++;
@@ -198,32 +207,20 @@ public class CameraProcessor implements Runnable {
                 
                 errorCount = 0; // Reset error count on successful read
                 frameCount++;
+                capturedFrames++;
                 
                 // Procesar solo 1 de cada N frames
                 if (frameCount % frameSkip != 0) {
                     continue;
                 }
                 
+                // El ritmo de análisis lo marca el controlador de muestreo
+                samplingController.awaitTurn(cameraId);
+                
                 processedFrames++;
                 System.out.println("[" + cameraId + "] Procesando frame " + frameCount + "/" + totalFrames);
                 
-                // Guardar frame temporalmente
-                String tempImagePath = tempFramePath + "/" + cameraId + "_frame.jpg";
-                boolean saved = Imgcodecs.imwrite(tempImagePath, frame);
-                
-                if (!saved) {
-                    System.err.println("[" + cameraId + "] ERROR: No se pudo guardar el frame");
-                    continue;
-                }
-                
-                // Llamar al script de detección
-                String detectionResult = callDetectionScript(tempImagePath);
-                
-                if (detectionResult != null && !detectionResult.trim().isEmpty()) {
-                    processDetectionResult(detectionResult, frame);
-                }
-                
-                Thread.sleep(1000); // Pausa entre frames procesados
+                analyzeFrame(frame, capturedFrames, FrameSlot.toEpochNanos(captureNanos));
             }
             
             capture.release();
@@ -259,11 +256,15 @@ public class CameraProcessor implements Runnable {
             
             int imageIndex = 0;
             while (running) {
+                // El ritmo de análisis lo marca el controlador de muestreo
+                samplingController.awaitTurn(cameraId);
+                
                 File imageFile = images[imageIndex % images.length];
                 System.out.println("[" + cameraId + "] Procesando imagen: " + imageFile.getName());
                 
                 // Leer imagen
                 Mat frame = Imgcodecs.imread(imageFile.getAbsolutePath());
+                long captureNanos = System.nanoTime();
                 
                 if (frame.empty()) {
                     System.err.println("[" + cameraId + "] ERROR al leer imagen: " + imageFile.getName());
@@ -271,22 +272,13 @@ public class CameraProcessor implements Runnable {
                     continue;
                 }
                 
-                // Guardar como frame temporal
-                String tempImagePath = tempFramePath + "/" + cameraId + "_frame.jpg";
-                Imgcodecs.imwrite(tempImagePath, frame);
-                
-                // Llamar al script de detección
-                String detectionResult = callDetectionScript(tempImagePath);
-                
-                if (detectionResult != null && !detectionResult.trim().isEmpty()) {
-                    processDetectionResult(detectionResult, frame);
-                }
+                capturedFrames++;
+                analyzeFrame(frame, capturedFrames, FrameSlot.toEpochNanos(captureNanos));
                 
                 frame.release();
                 imageIndex++;
-                Thread.sleep(3000); // Procesar una imagen cada 3 segundos
             }
-            
+        
         } catch (Exception e) {
             System.err.println("[" + cameraId + "] ERROR en secuencia de imágenes: " + e.getMessage());
             e.printStackTrace();
@@ -295,6 +287,7 @@ public class CameraProcessor implements Runnable {
     
     private void processVideoStream() {
         VideoCapture capture = new VideoCapture();
+        CaptureTask captureTask = null;
         
         try {
             // Convertir ruta relativa a absoluta si es un archivo local
@@ -323,133 +316,267 @@ public class CameraProcessor implements Runnable {
             
             System.out.println("[" + cameraId + "] Conectado exitosamente");
             
-            Mat frame = new Mat();
-            int frameCount = 0;
+            // La captura corre en su propio hilo y vacía el buffer RTSP continuamente;
+            // aquí solo se analiza el frame más reciente
+            captureTask = startCaptureTask(capture, null, 10);
             
-            while (running) {
-                // Leer frame
-                if (!capture.read(frame) || frame.empty()) {
-                    System.err.println("[" + cameraId + "] ERROR: No se pudo leer frame");
-                    Thread.sleep(10);
-                    continue;
-                }
+            while (running && !captureTask.isDone()) {
+                // Esperar el turno de la cámara antes de tomar el frame, para que sea reciente
+                samplingController.awaitTurn(cameraId);
+                FrameSlot.CapturedFrame captured = frameSlot.take(1000);
                 
-                frameCount++;
-                
-                // Procesar solo 1 de cada N frames para optimizar rendimiento
-                if (frameCount % frameSkip != 0) {
+                if (captured == null) {
                     continue;
                 }
                 
-                // Guardar frame temporalmente
-                String tempImagePath = tempFramePath + "/" + cameraId + "_frame.jpg";
-                Imgcodecs.imwrite(tempImagePath, frame);
-                
-                // Llamar al script de detección de IA
-                String detectionResult = callDetectionScript(tempImagePath);
-                
-                // Procesar resultado
-                if (detectionResult != null && !detectionResult.isEmpty()) {
-                    processDetectionResult(detectionResult, frame);
+                try {
+                    analyzeFrame(captured.getFrame(), captured.getSequence(), captured.getCaptureEpochNanos());
+                } finally {
+                    captured.release();
                 }
-                
-                // Pequeña pausa para no saturar el CPU
-                Thread.sleep(100);
             }
-            
+        
         } catch (InterruptedException e) {
             System.out.println("[" + cameraId + "] Hilo interrumpido");
         } catch (Exception e) {
             System.err.println("[" + cameraId + "] ERROR: " + e.getMessage());
             e.printStackTrace();
         } finally {
+            stopCaptureTask(captureTask);
             capture.release();
             System.out.println("[" + cameraId + "] Procesamiento finalizado");
         }
     }
     
     /**
-     * Llama al script Python de detección usando ProcessBuilder
+     * Hilo de captura de una cámara con su propia señal de parada: el análisis
+     * puede terminar por un error sin que la cámara se haya detenido (running)
      */
-    private String callDetectionScript(String imagePath) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("python", pythonScriptPath, imagePath);
-            pb.redirectErrorStream(true);
-            
-            Process process = pb.start();
-            
-            // Leer salida del script
-            BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream())
-            );
-            
-            StringBuilder output = new StringBuilder();
-            String line;
-            
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-            
-            
-            return output.toString().trim();
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+    private static final class CaptureTask {
+        private volatile boolean stopRequested;
+        private Future<?> future;
+        
+        boolean isDone() {
+            return future.isDone();
         }
     }
     
     /**
-     * Procesa el resultado de la detección
-     * Formato esperado: OBJETO,CONFIDENCE,X,Y,W,H
-     * Ejemplo: CARRO,0.95,100,200,50,30
+     * Inicia la tarea de captura: lee frames continuamente y publica 1 de cada N
+     * en el FrameSlot, de modo que la inferencia siempre toma el más reciente
      */
-    private void processDetectionResult(String result, Mat frame) {
+    private CaptureTask startCaptureTask(VideoCapture capture, String windowName, long readErrorDelayMillis) {
+        CaptureTask task = new CaptureTask();
+        task.future = scheduler.runBlocking("Capture-" + cameraId,
+            () -> captureLoop(capture, windowName, readErrorDelayMillis, task));
+        return task;
+    }
+    
+    private void captureLoop(VideoCapture capture, String windowName, long readErrorDelayMillis, CaptureTask task) {
+        Mat frame = new Mat();
+        
         try {
-            
-            String[] lines = result.split("\n");
-            
-            for (String line : lines) {
-                if (line.isEmpty() || !line.contains(",")) {
+            while (running && !task.stopRequested && capture.isOpened()) {
+                if (!capture.read(frame) || frame.empty()) {
+                    System.err.println("[" + cameraId + "] ERROR: No se pudo leer frame");
+                    Thread.sleep(readErrorDelayMillis);
                     continue;
                 }
                 
-                String[] parts = line.split(",");
+                long frameCount = ++capturedFrames;
                 
-                if (parts.length < 2) {
-                    continue;
-                }
-                
-                String objeto = parts[0].trim();
-                double confidence = Double.parseDouble(parts[1].trim());
-                              
-                // Registrar detecciones con confianza mayor a 2% (para pruebas)
-                // En producción, usar 0.25 o más
-                if (confidence < 0.02) {
-                    continue;
+                // Mostrar solo la mitad de los frames para evitar lag
+                if (windowName != null && frameCount % 2 == 0) {
+                    HighGui.imshow(windowName, frame);
+                    HighGui.waitKey(1);
                 }
                 
-                // Generar nombre único para la imagen
-                String imageFileName = UUID.randomUUID().toString() + ".jpg";
-                String imageFilePath = detectionImagesPath + "/" + imageFileName;
-                                
-                // Guardar imagen de la detección
-                boolean saved = Imgcodecs.imwrite(imageFilePath, frame);
-                
-                if (!saved) {
+                // Publicar solo 1 de cada N frames para IA (más pesado)
+                if (frameCount % frameSkip != 0) {
                     continue;
                 }
-                                
-                // Crear registro de detección
-                Detection detection = new Detection(cameraId, objeto, imageFileName, confidence);
                 
-                // Añadir al log (thread-safe)
-                detectionLog.addDetection(detection);
-                            }
+                // El slot pasa a ser dueño del Mat publicado
+                frameSlot.publish(frame, frameCount);
+                frame = new Mat();
+            }
+        } catch (InterruptedException e) {
+            System.out.println("[" + cameraId + "] Hilo de captura interrumpido");
+        } finally {
+            frame.release();
+        }
+    }
+    
+    /**
+     * Pide a la captura que pare y espera a que termine: el VideoCapture no se
+     * puede liberar mientras el otro hilo siga dentro de capture.read()
+     */
+    private void stopCaptureTask(CaptureTask captureTask) {
+        if (captureTask == null) {
+            return;
+        }
+        
+        captureTask.stopRequested = true;
+        boolean interrupted = false;
+        
+        while (true) {
+            try {
+                captureTask.future.get(2, TimeUnit.SECONDS);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // Se sigue esperando; se restaura al salir
+            } catch (ExecutionException e) {
+                System.err.println("[" + cameraId + "] La captura terminó con error: " + e.getCause());
+                break;
+            } catch (TimeoutException e) {
+                System.err.println("[" + cameraId + "] Esperando a que la captura termine la lectura en curso...");
+            }
+        }
+        
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        frameSlot.clear();
+    }
+    
+    /**
+     * Pasa el frame por el filtro de movimiento y, si hay cambios (o toca
+     * frame clave), lo envía al detector y registra el resultado.
+     * La latencia y las detecciones alimentan al controlador de muestreo.
+     * frameSequence y captureEpochNanos (nanosegundos desde epoch) fechan
+     * las detecciones en el momento de la captura, no en el del análisis.
+     * Devuelve true si el frame se analizó.
+     */
+    private boolean analyzeFrame(Mat frame, long frameSequence, long captureEpochNanos) throws InterruptedException {
+        analyzedFrames++; // Solo lo escribe el hilo de análisis de la cámara
+        Boolean hasMotion = scheduler.runOnCpu(() -> motionDetector.shouldAnalyze(frame));
+        
+        if (hasMotion == null || !hasMotion) {
+            samplingController.recordIdle(cameraId);
+            return false;
+        }
+        
+        // No superar el presupuesto global de inferencias
+        samplingController.acquirePermit(cameraId);
+        
+        // Enviar frame al detector (en memoria o vía JPEG temporal)
+        long start = System.nanoTime();
+        String detectionResult = detectFrame(frame);
+        long latency = System.nanoTime() - start;
+        
+        int detections = 0;
+        if (detectionResult != null && !detectionResult.isBlank()) {
+            detections = processDetectionResult(detectionResult, frame, frameSequence, captureEpochNanos,
+                TimeUnit.NANOSECONDS.toMicros(latency));
+        }
+        
+        samplingController.recordResult(cameraId, latency, detections);
+        return true;
+    }
+    
+    /**
+     * Envía el frame al detector. Por defecto los píxeles BGR viajan en memoria
+     * por el pipe del worker; si no es posible se usa el JPEG temporal en disco.
+     */
+    private String detectFrame(Mat frame) {
+        if (rawFrameTransport && frame.isContinuous() && frame.type() == CvType.CV_8UC3) {
+            int length = (int) (frame.total() * frame.elemSize());
             
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (frameBuffer == null || frameBuffer.length != length) {
+                frameBuffer = new byte[length];
+            }
+            frame.get(0, 0, frameBuffer);
+            
+            String result = detectionBatcher.detect(cameraId,
+                DetectorPool.Request.raw(frame.rows(), frame.cols(), frame.channels(), frameBuffer, length));
+            
+            if (result != null) {
+                return checkDetectionResult(result);
+            }
+            
+            System.err.println("[" + cameraId + "] Envío en memoria falló, usando JPEG temporal");
+        }
+        
+        // Guardar frame temporalmente
+        String tempImagePath = tempFramePath + "/" + cameraId + "_frame.jpg";
+        
+        if (!encodeAndWrite(tempImagePath, frame)) {
+            System.err.println("[" + cameraId + "] ERROR: No se pudo guardar el frame");
+            return null;
+        }
+        
+        return callDetectionScript(tempImagePath);
+    }
+    
+    /**
+     * Codifica el frame a JPEG en el pool de CPU acotado y lo guarda en disco
+     */
+    private boolean encodeAndWrite(String path, Mat frame) {
+        Boolean saved = scheduler.runOnCpu(() -> Imgcodecs.imwrite(path, frame));
+        return saved != null && saved;
+    }
+    
+    /**
+     * Envía la imagen al planificador de lotes del pool de detección
+     */
+    private String callDetectionScript(String imagePath) {
+        return checkDetectionResult(detectionBatcher.detect(cameraId, DetectorPool.Request.path(imagePath)));
+    }
+    
+    private String checkDetectionResult(String result) {
+        if (result != null && result.startsWith("ERROR")) {
+            System.err.println("[" + cameraId + "] " + result);
+            return null;
         }
+        
+        return result;
+    }
+    
+    /**
+     * Procesa el resultado de la detección (formato en DetectionParser).
+     * El ObjectTracker decide qué se registra: solo los eventos de cada
+     * objeto (aparece, cambia de clase, sigue a la vista tras el intervalo,
+     * desaparece). Todos los eventos del frame comparten una sola imagen,
+     * que se guarda de forma asíncrona; los eventos se registran cuando la
+     * imagen ya está guardada. Un frame sin eventos no guarda imagen.
+     * Devuelve el número de detecciones del frame (registradas o no).
+     */
+    private int processDetectionResult(String result, Mat frame, long frameSequence,
+                                       long captureEpochNanos, long latencyMicros) {
+        // Un nombre de imagen por frame, con la fecha de captura
+        long timestamp = Math.floorDiv(captureEpochNanos, 1_000_000L);
+        String imageFileName = ImageStore.newFileName(cameraId, timestamp);
+        
+        List<Detection> detections = detectionParser.parse(result, imageFileName,
+            frameSequence, captureEpochNanos, latencyMicros);
+        
+        // Un frame sin detecciones también cuenta: cierra las pistas que ya no se ven
+        Detection.FrameInfo frameInfo = !detections.isEmpty() ? detections.get(0).getFrameInfo()
+            : new Detection.FrameInfo(captureEpochNanos, frameSequence, latencyMicros, detectionParser.getModelVersion());
+        List<Detection> events = objectTracker.update(detections, frameInfo);
+        
+        if (events.isEmpty()) {
+            return detections.size();
+        }
+        
+        // Solo se guarda la imagen si algún evento la referencia (las desapariciones no)
+        boolean needsImage = false;
+        for (Detection event : events) {
+            if (event.getImagen() != null) {
+                needsImage = true;
+                break;
+            }
+        }
+        
+        if (needsImage) {
+            // Guardar la imagen una sola vez; el almacén añade los eventos al log al terminar
+            // (sin imagen si la descarta o no puede escribirla; lo cuenta en sus métricas)
+            imageStore.store(cameraId, imageFileName, frame, timestamp, events);
+        } else {
+            imageStore.register(cameraId, events);
+        }
+        
+        return detections.size();
     }
     
     /**
@@ -462,4 +589,30 @@ public class CameraProcessor implements Runnable {
     public String getCameraId() {
         return cameraId;
     }
+    
+    /**
+     * Métricas de frescura de los frames analizados, del filtro de movimiento,
+     * del muestreo, del detector y del seguimiento. Capturados y analizados
+     * cuentan en todas las fuentes; los frames sin analizar son los que
+     * saltó frameSkip (vídeo) o reemplazó uno más reciente (en vivo). La
+     * edad de los frames solo se mide en las fuentes en vivo (FrameSlot).
+     */
+    public String getStatus() {
+        long captured = capturedFrames;
+        long analyzed = analyzedFrames;
+        
+        return String.format("capturados=%d analizados=%d sin analizar=%d | " +
+                "en vivo: descartados=%d edad(ms) ultima=%d media=%d max=%d | " +
+                "movimiento: evaluados=%d omitidos=%d claves=%d cambio=%.3f | muestreo: %.2f fps actividad=%.2f | " +
+                "detector: modelo=%s lineas ignoradas=%d | " +
+                "seguimiento: pistas=%d detecciones=%d eventos=%d suprimidas=%.1f%% coste=%.1f us",
+            captured, analyzed, Math.max(0, captured - analyzed), frameSlot.getDroppedFrames(),
+            frameSlot.getLastAgeMillis(), frameSlot.getAverageAgeMillis(), frameSlot.getMaxAgeMillis(),
+            motionDetector.getEvaluatedFrames(), motionDetector.getSkippedFrames(),
+            motionDetector.getKeyframes(), motionDetector.getLastScore(),
+            samplingController.getRateFps(cameraId), samplingController.getActivity(cameraId),
+            detectionParser.getModelVersion(), detectionParser.getMalformedLines(),
+            objectTracker.getActiveTracks(), objectTracker.getInputDetections(), objectTracker.getEmittedEvents(),
+            objectTracker.getSuppressionRatio() * 100, objectTracker.getAverageUpdateMicros());
+    }
 }
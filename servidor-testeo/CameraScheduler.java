@@ -0,0 +1,217 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Planificador de cámaras.
+ * Los bucles bloqueantes (captura e inferencia) corren en hilos virtuales si
+ * la JVM los soporta (Java 21+) o en un pool de hilos de plataforma en caso
+ * contrario; el trabajo de CPU (codificación, preprocesado) corre en un pool
+ * fijo del tamaño del número de núcleos. Permite añadir, quitar y reiniciar
+ * cámaras individuales en tiempo de ejecución.
+ */
+public class CameraScheduler {
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+    
+    private final Function<CameraConfig, CameraProcessor> processorFactory;
+    private final ExecutorService blockingExecutor;
+    private final ExecutorService cpuExecutor;
+    private final ConcurrentHashMap<String, ScheduledCamera> cameras;
+    
+    /**
+     * @param processorFactory crea el procesador a partir de la configuración de la cámara
+     */
+    public CameraScheduler(Function<CameraConfig, CameraProcessor> processorFactory) {
+        this.processorFactory = processorFactory;
+        this.blockingExecutor = newBlockingExecutor("Camera");
+        this.cpuExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), namedThreadFactory("Camera-CPU"));
+        this.cameras = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Executor para tareas bloqueantes: un hilo virtual por tarea si la JVM lo
+     * soporta, si no un pool de hilos de plataforma que crece bajo demanda
+     */
+    public static ExecutorService newBlockingExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(namedThreadFactory(name));
+        }
+    }
+    
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
+    private static ThreadFactory namedThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Inicia todas las cámaras en paralelo
+     */
+    public void startAll(List<CameraConfig> configs) {
+        for (CameraConfig config : configs) {
+            addCamera(config);
+        }
+    }
+    
+    /**
+     * Añade e inicia una cámara. Devuelve false si ya existe una con ese id.
+     */
+    public boolean addCamera(CameraConfig config) {
+        String cameraId = config.getId();
+        CameraProcessor processor = processorFactory.apply(config);
+        ScheduledCamera camera = new ScheduledCamera(config, processor);
+        
+        if (cameras.putIfAbsent(cameraId, camera) != null) {
+            System.err.println("[SCHEDULER] La cámara " + cameraId + " ya existe");
+            return false;
+        }
+        
+        camera.task = runBlocking("Camera-" + cameraId, processor);
+        System.out.println("[SCHEDULER] Cámara iniciada: " + cameraId);
+        return true;
+    }
+    
+    /**
+     * Detiene y elimina una cámara. Devuelve false si no existe.
+     */
+    public boolean removeCamera(String cameraId) {
+        ScheduledCamera camera = cameras.remove(cameraId);
+        
+        if (camera == null) {
+            return false;
+        }
+        
+        stopCamera(camera);
+        System.out.println("[SCHEDULER] Cámara eliminada: " + cameraId);
+        return true;
+    }
+    
+    /**
+     * Detiene la cámara y la vuelve a iniciar con un procesador nuevo
+     */
+    public boolean restartCamera(String cameraId) {
+        ScheduledCamera camera = cameras.get(cameraId);
+        
+        if (camera == null || !removeCamera(cameraId)) {
+            return false;
+        }
+        
+        return addCamera(camera.config);
+    }
+    
+    /**
+     * Ejecuta una tarea bloqueante (bucle de captura, etc.) con el nombre de hilo indicado
+     */
+    public Future<?> runBlocking(String threadName, Runnable task) {
+        return blockingExecutor.submit(() -> {
+            Thread current = Thread.currentThread();
+            String previousName = current.getName();
+            current.setName(threadName);
+            try {
+                task.run();
+            } finally {
+                current.setName(previousName);
+            }
+        });
+    }
+    
+    /**
+     * Ejecuta trabajo de CPU en el pool acotado y espera su resultado
+     */
+    public <T> T runOnCpu(Supplier<T> work) {
+        try {
+            return cpuExecutor.submit(work::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+    
+    public Executor getCpuExecutor() {
+        return cpuExecutor;
+    }
+    
+    public Collection<CameraProcessor> getProcessors() {
+        List<CameraProcessor> processors = new ArrayList<>();
+        for (ScheduledCamera camera : cameras.values()) {
+            processors.add(camera.processor);
+        }
+        return processors;
+    }
+    
+    public int getCameraCount() {
+        return cameras.size();
+    }
+    
+    private void stopCamera(ScheduledCamera camera) {
+        camera.processor.stop();
+        
+        if (camera.task == null) {
+            return;
+        }
+        
+        try {
+            camera.task.get(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            camera.task.cancel(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            // La cámara ya terminó con error
+        }
+    }
+    
+    /**
+     * Detiene todas las cámaras y los pools
+     */
+    public void stop() {
+        List<ScheduledCamera> all = new ArrayList<>(cameras.values());
+        cameras.clear();
+        
+        // Señalar a todas primero para que se detengan en paralelo
+        for (ScheduledCamera camera : all) {
+            camera.processor.stop();
+        }
+        for (ScheduledCamera camera : all) {
+            stopCamera(camera);
+        }
+        
+        blockingExecutor.shutdownNow();
+        cpuExecutor.shutdownNow();
+    }
+    
+    /**
+     * Cámara registrada junto con su tarea en ejecución
+     */
+    private static class ScheduledCamera {
+        final CameraConfig config;
+        final CameraProcessor processor;
+        volatile Future<?> task;
+        
+        ScheduledCamera(CameraConfig config, CameraProcessor processor) {
+            this.config = config;
+            this.processor = processor;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base de los servidores de socket (logs e imágenes).
+ * Cada conexión se atiende en un hilo virtual (o de un pool si la JVM no los
+ * soporta) y es persistente: acepta varios comandos separados por salto de
+ * línea hasta que el cliente envía QUIT, cierra la conexión o supera el
+ * tiempo de inactividad. El número de clientes simultáneos está acotado; los
+ * que exceden el límite reciben un error y se desconectan.
+ * Los sockets se aceptan como SocketChannel (en modo bloqueante) para que
+ * los servidores puedan enviar archivos sin copiarlos (FileChannel.transferTo).
+ * Cada conexión puede negociar el protocolo binario (PROTOCOL:BINARY, ver
+ * BinaryProtocol); por defecto las respuestas son texto.
+ */
+public abstract class CommandServer implements Runnable {
+    private final String tag;
+    private final int port;
+    private final int maxClients;
+    private final int idleTimeoutMillis;
+    private final Semaphore clientSlots;
+    private final Set<Socket> clients;
+    private final ExecutorService executor;
+    private volatile boolean running;
+    private ServerSocketChannel serverChannel;
+    
+    // Métricas
+    private final AtomicLong acceptedConnections;
+    private final AtomicLong rejectedConnections;
+    private final AtomicLong commandCount;
+    
+    protected CommandServer(String tag, int port, int maxClients, int idleTimeoutMillis) {
+        this.tag = tag;
+        this.port = port;
+        this.maxClients = Math.max(1, maxClients);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.clientSlots = new Semaphore(this.maxClients);
+        this.clients = ConcurrentHashMap.newKeySet();
+        this.executor = CameraScheduler.newBlockingExecutor(tag);
+        this.acceptedConnections = new AtomicLong();
+        this.rejectedConnections = new AtomicLong();
+        this.commandCount = new AtomicLong();
+        this.running = true;
+    }
+    
+    @Override
+    public void run() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            System.out.println("[" + tag + "] Servidor iniciado en puerto " + port +
+                " (máximo " + maxClients + " clientes)");
+            
+            while (running) {
+                try {
+                    // Aceptar conexión de cliente
+                    SocketChannel clientChannel = serverChannel.accept();
+                    Socket clientSocket = clientChannel.socket();
+                    
+                    if (!clientSlots.tryAcquire()) {
+                        rejectClient(clientSocket);
+                        continue;
+                    }
+                    
+                    acceptedConnections.incrementAndGet();
+                    clients.add(clientSocket);
+                    
+                    executor.execute(() -> {
+                        try {
+                            serveClient(clientChannel);
+                        } finally {
+                            clients.remove(clientSocket);
+                            clientSlots.release();
+                        }
+                    });
+                
+                } catch (SocketException | ClosedChannelException e) {
+                    if (!running) {
+                        break; // Salida normal
+                    }
+                    System.err.println("[" + tag + "] Error en socket: " + e.getMessage());
+                }
+            }
+        
+        } catch (IOException e) {
+            System.err.println("[" + tag + "] ERROR: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            closeServer();
+        }
+    }
+    
+    /**
+     * Atiende los comandos de una conexión persistente hasta QUIT, EOF o inactividad
+     */
+    private void serveClient(SocketChannel clientChannel) {
+        Socket clientSocket = clientChannel.socket();
+        String clientAddress = clientSocket.getInetAddress().getHostAddress();
+        Session session = new Session(clientAddress);
+        
+        try (
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8)
+            );
+            OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream());
+        ) {
+            clientSocket.setSoTimeout(idleTimeoutMillis);
+            clientSocket.setTcpNoDelay(true);
+            System.out.println("[" + tag + "] Cliente conectado: " + clientAddress);
+            
+            String command;
+            while (running && (command = in.readLine()) != null) {
+                command = command.trim();
+                
+                if (command.isEmpty()) {
+                    continue;
+                }
+                if (command.equals("QUIT")) {
+                    break;
+                }
+                
+                commandCount.incrementAndGet();
+                
+                if (command.startsWith("PROTOCOL:")) {
+                    negotiate(command.substring("PROTOCOL:".length()).trim(), session, out);
+                } else {
+                    handleCommand(command, out, clientChannel, session);
+                }
+                
+                // El comando pudo terminar la conexión (p. ej. fin de una suscripción)
+                if (!clientChannel.isOpen()) {
+                    break;
+                }
+                out.flush();
+            }
+        
+        } catch (SocketTimeoutException e) {
+            System.out.println("[" + tag + "] Cliente inactivo desconectado: " + clientAddress);
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[" + tag + "] Error manejando cliente " +
+                    clientAddress + ": " + e.getMessage());
+            }
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                // Ignorar
+            }
+        }
+    }
+    
+    /**
+     * PROTOCOL:BINARY | PROTOCOL:TEXT. La respuesta siempre es una línea de
+     * texto; el formato nuevo se aplica a partir del siguiente comando.
+     */
+    private void negotiate(String protocol, Session session, OutputStream out) throws IOException {
+        if (protocol.equals("BINARY")) {
+            session.encoder = new BinaryProtocol.Encoder();
+        } else if (protocol.equals("TEXT")) {
+            session.encoder = null;
+        } else {
+            sendLine(out, "ERROR:Protocolo desconocido");
+            return;
+        }
+        
+        sendLine(out, "OK:" + protocol);
+        System.out.println("[" + tag + "] Protocolo " + protocol + " para " + session.getClientAddress());
+    }
+    
+    /**
+     * Procesa un comando y escribe la respuesta en out (el flush lo hace el llamador).
+     * Para escribir directamente en el canal hay que vaciar antes out. Si el
+     * comando cierra el canal, la conexión termina sin leer más comandos.
+     * Las respuestas deben respetar el formato negociado en la sesión.
+     */
+    protected abstract void handleCommand(String command, OutputStream out, SocketChannel channel,
+                                          Session session) throws IOException;
+    
+    /**
+     * Escribe una línea de texto UTF-8 terminada en salto de línea
+     */
+    protected static void sendLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+    
+    /**
+     * Respuesta de texto: una línea o, en modo binario, una trama TEXT
+     */
+    protected static void sendText(OutputStream out, Session session, String line) throws IOException {
+        if (session.isBinary()) {
+            session.getEncoder().writeMessage(out, BinaryProtocol.TEXT, line);
+        } else {
+            sendLine(out, line);
+        }
+    }
+    
+    /**
+     * Error: "ERROR:mensaje" o, en modo binario, una trama ERROR
+     */
+    protected static void sendError(OutputStream out, Session session, String message) throws IOException {
+        if (session.isBinary()) {
+            session.getEncoder().writeMessage(out, BinaryProtocol.ERROR, message);
+        } else {
+            sendLine(out, "ERROR:" + message);
+        }
+    }
+    
+    private void rejectClient(Socket clientSocket) {
+        rejectedConnections.incrementAndGet();
+        
+        try (Socket socket = clientSocket) {
+            OutputStream out = socket.getOutputStream();
+            sendLine(out, "ERROR:Servidor ocupado");
+            out.flush();
+        } catch (IOException e) {
+            // Ignorar
+        }
+        System.err.println("[" + tag + "] Conexión rechazada: límite de " + maxClients + " clientes");
+    }
+    
+    public int getActiveClients() {
+        return maxClients - clientSlots.availablePermits();
+    }
+    
+    /**
+     * Resumen del estado del servidor para el log
+     */
+    public String getStatus() {
+        return String.format("clientes=%d/%d conexiones=%d rechazadas=%d comandos=%d",
+            getActiveClients(), maxClients, acceptedConnections.get(), rejectedConnections.get(), commandCount.get());
+    }
+    
+    /**
+     * Detiene el servidor y cierra las conexiones abiertas
+     */
+    public void stop() {
+        running = false;
+        closeServer();
+        
+        for (Socket client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Ignorar
+            }
+        }
+        executor.shutdownNow();
+    }
+    
+    private void closeServer() {
+        if (serverChannel != null && serverChannel.isOpen()) {
+            try {
+                serverChannel.close();
+                System.out.println("[" + tag + "] Servidor cerrado");
+            } catch (IOException e) {
+                System.err.println("[" + tag + "] Error cerrando servidor: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Estado de una conexión: dirección del cliente y protocolo negociado
+     */
+    protected static final class Session {
+        private final String clientAddress;
+        private BinaryProtocol.Encoder encoder; // null en modo texto
+        
+        Session(String clientAddress) {
+            this.clientAddress = clientAddress;
+        }
+        
+        public String getClientAddress() {
+            return clientAddress;
+        }
+        
+        public boolean isBinary() {
+            return encoder != null;
+        }
+        
+        public BinaryProtocol.Encoder getEncoder() {
+            return encoder;
+        }
+    }
+}
@@ -1,25 +1,62 @@
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 /**
- * Modelo que representa una detección realizada por el sistema de IA
+ * Modelo que representa una detección realizada por el sistema de IA.
+ * La fecha es la de captura del frame (no la de creación del objeto); los
+ * metadatos del frame (FrameInfo) se comparten entre todas sus detecciones.
  */
 public class Detection {
     private String camara;
     private String objeto;
     private String fecha;
-    private String imagen;
+    private volatile String imagen; // null si la retención borró la imagen
     private double confidence;
+    private long timestamp; // Milisegundos desde epoch (captura del frame)
+    private long sequence; // Asignada por el DetectionLog
+    // Caja del objeto en el frame (centro y tamaño en píxeles); ancho 0 si no se conoce
+    private int boxX;
+    private int boxY;
+    private int boxWidth;
+    private int boxHeight;
+    private FrameInfo frame;
+    // Pista del ObjectTracker (0 si no hay seguimiento) y evento que la registró
+    private long trackId;
+    private int event;
     
     private static final DateTimeFormatter formatter = 
         DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
     
     public Detection(String camara, String objeto, String imagen, double confidence) {
+        this(camara, objeto, imagen, confidence, System.currentTimeMillis());
+    }
+    
+    /**
+     * Detección con su instante original (p. ej. al recuperarla del journal)
+     */
+    public Detection(String camara, String objeto, String imagen, double confidence, long timestamp) {
+        this(camara, objeto, imagen, confidence, FrameInfo.at(timestamp), 0, 0, 0, 0);
+    }
+    
+    /**
+     * Detección con los metadatos de su frame y la caja del objeto (centro
+     * x, y y tamaño, como las emite detect.py; ancho 0 si no se conoce)
+     */
+    public Detection(String camara, String objeto, String imagen, double confidence, FrameInfo frame,
+                     int boxX, int boxY, int boxWidth, int boxHeight) {
         this.camara = camara;
         this.objeto = objeto;
-        this.fecha = LocalDateTime.now().format(formatter);
+        this.timestamp = frame.timestamp;
+        this.fecha = frame.fecha; // Se formatea una vez por frame
         this.imagen = imagen;
         this.confidence = confidence;
+        this.frame = frame;
+        this.boxX = boxX;
+        this.boxY = boxY;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
     }
     
     // Getters
@@ -28,15 +65,89 @@ public class Detection {
     public String getFecha() { return fecha; }
     public String getImagen() { return imagen; }
     public double getConfidence() { return confidence; }
+    public long getTimestamp() { return timestamp; }
+    public long getSequence() { return sequence; }
+    public int getBoxX() { return boxX; }
+    public int getBoxY() { return boxY; }
+    public int getBoxWidth() { return boxWidth; }
+    public int getBoxHeight() { return boxHeight; }
+    public boolean hasBox() { return boxWidth > 0 && boxHeight > 0; }
+    public FrameInfo getFrameInfo() { return frame; }
+    public long getCaptureNanos() { return frame.getCaptureNanos(); }
+    public long getFrameSequence() { return frame.getSequence(); }
+    public long getLatencyMicros() { return frame.getLatencyMicros(); }
+    public String getModelVersion() { return frame.getModelVersion(); }
+    public long getTrackId() { return trackId; }
+    public int getEvent() { return event; }
+    
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+    
+    void setTrack(long trackId, int event) {
+        this.trackId = trackId;
+        this.event = event;
+    }
+    
+    /**
+     * La imagen se borró del disco: la detección se anuncia sin imagen
+     */
+    void expireImage() {
+        this.imagen = null;
+    }
     
     /**
      * Convierte la detección a formato JSON
      */
     public String toJSON() {
-        return String.format(
-            "{\"camara\":\"%s\",\"objeto\":\"%s\",\"fecha\":\"%s\",\"imagen\":\"%s\",\"confidence\":%.2f}",
-            camara, objeto, fecha, imagen, confidence
-        );
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            return writeJSON(json).toString();
+        } finally {
+            json.release();
+        }
+    }
+    
+    /**
+     * Escribe la detección como objeto JSON:
+     * {"seq":N,"camara":"..","objeto":"..","fecha":"..","imagen":"..","confidence":0.00}
+     * ("imagen" es null si la imagen ya se borró)
+     * y, si se conoce la caja, "box":[x,y,ancho,alto] (centro y tamaño).
+     * Metadatos del frame: "captureNanos" (instante de captura) y, si se
+     * conocen, "frame" (número de frame), "latencyUs" (latencia del detector)
+     * y "model" (versión del modelo). Con seguimiento: "track" (pista) y
+     * "event" (aparece, cambia, sigue o desaparece)
+     */
+    public JsonWriter writeJSON(JsonWriter json) {
+        json.beginObject()
+            .name("seq").value(sequence)
+            .name("camara").value(camara)
+            .name("objeto").value(objeto)
+            .name("fecha").value(fecha)
+            .name("imagen").value(imagen)
+            .name("confidence").value(confidence, 2);
+        
+        if (hasBox()) {
+            json.name("box").beginArray()
+                .value(boxX).value(boxY).value(boxWidth).value(boxHeight)
+                .endArray();
+        }
+        
+        json.name("captureNanos").value(frame.getCaptureNanos());
+        if (frame.getSequence() > 0) {
+            json.name("frame").value(frame.getSequence());
+        }
+        if (frame.getLatencyMicros() > 0) {
+            json.name("latencyUs").value(frame.getLatencyMicros());
+        }
+        if (frame.getModelVersion() != null) {
+            json.name("model").value(frame.getModelVersion());
+        }
+        if (trackId > 0) {
+            json.name("track").value(trackId)
+                .name("event").value(ObjectTracker.eventName(event));
+        }
+        return json.endObject();
     }
     
     @Override
@@ -44,4 +155,40 @@ public class Detection {
         return String.format("[%s] %s detectó: %s (%.2f%%) - %s", 
             fecha, camara, objeto, confidence * 100, imagen);
     }
+    
+    /**
+     * Metadatos del frame analizado, compartidos por todas sus detecciones:
+     * instante de captura (nanosegundos desde epoch), número de frame de la
+     * cámara (0 si no se conoce), latencia del detector en microsegundos
+     * (0 si no se conoce) y versión del modelo (null si no se conoce)
+     */
+    public static final class FrameInfo {
+        private final long captureNanos;
+        private final long timestamp;
+        private final String fecha;
+        private final long sequence;
+        private final long latencyMicros;
+        private final String modelVersion;
+        
+        public FrameInfo(long captureNanos, long sequence, long latencyMicros, String modelVersion) {
+            this.captureNanos = captureNanos;
+            this.timestamp = Math.floorDiv(captureNanos, 1_000_000L);
+            this.fecha = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).format(formatter);
+            this.sequence = sequence;
+            this.latencyMicros = latencyMicros;
+            this.modelVersion = modelVersion;
+        }
+        
+        /**
+         * Solo el instante (milisegundos desde epoch), sin más metadatos
+         */
+        public static FrameInfo at(long timestamp) {
+            return new FrameInfo(timestamp * 1_000_000L, 0, 0, null);
+        }
+        
+        public long getCaptureNanos() { return captureNanos; }
+        public long getSequence() { return sequence; }
+        public long getLatencyMicros() { return latencyMicros; }
+        public String getModelVersion() { return modelVersion; }
+    }
 }
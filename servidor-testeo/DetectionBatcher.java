@@ -0,0 +1,283 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Planificador de lotes de detección compartido por todas las cámaras.
+ * Agrupa los frames pendientes hasta un tamaño máximo de lote o un tiempo
+ * máximo de espera y los envía al pool de detección en una sola llamada.
+ * Los frames se atienden en orden de llegada; como cada cámara espera el
+ * resultado de su frame antes de enviar otro, ninguna acapara el detector.
+ * Un frame cuyo resultado ya no se espera (timeout) se cancela y no se
+ * envía: sus bytes son el buffer reutilizado de la cámara.
+ */
+public class DetectionBatcher {
+    private static final long RESULT_TIMEOUT_SECONDS = 60;
+    
+    private final DetectorPool detectorPool;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    
+    private final ArrayDeque<PendingFrame> pending;
+    private final ReentrantLock lock;
+    private final Condition frameAvailable;
+    private final Semaphore inFlightBatches; // Como máximo un lote por worker del pool
+    private final ExecutorService dispatcher;
+    private Thread schedulerThread;
+    private volatile boolean running;
+    
+    // Métricas
+    private final AtomicLong batchCount;
+    private final AtomicLong batchedFrames;
+    private final AtomicLong cancelledFrames; // Frames cuyo resultado dejó de esperarse antes de enviarlos
+    
+    public DetectionBatcher(DetectorPool detectorPool, int maxBatchSize, long maxWaitMillis) {
+        this.detectorPool = detectorPool;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.pending = new ArrayDeque<>();
+        this.lock = new ReentrantLock();
+        this.frameAvailable = lock.newCondition();
+        this.inFlightBatches = new Semaphore(detectorPool.getSize());
+        this.dispatcher = Executors.newFixedThreadPool(detectorPool.getSize(), r -> {
+            Thread thread = new Thread(r, "Batch-Dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchCount = new AtomicLong();
+        this.batchedFrames = new AtomicLong();
+        this.cancelledFrames = new AtomicLong();
+    }
+    
+    /**
+     * Inicia el hilo que arma y despacha los lotes
+     */
+    public void start() {
+        running = true;
+        
+        if (maxBatchSize > 1) {
+            schedulerThread = new Thread(this::schedulerLoop, "Batch-Scheduler");
+            schedulerThread.setDaemon(true);
+            schedulerThread.start();
+        }
+        
+        System.out.println("[BATCH] Lotes de hasta " + maxBatchSize + " frames, espera máxima " +
+            TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+    }
+    
+    /**
+     * Encola el frame de una cámara y espera el resultado de su lote.
+     * Devuelve la salida del detector para ese frame o null si falla.
+     */
+    public String detect(String cameraId, DetectorPool.Request request) {
+        // Sin lotes: llamada directa al pool
+        if (maxBatchSize <= 1) {
+            return detectorPool.detect(request);
+        }
+        
+        PendingFrame frame = new PendingFrame(request);
+        
+        // running se comprueba con el lock: stop() lo baja con el lock tomado
+        // antes de vaciar la cola, así que no puede quedar un frame sin respuesta
+        lock.lock();
+        try {
+            if (!running) {
+                return null;
+            }
+            pending.addLast(frame);
+            frameAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        
+        try {
+            return frame.result.get(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(frame);
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("[BATCH] ERROR esperando resultado de " + cameraId + ": " + e.getMessage());
+            cancel(frame);
+            return null;
+        }
+    }
+    
+    /**
+     * Cancela un frame cuyo resultado ya no se espera: la cámara va a
+     * reutilizar su buffer, así que no se puede enviar al detector
+     */
+    private void cancel(PendingFrame frame) {
+        if (!frame.result.cancel(false)) {
+            return; // Ya tenía resultado
+        }
+        cancelledFrames.incrementAndGet();
+        
+        lock.lock();
+        try {
+            pending.remove(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void schedulerLoop() {
+        try {
+            while (running) {
+                // No armar un lote nuevo hasta que haya un worker libre: mientras
+                // tanto los frames se acumulan y los lotes salen más llenos
+                inFlightBatches.acquire();
+                
+                List<PendingFrame> batch = collectBatch();
+                
+                if (batch.isEmpty()) {
+                    inFlightBatches.release();
+                    continue;
+                }
+                
+                try {
+                    dispatcher.execute(() -> {
+                        try {
+                            runBatch(batch);
+                        } finally {
+                            inFlightBatches.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Detenido mientras se armaba el lote: liberar a las cámaras
+                    for (PendingFrame frame : batch) {
+                        frame.result.complete(null);
+                    }
+                    if (running) {
+                        System.err.println("[BATCH] ERROR despachando lote: " + e.getMessage());
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Salida normal al detener
+        }
+    }
+    
+    /**
+     * Espera el primer frame y luego hasta llenar el lote o agotar la espera máxima.
+     * Toma los frames en orden de llegada.
+     */
+    private List<PendingFrame> collectBatch() throws InterruptedException {
+        List<PendingFrame> batch = new ArrayList<>();
+        
+        lock.lock();
+        try {
+            while (pending.isEmpty()) {
+                if (!running) {
+                    return batch;
+                }
+                frameAvailable.await(100, TimeUnit.MILLISECONDS);
+            }
+            
+            long deadline = pending.peekFirst().enqueuedNanos + maxWaitNanos;
+            long remaining;
+            
+            while (pending.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                frameAvailable.awaitNanos(remaining);
+            }
+            
+            while (!pending.isEmpty() && batch.size() < maxBatchSize) {
+                batch.add(pending.pollFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        return batch;
+    }
+    
+    private void runBatch(List<PendingFrame> batch) {
+        // Justo antes de enviar, descartar los frames cancelados mientras esperaban
+        List<PendingFrame> live = new ArrayList<>(batch.size());
+        List<DetectorPool.Request> requests = new ArrayList<>(batch.size());
+        for (PendingFrame frame : batch) {
+            if (!frame.result.isDone()) {
+                live.add(frame);
+                requests.add(frame.request);
+            }
+        }
+        
+        if (live.isEmpty()) {
+            return;
+        }
+        
+        String[] results = detectorPool.detectBatch(requests);
+        
+        batchCount.incrementAndGet();
+        batchedFrames.addAndGet(live.size());
+        
+        for (int i = 0; i < live.size(); i++) {
+            live.get(i).result.complete(results != null ? results[i] : null);
+        }
+    }
+    
+    public double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) batchedFrames.get() / batches;
+    }
+    
+    public int getPendingFrames() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public DetectorPool getDetectorPool() {
+        return detectorPool;
+    }
+    
+    /**
+     * Resumen del estado del planificador para el log del servidor
+     */
+    public String getStatus() {
+        return String.format("lotes=%d tamaño_medio=%.2f pendientes=%d cancelados=%d",
+            batchCount.get(), getAverageBatchSize(), getPendingFrames(), cancelledFrames.get());
+    }
+    
+    /**
+     * Detiene el planificador y libera a las cámaras que esperan resultado
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            running = false;
+            for (PendingFrame frame : pending) {
+                frame.result.complete(null);
+            }
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+        
+        if (schedulerThread != null) {
+            schedulerThread.interrupt();
+        }
+        dispatcher.shutdownNow();
+    }
+    
+    /**
+     * Frame de una cámara a la espera de ser incluido en un lote
+     */
+    private static class PendingFrame {
+        final DetectorPool.Request request;
+        final long enqueuedNanos;
+        final CompletableFuture<String> result;
+        
+        PendingFrame(DetectorPool.Request request) {
+            this.request = request;
+            this.enqueuedNanos = System.nanoTime();
+            this.result = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Índice en memoria del histórico de detecciones para consultas.
+ * El índice primario está ordenado por tiempo y hay índices secundarios por
+ * cámara y por clase de objeto, también ordenados por tiempo; cada consulta
+ * recorre solo el rango de tiempo del índice más selectivo y filtra el resto
+ * de condiciones sobre ese subconjunto. Al superar la capacidad se descartan
+ * las detecciones más antiguas.
+ */
+public class DetectionIndex {
+    public static final int DEFAULT_MAX_RECORDS = 2_000_000;
+    public static final int MAX_QUERY_LIMIT = 1000;
+    
+    private final int maxRecords;
+    private final ConcurrentSkipListMap<Key, Detection> byTime;
+    private final ConcurrentHashMap<String, Postings> byCamera;
+    private final ConcurrentHashMap<String, Postings> byClass;
+    private final AtomicInteger size;
+    
+    public DetectionIndex(int maxRecords) {
+        this.maxRecords = Math.max(1, maxRecords);
+        this.byTime = new ConcurrentSkipListMap<>();
+        this.byCamera = new ConcurrentHashMap<>();
+        this.byClass = new ConcurrentHashMap<>();
+        this.size = new AtomicInteger();
+    }
+    
+    /**
+     * Indexa una detección (con su secuencia ya asignada)
+     */
+    public void add(Detection detection) {
+        Key key = new Key(detection.getTimestamp(), detection.getSequence());
+        
+        if (byTime.putIfAbsent(key, detection) != null) {
+            return;
+        }
+        
+        byCamera.computeIfAbsent(detection.getCamara(), k -> new Postings()).add(key, detection);
+        byClass.computeIfAbsent(classKey(detection.getObjeto()), k -> new Postings()).add(key, detection);
+        
+        // Descartar las más antiguas al superar la capacidad
+        if (size.incrementAndGet() > maxRecords) {
+            evictOldest();
+        }
+    }
+    
+    public void addAll(List<Detection> detections) {
+        for (Detection detection : detections) {
+            add(detection);
+        }
+    }
+    
+    private void evictOldest() {
+        Map.Entry<Key, Detection> oldest = byTime.pollFirstEntry();
+        
+        if (oldest == null) {
+            return;
+        }
+        
+        size.decrementAndGet();
+        Detection detection = oldest.getValue();
+        removeFrom(byCamera, detection.getCamara(), oldest.getKey());
+        removeFrom(byClass, classKey(detection.getObjeto()), oldest.getKey());
+    }
+    
+    private static void removeFrom(ConcurrentHashMap<String, Postings> index, String value, Key key) {
+        Postings postings = index.get(value);
+        if (postings != null) {
+            postings.remove(key);
+        }
+    }
+    
+    /**
+     * Ejecuta la consulta sobre el índice más selectivo
+     */
+    public QueryResult query(Query query) {
+        NavigableMap<Key, Detection> candidates = selectIndex(query);
+        
+        if (candidates == null) {
+            return new QueryResult(new ArrayList<>(), query.offset, false);
+        }
+        
+        // Rango de tiempo [from, to] sobre el índice ordenado
+        NavigableMap<Key, Detection> range = candidates.subMap(
+            new Key(query.from, Long.MIN_VALUE), true,
+            new Key(query.to, Long.MAX_VALUE), true);
+        
+        if (query.descending) {
+            range = range.descendingMap();
+        }
+        
+        List<Detection> items = new ArrayList<>(Math.min(query.limit, 64));
+        int skipped = 0;
+        boolean more = false;
+        
+        for (Detection detection : range.values()) {
+            if (!query.matches(detection)) {
+                continue;
+            }
+            
+            if (skipped < query.offset) {
+                skipped++;
+                continue;
+            }
+            
+            if (items.size() == query.limit) {
+                more = true;
+                break;
+            }
+            
+            items.add(detection);
+        }
+        
+        return new QueryResult(items, query.offset, more);
+    }
+    
+    /**
+     * Elige el índice con menos entradas entre los aplicables a la consulta.
+     * Devuelve null si la cámara o la clase pedidas no tienen detecciones.
+     */
+    private NavigableMap<Key, Detection> selectIndex(Query query) {
+        NavigableMap<Key, Detection> selected = byTime;
+        int selectedSize = size.get();
+        
+        if (query.camera != null) {
+            Postings postings = byCamera.get(query.camera);
+            if (postings == null) {
+                return null;
+            }
+            selected = postings.entries;
+            selectedSize = postings.count.get();
+        }
+        
+        if (query.objectClass != null) {
+            Postings postings = byClass.get(classKey(query.objectClass));
+            if (postings == null) {
+                return null;
+            }
+            if (postings.count.get() < selectedSize) {
+                selected = postings.entries;
+                selectedSize = postings.count.get();
+            }
+        }
+        
+        return selectedSize == 0 ? null : selected;
+    }
+    
+    private static String classKey(String objectClass) {
+        return objectClass.toUpperCase(Locale.ROOT);
+    }
+    
+    public int getSize() {
+        return size.get();
+    }
+    
+    /**
+     * Recorre todas las detecciones indexadas, de la más antigua a la más reciente
+     */
+    public void forEach(Consumer<Detection> action) {
+        byTime.values().forEach(action);
+    }
+    
+    /**
+     * Resumen del estado del índice para el log del servidor
+     */
+    public String getStatus() {
+        return String.format("registros=%d cámaras=%d clases=%d", size.get(), byCamera.size(), byClass.size());
+    }
+    
+    /**
+     * Entradas de un índice secundario para un valor (una cámara o una clase).
+     * Se lleva la cuenta aparte porque size() de ConcurrentSkipListMap recorre el mapa.
+     */
+    private static final class Postings {
+        final ConcurrentSkipListMap<Key, Detection> entries = new ConcurrentSkipListMap<>();
+        final AtomicInteger count = new AtomicInteger();
+        
+        void add(Key key, Detection detection) {
+            if (entries.put(key, detection) == null) {
+                count.incrementAndGet();
+            }
+        }
+        
+        void remove(Key key) {
+            if (entries.remove(key) != null) {
+                count.decrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Clave de los índices: instante y secuencia (desempata detecciones del mismo milisegundo)
+     */
+    private static final class Key implements Comparable<Key> {
+        final long timestamp;
+        final long sequence;
+        
+        Key(long timestamp, long sequence) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public int compareTo(Key other) {
+            int byTimestamp = Long.compare(timestamp, other.timestamp);
+            return byTimestamp != 0 ? byTimestamp : Long.compare(sequence, other.sequence);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && compareTo((Key) o) == 0;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(timestamp) * 31 + Long.hashCode(sequence);
+        }
+    }
+    
+    /**
+     * Consulta: cámara, clase, rango de tiempo, confianza mínima, límite y desplazamiento.
+     * Formato de texto: camera=CAM3&class=PERSONA&from=2025-11-16T02:00&to=2025-11-16T04:00&minConf=0.5&limit=100&offset=0&order=asc
+     * Las fechas aceptan milisegundos desde epoch o fecha/hora local ISO.
+     */
+    public static class Query {
+        String camera;
+        String objectClass;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        double minConfidence;
+        int limit = 100;
+        int offset;
+        boolean descending = true; // Por defecto, lo más reciente primero
+        
+        public static Query parse(String text) {
+            Query query = new Query();
+            
+            for (String pair : text.split("&")) {
+                if (pair.isBlank()) {
+                    continue;
+                }
+                
+                int eq = pair.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Parámetro sin valor: " + pair);
+                }
+                
+                String key = pair.substring(0, eq).trim();
+                String value = pair.substring(eq + 1).trim();
+                
+                switch (key.toLowerCase(Locale.ROOT)) {
+                    case "camera":
+                        query.camera = value;
+                        break;
+                    case "class":
+                        query.objectClass = value;
+                        break;
+                    case "from":
+                        query.from = parseTime(value);
+                        break;
+                    case "to":
+                        query.to = parseTime(value);
+                        break;
+                    case "minconf":
+                        query.minConfidence = Double.parseDouble(value);
+                        break;
+                    case "limit":
+                        query.limit = Math.max(1, Math.min(Integer.parseInt(value), MAX_QUERY_LIMIT));
+                        break;
+                    case "offset":
+                        query.offset = Math.max(0, Integer.parseInt(value));
+                        break;
+                    case "order":
+                        query.descending = !value.equalsIgnoreCase("asc");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Parámetro desconocido: " + key);
+                }
+            }
+            
+            if (query.from > query.to) {
+                throw new IllegalArgumentException("Rango de tiempo vacío");
+            }
+            return query;
+        }
+        
+        private static long parseTime(String value) {
+            if (value.matches("\\d+")) {
+                return Long.parseLong(value);
+            }
+            
+            try {
+                return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Fecha inválida: " + value);
+            }
+        }
+        
+        /**
+         * Condiciones que no resuelve el índice elegido
+         */
+        boolean matches(Detection detection) {
+            return detection.getConfidence() >= minConfidence
+                && (camera == null || camera.equals(detection.getCamara()))
+                && (objectClass == null || objectClass.equalsIgnoreCase(detection.getObjeto()));
+        }
+    }
+    
+    /**
+     * Página de resultados de una consulta
+     */
+    public static class QueryResult {
+        private final List<Detection> detections;
+        private final int offset;
+        private final boolean more;
+        
+        QueryResult(List<Detection> detections, int offset, boolean more) {
+            this.detections = detections;
+            this.offset = offset;
+            this.more = more;
+        }
+        
+        public List<Detection> getDetections() { return detections; }
+        public int getOffset() { return offset; }
+        public boolean hasMore() { return more; }
+        
+        /**
+         * {"offset":O,"count":C,"more":true|false,"items":[...]}
+         */
+        public JsonWriter writeJSON(JsonWriter json) {
+            json.beginObject()
+                .name("offset").value(offset)
+                .name("count").value(detections.size())
+                .name("more").value(more)
+                .name("items");
+            return DetectionLog.writeJSON(json, detections).endObject();
+        }
+    }
+}
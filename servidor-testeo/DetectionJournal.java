@@ -0,0 +1,400 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Journal de detecciones en disco, solo de anexado.
+ * Escribe en segmentos de tamaño fijo mapeados en memoria
+ * (journal-<primera secuencia>.seg) con un formato binario compacto:
+ *   [int32 longitud][int32 CRC32][versión][seq][captura ns][confianza][frame][latencia µs]
+ *   [caja x][caja y][caja ancho][caja alto][pista][evento][cámara][objeto][imagen][modelo]
+ * (se siguen leyendo la versión 1, con el timestamp en ms y sin metadatos del
+ * frame, y la 2, sin pista ni evento).
+ * Una longitud 0 marca el final de los datos de un segmento (los archivos
+ * mapeados se rellenan con ceros). Los datos se sincronizan a disco en lotes
+ * (cada N registros o cada M milisegundos), los segmentos rotan al llenarse y
+ * solo se conservan los más recientes.
+ */
+public class DetectionJournal {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final byte RECORD_VERSION = 3;
+    private static final byte RECORD_VERSION_V2 = 2;
+    private static final byte RECORD_VERSION_V1 = 1;
+    private static final int RECORD_HEADER_BYTES = 8;
+    
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final int syncEveryRecords;
+    private final long syncIntervalMillis;
+    
+    private MappedByteBuffer segment; // Segmento activo
+    private File segmentFile;
+    private int unsyncedRecords;
+    private long appendedRecords;
+    private long syncCount;
+    private ScheduledExecutorService syncer;
+    
+    /**
+     * @param syncEveryRecords sincronizar a disco cada N registros (1 = cada registro)
+     * @param syncIntervalMillis sincronizar además cada M ms en segundo plano (0 = desactivado)
+     */
+    public DetectionJournal(String directory, int segmentBytes, int maxSegments,
+                            int syncEveryRecords, long syncIntervalMillis) {
+        this.directory = new File(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.syncEveryRecords = Math.max(1, syncEveryRecords);
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+    
+    /**
+     * Abre el journal: continúa escribiendo al final del último segmento
+     * y arranca la sincronización periódica
+     */
+    public synchronized void open() throws IOException {
+        directory.mkdirs();
+        
+        File[] segments = listSegments();
+        if (segments.length > 0) {
+            File last = segments[segments.length - 1];
+            MappedByteBuffer buffer = map(last);
+            buffer.position(findEnd(buffer));
+            segment = buffer;
+            segmentFile = last;
+        }
+        
+        if (syncIntervalMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Journal-Sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleAtFixedRate(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        
+        System.out.println("[JOURNAL] Journal abierto en " + directory.getPath() + " (" +
+            segments.length + " segmentos)");
+    }
+    
+    /**
+     * Añade una detección al journal. El registro se codifica fuera del
+     * bloqueo; dentro solo se copia al segmento mapeado.
+     */
+    public void append(Detection detection) {
+        ByteBuffer record = encode(detection);
+        
+        if (record.remaining() > segmentBytes) {
+            System.err.println("[JOURNAL] Registro demasiado grande, descartado: " + detection.getSequence());
+            return;
+        }
+        
+        synchronized (this) {
+            try {
+                // Dejar sitio para la marca de fin (longitud 0)
+                if (segment == null || segment.remaining() < record.remaining() + 4) {
+                    rotate(detection.getSequence());
+                }
+                
+                segment.put(record);
+                appendedRecords++;
+                
+                if (++unsyncedRecords >= syncEveryRecords) {
+                    force();
+                }
+            } catch (IOException e) {
+                System.err.println("[JOURNAL] ERROR escribiendo registro " + detection.getSequence() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Lee las últimas maxRecords detecciones del journal, ordenadas por secuencia
+     */
+    public List<Detection> readTail(int maxRecords) throws IOException {
+        File[] segments;
+        synchronized (this) {
+            segments = listSegments();
+        }
+        
+        List<Detection> result = new ArrayList<>();
+        
+        // Del segmento más reciente al más antiguo hasta tener suficientes
+        for (int i = segments.length - 1; i >= 0 && result.size() < maxRecords; i--) {
+            result.addAll(readSegment(segments[i]));
+        }
+        
+        result.sort(Comparator.comparingLong(Detection::getSequence));
+        
+        if (result.size() > maxRecords) {
+            result = new ArrayList<>(result.subList(result.size() - maxRecords, result.size()));
+        }
+        return result;
+    }
+    
+    /**
+     * Sincroniza a disco los registros pendientes
+     */
+    public synchronized void sync() {
+        if (unsyncedRecords > 0) {
+            force();
+        }
+    }
+    
+    private void force() {
+        segment.force();
+        unsyncedRecords = 0;
+        syncCount++;
+    }
+    
+    /**
+     * Cierra el segmento activo y abre uno nuevo; borra los segmentos más antiguos
+     * que exceden la retención
+     */
+    private void rotate(long firstSequence) throws IOException {
+        if (segment != null) {
+            force();
+        }
+        
+        segmentFile = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        segment = map(segmentFile);
+        
+        File[] segments = listSegments();
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            if (segments[i].delete()) {
+                System.out.println("[JOURNAL] Segmento eliminado por retención: " + segments[i].getName());
+            }
+        }
+    }
+    
+    private MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+    
+    private File[] listSegments() {
+        File[] segments = directory.listFiles((dir, name) ->
+            name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        
+        if (segments == null) {
+            return new File[0];
+        }
+        
+        // El nombre lleva la secuencia con ceros a la izquierda: el orden alfabético es cronológico
+        Arrays.sort(segments);
+        return segments;
+    }
+    
+    /**
+     * Posición tras el último registro válido del segmento
+     */
+    private static int findEnd(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(0);
+        
+        while (decodeNext(view) != null) {
+            // Avanzar hasta el primer registro vacío o corrupto
+        }
+        return view.position();
+    }
+    
+    private List<Detection> readSegment(File file) throws IOException {
+        List<Detection> detections = new ArrayList<>();
+        
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer view = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), segmentBytes));
+            
+            Detection detection;
+            while ((detection = decodeNext(view)) != null) {
+                detections.add(detection);
+            }
+        }
+        
+        return detections;
+    }
+    
+    private static ByteBuffer encode(Detection detection) {
+        byte[] camara = detection.getCamara().getBytes(StandardCharsets.UTF_8);
+        byte[] objeto = detection.getObjeto().getBytes(StandardCharsets.UTF_8);
+        String imageName = detection.getImagen();
+        byte[] imagen = (imageName != null ? imageName : "").getBytes(StandardCharsets.UTF_8);
+        String modelVersion = detection.getModelVersion();
+        byte[] modelo = (modelVersion != null ? modelVersion : "").getBytes(StandardCharsets.UTF_8);
+        
+        int payloadBytes = 1 + 8 + 8 + 4 + 8 + 8 + 4 * 4 + 8 + 1
+            + (2 + camara.length) + (2 + objeto.length) + (2 + imagen.length) + (2 + modelo.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadBytes);
+        
+        record.putInt(payloadBytes);
+        record.putInt(0); // CRC, se completa al final
+        record.put(RECORD_VERSION);
+        record.putLong(detection.getSequence());
+        record.putLong(detection.getCaptureNanos());
+        record.putFloat((float) detection.getConfidence());
+        record.putLong(detection.getFrameSequence());
+        record.putLong(detection.getLatencyMicros());
+        record.putInt(detection.getBoxX());
+        record.putInt(detection.getBoxY());
+        record.putInt(detection.getBoxWidth());
+        record.putInt(detection.getBoxHeight());
+        record.putLong(detection.getTrackId());
+        record.put((byte) detection.getEvent());
+        putString(record, camara);
+        putString(record, objeto);
+        putString(record, imagen);
+        putString(record, modelo);
+        
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, payloadBytes);
+        record.putInt(4, (int) crc.getValue());
+        
+        record.flip();
+        return record;
+    }
+    
+    /**
+     * Decodifica el registro en la posición actual y avanza. Devuelve null (sin
+     * avanzar) al llegar al final de los datos o a un registro incompleto o corrupto.
+     */
+    private static Detection decodeNext(ByteBuffer buffer) {
+        int start = buffer.position();
+        
+        if (buffer.remaining() < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        
+        if (length <= 0 || length > buffer.remaining()) {
+            buffer.position(start);
+            return null;
+        }
+        
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            buffer.position(start);
+            return null;
+        }
+        
+        try {
+            ByteBuffer data = ByteBuffer.wrap(payload);
+            byte version = data.get();
+            
+            if (version == RECORD_VERSION || version == RECORD_VERSION_V2) {
+                return decodeRecord(data, version == RECORD_VERSION);
+            }
+            if (version == RECORD_VERSION_V1) {
+                return decodeRecordV1(data);
+            }
+            buffer.position(start);
+            return null;
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            return null;
+        }
+    }
+    
+    /**
+     * Registros con metadatos del frame; withTrack si incluyen pista y evento (versión 3)
+     */
+    private static Detection decodeRecord(ByteBuffer data, boolean withTrack) {
+        long sequence = data.getLong();
+        long captureNanos = data.getLong();
+        double confidence = data.getFloat();
+        long frameSequence = data.getLong();
+        long latencyMicros = data.getLong();
+        int boxX = data.getInt();
+        int boxY = data.getInt();
+        int boxWidth = data.getInt();
+        int boxHeight = data.getInt();
+        long trackId = withTrack ? data.getLong() : 0;
+        int event = withTrack ? data.get() : ObjectTracker.EVENT_NONE;
+        String camara = getString(data);
+        String objeto = getString(data);
+        String imagen = getString(data);
+        String modelo = getString(data);
+        
+        Detection.FrameInfo frame = new Detection.FrameInfo(captureNanos, frameSequence, latencyMicros,
+            modelo.isEmpty() ? null : modelo);
+        // Imagen vacía: la detección se registró sin imagen (se escribe "" en lugar de null)
+        Detection detection = new Detection(camara, objeto, imagen.isEmpty() ? null : imagen, confidence, frame,
+            boxX, boxY, boxWidth, boxHeight);
+        detection.setSequence(sequence);
+        detection.setTrack(trackId, event);
+        return detection;
+    }
+    
+    /**
+     * Registros anteriores a los metadatos del frame (timestamp en ms)
+     */
+    private static Detection decodeRecordV1(ByteBuffer data) {
+        long sequence = data.getLong();
+        long timestamp = data.getLong();
+        double confidence = data.getFloat();
+        String camara = getString(data);
+        String objeto = getString(data);
+        String imagen = getString(data);
+        
+        Detection detection = new Detection(camara, objeto, imagen, confidence, timestamp);
+        detection.setSequence(sequence);
+        return detection;
+    }
+    
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+    
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Resumen del estado del journal para el log del servidor
+     */
+    public synchronized String getStatus() {
+        return String.format("registros=%d sincronizaciones=%d pendientes=%d segmento=%s",
+            appendedRecords, syncCount, unsyncedRecords, segmentFile != null ? segmentFile.getName() : "-");
+    }
+    
+    /**
+     * Sincroniza lo pendiente y detiene la sincronización periódica
+     */
+    public void close() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        
+        synchronized (this) {
+            if (segment != null) {
+                force();
+            }
+        }
+        
+        System.out.println("[JOURNAL] Journal cerrado");
+    }
+}
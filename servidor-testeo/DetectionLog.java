@@ -1,24 +1,47 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 /**
- * Log sincronizado de detecciones usando ReentrantReadWriteLock
- * para evitar corrupción de registros en ambiente concurrente.
+ * Log de detecciones en un buffer circular de capacidad fija sin bloqueos.
+ * Varias cámaras escriben a la vez: cada una reserva un número de secuencia
+ * creciente y publica la detección en su casilla. Los lectores piden "todo
+ * desde la secuencia N" sin borrar nada, de modo que varios clientes pueden
+ * consultar a la vez; los registros sobrescritos antes de leerse se informan
+ * como hueco (gap). Si hay un journal asociado, cada detección se anexa
+ * también a disco y al arrancar se recupera la ventana reciente. Todo el
+ * histórico retenido se indexa para consultas (DetectionIndex). Los oyentes
+ * registrados (suscripciones del servidor de logs) reciben cada detección
+ * en cuanto se añade.
  * Implementa patrón Singleton.
  */
 public class DetectionLog {
+    public static final int DEFAULT_CAPACITY = 4096; // Potencia de 2
+    
     private static DetectionLog instance;
-    private final List<Detection> detections;
-    private final ReentrantReadWriteLock lock;
-    private final ReentrantReadWriteLock.ReadLock readLock;
-    private final ReentrantReadWriteLock.WriteLock writeLock;
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Detection> slots;
+    private final AtomicLong lastSequence; // Última secuencia reservada (la primera es 1)
+    private volatile long clearedSequence; // Las secuencias hasta aquí se consideran borradas
+    private volatile long restoredSequence; // Última secuencia recuperada del journal
+    private volatile DetectionJournal journal;
+    private final DetectionIndex index;
+    private final List<Consumer<Detection>> listeners;
+    private final AtomicLong expiredImages; // Detecciones cuya imagen borró la retención
     
-    private DetectionLog() {
-        this.detections = new ArrayList<>();
-        this.lock = new ReentrantReadWriteLock();
-        this.readLock = lock.readLock();
-        this.writeLock = lock.writeLock();
+    private DetectionLog(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.lastSequence = new AtomicLong();
+        this.index = new DetectionIndex(DetectionIndex.DEFAULT_MAX_RECORDS);
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.expiredImages = new AtomicLong();
     }
     
     /**
@@ -26,108 +49,259 @@ public class DetectionLog {
      */
     public static synchronized DetectionLog getInstance() {
         if (instance == null) {
-            instance = new DetectionLog();
+            instance = new DetectionLog(DEFAULT_CAPACITY);
         }
         return instance;
     }
     
     /**
-     * Añade una detección al log de forma thread-safe
-     * CRÍTICO: Protegido con WriteLock para evitar corrupción de registros
+     * Asocia el journal en disco y recupera de él las detecciones más recientes
+     * (el histórico completo para el índice, la ventana reciente para el buffer).
+     * Las secuencias continúan desde la última registrada, de modo que los
+     * cursores de los clientes siguen siendo válidos tras un reinicio.
+     * Debe llamarse antes de que las cámaras empiecen a registrar detecciones.
      */
-    public void addDetection(Detection detection) {
-        writeLock.lock();
-        try {
-            detections.add(detection);
-            System.out.println("[LOG] " + detection);
-        } finally {
-            writeLock.unlock();
+    public void attachJournal(DetectionJournal journal) throws IOException {
+        List<Detection> history = journal.readTail(DetectionIndex.DEFAULT_MAX_RECORDS);
+        List<Detection> recent = history.subList(Math.max(0, history.size() - capacity), history.size());
+        
+        for (Detection detection : recent) {
+            slots.set(index(detection.getSequence()), detection);
         }
+        index.addAll(history);
+        
+        if (!recent.isEmpty()) {
+            long last = recent.get(recent.size() - 1).getSequence();
+            lastSequence.set(Math.max(lastSequence.get(), last));
+            restoredSequence = last;
+        }
+        
+        this.journal = journal;
+        System.out.println("[LOG] Recuperadas " + history.size() + " detecciones del journal");
     }
     
     /**
-     * Obtiene todas las detecciones de forma thread-safe
-     * Usa ReadLock para permitir lecturas concurrentes
-     * Al leer, limpia el log y reactiva la captura
+     * Añade una detección al log sin bloqueos.
+     * Si el buffer está lleno se sobrescribe el registro más antiguo.
+     * Devuelve el número de secuencia asignado.
      */
-    public List<Detection> getAllDetections() {
-        writeLock.lock();
-        try {
-            List<Detection> result = new ArrayList<>(detections);
-            detections.clear();
-            System.out.println("[LOG] Enviando " + result.size() + " detecciones. Log limpiado.");
-            return result;
-        } finally {
-            writeLock.unlock();
+    public long addDetection(Detection detection) {
+        long sequence = lastSequence.incrementAndGet();
+        detection.setSequence(sequence);
+        
+        // La escritura en el array publica la detección a los lectores
+        slots.set(index(sequence), detection);
+        
+        index.add(detection);
+        
+        DetectionJournal journal = this.journal;
+        if (journal != null) {
+            journal.append(detection);
+        }
+        
+        for (Consumer<Detection> listener : listeners) {
+            listener.accept(detection);
         }
+        
+        System.out.println("[LOG] " + detection);
+        return sequence;
     }
     
     /**
-     * Obtiene las últimas N detecciones
+     * Registra un oyente que recibe cada nueva detección. Se llama desde los
+     * hilos de las cámaras, así que no debe bloquear.
      */
-    public List<Detection> getLastDetections(int n) {
-        readLock.lock();
-        try {
-            int size = detections.size();
-            int fromIndex = Math.max(0, size - n);
-            return new ArrayList<>(detections.subList(fromIndex, size));
-        } finally {
-            readLock.unlock();
-        }
+    public void addListener(Consumer<Detection> listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Consumer<Detection> listener) {
+        listeners.remove(listener);
     }
     
     /**
-     * Convierte las últimas N detecciones a JSON y limpia el log
-     * Esto reactiva la captura de nuevas detecciones
+     * Lee hasta maxItems detecciones con secuencia mayor que afterSequence,
+     * en orden. No modifica el log.
      */
-    public String getLastDetectionsJSON(int n) {
-        writeLock.lock();
-        try {
-            // Obtener todas las detecciones actuales
-            List<Detection> currentDetections = new ArrayList<>(detections);
+    public ReadResult readSince(long afterSequence, int maxItems) {
+        long last = lastSequence.get();
+        long oldest = Math.max(1, last - capacity + 1);
+        
+        // Cursor de una ejecución anterior del servidor: empezar desde el principio
+        if (afterSequence > last) {
+            afterSequence = 0;
+        }
+        
+        long from = Math.max(afterSequence, clearedSequence) + 1;
+        long gap = 0;
+        
+        // Lo que ya se sobrescribió antes de empezar a leer
+        if (from < oldest) {
+            gap = oldest - from;
+            from = oldest;
+        }
+        
+        List<Detection> result = new ArrayList<>(Math.max(0, (int) Math.min(maxItems, last - from + 1)));
+        long sequence = from;
+        
+        for (; sequence <= last && result.size() < maxItems; sequence++) {
+            Detection detection = slots.get(index(sequence));
             
-            // Construir JSON
-            StringBuilder json = new StringBuilder("[");
-            for (int i = 0; i < currentDetections.size(); i++) {
-                json.append(currentDetections.get(i).toJSON());
-                if (i < currentDetections.size() - 1) {
-                    json.append(",");
+            if (detection == null || detection.getSequence() < sequence) {
+                // Secuencia que no se pudo recuperar del journal
+                if (sequence <= restoredSequence) {
+                    gap++;
+                    continue;
                 }
+                
+                // Reservada pero aún no publicada: parar para no saltarla
+                break;
             }
-            json.append("]");
             
-            // Limpiar el log y reactivar captura
-            detections.clear();
-            System.out.println("[LOG] Enviando " + currentDetections.size() + " detecciones.");
+            // Sobrescrita mientras se leía
+            if (detection.getSequence() > sequence) {
+                gap++;
+                continue;
+            }
             
-            return json.toString();
-        } finally {
-            writeLock.unlock();
+            result.add(detection);
         }
+        
+        return new ReadResult(result, sequence - 1, gap);
     }
     
     /**
-     * Obtiene el número de detecciones registradas
+     * Consulta el histórico indexado
      */
-    public int getSize() {
-        readLock.lock();
+    public DetectionIndex.QueryResult query(DetectionIndex.Query query) {
+        return index.query(query);
+    }
+    
+    public DetectionIndex getIndex() {
+        return index;
+    }
+    
+    /**
+     * Recorre todas las detecciones retenidas (buffer e histórico indexado)
+     */
+    public void forEachDetection(Consumer<Detection> action) {
+        index.forEach(action);
+    }
+    
+    /**
+     * Marca como borradas las imágenes de estas detecciones (retención del
+     * ImageStore): a partir de ahora se anuncian sin imagen
+     */
+    public void expireImages(List<Detection> detections) {
+        for (Detection detection : detections) {
+            detection.expireImage();
+        }
+        expiredImages.addAndGet(detections.size());
+    }
+    
+    public long getExpiredImages() {
+        return expiredImages.get();
+    }
+    
+    /**
+     * Obtiene todas las detecciones retenidas en el buffer (sin borrarlas)
+     */
+    public List<Detection> getAllDetections() {
+        return readSince(0, capacity).getDetections();
+    }
+    
+    /**
+     * Obtiene las últimas N detecciones
+     */
+    public List<Detection> getLastDetections(int n) {
+        int count = Math.max(0, Math.min(n, capacity));
+        return readSince(lastSequence.get() - count, count).getDetections();
+    }
+    
+    /**
+     * Convierte las últimas N detecciones a JSON (sin borrarlas)
+     */
+    public String getLastDetectionsJSON(int n) {
+        JsonWriter json = JsonWriter.acquire();
         try {
-            return detections.size();
+            return writeJSON(json, getLastDetections(n)).toString();
         } finally {
-            readLock.unlock();
+            json.release();
         }
     }
     
     /**
-     * Limpia todas las detecciones
+     * Escribe las detecciones como array JSON
+     */
+    static JsonWriter writeJSON(JsonWriter json, List<Detection> detections) {
+        json.beginArray();
+        for (Detection detection : detections) {
+            detection.writeJSON(json);
+        }
+        return json.endArray();
+    }
+    
+    /**
+     * Obtiene el número de detecciones retenidas en el buffer
+     */
+    public int getSize() {
+        long last = lastSequence.get();
+        long first = Math.max(Math.max(1, last - capacity + 1), clearedSequence + 1);
+        return (int) Math.max(0, last - first + 1);
+    }
+    
+    /**
+     * Última secuencia asignada (0 si aún no hay detecciones)
+     */
+    public long getLastSequence() {
+        return lastSequence.get();
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Descarta las detecciones actuales; las secuencias siguen creciendo
      */
     public void clear() {
-        writeLock.lock();
-        try {
-            detections.clear();
-            System.out.println("[LOG] Log limpiado");
-        } finally {
-            writeLock.unlock();
+        clearedSequence = lastSequence.get();
+        System.out.println("[LOG] Log limpiado");
+    }
+    
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+    
+    /**
+     * Resultado de una lectura por cursor: las detecciones leídas, la última
+     * secuencia cubierta (cursor para la siguiente lectura) y cuántos registros
+     * se perdieron por sobrescritura
+     */
+    public static class ReadResult {
+        private final List<Detection> detections;
+        private final long nextSequence;
+        private final long gap;
+        
+        ReadResult(List<Detection> detections, long nextSequence, long gap) {
+            this.detections = detections;
+            this.nextSequence = nextSequence;
+            this.gap = gap;
+        }
+        
+        public List<Detection> getDetections() { return detections; }
+        public long getNextSequence() { return nextSequence; }
+        public long getGap() { return gap; }
+        
+        /**
+         * {"next":N,"gap":G,"items":[...]}
+         */
+        public JsonWriter writeJSON(JsonWriter json) {
+            json.beginObject()
+                .name("next").value(nextSequence)
+                .name("gap").value(gap)
+                .name("items");
+            return DetectionLog.writeJSON(json, detections).endObject();
         }
     }
 }
@@ -0,0 +1,234 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Intérprete de las respuestas del detector (detect.py), una instancia por
+ * cámara. Formato: línea opcional MODEL:<versión> y una línea por objeto
+ * OBJETO,CONFIDENCE,X,Y,W,H (caja como centro y tamaño; puede faltar).
+ * Ejemplo: CARRO,0.95,100,200,50,30
+ *
+ * Las líneas y los campos se recorren sobre el propio String, sin split ni
+ * subcadenas: los números se leen directamente del rango de caracteres y los
+ * nombres de objeto se reutilizan (son pocas clases distintas). Las líneas
+ * mal formadas se ignoran con un aviso.
+ */
+public class DetectionParser {
+    public static final String MODEL_PREFIX = "MODEL:";
+    
+    // Registrar detecciones con confianza mayor a 2% (para pruebas)
+    // En producción, usar 0.25 o más
+    private static final double MIN_CONFIDENCE = 0.02;
+    private static final int MAX_FIELDS = 6;
+    private static final int MAX_OBJECT_NAMES = 256;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    
+    private final String cameraId;
+    private final int[] fieldStart;
+    private final int[] fieldEnd;
+    private final List<String> objectNames; // Nombres ya vistos, para no crear un String por detección
+    private volatile String modelVersion;
+    private volatile long malformedLines;
+    
+    public DetectionParser(String cameraId) {
+        this.cameraId = cameraId;
+        this.fieldStart = new int[MAX_FIELDS];
+        this.fieldEnd = new int[MAX_FIELDS];
+        this.objectNames = new ArrayList<>();
+    }
+    
+    /**
+     * Convierte la respuesta en detecciones del frame. Todas comparten la
+     * imagen y los metadatos del frame (captura en nanosegundos desde epoch,
+     * número de frame, latencia del detector y versión del modelo).
+     */
+    public List<Detection> parse(String result, String imageName, long frameSequence,
+                                 long captureEpochNanos, long latencyMicros) {
+        List<Detection> detections = new ArrayList<>();
+        Detection.FrameInfo frame = null;
+        int length = result.length();
+        int next = 0;
+        
+        while (next < length) {
+            int lineEnd = result.indexOf('\n', next);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            
+            int start = skipSpaces(result, next, lineEnd);
+            int end = trimSpaces(result, start, lineEnd);
+            next = lineEnd + 1;
+            
+            if (start == end) {
+                continue;
+            }
+            
+            if (result.startsWith(MODEL_PREFIX, start)) {
+                readModelVersion(result, start + MODEL_PREFIX.length(), end);
+                continue;
+            }
+            
+            int fields = splitFields(result, start, end);
+            if (fields < 2) {
+                continue; // NO_DETECTIONS
+            }
+            
+            try {
+                double confidence = parseDecimal(result, fieldStart[1], fieldEnd[1]);
+                
+                if (confidence < MIN_CONFIDENCE) {
+                    continue;
+                }
+                
+                if (frame == null) {
+                    frame = new Detection.FrameInfo(captureEpochNanos, frameSequence, latencyMicros, modelVersion);
+                }
+                
+                String objeto = objectName(result, fieldStart[0], fieldEnd[0]);
+                
+                // Caja del objeto (centro y tamaño), si viene
+                if (fields >= 6) {
+                    detections.add(new Detection(cameraId, objeto, imageName, confidence, frame,
+                        parseInt(result, 2), parseInt(result, 3), parseInt(result, 4), parseInt(result, 5)));
+                } else {
+                    detections.add(new Detection(cameraId, objeto, imageName, confidence, frame, 0, 0, 0, 0));
+                }
+            } catch (NumberFormatException e) {
+                malformedLines++;
+                System.err.println("[" + cameraId + "] Línea de detección ignorada: " + result.substring(start, end));
+            }
+        }
+        
+        return detections;
+    }
+    
+    /**
+     * Última versión de modelo informada por el detector (null si no informa)
+     */
+    public String getModelVersion() {
+        return modelVersion;
+    }
+    
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+    
+    private void readModelVersion(String text, int start, int end) {
+        String current = modelVersion;
+        if (current == null || current.length() != end - start || !text.startsWith(current, start)) {
+            modelVersion = text.substring(start, end);
+        }
+    }
+    
+    /**
+     * Separa los campos de la línea [start, end) por comas (recortados) en
+     * fieldStart/fieldEnd; devuelve cuántos hay (como mucho MAX_FIELDS)
+     */
+    private int splitFields(String text, int start, int end) {
+        int count = 0;
+        int fieldBegin = start;
+        
+        while (count < MAX_FIELDS) {
+            int comma = text.indexOf(',', fieldBegin);
+            if (comma < 0 || comma > end) {
+                comma = end;
+            }
+            
+            int from = skipSpaces(text, fieldBegin, comma);
+            fieldStart[count] = from;
+            fieldEnd[count] = trimSpaces(text, from, comma);
+            count++;
+            
+            if (comma == end) {
+                break;
+            }
+            fieldBegin = comma + 1;
+        }
+        
+        // Una línea sin comas no es una detección
+        return count == 1 ? 0 : count;
+    }
+    
+    private int parseInt(String text, int field) {
+        return Integer.parseInt(text, fieldStart[field], fieldEnd[field], 10);
+    }
+    
+    /**
+     * Nombre del objeto; reutiliza el String si la clase ya se había visto
+     */
+    private String objectName(String text, int start, int end) {
+        int length = end - start;
+        for (String name : objectNames) {
+            if (name.length() == length && text.startsWith(name, start)) {
+                return name;
+            }
+        }
+        
+        String name = text.substring(start, end);
+        if (objectNames.size() < MAX_OBJECT_NAMES) {
+            objectNames.add(name);
+        }
+        return name;
+    }
+    
+    /**
+     * Número decimal sin exponente ([-]dígitos[.dígitos], como lo escribe
+     * detect.py) leído del rango; cualquier otro formato pasa por
+     * Double.parseDouble
+     */
+    static double parseDecimal(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean point = false;
+        
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == 15) {
+                    return Double.parseDouble(text.subSequence(start, end).toString());
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (point) {
+                    decimals++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return Double.parseDouble(text.subSequence(start, end).toString());
+            }
+        }
+        
+        if (digits == 0) {
+            throw new NumberFormatException("Número vacío: \"" + text.subSequence(start, end) + "\"");
+        }
+        
+        // División exacta por una potencia de 10 representable (decimals <= 15)
+        double value = mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+    
+    private static int skipSpaces(String text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+    
+    private static int trimSpaces(String text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,379 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool de procesos de detección persistentes.
+ * Cada worker es un proceso Python (detect.py --server) que carga el modelo
+ * YOLO una sola vez y atiende peticiones enmarcadas por stdin/stdout.
+ * Los workers caídos se reinician automáticamente. Si un worker no responde
+ * en RESPONSE_TIMEOUT_SECONDS se mata su proceso (la lectura bloqueada
+ * termina con error), la petición falla y el worker se reinicia.
+ */
+public class DetectorPool {
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+    private static final long RESPONSE_TIMEOUT_SECONDS = 30;
+    
+    // Tipos de petición del protocolo (ver detect.py)
+    private static final byte REQUEST_PATH = 'P';
+    private static final byte REQUEST_RAW = 'R';
+    private static final byte REQUEST_BATCH = 'B';
+    private static final int RAW_HEADER_BYTES = 12;
+    
+    private final String pythonScriptPath;
+    private final int size;
+    private final List<DetectorWorker> workers;
+    private final BlockingQueue<DetectorWorker> idleWorkers;
+    private final AtomicInteger queueDepth; // Peticiones esperando un worker libre
+    private final AtomicLong requestCount;
+    private final AtomicLong batchCount;
+    private final AtomicLong restartCount;
+    private final AtomicLong timeoutCount;
+    private ScheduledExecutorService watchdog; // Mata los workers que no responden a tiempo
+    private volatile boolean running;
+    
+    public DetectorPool(String pythonScriptPath, int size) {
+        this.pythonScriptPath = pythonScriptPath;
+        this.size = Math.max(1, size);
+        this.workers = new ArrayList<>();
+        this.idleWorkers = new LinkedBlockingQueue<>();
+        this.queueDepth = new AtomicInteger();
+        this.requestCount = new AtomicLong();
+        this.batchCount = new AtomicLong();
+        this.restartCount = new AtomicLong();
+        this.timeoutCount = new AtomicLong();
+        this.running = false;
+    }
+    
+    /**
+     * Arranca todos los workers del pool
+     */
+    public synchronized void start() {
+        running = true;
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Detector-Watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        for (int i = 0; i < size; i++) {
+            DetectorWorker worker = new DetectorWorker(i);
+            try {
+                worker.start();
+            } catch (IOException e) {
+                // Se reintentará al primer uso
+                System.err.println("[POOL] ERROR iniciando worker " + i + ": " + e.getMessage());
+            }
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+        
+        System.out.println("[POOL] Pool de detección iniciado con " + size + " workers");
+    }
+    
+    /**
+     * Ejecuta la detección sobre una imagen en disco.
+     * Devuelve la salida del detector (CLASE,CONF,X,Y,W,H por línea) o null si falla.
+     */
+    public String detect(String imagePath) {
+        return detect(Request.path(imagePath));
+    }
+    
+    /**
+     * Ejecuta la detección sobre un frame BGR en memoria (sin JPEG ni disco).
+     * Los bytes se escriben directamente en el pipe del worker.
+     */
+    public String detectRaw(int rows, int cols, int channels, byte[] pixels, int length) {
+        return detect(Request.raw(rows, cols, channels, pixels, length));
+    }
+    
+    public String detect(Request request) {
+        String[] responses = execute(request, 1);
+        return responses != null ? responses[0] : null;
+    }
+    
+    /**
+     * Ejecuta varias peticiones en una sola llamada al modelo (un lote).
+     * Devuelve una respuesta por petición, en el mismo orden, o null si falla.
+     */
+    public String[] detectBatch(List<Request> requests) {
+        if (requests.size() == 1) {
+            String response = detect(requests.get(0));
+            return response != null ? new String[] { response } : null;
+        }
+        
+        batchCount.incrementAndGet();
+        return execute(Request.batch(requests), requests.size());
+    }
+    
+    /**
+     * Envía una petición a un worker libre y espera sus respuestas
+     */
+    private String[] execute(Request request, int expectedResponses) {
+        if (!running) {
+            return null;
+        }
+        
+        DetectorWorker worker;
+        queueDepth.incrementAndGet();
+        try {
+            worker = idleWorkers.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            queueDepth.decrementAndGet();
+        }
+        
+        if (worker == null) {
+            System.err.println("[POOL] Timeout esperando un worker libre");
+            return null;
+        }
+        
+        try {
+            if (!worker.isAlive()) {
+                restartWorker(worker);
+            }
+            
+            requestCount.addAndGet(expectedResponses);
+            return worker.request(request, expectedResponses);
+            
+        } catch (IOException e) {
+            System.err.println("[POOL] Worker " + worker.id + " falló: " + e.getMessage());
+            restartWorker(worker);
+            return null;
+        } finally {
+            if (running) {
+                idleWorkers.offer(worker);
+            }
+        }
+    }
+    
+    private void restartWorker(DetectorWorker worker) {
+        worker.destroy();
+        
+        if (!running) {
+            return;
+        }
+        
+        try {
+            worker.start();
+            restartCount.incrementAndGet();
+            System.out.println("[POOL] Worker " + worker.id + " reiniciado");
+        } catch (IOException e) {
+            System.err.println("[POOL] ERROR reiniciando worker " + worker.id + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Número de peticiones esperando un worker libre
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+    
+    public int getIdleWorkers() {
+        return idleWorkers.size();
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+    
+    public long getRestartCount() {
+        return restartCount.get();
+    }
+    
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+    
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+    
+    /**
+     * Resumen del estado del pool para el log del servidor
+     */
+    public String getStatus() {
+        return String.format("workers=%d libres=%d cola=%d peticiones=%d lotes=%d reinicios=%d timeouts=%d",
+            size, getIdleWorkers(), getQueueDepth(), getRequestCount(), getBatchCount(), getRestartCount(),
+            getTimeoutCount());
+    }
+    
+    /**
+     * Detiene todos los workers
+     */
+    public synchronized void stop() {
+        running = false;
+        idleWorkers.clear();
+        
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        
+        for (DetectorWorker worker : workers) {
+            worker.destroy();
+        }
+        
+        System.out.println("[POOL] Pool de detección detenido");
+    }
+    
+    /**
+     * Petición de detección enmarcada: [1 byte tipo][datos].
+     * Imagen en disco ('P'), frame BGR en memoria ('R') o lote de peticiones ('B').
+     */
+    public abstract static class Request {
+        abstract int length();
+        
+        abstract void writeTo(DataOutputStream out) throws IOException;
+        
+        public static Request path(String imagePath) {
+            byte[] path = imagePath.getBytes(StandardCharsets.UTF_8);
+            
+            return new Request() {
+                int length() { return 1 + path.length; }
+                
+                void writeTo(DataOutputStream out) throws IOException {
+                    out.writeByte(REQUEST_PATH);
+                    out.write(path);
+                }
+            };
+        }
+        
+        public static Request raw(int rows, int cols, int channels, byte[] pixels, int length) {
+            return new Request() {
+                int length() { return 1 + RAW_HEADER_BYTES + length; }
+                
+                void writeTo(DataOutputStream out) throws IOException {
+                    out.writeByte(REQUEST_RAW);
+                    out.writeInt(rows);
+                    out.writeInt(cols);
+                    out.writeInt(channels);
+                    out.write(pixels, 0, length);
+                }
+            };
+        }
+        
+        /**
+         * Lote: [tipo 'B'][int32 cantidad] y por cada petición [int32 longitud][petición]
+         */
+        static Request batch(List<Request> requests) {
+            return new Request() {
+                int length() {
+                    int length = 1 + 4;
+                    for (Request request : requests) {
+                        length += 4 + request.length();
+                    }
+                    return length;
+                }
+                
+                void writeTo(DataOutputStream out) throws IOException {
+                    out.writeByte(REQUEST_BATCH);
+                    out.writeInt(requests.size());
+                    for (Request request : requests) {
+                        out.writeInt(request.length());
+                        request.writeTo(out);
+                    }
+                }
+            };
+        }
+    }
+    
+    /**
+     * Proceso Python persistente con su canal de petición/respuesta
+     */
+    private class DetectorWorker {
+        private final int id;
+        private Process process;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private volatile boolean timedOut; // El watchdog mató el proceso durante la petición
+        
+        DetectorWorker(int id) {
+            this.id = id;
+        }
+        
+        void start() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder("python", pythonScriptPath, "--server");
+            // stdout es el canal del protocolo; los mensajes del script salen por stderr
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            
+            process = pb.start();
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+        
+        boolean isAlive() {
+            return process != null && process.isAlive();
+        }
+        
+        /**
+         * Petición: [int32 longitud][tipo][datos] - Respuesta: [int32 longitud][texto]
+         * (un lote produce una respuesta por cada petición).
+         * Si no termina en RESPONSE_TIMEOUT_SECONDS, el watchdog mata el proceso
+         * y la petición falla con IOException (el pool reinicia el worker).
+         */
+        String[] request(Request request, int expectedResponses) throws IOException {
+            Process current = process;
+            if (current == null) {
+                throw new IOException("Proceso no iniciado");
+            }
+            
+            timedOut = false;
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+                timedOut = true;
+                current.destroyForcibly();
+            }, RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            
+            try {
+                out.writeInt(request.length());
+                request.writeTo(out);
+                out.flush();
+                
+                String[] responses = new String[expectedResponses];
+                
+                for (int i = 0; i < expectedResponses; i++) {
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Longitud de respuesta inválida: " + length);
+                    }
+                    
+                    byte[] response = new byte[length];
+                    in.readFully(response);
+                    responses[i] = new String(response, StandardCharsets.UTF_8).trim();
+                }
+                
+                return responses;
+            } catch (IOException e) {
+                if (timedOut) {
+                    timeoutCount.incrementAndGet();
+                    throw new IOException("Sin respuesta en " + RESPONSE_TIMEOUT_SECONDS + " s", e);
+                }
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+        
+        void destroy() {
+            if (process != null) {
+                process.destroy();
+                process = null;
+            }
+        }
+    }
+}
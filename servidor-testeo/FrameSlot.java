@@ -0,0 +1,167 @@
+import org.opencv.core.Mat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffer de un solo frame con semántica "descartar el más antiguo".
+ * El hilo de captura publica siempre el último frame leído y el hilo de
+ * inferencia toma el más reciente; los frames no consumidos se liberan
+ * y se cuentan como descartados.
+ */
+public class FrameSlot {
+    // Desfase entre System.nanoTime() y el reloj de pared, para fechar frames en nanosegundos desde epoch
+    private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+    
+    private final AtomicReference<CapturedFrame> slot;
+    private final ReentrantLock lock;
+    private final Condition frameAvailable;
+    
+    // Métricas
+    private final AtomicLong publishedFrames;
+    private final AtomicLong droppedFrames;
+    private final AtomicLong consumedFrames;
+    private final AtomicLong totalAgeMillis;
+    private volatile long lastAgeMillis;
+    private volatile long maxAgeMillis;
+    
+    public FrameSlot() {
+        this.slot = new AtomicReference<>();
+        this.lock = new ReentrantLock();
+        this.frameAvailable = lock.newCondition();
+        this.publishedFrames = new AtomicLong();
+        this.droppedFrames = new AtomicLong();
+        this.consumedFrames = new AtomicLong();
+        this.totalAgeMillis = new AtomicLong();
+    }
+    
+    /**
+     * Publica un frame recién capturado. El slot pasa a ser dueño del Mat;
+     * si había un frame sin consumir, se libera y se cuenta como descartado.
+     */
+    public void publish(Mat frame, long sequence) {
+        CapturedFrame previous = slot.getAndSet(new CapturedFrame(frame, sequence, System.nanoTime()));
+        publishedFrames.incrementAndGet();
+        
+        if (previous != null) {
+            previous.release();
+            droppedFrames.incrementAndGet();
+        }
+        
+        lock.lock();
+        try {
+            frameAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Toma el frame más reciente, esperando como máximo timeoutMillis.
+     * Devuelve null si no llegó ningún frame. El llamador debe liberar el frame.
+     */
+    public CapturedFrame take(long timeoutMillis) throws InterruptedException {
+        CapturedFrame frame = slot.getAndSet(null);
+        
+        if (frame == null) {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            
+            lock.lock();
+            try {
+                while ((frame = slot.getAndSet(null)) == null) {
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    remaining = frameAvailable.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Edad del frame en el momento de la inferencia
+        long age = frame.getAgeMillis();
+        lastAgeMillis = age;
+        if (age > maxAgeMillis) {
+            maxAgeMillis = age;
+        }
+        totalAgeMillis.addAndGet(age);
+        consumedFrames.incrementAndGet();
+        
+        return frame;
+    }
+    
+    /**
+     * Libera el frame pendiente (si lo hay)
+     */
+    public void clear() {
+        CapturedFrame previous = slot.getAndSet(null);
+        if (previous != null) {
+            previous.release();
+        }
+    }
+    
+    public long getPublishedFrames() {
+        return publishedFrames.get();
+    }
+    
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+    
+    public long getConsumedFrames() {
+        return consumedFrames.get();
+    }
+    
+    public long getLastAgeMillis() {
+        return lastAgeMillis;
+    }
+    
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+    
+    public long getAverageAgeMillis() {
+        long consumed = consumedFrames.get();
+        return consumed == 0 ? 0 : totalAgeMillis.get() / consumed;
+    }
+    
+    /**
+     * Convierte un instante de System.nanoTime() a nanosegundos desde epoch
+     * (monótono dentro del proceso, a diferencia de currentTimeMillis)
+     */
+    public static long toEpochNanos(long nanoTime) {
+        return nanoTime + EPOCH_OFFSET_NANOS;
+    }
+    
+    /**
+     * Frame capturado junto con su número de secuencia y momento de captura
+     */
+    public static class CapturedFrame {
+        private final Mat frame;
+        private final long sequence;
+        private final long captureNanos;
+        
+        CapturedFrame(Mat frame, long sequence, long captureNanos) {
+            this.frame = frame;
+            this.sequence = sequence;
+            this.captureNanos = captureNanos;
+        }
+        
+        public Mat getFrame() { return frame; }
+        public long getSequence() { return sequence; }
+        public long getCaptureNanos() { return captureNanos; }
+        public long getCaptureEpochNanos() { return toEpochNanos(captureNanos); }
+        
+        public long getAgeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - captureNanos);
+        }
+        
+        public void release() {
+            frame.release();
+        }
+    }
+}
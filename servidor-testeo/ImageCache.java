@@ -0,0 +1,190 @@
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché en memoria de las imágenes de detección más recientes.
+ * Las cámaras la llenan al guardar cada imagen y el servidor de imágenes la
+ * consulta antes de ir a disco. Los bytes se guardan en buffers directos
+ * (fuera del heap) que se escriben tal cual en el socket. La expulsión es
+ * LRU con un presupuesto total en bytes. Las imágenes leídas del disco solo
+ * se admiten a partir de la segunda petición (admitOnMiss), para que las que
+ * se piden una sola vez no expulsen a las recientes.
+ */
+public class ImageCache {
+    private static final int MAX_MISSED_ONCE = 4096;
+    
+    private final long maxBytes;
+    private final long maxEntryBytes; // Las imágenes más grandes no se cachean
+    private final LinkedHashMap<String, ByteBuffer> entries; // En orden de acceso (LRU)
+    private final LinkedHashMap<String, Boolean> missedOnce; // Pedidas una vez sin estar en caché
+    private final ReentrantLock lock;
+    private long currentBytes;
+    
+    // Métricas
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    
+    public ImageCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxEntryBytes = this.maxBytes / 4;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true);
+        this.missedOnce = new LinkedHashMap<String, Boolean>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_MISSED_ONCE;
+            }
+        };
+        this.lock = new ReentrantLock();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+    
+    /**
+     * Guarda una copia de los bytes de la imagen en un buffer directo
+     */
+    public void put(String name, byte[] bytes) {
+        if (bytes.length > maxEntryBytes) {
+            return;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        put(name, buffer);
+    }
+    
+    /**
+     * Guarda un buffer ya leído (posición 0, límite = tamaño de la imagen).
+     * La caché pasa a ser dueña del buffer.
+     */
+    public void put(String name, ByteBuffer buffer) {
+        int size = buffer.remaining();
+        
+        if (size > maxEntryBytes) {
+            return;
+        }
+        
+        lock.lock();
+        try {
+            // slice(): la capacidad de la entrada es exactamente el tamaño de la imagen
+            ByteBuffer previous = entries.put(name, buffer.slice().asReadOnlyBuffer());
+            if (previous != null) {
+                currentBytes -= previous.capacity();
+            }
+            currentBytes += size;
+            
+            // Expulsar las menos usadas recientemente hasta volver al presupuesto
+            Iterator<Map.Entry<String, ByteBuffer>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, ByteBuffer> eldest = it.next();
+                if (eldest.getKey().equals(name)) {
+                    continue;
+                }
+                currentBytes -= eldest.getValue().capacity();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Devuelve una vista de solo lectura de la imagen (con posición propia)
+     * o null si no está en caché
+     */
+    public ByteBuffer get(String name) {
+        ByteBuffer buffer;
+        
+        lock.lock();
+        try {
+            buffer = entries.get(name);
+        } finally {
+            lock.unlock();
+        }
+        
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        
+        hits.incrementAndGet();
+        return buffer.duplicate();
+    }
+    
+    /**
+     * Decide si una imagen que no estaba en caché se lee del disco para
+     * guardarla: la primera vez solo se apunta y devuelve false (se sirve
+     * directamente del archivo); si se vuelve a pedir, devuelve true
+     */
+    public boolean admitOnMiss(String name) {
+        lock.lock();
+        try {
+            return missedOnce.remove(name) != null || missedOnce.put(name, Boolean.TRUE) != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Indica si una imagen de este tamaño se puede cachear
+     */
+    public boolean accepts(long size) {
+        return size <= maxEntryBytes;
+    }
+    
+    /**
+     * Elimina una imagen (p. ej. si se borra del disco)
+     */
+    public void invalidate(String name) {
+        lock.lock();
+        try {
+            ByteBuffer removed = entries.remove(name);
+            if (removed != null) {
+                currentBytes -= removed.capacity();
+            }
+            missedOnce.remove(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    /**
+     * Resumen del estado de la caché para el log del servidor
+     */
+    public String getStatus() {
+        int count;
+        long bytes;
+        
+        lock.lock();
+        try {
+            count = entries.size();
+            bytes = currentBytes;
+        } finally {
+            lock.unlock();
+        }
+        
+        long total = hits.get() + misses.get();
+        return String.format("imágenes=%d bytes=%d/%d aciertos=%d fallos=%d tasa=%.1f%% expulsiones=%d",
+            count, bytes, maxBytes, hits.get(), misses.get(),
+            total == 0 ? 0.0 : 100.0 * hits.get() / total, evictions.get());
+    }
+}
@@ -0,0 +1,406 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice en memoria de las imágenes en disco.
+ * Lo construye el ImageStore al arrancar (recorriendo el directorio una sola
+ * vez) y lo mantiene al día al escribir y al borrar imágenes, así que
+ * LIST_IMAGES no toca el disco. Igual que DetectionIndex, el índice primario
+ * está ordenado por tiempo y hay uno secundario por cámara; cada consulta
+ * recorre solo el rango de tiempo del índice elegido a partir de la posición
+ * de la página, de modo que el coste es proporcional al tamaño de la página
+ * (más el desplazamiento, si se usa offset en lugar del cursor after).
+ */
+public class ImageIndex {
+    public static final int MAX_QUERY_LIMIT = 1000;
+    
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    private static final long DAY_MARGIN_MILLIS = 60_000; // Imágenes escritas justo después de medianoche
+    
+    private final ConcurrentSkipListMap<Key, Entry> byTime;
+    private final ConcurrentHashMap<String, Entry> byName;
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Key, Entry>> byCamera;
+    private final AtomicInteger size;
+    private final AtomicLong bytes;
+    
+    public ImageIndex() {
+        this.byTime = new ConcurrentSkipListMap<>();
+        this.byName = new ConcurrentHashMap<>();
+        this.byCamera = new ConcurrentHashMap<>();
+        this.size = new AtomicInteger();
+        this.bytes = new AtomicLong();
+    }
+    
+    /**
+     * Añade una imagen (si ya estaba indexada con ese nombre, se ignora)
+     */
+    public void add(Entry entry) {
+        if (byName.putIfAbsent(entry.name, entry) != null) {
+            return;
+        }
+        
+        byTime.put(entry.key, entry);
+        if (!entry.camera.isEmpty()) {
+            byCamera.computeIfAbsent(entry.camera, k -> new ConcurrentSkipListMap<>()).put(entry.key, entry);
+        }
+        size.incrementAndGet();
+        bytes.addAndGet(entry.size);
+    }
+    
+    /**
+     * Quita una imagen (con su miniatura); devuelve false si ya no estaba
+     */
+    public boolean remove(Entry entry) {
+        synchronized (entry) {
+            if (!byName.remove(entry.name, entry)) {
+                return false;
+            }
+            bytes.addAndGet(-(entry.size + entry.thumbnailSize));
+        }
+        
+        byTime.remove(entry.key);
+        if (!entry.camera.isEmpty()) {
+            ConcurrentSkipListMap<Key, Entry> camera = byCamera.get(entry.camera);
+            if (camera != null) {
+                camera.remove(entry.key);
+            }
+        }
+        size.decrementAndGet();
+        return true;
+    }
+    
+    /**
+     * Suma la miniatura de una imagen a sus bytes en disco. Devuelve false si
+     * la imagen ya no está en el índice (la retención la borró antes de que
+     * se escribiera la miniatura): quien la escribió debe borrarla.
+     */
+    public boolean addThumbnail(String name, long thumbnailBytes) {
+        Entry entry = byName.get(name);
+        if (entry == null) {
+            return false;
+        }
+        
+        synchronized (entry) {
+            if (byName.get(name) != entry) {
+                return false;
+            }
+            entry.thumbnailSize += thumbnailBytes;
+            bytes.addAndGet(thumbnailBytes);
+            return true;
+        }
+    }
+    
+    public Entry get(String name) {
+        return byName.get(name);
+    }
+    
+    /**
+     * Imagen más antigua, o null si el índice está vacío
+     */
+    public Entry oldest() {
+        Map.Entry<Key, Entry> first = byTime.firstEntry();
+        return first != null ? first.getValue() : null;
+    }
+    
+    /**
+     * Ejecuta la consulta sobre el índice por cámara o el general
+     */
+    public QueryResult query(Query query) {
+        NavigableMap<Key, Entry> candidates = query.camera != null ? byCamera.get(query.camera) : byTime;
+        
+        if (candidates == null) {
+            return new QueryResult(new ArrayList<>(), query.offset, false);
+        }
+        
+        // Rango de tiempo [from, to] sobre el índice ordenado
+        NavigableMap<Key, Entry> range = candidates.subMap(
+            new Key(query.from, ""), true,
+            new Key(query.to, "\uffff"), true);
+        
+        if (query.descending) {
+            range = range.descendingMap();
+        }
+        
+        // Cursor: continuar justo después de la última imagen de la página anterior
+        if (query.after != null) {
+            Entry last = byName.get(query.after);
+            if (last == null) {
+                throw new IllegalArgumentException("Cursor desconocido (la imagen ya no existe): " + query.after);
+            }
+            range = range.tailMap(last.key, false);
+        }
+        
+        List<Entry> items = new ArrayList<>(Math.min(query.limit, 64));
+        int skipped = 0;
+        boolean more = false;
+        
+        for (Entry entry : range.values()) {
+            if (query.prefix != null && !entry.name.startsWith(query.prefix)) {
+                continue;
+            }
+            
+            if (skipped < query.offset) {
+                skipped++;
+                continue;
+            }
+            
+            if (items.size() == query.limit) {
+                more = true;
+                break;
+            }
+            
+            items.add(entry);
+        }
+        
+        return new QueryResult(items, query.offset, more);
+    }
+    
+    public int getSize() {
+        return size.get();
+    }
+    
+    /**
+     * Bytes en disco de las imágenes y sus miniaturas
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+    
+    /**
+     * Resumen del estado del índice para el log del servidor
+     */
+    public String getStatus() {
+        return String.format("imágenes=%d (%d MB) cámaras=%d", size.get(), bytes.get() / (1024 * 1024), byCamera.size());
+    }
+    
+    /**
+     * Imagen en disco: nombre, cámara (del nombre; vacía en los nombres
+     * antiguos), tamaño, instante y las detecciones que la referencian.
+     * Para la retención también cuenta el tamaño de su miniatura.
+     */
+    public static final class Entry {
+        private final String name;
+        private final String camera;
+        private final long size;
+        private final long timestamp;
+        private final Key key;
+        private long thumbnailSize; // Protegido por el monitor de la entrada
+        final List<Detection> detections;
+        
+        Entry(String name, long size, long timestamp, List<Detection> detections) {
+            this.name = name;
+            this.camera = ImageStore.cameraOf(name);
+            this.size = size;
+            this.timestamp = timestamp;
+            this.key = new Key(timestamp, name);
+            this.detections = detections;
+        }
+        
+        public String getName() { return name; }
+        public String getCamera() { return camera; }
+        public long getSize() { return size; }
+        public long getTimestamp() { return timestamp; }
+        
+        /**
+         * {"imagen":"..","camara":"..","bytes":N,"timestamp":ms,"fecha":".."}
+         */
+        public JsonWriter writeJSON(JsonWriter json) {
+            return json.beginObject()
+                .name("imagen").value(name)
+                .name("camara").value(camera)
+                .name("bytes").value(size)
+                .name("timestamp").value(timestamp)
+                .name("fecha").value(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())
+                    .format(DATE_FORMAT))
+                .endObject();
+        }
+    }
+    
+    /**
+     * Clave de los índices: instante y nombre (desempata imágenes del mismo milisegundo)
+     */
+    private static final class Key implements Comparable<Key> {
+        final long timestamp;
+        final String name;
+        
+        Key(long timestamp, String name) {
+            this.timestamp = timestamp;
+            this.name = name;
+        }
+        
+        @Override
+        public int compareTo(Key other) {
+            int byTimestamp = Long.compare(timestamp, other.timestamp);
+            return byTimestamp != 0 ? byTimestamp : name.compareTo(other.name);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && compareTo((Key) o) == 0;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(timestamp) * 31 + name.hashCode();
+        }
+    }
+    
+    /**
+     * Consulta: prefijo del nombre, cámara, rango de tiempo, límite y página.
+     * Formato de texto: prefix=20251116_CAM3&camera=CAM3&from=2025-11-16T02:00&to=2025-11-16T04:00&limit=100&offset=0&after=<imagen>&order=asc
+     * Las fechas aceptan milisegundos desde epoch o fecha/hora local ISO.
+     * after es la última imagen de la página anterior (cursor); a diferencia
+     * de offset, no recorre las páginas ya leídas. Un prefijo que empieza por
+     * el día (yyyyMMdd) limita además el rango de tiempo a ese día.
+     */
+    public static class Query {
+        String prefix;
+        String camera;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        String after;
+        int limit = 100;
+        int offset;
+        boolean descending = true; // Por defecto, lo más reciente primero
+        
+        public static Query parse(String text) {
+            Query query = new Query();
+            
+            for (String pair : text.split("&")) {
+                if (pair.isBlank()) {
+                    continue;
+                }
+                
+                int eq = pair.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Parámetro sin valor: " + pair);
+                }
+                
+                String key = pair.substring(0, eq).trim();
+                String value = pair.substring(eq + 1).trim();
+                
+                switch (key.toLowerCase(Locale.ROOT)) {
+                    case "prefix":
+                        query.prefix = value.isEmpty() ? null : value;
+                        break;
+                    case "camera":
+                        query.camera = ImageStore.sanitize(value);
+                        break;
+                    case "from":
+                        query.from = parseTime(value);
+                        break;
+                    case "to":
+                        query.to = parseTime(value);
+                        break;
+                    case "after":
+                        query.after = value;
+                        break;
+                    case "limit":
+                        query.limit = Math.max(1, Math.min(Integer.parseInt(value), MAX_QUERY_LIMIT));
+                        break;
+                    case "offset":
+                        query.offset = Math.max(0, Integer.parseInt(value));
+                        break;
+                    case "order":
+                        query.descending = !value.equalsIgnoreCase("asc");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Parámetro desconocido: " + key);
+                }
+            }
+            
+            query.applyDayPrefix();
+            
+            if (query.from > query.to) {
+                throw new IllegalArgumentException("Rango de tiempo vacío");
+            }
+            return query;
+        }
+        
+        /**
+         * Los nombres de ImageStore.newFileName empiezan por el día: un
+         * prefijo con día solo puede coincidir con imágenes de ese día (con
+         * margen para las escritas justo después de medianoche)
+         */
+        private void applyDayPrefix() {
+            if (prefix == null || prefix.length() < 8 || !ImageStore.isDay(prefix)) {
+                return;
+            }
+            
+            LocalDate day;
+            try {
+                day = LocalDate.parse(prefix.substring(0, 8), DateTimeFormatter.BASIC_ISO_DATE);
+            } catch (DateTimeParseException e) {
+                return; // No es una fecha: queda solo como filtro
+            }
+            
+            ZoneId zone = ZoneId.systemDefault();
+            long dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli() - DAY_MARGIN_MILLIS;
+            long dayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() + DAY_MARGIN_MILLIS;
+            from = Math.max(from, dayStart);
+            to = Math.min(to, dayEnd);
+        }
+        
+        private static long parseTime(String value) {
+            if (value.matches("\\d+")) {
+                return Long.parseLong(value);
+            }
+            
+            try {
+                return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Fecha inválida: " + value);
+            }
+        }
+    }
+    
+    /**
+     * Página de resultados de una consulta
+     */
+    public static class QueryResult {
+        private final List<Entry> images;
+        private final int offset;
+        private final boolean more;
+        
+        QueryResult(List<Entry> images, int offset, boolean more) {
+            this.images = images;
+            this.offset = offset;
+            this.more = more;
+        }
+        
+        public List<Entry> getImages() { return images; }
+        public int getOffset() { return offset; }
+        public boolean hasMore() { return more; }
+        
+        /**
+         * {"offset":O,"count":C,"more":true|false,"next":"<imagen>"|null,"items":[...]}
+         * next es el cursor (after) para pedir la página siguiente
+         */
+        public JsonWriter writeJSON(JsonWriter json) {
+            json.beginObject()
+                .name("offset").value(offset)
+                .name("count").value(images.size())
+                .name("more").value(more)
+                .name("next").value(more ? images.get(images.size() - 1).getName() : null)
+                .name("items").beginArray();
+            
+            for (Entry image : images) {
+                image.writeJSON(json);
+            }
+            return json.endArray().endObject();
+        }
+    }
+}
@@ -1,184 +1,346 @@
 import java.io.*;
-import java.net.*;
-import java.nio.file.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Servidor de Imágenes en puerto 9002
- * Sirve las imágenes de detecciones a los clientes
+ * Sirve las imágenes de detecciones a los clientes. Los bytes de las imágenes
+ * se copian del archivo al socket con FileChannel.transferTo (sendfile), sin
+ * pasar por el heap de Java. Las imágenes recientes se sirven desde la caché
+ * en memoria (ImageCache) sin tocar el disco; una imagen que no está en ella
+ * solo se lee a memoria y se cachea si se pide por segunda vez. Las
+ * miniaturas que generan las cámaras (ThumbnailGenerator) se piden con
+ * GET_THUMB. Los clientes piden
+ * las imágenes solo por nombre; el subdirectorio de día y cámara en el que
+ * están se deduce del nombre (ImageStore.relativePath). En modo binario (ver
+ * BinaryProtocol) la cabecera de texto se sustituye por la de una trama IMAGE.
+ * Las conexiones son persistentes (ver CommandServer).
  */
-public class ImageServer implements Runnable {
-    private final int port;
+public class ImageServer extends CommandServer {
     private final String imagesPath;
-    private volatile boolean running;
-    private ServerSocket serverSocket;
+    private final ImageCache imageCache;
+    private final ImageStore imageStore;
     
-    public ImageServer(int port, String imagesPath) {
-        this.port = port;
+    public ImageServer(int port, String imagesPath, ImageCache imageCache, ImageStore imageStore,
+                       int maxClients, int idleTimeoutMillis) {
+        super("IMAGE_SERVER", port, maxClients, idleTimeoutMillis);
         this.imagesPath = imagesPath;
-        this.running = true;
+        this.imageCache = imageCache;
+        this.imageStore = imageStore;
         
         // Asegurar que el directorio existe
         new File(imagesPath).mkdirs();
     }
     
+    /**
+     * Procesa un comando del cliente
+     */
     @Override
-    public void run() {
-        try {
-            serverSocket = new ServerSocket(port);
-            System.out.println("[IMAGE_SERVER] Servidor de imágenes iniciado en puerto " + port);
-            
-            while (running) {
-                try {
-                    // Aceptar conexión de cliente
-                    Socket clientSocket = serverSocket.accept();
-                    
-                    // Procesar la petición en un nuevo hilo
-                    Thread clientHandler = new Thread(() -> handleClient(clientSocket));
-                    clientHandler.start();
-                    
-                } catch (SocketException e) {
-                    if (!running) {
-                        break; // Salida normal
-                    }
-                    System.err.println("[IMAGE_SERVER] Error en socket: " + e.getMessage());
-                }
+    protected void handleCommand(String command, OutputStream out, SocketChannel channel,
+                                 Session session) throws IOException {
+        String clientAddress = session.getClientAddress();
+        System.out.println("[IMAGE_SERVER] Comando recibido: " + command);
+        
+        // Procesar comando GET_IMAGE:filename.jpg
+        if (command.startsWith("GET_IMAGE:")) {
+            String filename = command.split(":", 2)[1].trim();
+            long sent = serveImage(out, channel, session, filename, filename, "Imagen no encontrada");
+            
+            if (sent >= 0) {
+                System.out.println("[IMAGE_SERVER] Imagen enviada: " + filename + 
+                    " (" + sent + " bytes) a " + clientAddress);
             }
+        } 
+        else if (command.startsWith("GET_THUMB:")) {
+            // GET_THUMB:filename.jpg - miniatura de la imagen (mismo formato que GET_IMAGE)
+            String filename = command.substring("GET_THUMB:".length()).trim();
+            long sent = serveImage(out, channel, session, filename,
+                ThumbnailGenerator.DIRECTORY + "/" + filename, "Miniatura no encontrada");
             
-        } catch (IOException e) {
-            System.err.println("[IMAGE_SERVER] ERROR: " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            closeServer();
+            if (sent >= 0) {
+                System.out.println("[IMAGE_SERVER] Miniatura enviada: " + filename + 
+                    " (" + sent + " bytes) a " + clientAddress);
+            }
         }
-    }
-    
-    /**
-     * Maneja la petición de un cliente individual
-     */
-    private void handleClient(Socket clientSocket) {
-        String clientAddress = clientSocket.getInetAddress().getHostAddress();
-        
-        try (
-            BufferedReader in = new BufferedReader(
-                new InputStreamReader(clientSocket.getInputStream())
-            );
-            OutputStream out = clientSocket.getOutputStream();
-        ) {
-            System.out.println("[IMAGE_SERVER] Cliente conectado: " + clientAddress);
+        else if (command.startsWith("GET_IMAGE_RANGE:")) {
+            // GET_IMAGE_RANGE:filename.jpg:offset:len - parte de una imagen (p. ej. para reanudar)
+            String args = command.substring("GET_IMAGE_RANGE:".length());
+            int lenSeparator = args.lastIndexOf(':');
+            int offsetSeparator = lenSeparator > 0 ? args.lastIndexOf(':', lenSeparator - 1) : -1;
             
-            // Leer comando del cliente
-            String command = in.readLine();
+            if (offsetSeparator <= 0) {
+                sendError(out, session, "Formato inválido");
+                return;
+            }
             
-            if (command == null) {
+            long offset;
+            long length;
+            try {
+                offset = Long.parseLong(args.substring(offsetSeparator + 1, lenSeparator).trim());
+                length = Long.parseLong(args.substring(lenSeparator + 1).trim());
+            } catch (NumberFormatException e) {
+                sendError(out, session, "Formato inválido");
                 return;
             }
             
-            System.out.println("[IMAGE_SERVER] Comando recibido: " + command);
-            
-            // Procesar comando GET_IMAGE:filename.jpg
-            if (command.trim().startsWith("GET_IMAGE:")) {
-                String filename = command.split(":", 2)[1].trim();
-                
-                // Validar nombre de archivo (seguridad básica)
-                if (!isValidFilename(filename)) {
-                    sendError(out, "Nombre de archivo inválido");
-                    return;
-                }
-                
-                File imageFile = new File(imagesPath, filename);
-                
-                if (!imageFile.exists() || !imageFile.isFile()) {
-                    sendError(out, "Imagen no encontrada");
-                    System.err.println("[IMAGE_SERVER] Imagen no encontrada: " + filename);
-                    return;
-                }
-                
-                // Enviar imagen
-                sendImage(out, imageFile);
-                
-                System.out.println("[IMAGE_SERVER] Imagen enviada: " + filename + 
-                    " (" + imageFile.length() + " bytes) a " + clientAddress);
-            } 
-            else if (command.trim().equals("LIST_IMAGES")) {
-                // Comando adicional: listar todas las imágenes disponibles
-                sendImageList(out);
+            String filename = args.substring(0, offsetSeparator).trim();
+            ByteBuffer cached = isValidFilename(filename) ? loadCached(filename) : null;
+            
+            if (cached != null) {
+                sendCachedRange(out, channel, session, cached, offset, length);
+                return;
             }
-            else {
-                sendError(out, "Comando desconocido");
-                System.err.println("[IMAGE_SERVER] Comando desconocido: " + command);
+            
+            File imageFile = resolveImage(filename, filename, out, session, "Imagen no encontrada");
+            
+            if (imageFile == null) {
+                return;
             }
             
-        } catch (IOException e) {
-            System.err.println("[IMAGE_SERVER] Error manejando cliente " + 
-                clientAddress + ": " + e.getMessage());
-        } finally {
+            sendImageRange(out, channel, session, imageFile, offset, length);
+        }
+        else if (command.equals("CACHE_STATS")) {
+            // Estado de la caché de imágenes
+            sendText(out, session, "CACHE:" + imageCache.getStatus());
+        }
+        else if (command.equals("LIST_IMAGES") || command.startsWith("LIST_IMAGES:")) {
+            // LIST_IMAGES[:prefix=20251116_CAM3&camera=CAM3&from=..&to=..&limit=100&offset=0&after=<imagen>&order=asc]
+            // Respuesta: {"offset":O,"count":C,"more":true|false,"next":"<imagen>"|null,"items":[...]}
             try {
-                clientSocket.close();
-            } catch (IOException e) {
-                // Ignorar
+                String query = command.length() > "LIST_IMAGES".length()
+                    ? command.substring("LIST_IMAGES:".length()) : "";
+                sendImageList(out, session, ImageIndex.Query.parse(query));
+            } catch (IllegalArgumentException e) {
+                sendError(out, session, e.getMessage());
             }
         }
+        else {
+            sendError(out, session, "Comando desconocido");
+            System.err.println("[IMAGE_SERVER] Comando desconocido: " + command);
+        }
     }
     
     /**
-     * Envía una imagen al cliente
-     * Formato: FILESIZE:<bytes>\n[...DATA...]
+     * Envía una imagen completa, desde la caché o del disco.
+     * path es la ruta relativa al directorio de imágenes (la propia imagen o su miniatura).
+     * Devuelve los bytes enviados, o -1 si se respondió con un error.
      */
-    private void sendImage(OutputStream out, File imageFile) throws IOException {
-        long fileSize = imageFile.length();
+    private long serveImage(OutputStream out, SocketChannel channel, Session session, String filename,
+                            String path, String notFoundMessage) throws IOException {
+        // Primero la caché; si la imagen no es cacheable, directamente del disco
+        ByteBuffer cached = isValidFilename(filename) ? loadCached(path) : null;
         
-        // Enviar header con tamaño
-        String header = "FILESIZE:" + fileSize + "\n";
-        out.write(header.getBytes());
-        out.flush();
+        if (cached != null) {
+            long sent = cached.remaining();
+            sendHeader(out, session, false, 0, sent, sent);
+            sendBuffer(channel, cached);
+            return sent;
+        }
+        
+        File imageFile = resolveImage(filename, path, out, session, notFoundMessage);
+        
+        if (imageFile == null) {
+            return -1;
+        }
+        
+        // Enviar imagen
+        return sendImage(out, channel, session, imageFile);
+    }
+    
+    /**
+     * Busca la imagen en la caché; si no está, cabe en ella y ya se había
+     * pedido antes, la lee del disco a un buffer directo y la guarda.
+     * Devuelve null si hay que servirla del archivo (transferTo).
+     */
+    private ByteBuffer loadCached(String path) throws IOException {
+        ByteBuffer cached = imageCache.get(path);
+        
+        if (cached != null) {
+            return cached;
+        }
+        
+        File imageFile = getFile(path);
+        
+        if (!imageFile.isFile()) {
+            return null;
+        }
         
-        // Enviar bytes de la imagen
-        try (FileInputStream fis = new FileInputStream(imageFile)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
+        try (FileChannel file = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ)) {
+            long size = file.size();
             
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+            if (!imageCache.accepts(size) || !imageCache.admitOnMiss(path)) {
+                return null;
             }
             
-            out.flush();
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+            while (buffer.hasRemaining() && file.read(buffer) >= 0) {
+                // Leer hasta llenar el buffer o llegar al final
+            }
+            buffer.flip();
+            
+            imageCache.put(path, buffer);
+            return buffer.asReadOnlyBuffer();
         }
     }
     
     /**
-     * Envía un mensaje de error al cliente
+     * Cabecera de una imagen o de una parte; después se escriben los bytes
+     * directamente en el canal, así que se vacía out.
+     * Texto: FILESIZE:<bytes> o RANGE:<offset>:<bytes>:<tamaño total>.
+     * Binario: cabecera de trama IMAGE.
      */
-    private void sendError(OutputStream out, String errorMessage) throws IOException {
-        String response = "ERROR:" + errorMessage + "\n";
-        out.write(response.getBytes());
+    private void sendHeader(OutputStream out, Session session, boolean range,
+                            long offset, long count, long total) throws IOException {
+        if (session.isBinary()) {
+            session.getEncoder().writeImageHeader(out, offset, count, total);
+        } else if (range) {
+            sendLine(out, "RANGE:" + offset + ":" + count + ":" + total);
+        } else {
+            sendLine(out, "FILESIZE:" + count);
+        }
         out.flush();
     }
     
     /**
-     * Envía la lista de imágenes disponibles
+     * Escribe los bytes del buffer directamente en el canal
+     */
+    private void sendBuffer(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    /**
+     * Envía una parte de una imagen en caché (mismo formato que sendImageRange)
      */
-    private void sendImageList(OutputStream out) throws IOException {
-        File dir = new File(imagesPath);
-        File[] files = dir.listFiles((d, name) -> 
-            name.toLowerCase().endsWith(".jpg") || 
-            name.toLowerCase().endsWith(".jpeg") ||
-            name.toLowerCase().endsWith(".png")
-        );
-        
-        StringBuilder list = new StringBuilder("IMAGES:");
-        
-        if (files != null && files.length > 0) {
-            for (int i = 0; i < files.length; i++) {
-                list.append(files[i].getName());
-                if (i < files.length - 1) {
-                    list.append(",");
-                }
+    private void sendCachedRange(OutputStream out, SocketChannel channel, Session session, ByteBuffer image,
+                                 long offset, long length) throws IOException {
+        int fileSize = image.remaining();
+        
+        if (offset < 0 || length < 0 || offset > fileSize) {
+            sendError(out, session, "Rango inválido");
+            return;
+        }
+        
+        int count = (int) Math.min(length, fileSize - offset);
+        image.position(image.position() + (int) offset);
+        image.limit(image.position() + count);
+        
+        sendHeader(out, session, true, offset, count, fileSize);
+        sendBuffer(channel, image);
+    }
+    
+    /**
+     * Valida el nombre y localiza la imagen (path relativo al directorio de
+     * imágenes); si no es válida o no existe, responde con un error y devuelve null
+     */
+    private File resolveImage(String filename, String path, OutputStream out, Session session,
+                              String notFoundMessage) throws IOException {
+        // Validar nombre de archivo (seguridad básica)
+        if (!isValidFilename(filename)) {
+            sendError(out, session, "Nombre de archivo inválido");
+            return null;
+        }
+        
+        File imageFile = getFile(path);
+        
+        if (!imageFile.exists() || !imageFile.isFile()) {
+            sendError(out, session, notFoundMessage);
+            System.err.println("[IMAGE_SERVER] " + notFoundMessage + ": " + filename);
+            return null;
+        }
+        
+        return imageFile;
+    }
+    
+    /**
+     * Archivo en disco de una imagen o miniatura (path: nombre o thumbs/nombre),
+     * dentro de su subdirectorio de día y cámara
+     */
+    private File getFile(String path) {
+        String thumbsPrefix = ThumbnailGenerator.DIRECTORY + "/";
+        
+        if (path.startsWith(thumbsPrefix)) {
+            return new File(imagesPath, thumbsPrefix + ImageStore.relativePath(path.substring(thumbsPrefix.length())));
+        }
+        return new File(imagesPath, ImageStore.relativePath(path));
+    }
+    
+    /**
+     * Envía una imagen al cliente
+     * Formato: FILESIZE:<bytes>\n[...DATA...]
+     */
+    private long sendImage(OutputStream out, SocketChannel channel, Session session,
+                           File imageFile) throws IOException {
+        try (FileChannel file = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ)) {
+            // El tamaño se toma del archivo ya abierto para que cabecera y datos coincidan
+            long fileSize = file.size();
+            
+            // Enviar header con tamaño
+            sendHeader(out, session, false, 0, fileSize, fileSize);
+            
+            transfer(file, channel, 0, fileSize);
+            return fileSize;
+        }
+    }
+    
+    /**
+     * Envía una parte de una imagen
+     * Formato: RANGE:<offset>:<bytes>:<tamaño total>\n[...DATA...]
+     * La longitud se recorta al final del archivo.
+     */
+    private void sendImageRange(OutputStream out, SocketChannel channel, Session session, File imageFile,
+                                long offset, long length) throws IOException {
+        try (FileChannel file = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = file.size();
+            
+            if (offset < 0 || length < 0 || offset > fileSize) {
+                sendError(out, session, "Rango inválido");
+                return;
             }
+            
+            long count = Math.min(length, fileSize - offset);
+            
+            sendHeader(out, session, true, offset, count, fileSize);
+            
+            transfer(file, channel, offset, count);
         }
+    }
+    
+    /**
+     * Copia count bytes del archivo al socket sin pasar por el heap (sendfile).
+     * transferTo puede enviar menos de lo pedido, por eso se repite hasta completar;
+     * en una conexión persistente el siguiente comando empieza justo después.
+     */
+    private void transfer(FileChannel file, SocketChannel channel, long position, long count) throws IOException {
+        long end = position + count;
         
-        list.append("\n");
-        out.write(list.toString().getBytes());
-        out.flush();
+        while (position < end) {
+            long sent = file.transferTo(position, end - position, channel);
+            
+            if (sent <= 0 && position >= file.size()) {
+                throw new EOFException("La imagen cambió de tamaño durante el envío");
+            }
+            position += sent;
+        }
+    }
+    
+    /**
+     * Envía una página de la lista de imágenes con sus metadatos, consultando
+     * el índice del ImageStore (sin recorrer los directorios). En modo
+     * binario, el mismo JSON en una trama TEXT.
+     */
+    private void sendImageList(OutputStream out, Session session, ImageIndex.Query query) throws IOException {
+        ImageIndex.QueryResult result = imageStore.getIndex().query(query);
+        
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            sendText(out, session, result.writeJSON(json).toString());
+        } finally {
+            json.release();
+        }
     }
     
     /**
@@ -203,23 +365,4 @@ public class ImageServer implements Runnable {
                lower.endsWith(".jpeg") || 
                lower.endsWith(".png");
     }
-    
-    /**
-     * Detiene el servidor
-     */
-    public void stop() {
-        running = false;
-        closeServer();
-    }
-    
-    private void closeServer() {
-        if (serverSocket != null && !serverSocket.isClosed()) {
-            try {
-                serverSocket.close();
-                System.out.println("[IMAGE_SERVER] Servidor cerrado");
-            } catch (IOException e) {
-                System.err.println("[IMAGE_SERVER] Error cerrando servidor: " + e.getMessage());
-            }
-        }
-    }
 }
@@ -0,0 +1,638 @@
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Almacén de las imágenes de detección.
+ * Cada frame analizado se codifica a JPEG y se escribe una sola vez, aunque
+ * tenga varias detecciones; todas apuntan al mismo archivo. La cámara solo
+ * copia el frame y lo encola en la cola de su escritor: cada cámara tiene
+ * asignado un único hilo escritor, que toma los trabajos por lotes, escribe
+ * todos los archivos del lote, los sincroniza a disco (un fsync por archivo
+ * y uno por directorio, seguidos) y solo entonces guarda las imágenes en la
+ * caché, genera las miniaturas y registra las detecciones, de modo que
+ * ninguna detección llega a los clientes (ni al journal) antes que su imagen.
+ * Las detecciones de una cámara se registran siempre en el orden en que se
+ * capturaron sus frames (las secuencias del DetectionLog lo siguen).
+ * Si hay demasiados frames pendientes (disco lento) los nuevos se descartan
+ * en lugar de bloquear la cámara o agotar la memoria. Las detecciones nunca
+ * se pierden: si el frame se descarta o su escritura falla, se registran
+ * igual, en su turno, sin imagen (imagen null).
+ *
+ * Las imágenes se reparten en subdirectorios por día y cámara
+ * (yyyyMMdd/CAM1/...) para que ningún directorio crezca sin límite; el nombre
+ * del archivo (newFileName) lleva el día y la cámara, así que los clientes
+ * siguen pidiendo las imágenes solo por nombre. Los nombres antiguos (sin
+ * día ni cámara) se buscan en la raíz.
+ *
+ * Las imágenes en disco se llevan en un ImageIndex (al arrancar se recorre
+ * el directorio una vez; después lo actualizan los escritores y la
+ * retención), que es el que consulta LIST_IMAGES.
+ *
+ * Retención: si se supera el presupuesto de bytes (imágenes y miniaturas)
+ * o la edad máxima, se borran las imágenes más antiguas con su miniatura y
+ * se avisa al DetectionLog para que las detecciones que las referencian
+ * dejen de anunciarlas. Un archivo que no llega a escribirse o sincronizarse
+ * entero se borra, para que no ocupe disco fuera del índice.
+ */
+public class ImageStore {
+    private static final int QUEUE_CAPACITY = 64; // Frames copiados a la espera de escribirse (entre todos los escritores)
+    private static final int MAX_PENDING_JOBS = 1024; // Trabajos por escritor, contando los de detecciones sin frame
+    private static final int MAX_BATCH = 16;      // Trabajos por lote de escritura
+    private static final long IDLE_CHECK_MILLIS = 1000; // Revisión de la edad máxima sin escrituras
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    
+    private final File directory;
+    private final ImageCache imageCache;
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final DetectionLog detectionLog;
+    private final long maxBytes;     // 0: sin límite
+    private final long maxAgeMillis; // 0: sin límite
+    private final Writer[] writers;
+    private final AtomicInteger pendingFrames; // Frames copiados en las colas
+    private volatile boolean running;
+    
+    private final ImageIndex index; // Imágenes en disco
+    private final Object retentionLock = new Object();
+    
+    // Métricas
+    private final AtomicLong stored;
+    private final AtomicLong dropped;
+    private final AtomicLong failed;
+    private final AtomicLong withoutImage; // Detecciones registradas sin imagen (frame descartado o fallido)
+    private final AtomicLong evicted;
+    private final AtomicLong storedBytes;
+    private final AtomicLong writeNanos;
+    private final AtomicLong batches;
+    private final AtomicLong syncNanos;
+    
+    public ImageStore(String imagesPath, ImageCache imageCache, ThumbnailGenerator thumbnailGenerator,
+                      DetectionLog detectionLog, int writerThreads, long maxBytes, long maxAgeMillis) {
+        this.directory = new File(imagesPath);
+        this.imageCache = imageCache;
+        this.thumbnailGenerator = thumbnailGenerator;
+        this.detectionLog = detectionLog;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+        this.writers = new Writer[Math.max(1, writerThreads)];
+        this.pendingFrames = new AtomicInteger();
+        this.index = new ImageIndex();
+        this.stored = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.withoutImage = new AtomicLong();
+        this.evicted = new AtomicLong();
+        this.storedBytes = new AtomicLong();
+        this.writeNanos = new AtomicLong();
+        this.batches = new AtomicLong();
+        this.syncNanos = new AtomicLong();
+        
+        directory.mkdirs();
+    }
+    
+    /**
+     * Recorre las imágenes que ya hay en disco, enlaza con ellas las
+     * detecciones recuperadas del journal (las que apuntan a una imagen que
+     * ya no existe se marcan como expiradas), aplica la retención y arranca
+     * los hilos escritores. Debe llamarse después de asociar el journal y
+     * antes de arrancar las cámaras.
+     */
+    public void start() {
+        List<ImageIndex.Entry> existing = scan(directory);
+        for (ImageIndex.Entry image : existing) {
+            index.add(image);
+        }
+        
+        // Las miniaturas cuentan en el presupuesto; las de imágenes que ya no existen se borran
+        int orphanThumbnails = 0;
+        for (ImageIndex.Entry thumbnail : scan(new File(directory, ThumbnailGenerator.DIRECTORY))) {
+            if (!index.addThumbnail(thumbnail.getName(), thumbnail.getSize())) {
+                thumbnailGenerator.getThumbnailFile(thumbnail.getName()).delete();
+                orphanThumbnails++;
+            }
+        }
+        
+        List<Detection> missing = new ArrayList<>();
+        detectionLog.forEachDetection(detection -> {
+            String imagen = detection.getImagen();
+            if (imagen == null) {
+                return;
+            }
+            ImageIndex.Entry image = index.get(imagen);
+            if (image != null) {
+                image.detections.add(detection);
+            } else {
+                missing.add(detection);
+            }
+        });
+        detectionLog.expireImages(missing);
+        
+        System.out.println("[IMAGES] " + existing.size() + " imágenes en disco (" + index.getBytes() / (1024 * 1024) +
+            " MB con miniaturas); " + missing.size() + " detecciones del journal sin imagen; " +
+            orphanThumbnails + " miniaturas huérfanas borradas");
+        
+        enforceRetention();
+        
+        running = true;
+        for (int i = 0; i < writers.length; i++) {
+            Writer writer = new Writer();
+            writer.thread = new Thread(() -> runWriter(writer), "Image-Writer-" + (i + 1));
+            writer.thread.setDaemon(true);
+            writers[i] = writer;
+            writer.thread.start();
+        }
+    }
+    
+    /**
+     * Deja de aceptar frames, escribe los que quedan en la cola y espera a
+     * los escritores (hasta timeoutMillis en total)
+     */
+    public void stop(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        
+        for (Writer writer : writers) {
+            if (writer == null) {
+                continue;
+            }
+            try {
+                writer.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Nombre para la imagen de un frame de la cámara tomado en timestamp:
+     * <yyyyMMdd>_<cámara>_<uuid>.jpg. Es un nombre de archivo simple (sin
+     * rutas), el mismo que se guarda en las detecciones.
+     */
+    public static String newFileName(String cameraId, long timestamp) {
+        String day = DAY_FORMAT.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
+        return day + "_" + sanitize(cameraId) + "_" + UUID.randomUUID() + ".jpg";
+    }
+    
+    /**
+     * Ruta relativa al directorio de imágenes (o al de miniaturas) en la que
+     * se guarda una imagen: <yyyyMMdd>/<cámara>/<nombre> para los nombres de
+     * newFileName y el propio nombre para los antiguos
+     */
+    public static String relativePath(String imageFileName) {
+        String camera = cameraOf(imageFileName);
+        return camera.isEmpty() ? imageFileName : imageFileName.substring(0, 8) + "/" + camera + "/" + imageFileName;
+    }
+    
+    /**
+     * Cámara (ya saneada) de un nombre de newFileName; vacía en los nombres antiguos
+     */
+    static String cameraOf(String imageFileName) {
+        int separator = imageFileName.indexOf('_', 9);
+        
+        if (imageFileName.length() < 10 || imageFileName.charAt(8) != '_' || separator < 0 || !isDay(imageFileName)) {
+            return "";
+        }
+        return imageFileName.substring(9, separator);
+    }
+    
+    static boolean isDay(String name) {
+        for (int i = 0; i < 8; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Identificador de cámara apto para nombre de archivo y directorio (sin '_')
+     */
+    static String sanitize(String cameraId) {
+        StringBuilder safe = new StringBuilder(cameraId.length());
+        for (int i = 0; i < cameraId.length(); i++) {
+            char c = cameraId.charAt(i);
+            safe.append((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' ? c : '-');
+        }
+        return safe.length() == 0 ? "CAM" : safe.toString();
+    }
+    
+    public File getImageFile(String imageFileName) {
+        return new File(directory, relativePath(imageFileName));
+    }
+    
+    /**
+     * Índice de las imágenes en disco (para LIST_IMAGES)
+     */
+    public ImageIndex getIndex() {
+        return index;
+    }
+    
+    /**
+     * Encola el guardado del frame de la cámara como imageFileName; cuando la
+     * imagen ya está en disco se registran las detecciones en el DetectionLog.
+     * No bloquea mientras el escritor no acumule MAX_PENDING_JOBS trabajos:
+     * el frame puede reutilizarse en cuanto vuelve la llamada.
+     * Si el frame se descarta (demasiados frames pendientes) las detecciones
+     * se encolan sin imagen, para registrarse detrás de las de los frames
+     * anteriores de la cámara, y se devuelve false.
+     */
+    public boolean store(String cameraId, String imageFileName, Mat frame, long timestamp, List<Detection> detections) {
+        if (!running) {
+            dropped.incrementAndGet();
+            registerWithoutImage(detections);
+            return false;
+        }
+        
+        if (pendingFrames.incrementAndGet() > QUEUE_CAPACITY) {
+            pendingFrames.decrementAndGet();
+            dropped.incrementAndGet();
+            for (Detection detection : detections) {
+                detection.expireImage();
+            }
+            withoutImage.addAndGet(detections.size());
+            enqueue(cameraId, new Job(null, null, timestamp, detections));
+            return false;
+        }
+        
+        return enqueue(cameraId, new Job(imageFileName, frame.clone(), timestamp, detections));
+    }
+    
+    /**
+     * Pone el trabajo en la cola del escritor de la cámara (siempre el mismo,
+     * para que sus detecciones se registren en orden). Solo espera si el
+     * escritor acumula MAX_PENDING_JOBS trabajos; si se interrumpe la espera
+     * las detecciones se registran en el momento, sin imagen.
+     */
+    private boolean enqueue(String cameraId, Job job) {
+        Writer writer = writers[Math.floorMod(cameraId.hashCode(), writers.length)];
+        
+        try {
+            writer.queue.put(job);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (job.frame != null) {
+                job.frame.release();
+                pendingFrames.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+            registerWithoutImage(job.detections);
+            return false;
+        }
+    }
+    
+    /**
+     * Registra detecciones que no necesitan imagen (p. ej. las desapariciones
+     * del seguimiento). Pasan por la cola del escritor de la cámara, así que
+     * se registran detrás de las de sus frames anteriores aún pendientes.
+     */
+    public void register(String cameraId, List<Detection> detections) {
+        if (!running) {
+            addToLog(detections);
+            return;
+        }
+        enqueue(cameraId, new Job(null, null, 0, detections));
+    }
+    
+    /**
+     * Registra las detecciones de un frame cuya imagen no llegó a disco
+     */
+    private void registerWithoutImage(List<Detection> detections) {
+        for (Detection detection : detections) {
+            detection.expireImage();
+            detectionLog.addDetection(detection);
+        }
+        withoutImage.addAndGet(detections.size());
+    }
+    
+    private void runWriter(Writer writer) {
+        List<Job> batch = new ArrayList<>(MAX_BATCH);
+        
+        while (running || !writer.queue.isEmpty()) {
+            try {
+                Job first = writer.queue.poll(IDLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                
+                if (first != null) {
+                    batch.add(first);
+                    writer.queue.drainTo(batch, MAX_BATCH - 1);
+                    writeBatch(batch);
+                }
+                
+                enforceRetention();
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("[IMAGES] ERROR en el escritor: " + e.getMessage());
+            } finally {
+                for (Job job : batch) {
+                    // Lote interrumpido por un error: las detecciones se registran igual
+                    if (!job.registered) {
+                        job.registered = true;
+                        registerWithoutImage(job.detections);
+                    }
+                    if (job.frame != null) {
+                        job.frame.release();
+                        pendingFrames.decrementAndGet();
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+    
+    /**
+     * Escribe un lote: primero todos los archivos, después un fsync por
+     * archivo y uno por directorio, y por último caché, miniaturas y
+     * detecciones, en el orden de la cola (las de los frames que no llegaron
+     * a disco y las que no tienen frame, sin imagen)
+     */
+    private void writeBatch(List<Job> batch) {
+        long start = System.nanoTime();
+        List<Job> written = new ArrayList<>(batch.size());
+        Set<Path> directories = new HashSet<>();
+        
+        for (Job job : batch) {
+            if (job.frame != null && write(job)) {
+                written.add(job);
+                directories.add(job.path.getParent());
+            }
+        }
+        
+        long syncStart = System.nanoTime();
+        for (Iterator<Job> it = written.iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            try (FileChannel channel = job.channel) {
+                channel.force(false);
+            } catch (IOException e) {
+                it.remove();
+                failed.incrementAndGet();
+                System.err.println("[IMAGES] ERROR sincronizando imagen " + job.name + ": " + e.getMessage());
+                deleteQuietly(job.path);
+                job.path = null;
+            }
+        }
+        for (Path dir : directories) {
+            syncDirectory(dir);
+        }
+        syncNanos.addAndGet(System.nanoTime() - syncStart);
+        batches.incrementAndGet();
+        
+        for (Job job : batch) {
+            if (job.frame == null) {
+                // Frame descartado o detecciones que no llevan imagen
+                addToLog(job.detections);
+            } else if (job.path == null) {
+                registerWithoutImage(job.detections);
+            } else {
+                imageCache.put(job.name, job.jpeg);
+                // Se indexa antes de pedir la miniatura, que suma su tamaño a la entrada
+                index.add(new ImageIndex.Entry(job.name, job.jpeg.length, job.timestamp, job.detections));
+                thumbnailGenerator.submit(job.name, job.frame, index);
+                addToLog(job.detections);
+                
+                stored.incrementAndGet();
+                storedBytes.addAndGet(job.jpeg.length);
+            }
+            job.registered = true;
+        }
+        writeNanos.addAndGet(System.nanoTime() - start);
+    }
+    
+    private void addToLog(List<Detection> detections) {
+        for (Detection detection : detections) {
+            detectionLog.addDetection(detection);
+        }
+    }
+    
+    /**
+     * Codifica y escribe un archivo del lote; el canal queda abierto para el fsync
+     */
+    private boolean write(Job job) {
+        MatOfByte encoded = new MatOfByte();
+        Path path = null;
+        
+        try {
+            if (!Imgcodecs.imencode(".jpg", job.frame, encoded)) {
+                failed.incrementAndGet();
+                return false;
+            }
+            
+            job.jpeg = encoded.toArray();
+            path = getImageFile(job.name).toPath();
+            Files.createDirectories(path.getParent());
+            
+            job.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer buffer = ByteBuffer.wrap(job.jpeg);
+            while (buffer.hasRemaining()) {
+                job.channel.write(buffer);
+            }
+            job.path = path;
+            return true;
+        } catch (IOException e) {
+            if (job.channel != null) {
+                try {
+                    job.channel.close();
+                } catch (IOException ignored) {
+                    // Ya se informa del error original
+                }
+                deleteQuietly(path); // Archivo a medias
+            }
+            failed.incrementAndGet();
+            System.err.println("[IMAGES] ERROR guardando imagen " + job.name + ": " + e.getMessage());
+            return false;
+        } finally {
+            encoded.release();
+        }
+    }
+    
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("[IMAGES] ERROR borrando " + path + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Persiste las entradas nuevas del directorio
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Algunos sistemas (p. ej. Windows) no permiten abrir directorios
+        }
+    }
+    
+    /**
+     * Borra las imágenes más antiguas mientras se supere el presupuesto de
+     * bytes o la edad máxima
+     */
+    private void enforceRetention() {
+        if (maxBytes == 0 && maxAgeMillis == 0) {
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        List<ImageIndex.Entry> expired = null;
+        
+        synchronized (retentionLock) {
+            ImageIndex.Entry oldest;
+            while ((oldest = index.oldest()) != null) {
+                boolean overBudget = maxBytes > 0 && index.getBytes() > maxBytes;
+                boolean tooOld = maxAgeMillis > 0 && now - oldest.getTimestamp() > maxAgeMillis;
+                
+                if (!overBudget && !tooOld) {
+                    break;
+                }
+                
+                index.remove(oldest);
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(oldest);
+            }
+        }
+        
+        if (expired != null) {
+            delete(expired, DAY_FORMAT.format(Instant.ofEpochMilli(now).atZone(ZoneId.systemDefault())));
+        }
+    }
+    
+    private void delete(List<ImageIndex.Entry> images, String today) {
+        List<Detection> detections = new ArrayList<>();
+        
+        for (ImageIndex.Entry image : images) {
+            File imageFile = getImageFile(image.getName());
+            File thumbnailFile = thumbnailGenerator.getThumbnailFile(image.getName());
+            
+            imageFile.delete();
+            thumbnailFile.delete();
+            imageCache.invalidate(image.getName());
+            imageCache.invalidate(ThumbnailGenerator.DIRECTORY + "/" + image.getName());
+            detections.addAll(image.detections);
+            
+            // Los subdirectorios de días anteriores se borran al quedar vacíos
+            if (!image.getName().startsWith(today)) {
+                deleteEmptyShard(imageFile);
+                deleteEmptyShard(thumbnailFile);
+            }
+        }
+        
+        evicted.addAndGet(images.size());
+        detectionLog.expireImages(detections);
+    }
+    
+    private static void deleteEmptyShard(File file) {
+        File cameraDir = file.getParentFile();
+        // delete() falla si el directorio no está vacío
+        if (cameraDir.delete()) {
+            cameraDir.getParentFile().delete();
+        }
+    }
+    
+    /**
+     * Imágenes que ya hay en root (el directorio de imágenes o el de
+     * miniaturas): las antiguas en la raíz y las de los subdirectorios
+     * día/cámara
+     */
+    private static List<ImageIndex.Entry> scan(File root) {
+        List<ImageIndex.Entry> images = new ArrayList<>();
+        File[] entries = root.listFiles();
+        
+        if (entries == null) {
+            return images;
+        }
+        
+        for (File entry : entries) {
+            if (entry.isFile()) {
+                addIfImage(images, entry);
+            } else if (entry.getName().length() == 8 && isDay(entry.getName())) {
+                File[] cameraDirs = entry.listFiles(File::isDirectory);
+                for (File cameraDir : cameraDirs != null ? cameraDirs : new File[0]) {
+                    File[] files = cameraDir.listFiles(File::isFile);
+                    for (File file : files != null ? files : new File[0]) {
+                        addIfImage(images, file);
+                    }
+                }
+            }
+        }
+        return images;
+    }
+    
+    private static void addIfImage(List<ImageIndex.Entry> images, File file) {
+        String lower = file.getName().toLowerCase();
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png")) {
+            images.add(new ImageIndex.Entry(file.getName(), file.length(), file.lastModified(), new ArrayList<>()));
+        }
+    }
+    
+    /**
+     * Resumen del estado para el log del servidor
+     */
+    public String getStatus() {
+        long count = stored.get();
+        long batchCount = batches.get();
+        return String.format("guardadas=%d pendientes=%d descartadas=%d fallidas=%d detecciones sin imagen=%d " +
+                "tamaño medio=%d bytes " +
+                "escritura media=%.1f ms lotes=%d fsync medio por lote=%.1f ms en disco=%d (%d MB) expiradas=%d",
+            count, pendingFrames.get(), dropped.get(), failed.get(), withoutImage.get(),
+            count == 0 ? 0 : storedBytes.get() / count,
+            count == 0 ? 0.0 : writeNanos.get() / (count * 1_000_000.0),
+            batchCount, batchCount == 0 ? 0.0 : syncNanos.get() / (batchCount * 1_000_000.0),
+            index.getSize(), index.getBytes() / (1024 * 1024), evicted.get());
+    }
+    
+    /**
+     * Hilo escritor con su cola; cada cámara usa siempre el mismo
+     */
+    private static final class Writer {
+        final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<>(MAX_PENDING_JOBS);
+        Thread thread;
+    }
+    
+    /**
+     * Frame pendiente de escribir, o solo detecciones (frame null) que deben
+     * registrarse en su turno sin imagen
+     */
+    private static final class Job {
+        final String name;
+        final Mat frame;
+        final long timestamp;
+        final List<Detection> detections;
+        byte[] jpeg;
+        Path path; // Solo si el archivo se escribió (y sincronizó) bien
+        FileChannel channel;
+        boolean registered; // Detecciones ya añadidas al DetectionLog
+        
+        Job(String name, Mat frame, long timestamp, List<Detection> detections) {
+            this.name = name;
+            this.frame = frame;
+            this.timestamp = timestamp;
+            this.detections = detections;
+        }
+    }
+}
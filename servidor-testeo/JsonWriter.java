@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Escritor de JSON que codifica directamente a UTF-8 en un buffer de bytes
+ * reutilizable. Las respuestas se construyen una sola vez en bytes y se
+ * escriben al socket sin pasar por String ni por String.format.
+ * Las comas se insertan solas según el byte anterior, así que basta con
+ * encadenar name()/value() dentro de beginObject()/beginArray().
+ * Las instancias se toman de un pool (acquire) y se devuelven con release().
+ */
+public final class JsonWriter {
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final int MAX_POOLED_CAPACITY = 1 << 20; // Los buffers mayores no se conservan
+    private static final int MAX_POOLED = 64;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    
+    private static final ConcurrentLinkedQueue<JsonWriter> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+    
+    private byte[] buffer;
+    private int size;
+    
+    public JsonWriter() {
+        this.buffer = new byte[INITIAL_CAPACITY];
+    }
+    
+    /**
+     * Toma un escritor vacío del pool (o crea uno nuevo)
+     */
+    public static JsonWriter acquire() {
+        JsonWriter writer = pool.poll();
+        
+        if (writer == null) {
+            return new JsonWriter();
+        }
+        
+        pooled.decrementAndGet();
+        return writer;
+    }
+    
+    /**
+     * Devuelve el escritor al pool; no debe usarse después
+     */
+    public void release() {
+        if (buffer.length > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        
+        if (pooled.incrementAndGet() > MAX_POOLED) {
+            pooled.decrementAndGet();
+            return;
+        }
+        
+        size = 0;
+        pool.offer(this);
+    }
+    
+    public JsonWriter beginObject() {
+        separate();
+        return raw('{');
+    }
+    
+    public JsonWriter endObject() {
+        return raw('}');
+    }
+    
+    public JsonWriter beginArray() {
+        separate();
+        return raw('[');
+    }
+    
+    public JsonWriter endArray() {
+        return raw(']');
+    }
+    
+    public JsonWriter name(String name) {
+        separate();
+        writeString(name);
+        return raw(':');
+    }
+    
+    public JsonWriter value(String value) {
+        separate();
+        
+        if (value == null) {
+            return ascii("null");
+        }
+        
+        writeString(value);
+        return this;
+    }
+    
+    public JsonWriter value(boolean value) {
+        separate();
+        return ascii(value ? "true" : "false");
+    }
+    
+    public JsonWriter value(long value) {
+        separate();
+        writeLong(value);
+        return this;
+    }
+    
+    /**
+     * Número con un número fijo de decimales (0 a 6), redondeado a la mitad
+     * hacia arriba y siempre con punto decimal (no depende del Locale).
+     * NaN e infinito se escriben como null.
+     */
+    public JsonWriter value(double value, int decimals) {
+        separate();
+        
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return ascii("null");
+        }
+        
+        long scale = POWERS_OF_TEN[decimals];
+        double magnitude = Math.abs(value);
+        
+        // Fuera del rango exacto de long: notación de Java (JSON válido)
+        if (magnitude * scale >= 1e17) {
+            return ascii(Double.toString(value));
+        }
+        
+        long scaled = Math.round(magnitude * scale);
+        if (value < 0 && scaled != 0) {
+            raw('-');
+        }
+        
+        writeLong(scaled / scale);
+        
+        if (decimals > 0) {
+            raw('.');
+            long fraction = scaled % scale;
+            
+            // Ceros a la izquierda de la parte decimal
+            for (long digit = scale / 10; digit > fraction && digit > 1; digit /= 10) {
+                raw('0');
+            }
+            writeLong(fraction);
+        }
+        return this;
+    }
+    
+    public JsonWriter nullValue() {
+        separate();
+        return ascii("null");
+    }
+    
+    /**
+     * Fin de línea: separa mensajes en los protocolos de una línea por respuesta
+     */
+    public JsonWriter newline() {
+        return raw('\n');
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Escribe el contenido en el stream (sin vaciarlo) y deja el escritor vacío
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+    }
+    
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Coma entre valores: hace falta salvo al principio, tras '{', '[', ':' o un salto de línea
+     */
+    private void separate() {
+        if (size == 0) {
+            return;
+        }
+        
+        byte last = buffer[size - 1];
+        if (last != '{' && last != '[' && last != ':' && last != '\n') {
+            raw(',');
+        }
+    }
+    
+    private JsonWriter raw(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+        return this;
+    }
+    
+    private JsonWriter ascii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+    
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            ascii(Long.toString(value));
+            return;
+        }
+        
+        if (value < 0) {
+            raw('-');
+            value = -value;
+        }
+        
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+    
+    /**
+     * Cadena entre comillas con el escapado de JSON, codificada a UTF-8
+     */
+    private void writeString(String value) {
+        // Peor caso: 6 bytes por carácter (escape \\u de un carácter de control) más las comillas
+        ensureCapacity(value.length() * 6 + 2);
+        buffer[size++] = '"';
+        
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer[size++] = '\\';
+                    buffer[size++] = (byte) c;
+                } else if (c >= 0x20) {
+                    buffer[size++] = (byte) c;
+                } else {
+                    writeControl(c);
+                }
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xC0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                       && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[size++] = '?'; // Surrogate suelto: no es UTF-8 válido
+            } else {
+                buffer[size++] = (byte) (0xE0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        
+        buffer[size++] = '"';
+    }
+    
+    private void writeControl(char c) {
+        buffer[size++] = '\\';
+        
+        switch (c) {
+            case '\n':
+                buffer[size++] = 'n';
+                break;
+            case '\r':
+                buffer[size++] = 'r';
+                break;
+            case '\t':
+                buffer[size++] = 't';
+                break;
+            case '\b':
+                buffer[size++] = 'b';
+                break;
+            case '\f':
+                buffer[size++] = 'f';
+                break;
+            default:
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX[c >> 4];
+                buffer[size++] = HEX[c & 0xF];
+        }
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, size + extra)];
+            System.arraycopy(buffer, 0, grown, 0, size);
+            buffer = grown;
+        }
+    }
+}
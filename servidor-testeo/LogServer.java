@@ -1,137 +1,418 @@
 import java.io.*;
-import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Servidor de Logs en puerto 9001
- * Escucha conexiones de clientes y responde con el log de detecciones en formato JSON
+ * Escucha conexiones de clientes y responde con el log de detecciones en formato JSON.
+ * Las lecturas no borran el log: cada cliente puede seguir su propio cursor con GET_SINCE.
+ * Con SUBSCRIBE el servidor envía cada detección nueva en cuanto se registra,
+ * sin que el cliente tenga que consultar periódicamente.
+ * En modo binario (ver BinaryProtocol) las detecciones viajan en tramas
+ * DETECTIONS en lugar de JSON.
+ * Las conexiones son persistentes (ver CommandServer).
  */
-public class LogServer implements Runnable {
-    private final int port;
+public class LogServer extends CommandServer {
+    private static final int DEFAULT_LOG_COUNT = 100;
+    private static final int MAX_SINCE_ITEMS = 500;
+    private static final int SUBSCRIBER_QUEUE_CAPACITY = 1024;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    
     private final DetectionLog detectionLog;
-    private volatile boolean running;
-    private ServerSocket serverSocket;
     
-    public LogServer(int port) {
-        this.port = port;
+    // Métricas de suscripciones
+    private final AtomicInteger activeSubscribers;
+    private final AtomicLong slowSubscribers;
+    
+    public LogServer(int port, int maxClients, int idleTimeoutMillis) {
+        super("LOG_SERVER", port, maxClients, idleTimeoutMillis);
         this.detectionLog = DetectionLog.getInstance();
-        this.running = true;
+        this.activeSubscribers = new AtomicInteger();
+        this.slowSubscribers = new AtomicLong();
     }
     
+    /**
+     * Procesa un comando del cliente
+     */
     @Override
-    public void run() {
-        try {
-            serverSocket = new ServerSocket(port);
-            System.out.println("[LOG_SERVER] Servidor de logs iniciado en puerto " + port);
+    protected void handleCommand(String command, OutputStream out, SocketChannel channel,
+                                 Session session) throws IOException {
+        String clientAddress = session.getClientAddress();
+        System.out.println("[LOG_SERVER] Comando recibido: " + command);
+        
+        if (command.equals("GET_LOGS")) {
+            // Enviar logs en formato JSON (últimos 100 registros)
+            sendLastDetections(out, session, DEFAULT_LOG_COUNT);
             
-            while (running) {
-                try {
-                    // Aceptar conexión de cliente
-                    Socket clientSocket = serverSocket.accept();
-                    
-                    // Procesar la petición en un nuevo hilo
-                    Thread clientHandler = new Thread(() -> handleClient(clientSocket));
-                    clientHandler.start();
-                    
-                } catch (SocketException e) {
-                    if (!running) {
-                        break; // Salida normal
-                    }
-                    System.err.println("[LOG_SERVER] Error en socket: " + e.getMessage());
+            System.out.println("[LOG_SERVER] Enviados últimos " + DEFAULT_LOG_COUNT + 
+                " registros a " + clientAddress);
+        } 
+        else if (command.startsWith("GET_LOGS:")) {
+            // GET_LOGS:N - obtener últimos N registros
+            try {
+                int n = Integer.parseInt(command.split(":")[1].trim());
+                sendLastDetections(out, session, n);
+                
+                System.out.println("[LOG_SERVER] Enviados últimos " + n + 
+                    " registros a " + clientAddress);
+            } catch (RuntimeException e) {
+                sendError(out, session, "Formato inválido");
+            }
+        }
+        else if (command.startsWith("GET_SINCE:")) {
+            // GET_SINCE:SEQ[:MAX] - detecciones posteriores a la secuencia SEQ
+            // Respuesta: {"next":N,"gap":G,"items":[...]}; N es el cursor de la siguiente consulta
+            try {
+                String[] parts = command.split(":");
+                long sequence = Long.parseLong(parts[1].trim());
+                int max = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : MAX_SINCE_ITEMS;
+                
+                DetectionLog.ReadResult result = detectionLog.readSince(sequence, Math.min(max, MAX_SINCE_ITEMS));
+                
+                if (session.isBinary()) {
+                    session.getEncoder().writeDetections(out, result.getNextSequence(), result.getGap(),
+                        false, result.getDetections());
+                } else {
+                    sendJSON(out, result::writeJSON);
+                }
+                
+                if (result.getGap() > 0) {
+                    System.out.println("[LOG_SERVER] " + clientAddress + " perdió " +
+                        result.getGap() + " registros sobrescritos");
+                }
+            } catch (RuntimeException e) {
+                sendError(out, session, "Formato inválido");
+            }
+        }
+        else if (command.startsWith("QUERY:")) {
+            // QUERY:camera=CAM3&class=PERSONA&from=2025-11-16T02:00&to=2025-11-16T04:00&minConf=0.5&limit=100&offset=0
+            // Respuesta: {"offset":O,"count":C,"more":true|false,"items":[...]}
+            try {
+                DetectionIndex.Query query = DetectionIndex.Query.parse(command.substring("QUERY:".length()));
+                DetectionIndex.QueryResult result = detectionLog.query(query);
+                
+                if (session.isBinary()) {
+                    // next: desplazamiento de la página siguiente
+                    session.getEncoder().writeDetections(out, result.getOffset() + result.getDetections().size(),
+                        0, result.hasMore(), result.getDetections());
+                } else {
+                    sendJSON(out, result::writeJSON);
                 }
+                
+                System.out.println("[LOG_SERVER] Consulta de " + clientAddress + ": " +
+                    result.getDetections().size() + " resultados");
+            } catch (IllegalArgumentException e) {
+                sendError(out, session, e.getMessage());
+            }
+        }
+        else if (command.equals("SUBSCRIBE") || command.startsWith("SUBSCRIBE ") ||
+                 command.startsWith("SUBSCRIBE:")) {
+            // SUBSCRIBE [camera=CAM1] [class=PERSONA] [minConf=0.5] [after=SEQ]
+            // La conexión queda dedicada a la suscripción hasta que el cliente la cierra
+            Subscriber subscriber;
+            try {
+                subscriber = Subscriber.parse(command.substring("SUBSCRIBE".length()));
+            } catch (IllegalArgumentException e) {
+                sendError(out, session, e.getMessage());
+                return;
             }
             
-        } catch (IOException e) {
-            System.err.println("[LOG_SERVER] ERROR: " + e.getMessage());
-            e.printStackTrace();
+            streamDetections(subscriber, out, channel, session);
+        }
+        else if (command.equals("GET_COUNT")) {
+            // Comando adicional: obtener el conteo y la última secuencia
+            sendText(out, session, "{\"count\":" + detectionLog.getSize() +
+                ",\"last\":" + detectionLog.getLastSequence() + "}");
+        }
+        else {
+            sendError(out, session, "Comando desconocido");
+            System.err.println("[LOG_SERVER] Comando desconocido: " + command);
+        }
+    }
+    
+    /**
+     * Últimas n detecciones: array JSON o trama DETECTIONS (next = última secuencia enviada)
+     */
+    private void sendLastDetections(OutputStream out, Session session, int n) throws IOException {
+        List<Detection> detections = detectionLog.getLastDetections(n);
+        
+        if (session.isBinary()) {
+            long last = detections.isEmpty() ? detectionLog.getLastSequence()
+                : detections.get(detections.size() - 1).getSequence();
+            session.getEncoder().writeDetections(out, last, 0, false, detections);
+        } else {
+            sendJSON(out, json -> DetectionLog.writeJSON(json, detections));
+        }
+    }
+    
+    /**
+     * Serializa la respuesta en un escritor del pool y la envía como una línea
+     * (los bytes se generan una sola vez, sin Strings intermedios)
+     */
+    private static void sendJSON(OutputStream out, Consumer<JsonWriter> content) throws IOException {
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            content.accept(json);
+            json.newline().writeTo(out);
         } finally {
-            closeServer();
+            json.release();
         }
     }
     
     /**
-     * Maneja la petición de un cliente individual
+     * Envía las detecciones de una suscripción hasta que el cliente se
+     * desconecta. Protocolo:
+     *  "SUBSCRIBED:<última secuencia>\n", después una detección JSON por línea,
+     *  y "HEARTBEAT\n" tras cada periodo sin detecciones. En modo binario:
+     *  trama TEXT "SUBSCRIBED:..", tramas DETECTIONS y tramas HEARTBEAT.
+     * Los hilos que registran las detecciones (escritores del ImageStore) solo
+     * encolan en una cola acotada; si se llena porque el cliente no lee al
+     * ritmo de las cámaras, se cierra la conexión
+     * (aunque este hilo esté bloqueado escribiendo) y el cliente puede
+     * reconectarse con after=<última secuencia recibida>.
+     * Con after, el oyente se registra antes de leer el historial: lo que
+     * llega mientras tanto queda en la cola, y al vaciarla se omite lo que
+     * el historial ya envió (secuencia <= backlogEnd).
      */
-    private void handleClient(Socket clientSocket) {
-        String clientAddress = clientSocket.getInetAddress().getHostAddress();
+    private void streamDetections(Subscriber subscriber, OutputStream out, SocketChannel channel,
+                                  Session session) throws IOException {
+        String clientAddress = session.getClientAddress();
         
-        try (
-            BufferedReader in = new BufferedReader(
-                new InputStreamReader(clientSocket.getInputStream())
-            );
-            PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-        ) {
-            System.out.println("[LOG_SERVER] Cliente conectado: " + clientAddress);
-            
-            // Leer comando del cliente
-            String command = in.readLine();
-            
-            if (command == null) {
-                return;
-            }
-            
-            System.out.println("[LOG_SERVER] Comando recibido: " + command);
+        // Registrar antes de leer el historial para no perder lo que llegue entre
+        // medias: la cola del suscriptor guarda esas detecciones hasta después
+        subscriber.channel = channel;
+        detectionLog.addListener(subscriber);
+        activeSubscribers.incrementAndGet();
+        System.out.println("[LOG_SERVER] Suscripción de " + clientAddress + ": " + subscriber);
+        
+        JsonWriter json = JsonWriter.acquire();
+        List<Detection> batch = new ArrayList<>();
+        
+        try {
+            sendText(out, session, "SUBSCRIBED:" + detectionLog.getLastSequence());
+            long backlogEnd = sendBacklog(subscriber, out, session, json, batch);
+            out.flush();
             
-            // Procesar comando
-            if (command.trim().equals("GET_LOGS")) {
-                // Obtener logs en formato JSON (últimos 100 registros)
-                String jsonResponse = detectionLog.getLastDetectionsJSON(100);
+            while (true) {
+                Detection detection = subscriber.queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
                 
-                // Enviar respuesta
-                out.println(jsonResponse);
+                if (subscriber.overflowed) {
+                    break;
+                }
                 
-                System.out.println("[LOG_SERVER] Enviados " + 
-                    detectionLog.getSize() + " registros a " + clientAddress);
-            } 
-            else if (command.trim().startsWith("GET_LOGS:")) {
-                // GET_LOGS:N - obtener últimos N registros
-                try {
-                    int n = Integer.parseInt(command.split(":")[1].trim());
-                    String jsonResponse = detectionLog.getLastDetectionsJSON(n);
-                    out.println(jsonResponse);
-                    
-                    System.out.println("[LOG_SERVER] Enviados últimos " + n + 
-                        " registros a " + clientAddress);
-                } catch (Exception e) {
-                    out.println("ERROR:Formato inválido");
+                if (detection == null) {
+                    // Mantiene viva la conexión y detecta clientes caídos
+                    if (session.isBinary()) {
+                        session.getEncoder().writeHeartbeat(out);
+                    } else {
+                        sendLine(out, "HEARTBEAT");
+                    }
+                    out.flush();
+                    continue;
                 }
+                
+                // Enviar todo lo encolado con una sola escritura
+                do {
+                    if (detection.getSequence() > backlogEnd) {
+                        batch.add(detection);
+                    }
+                } while ((detection = subscriber.queue.poll()) != null);
+                sendBatch(out, session, json, batch);
+                out.flush();
             }
-            else if (command.trim().equals("GET_COUNT")) {
-                // Comando adicional: obtener solo el conteo
-                out.println("{\"count\":" + detectionLog.getSize() + "}");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (!subscriber.overflowed) {
+                System.out.println("[LOG_SERVER] Suscriptor desconectado: " + clientAddress);
             }
-            else {
-                out.println("ERROR:Comando desconocido");
-                System.err.println("[LOG_SERVER] Comando desconocido: " + command);
+        } finally {
+            json.release();
+            if (subscriber.overflowed) {
+                slowSubscribers.incrementAndGet();
+                System.err.println("[LOG_SERVER] Suscriptor lento desconectado: " + clientAddress);
             }
+            detectionLog.removeListener(subscriber);
+            activeSubscribers.decrementAndGet();
+            channel.close();
+        }
+    }
+    
+    /**
+     * Envía las detecciones del log posteriores al cursor del suscriptor.
+     * Devuelve la última secuencia enviada (las de la cola hasta ahí se omiten).
+     * Tras cada bloque se quitan de la cola las que ya se enviaron, para que
+     * un historial largo no la llene y cierre la suscripción.
+     * Un cursor posterior a la última secuencia es de otra ejecución (el
+     * servidor se reinició sin journal): como en GET_SINCE, el historial se
+     * envía desde el principio en lugar de ocultar las detecciones nuevas
+     * hasta que el contador alcance el cursor.
+     */
+    private long sendBacklog(Subscriber subscriber, OutputStream out, Session session,
+                             JsonWriter json, List<Detection> batch) throws IOException {
+        if (subscriber.after < 0) {
+            return 0;
+        }
+        
+        long cursor = subscriber.after;
+        long end = detectionLog.getLastSequence();
+        
+        if (cursor > end) {
+            System.out.println("[LOG_SERVER] " + session.getClientAddress() + " pidió after=" + cursor +
+                " pero la última secuencia es " + end + "; se envía desde el principio");
+            cursor = 0;
+        }
+        
+        while (cursor < end) {
+            DetectionLog.ReadResult result = detectionLog.readSince(cursor, MAX_SINCE_ITEMS);
             
-        } catch (IOException e) {
-            System.err.println("[LOG_SERVER] Error manejando cliente " + 
-                clientAddress + ": " + e.getMessage());
-        } finally {
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                // Ignorar
+            if (result.getGap() > 0) {
+                System.out.println("[LOG_SERVER] " + session.getClientAddress() + " perdió " +
+                    result.getGap() + " registros sobrescritos");
+            }
+            if (result.getDetections().isEmpty()) {
+                break;
             }
+            
+            for (Detection detection : result.getDetections()) {
+                if (subscriber.matches(detection)) {
+                    batch.add(detection);
+                }
+            }
+            sendBatch(out, session, json, batch);
+            cursor = result.getNextSequence();
+            
+            long sent = cursor;
+            subscriber.queue.removeIf(detection -> detection.getSequence() <= sent);
         }
+        
+        return cursor;
     }
     
     /**
-     * Detiene el servidor
+     * Envía un lote de una suscripción (una línea JSON por detección o una
+     * trama DETECTIONS) y vacía la lista
      */
-    public void stop() {
-        running = false;
-        closeServer();
+    private static void sendBatch(OutputStream out, Session session, JsonWriter json,
+                                  List<Detection> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        
+        if (session.isBinary()) {
+            long last = batch.get(batch.size() - 1).getSequence();
+            session.getEncoder().writeDetections(out, last, 0, false, batch);
+        } else {
+            for (Detection detection : batch) {
+                detection.writeJSON(json).newline();
+            }
+            json.writeTo(out);
+        }
+        batch.clear();
     }
     
-    private void closeServer() {
-        if (serverSocket != null && !serverSocket.isClosed()) {
-            try {
-                serverSocket.close();
-                System.out.println("[LOG_SERVER] Servidor cerrado");
-            } catch (IOException e) {
-                System.err.println("[LOG_SERVER] Error cerrando servidor: " + e.getMessage());
+    @Override
+    public String getStatus() {
+        return super.getStatus() + String.format(" suscriptores=%d lentos=%d",
+            activeSubscribers.get(), slowSubscribers.get());
+    }
+    
+    /**
+     * Suscripción de un cliente: filtros y cola de envío acotada
+     */
+    private static final class Subscriber implements Consumer<Detection> {
+        final BlockingQueue<Detection> queue = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE_CAPACITY);
+        volatile boolean overflowed;
+        SocketChannel channel;
+        String camera;
+        String objectClass;
+        double minConfidence;
+        long after = -1; // Sin cursor: solo las detecciones nuevas
+        
+        /**
+         * Argumentos separados por espacios o '&': camera=..  class=..  minConf=..  after=..
+         */
+        static Subscriber parse(String args) {
+            Subscriber subscriber = new Subscriber();
+            
+            for (String pair : args.replaceFirst("^:", "").trim().split("[\\s&]+")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                
+                int eq = pair.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Parámetro sin valor: " + pair);
+                }
+                
+                String key = pair.substring(0, eq).trim();
+                String value = pair.substring(eq + 1).trim();
+                
+                try {
+                    switch (key.toLowerCase(Locale.ROOT)) {
+                        case "camera":
+                            subscriber.camera = value;
+                            break;
+                        case "class":
+                            subscriber.objectClass = value;
+                            break;
+                        case "minconf":
+                            subscriber.minConfidence = Double.parseDouble(value);
+                            break;
+                        case "after":
+                            subscriber.after = Math.max(0, Long.parseLong(value));
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Parámetro desconocido: " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Valor inválido: " + pair);
+                }
             }
+            
+            return subscriber;
+        }
+        
+        boolean matches(Detection detection) {
+            return detection.getConfidence() >= minConfidence
+                && (camera == null || camera.equals(detection.getCamara()))
+                && (objectClass == null || objectClass.equalsIgnoreCase(detection.getObjeto()));
+        }
+        
+        /**
+         * Llamado desde el hilo que registra la detección (un escritor del
+         * ImageStore): nunca bloquea
+         */
+        @Override
+        public void accept(Detection detection) {
+            if (overflowed || !matches(detection)) {
+                return;
+            }
+            
+            if (!queue.offer(detection)) {
+                // Cerrar el canal desbloquea al hilo que escribe en él
+                overflowed = true;
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Ignorar
+                }
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("cámara=%s clase=%s minConf=%.2f after=%s",
+                camera != null ? camera : "*", objectClass != null ? objectClass : "*",
+                minConfidence, after >= 0 ? String.valueOf(after) : "-");
         }
     }
 }
@@ -0,0 +1,125 @@
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtro de movimiento previo a la detección.
+ * Compara el frame reducido en escala de grises con el último frame evaluado
+ * y solo deja pasar los que cambian más que el umbral configurado. Cada
+ * cierto tiempo deja pasar un frame clave para revisar objetos inmóviles.
+ * No es thread-safe: cada cámara tiene el suyo.
+ */
+public class MotionDetector {
+    private static final int ANALYSIS_WIDTH = 160;
+    private static final double PIXEL_DIFF_THRESHOLD = 25; // Diferencia de gris para considerar un píxel cambiado
+    
+    private final double changeThreshold;
+    private final long keyframeIntervalNanos;
+    
+    private final Mat small;
+    private final Mat gray;
+    private final Mat diff;
+    private Mat previous;
+    private long lastForwardNanos;
+    private volatile double lastScore;
+    
+    // Métricas
+    private volatile long evaluatedFrames;
+    private volatile long skippedFrames;
+    private volatile long keyframes;
+    
+    /**
+     * @param changeThreshold fracción de píxeles que deben cambiar (0 desactiva el filtro)
+     * @param keyframeSeconds tiempo máximo sin analizar un frame
+     */
+    public MotionDetector(double changeThreshold, int keyframeSeconds) {
+        this.changeThreshold = changeThreshold;
+        this.keyframeIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(0, keyframeSeconds));
+        this.small = new Mat();
+        this.gray = new Mat();
+        this.diff = new Mat();
+        this.lastForwardNanos = System.nanoTime();
+    }
+    
+    public boolean isEnabled() {
+        return changeThreshold > 0;
+    }
+    
+    /**
+     * Decide si el frame debe pasar al detector
+     */
+    public boolean shouldAnalyze(Mat frame) {
+        if (!isEnabled()) {
+            return true;
+        }
+        
+        evaluatedFrames++;
+        
+        double score = changeScore(frame);
+        lastScore = score;
+        
+        long now = System.nanoTime();
+        boolean keyframeDue = now - lastForwardNanos >= keyframeIntervalNanos;
+        
+        if (score >= changeThreshold || keyframeDue) {
+            if (score < changeThreshold) {
+                keyframes++;
+            }
+            lastForwardNanos = now;
+            return true;
+        }
+        
+        skippedFrames++;
+        return false;
+    }
+    
+    /**
+     * Fracción de píxeles que cambiaron respecto al último frame evaluado
+     */
+    private double changeScore(Mat frame) {
+        double scale = (double) ANALYSIS_WIDTH / frame.cols();
+        Size size = new Size(ANALYSIS_WIDTH, Math.max(1, Math.round(frame.rows() * scale)));
+        Imgproc.resize(frame, small, size, 0, 0, Imgproc.INTER_AREA);
+        
+        if (small.channels() == 3) {
+            Imgproc.cvtColor(small, gray, Imgproc.COLOR_BGR2GRAY);
+        } else {
+            small.copyTo(gray);
+        }
+        Imgproc.GaussianBlur(gray, gray, new Size(5, 5), 0);
+        
+        if (previous == null || previous.rows() != gray.rows() || previous.cols() != gray.cols()) {
+            // Primer frame (o cambio de resolución): siempre se analiza
+            if (previous != null) {
+                previous.release();
+            }
+            previous = gray.clone();
+            return 1.0;
+        }
+        
+        Core.absdiff(gray, previous, diff);
+        Imgproc.threshold(diff, diff, PIXEL_DIFF_THRESHOLD, 255, Imgproc.THRESH_BINARY);
+        double score = (double) Core.countNonZero(diff) / diff.total();
+        
+        gray.copyTo(previous);
+        return score;
+    }
+    
+    public long getEvaluatedFrames() { return evaluatedFrames; }
+    public long getSkippedFrames() { return skippedFrames; }
+    public long getKeyframes() { return keyframes; }
+    public double getLastScore() { return lastScore; }
+    
+    public void release() {
+        small.release();
+        gray.release();
+        diff.release();
+        if (previous != null) {
+            previous.release();
+            previous = null;
+        }
+    }
+}
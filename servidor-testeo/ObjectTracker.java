@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seguimiento de objetos de una cámara entre frames analizados.
+ * Asocia las detecciones de cada frame con las pistas abiertas por la caja
+ * (IoU; si no se solapan, distancia entre centros relativa al tamaño) y
+ * prefiere las parejas de la misma clase. Cada pista tiene un identificador
+ * estable y solo se emiten eventos cuando aparece, cambia de clase, lleva
+ * visible el intervalo configurado desde su último evento o desaparece
+ * (MAX_MISSES frames analizados seguidos sin verla); el resto de detecciones
+ * se suprimen. Las detecciones sin caja no se pueden seguir y se emiten
+ * siempre. Con intervalo 0 no hay seguimiento: se emiten todas.
+ * No es thread-safe: cada cámara tiene el suyo.
+ */
+public class ObjectTracker {
+    public static final int DEFAULT_INTERVAL_SECONDS = 30;
+    
+    // Eventos de seguimiento
+    public static final int EVENT_NONE = 0; // Detección sin seguimiento
+    public static final int EVENT_APPEAR = 1;
+    public static final int EVENT_CLASS_CHANGE = 2;
+    public static final int EVENT_VISIBLE = 3;
+    public static final int EVENT_DISAPPEAR = 4;
+    private static final String[] EVENT_NAMES = {"", "aparece", "cambia", "sigue", "desaparece"};
+    
+    private static final double MIN_IOU = 0.3;
+    private static final double CENTROID_GATE = 0.5; // Distancia máxima entre centros, en tamaños de caja
+    private static final int MAX_MISSES = 3;
+    private static final int MAX_TRACKS = 1024; // Índices de 16 bits en las parejas candidatas
+    
+    private final String cameraId;
+    private final long intervalNanos;
+    private final List<Track> tracks;
+    private long nextTrackId;
+    private long[] pairs; // Parejas candidatas: [puntuación][pista][detección], reutilizado entre frames
+    
+    // Métricas
+    private volatile long inputDetections;
+    private volatile long suppressedDetections;
+    private volatile long emittedEvents;
+    private volatile long updates;
+    private volatile long updateNanos;
+    private volatile int activeTracks;
+    
+    /**
+     * @param intervalSeconds segundos entre eventos de un objeto que sigue visible (0 = sin seguimiento)
+     */
+    public ObjectTracker(String cameraId, int intervalSeconds) {
+        this.cameraId = cameraId;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(Math.max(0, intervalSeconds));
+        this.tracks = new ArrayList<>();
+        this.nextTrackId = 1;
+        this.pairs = new long[64];
+    }
+    
+    public boolean isEnabled() {
+        return intervalNanos > 0;
+    }
+    
+    /**
+     * Actualiza las pistas con las detecciones de un frame y devuelve las
+     * que hay que registrar (con su pista y evento asignados), más un evento
+     * de desaparición por cada pista que se cierra. Las desapariciones llevan
+     * los metadatos del frame actual y la última caja del objeto, pero no
+     * imagen (null): en el frame actual el objeto ya no está.
+     */
+    public List<Detection> update(List<Detection> detections, Detection.FrameInfo frame) {
+        long start = System.nanoTime();
+        inputDetections += detections.size();
+        
+        if (!isEnabled()) {
+            emittedEvents += detections.size();
+            return detections;
+        }
+        
+        List<Detection> events = new ArrayList<>();
+        long now = frame.getCaptureNanos();
+        int trackCount = tracks.size();
+        int detectionCount = Math.min(detections.size(), MAX_TRACKS);
+        
+        // Parejas pista-detección con alguna posibilidad, de mejor a peor
+        int pairCount = 0;
+        for (int t = 0; t < trackCount; t++) {
+            Track track = tracks.get(t);
+            for (int d = 0; d < detectionCount; d++) {
+                Detection detection = detections.get(d);
+                if (!detection.hasBox()) {
+                    continue;
+                }
+                
+                double score = matchScore(track, detection);
+                if (score <= 0) {
+                    continue;
+                }
+                if (track.objeto.equals(detection.getObjeto())) {
+                    score += 1;
+                }
+                
+                if (pairCount == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                }
+                pairs[pairCount++] = ((long) (score * 1_000_000) << 32) | ((long) t << 16) | d;
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+        
+        // Asignación voraz: cada pista y cada detección, como mucho una vez
+        Detection[] matched = new Detection[trackCount];
+        boolean[] assigned = new boolean[detections.size()];
+        
+        for (int p = pairCount - 1; p >= 0; p--) {
+            int t = (int) (pairs[p] >>> 16) & 0xFFFF;
+            int d = (int) pairs[p] & 0xFFFF;
+            
+            if (matched[t] == null && !assigned[d]) {
+                matched[t] = detections.get(d);
+                assigned[d] = true;
+            }
+        }
+        
+        // Pistas vistas en este frame
+        for (int t = 0; t < trackCount; t++) {
+            Track track = tracks.get(t);
+            Detection detection = matched[t];
+            
+            if (detection == null) {
+                continue;
+            }
+            
+            track.misses = 0;
+            int event = EVENT_NONE;
+            
+            if (!track.objeto.equals(detection.getObjeto())) {
+                event = EVENT_CLASS_CHANGE;
+            } else if (now - track.lastEventNanos >= intervalNanos) {
+                event = EVENT_VISIBLE;
+            }
+            track.update(detection);
+            
+            if (event != EVENT_NONE) {
+                track.lastEventNanos = now;
+                detection.setTrack(track.id, event);
+                events.add(detection);
+            } else {
+                suppressedDetections++;
+            }
+        }
+        
+        // Detecciones nuevas: abren pista (las que no tienen caja se emiten sin pista)
+        for (int d = 0; d < detections.size(); d++) {
+            if (assigned[d]) {
+                continue;
+            }
+            
+            Detection detection = detections.get(d);
+            if (detection.hasBox() && tracks.size() < MAX_TRACKS) {
+                Track track = new Track(nextTrackId++, detection, now);
+                tracks.add(track);
+                detection.setTrack(track.id, EVENT_APPEAR);
+            }
+            events.add(detection);
+        }
+        
+        // Pistas no vistas: se cierran tras MAX_MISSES frames analizados
+        for (int t = trackCount - 1; t >= 0; t--) {
+            Track track = tracks.get(t);
+            if (matched[t] != null || ++track.misses < MAX_MISSES) {
+                continue;
+            }
+            
+            tracks.remove(t);
+            Detection gone = new Detection(cameraId, track.objeto, null, track.confidence, frame,
+                track.x, track.y, track.width, track.height);
+            gone.setTrack(track.id, EVENT_DISAPPEAR);
+            events.add(gone);
+        }
+        
+        activeTracks = tracks.size();
+        emittedEvents += events.size();
+        updates++;
+        updateNanos += System.nanoTime() - start;
+        return events;
+    }
+    
+    /**
+     * IoU de las cajas o, si apenas se solapan, una puntuación menor que
+     * MIN_IOU según la distancia entre centros; 0 si no pueden ser el mismo objeto
+     */
+    private static double matchScore(Track track, Detection detection) {
+        double iou = iou(track.x, track.y, track.width, track.height,
+            detection.getBoxX(), detection.getBoxY(), detection.getBoxWidth(), detection.getBoxHeight());
+        
+        if (iou >= MIN_IOU) {
+            return iou;
+        }
+        
+        double dx = track.x - detection.getBoxX();
+        double dy = track.y - detection.getBoxY();
+        double size = Math.max(Math.max(track.width, track.height),
+            Math.max(detection.getBoxWidth(), detection.getBoxHeight()));
+        double distance = Math.sqrt(dx * dx + dy * dy) / size;
+        
+        return distance < CENTROID_GATE ? MIN_IOU * (1 - distance / CENTROID_GATE) : 0;
+    }
+    
+    /**
+     * IoU de dos cajas dadas por centro y tamaño
+     */
+    static double iou(int x1, int y1, int w1, int h1, int x2, int y2, int w2, int h2) {
+        double left = Math.max(x1 - w1 / 2.0, x2 - w2 / 2.0);
+        double right = Math.min(x1 + w1 / 2.0, x2 + w2 / 2.0);
+        double top = Math.max(y1 - h1 / 2.0, y2 - h2 / 2.0);
+        double bottom = Math.min(y1 + h1 / 2.0, y2 + h2 / 2.0);
+        
+        if (right <= left || bottom <= top) {
+            return 0;
+        }
+        
+        double intersection = (right - left) * (bottom - top);
+        return intersection / ((double) w1 * h1 + (double) w2 * h2 - intersection);
+    }
+    
+    /**
+     * Nombre del evento en el JSON ("" si no hay seguimiento)
+     */
+    public static String eventName(int event) {
+        return event > 0 && event < EVENT_NAMES.length ? EVENT_NAMES[event] : "";
+    }
+    
+    public int getActiveTracks() {
+        return activeTracks;
+    }
+    
+    public long getInputDetections() {
+        return inputDetections;
+    }
+    
+    public long getEmittedEvents() {
+        return emittedEvents;
+    }
+    
+    public long getSuppressedDetections() {
+        return suppressedDetections;
+    }
+    
+    /**
+     * Fracción de las detecciones recibidas que se suprimieron (0 a 1)
+     */
+    public double getSuppressionRatio() {
+        long input = inputDetections;
+        return input == 0 ? 0 : (double) suppressedDetections / input;
+    }
+    
+    public double getAverageUpdateMicros() {
+        long count = updates;
+        return count == 0 ? 0 : updateNanos / 1000.0 / count;
+    }
+    
+    /**
+     * Objeto seguido: última clase, caja y confianza vistas
+     */
+    private static final class Track {
+        final long id;
+        String objeto;
+        int x;
+        int y;
+        int width;
+        int height;
+        double confidence;
+        int misses; // Frames analizados seguidos sin verlo
+        long lastEventNanos;
+        
+        Track(long id, Detection detection, long now) {
+            this.id = id;
+            this.lastEventNanos = now;
+            update(detection);
+        }
+        
+        void update(Detection detection) {
+            objeto = detection.getObjeto();
+            x = detection.getBoxX();
+            y = detection.getBoxY();
+            width = detection.getBoxWidth();
+            height = detection.getBoxHeight();
+            confidence = detection.getConfidence();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controlador adaptativo de muestreo por cámara.
+ * Reparte un presupuesto global de inferencias por segundo entre las cámaras:
+ * las que tienen actividad reciente (detecciones) reciben más, las inactivas
+ * bajan su frecuencia. El presupuesto efectivo se reduce si la latencia
+ * medida del detector no da abasto o si hay cola pendiente, y un limitador
+ * global garantiza que el total nunca supera el presupuesto.
+ */
+public class SamplingController {
+    private static final double IDLE_WEIGHT = 0.25;
+    private static final double BUSY_WEIGHT = 4.0;
+    private static final double INITIAL_ACTIVITY = 0.5;
+    private static final double ACTIVITY_ALPHA = 0.2; // Suavizado de la actividad
+    private static final double LATENCY_ALPHA = 0.2;  // Suavizado de la latencia
+    private static final long MAX_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    
+    private final double budgetFps;
+    private final DetectionBatcher detectionBatcher;
+    private final ConcurrentHashMap<String, CameraState> cameras;
+    
+    // Limitador global: próximo instante en que se puede iniciar una inferencia
+    private long nextGlobalPermitNanos;
+    private volatile double latencyEwmaNanos;
+    
+    public SamplingController(double budgetFps, DetectionBatcher detectionBatcher) {
+        this.budgetFps = Math.max(0.1, budgetFps);
+        this.detectionBatcher = detectionBatcher;
+        this.cameras = new ConcurrentHashMap<>();
+        this.nextGlobalPermitNanos = System.nanoTime();
+    }
+    
+    public void register(String cameraId) {
+        cameras.putIfAbsent(cameraId, new CameraState());
+    }
+    
+    public void unregister(String cameraId) {
+        cameras.remove(cameraId);
+    }
+    
+    /**
+     * Espera hasta que a la cámara le toque analizar otro frame según su
+     * frecuencia asignada (se llama antes de tomar el frame para que sea reciente).
+     * Cuenta desde el último intento, se analizara o lo descartara el filtro
+     * de movimiento, para que una escena quieta no se procese sin pausa.
+     */
+    public void awaitTurn(String cameraId) throws InterruptedException {
+        CameraState state = cameras.get(cameraId);
+        if (state == null) {
+            return;
+        }
+        
+        long wait = state.lastAttemptNanos + getIntervalNanos(cameraId) - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+    
+    /**
+     * Reserva un permiso del presupuesto global y espera su turno.
+     * Se llama justo antes de enviar un frame al detector.
+     */
+    public void acquirePermit(String cameraId) throws InterruptedException {
+        long wait;
+        
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextGlobalPermitNanos);
+            nextGlobalPermitNanos = start + (long) (TimeUnit.SECONDS.toNanos(1) / getEffectiveBudgetFps());
+            wait = start - now;
+        }
+        
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        
+        CameraState state = cameras.get(cameraId);
+        if (state != null) {
+            state.lastAttemptNanos = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Registra el resultado de una inferencia: latencia del detector y número de detecciones
+     */
+    public void recordResult(String cameraId, long latencyNanos, int detections) {
+        double latency = latencyEwmaNanos;
+        latencyEwmaNanos = latency == 0 ? latencyNanos : latency + LATENCY_ALPHA * (latencyNanos - latency);
+        
+        CameraState state = cameras.get(cameraId);
+        if (state != null) {
+            state.updateActivity(detections > 0 ? 1.0 : 0.0);
+        }
+    }
+    
+    /**
+     * Registra un frame descartado por el filtro de movimiento (escena quieta)
+     */
+    public void recordIdle(String cameraId) {
+        CameraState state = cameras.get(cameraId);
+        if (state != null) {
+            state.updateActivity(0.0);
+            state.lastAttemptNanos = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Presupuesto global ajustado por la capacidad medida del detector y la cola pendiente
+     */
+    public double getEffectiveBudgetFps() {
+        double budget = budgetFps;
+        DetectorPool pool = detectionBatcher.getDetectorPool();
+        
+        // Capacidad estimada: workers × frames por lote / latencia por llamada
+        double latency = latencyEwmaNanos;
+        if (latency > 0) {
+            double framesPerCall = Math.max(1.0, detectionBatcher.getAverageBatchSize());
+            double capacity = pool.getSize() * framesPerCall * TimeUnit.SECONDS.toNanos(1) / latency;
+            budget = Math.min(budget, capacity);
+        }
+        
+        // Si hay frames esperando, bajar el ritmo en proporción a la cola
+        int backlog = detectionBatcher.getPendingFrames() + pool.getQueueDepth();
+        if (backlog > 0) {
+            budget = budget / (1.0 + (double) backlog / pool.getSize());
+        }
+        
+        return Math.max(0.1, budget);
+    }
+    
+    /**
+     * Intervalo entre inferencias de la cámara según su parte del presupuesto
+     */
+    public long getIntervalNanos(String cameraId) {
+        CameraState state = cameras.get(cameraId);
+        if (state == null) {
+            return 0;
+        }
+        
+        double totalWeight = 0;
+        for (CameraState camera : cameras.values()) {
+            totalWeight += camera.getWeight();
+        }
+        
+        double rate = getEffectiveBudgetFps() * state.getWeight() / totalWeight;
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        
+        return Math.min(interval, MAX_INTERVAL_NANOS);
+    }
+    
+    public double getRateFps(String cameraId) {
+        long interval = getIntervalNanos(cameraId);
+        return interval == 0 ? 0 : (double) TimeUnit.SECONDS.toNanos(1) / interval;
+    }
+    
+    public double getActivity(String cameraId) {
+        CameraState state = cameras.get(cameraId);
+        return state != null ? state.activity : 0;
+    }
+    
+    /**
+     * Resumen del estado del controlador para el log del servidor
+     */
+    public String getStatus() {
+        return String.format("presupuesto=%.1f fps efectivo=%.2f fps latencia=%.0f ms cámaras=%d",
+            budgetFps, getEffectiveBudgetFps(), latencyEwmaNanos / 1_000_000.0, cameras.size());
+    }
+    
+    /**
+     * Estado de muestreo de una cámara
+     */
+    private static class CameraState {
+        volatile double activity = INITIAL_ACTIVITY; // Fracción reciente de frames con detecciones
+        volatile long lastAttemptNanos = System.nanoTime() - MAX_INTERVAL_NANOS; // Último frame analizado o descartado
+        
+        synchronized void updateActivity(double sample) {
+            activity += ACTIVITY_ALPHA * (sample - activity);
+        }
+        
+        double getWeight() {
+            return IDLE_WEIGHT + (BUSY_WEIGHT - IDLE_WEIGHT) * activity;
+        }
+    }
+}
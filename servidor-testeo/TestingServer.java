@@ -1,6 +1,9 @@
 import org.opencv.core.Core;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Servidor Principal de Testeo de Objetos
@@ -8,13 +11,28 @@ import java.util.*;
  */
 public class TestingServer {
     private static final String CONFIG_FILE = "cameras_config.txt";
+    private static final int STATUS_INTERVAL_SECONDS = 30;
+    private static final int JOURNAL_SEGMENT_BYTES = 8 * 1024 * 1024;
+    private static final int JOURNAL_MAX_SEGMENTS = 8;
+    private static final int JOURNAL_SYNC_EVERY_RECORDS = 64;
+    private static final int CLIENT_IDLE_TIMEOUT_MILLIS = 60_000;
+    private static final int THUMBNAIL_MAX_WIDTH = 320;
+    private static final int IMAGE_WRITER_THREADS = 2;
+    private static final long IMAGE_STORE_STOP_TIMEOUT_MILLIS = 5000;
     
-    private final List<Thread> cameraThreads;
-    private final List<CameraProcessor> cameraProcessors;
+    private CameraScheduler cameraScheduler;
     private Thread logServerThread;
     private Thread imageServerThread;
     private LogServer logServer;
     private ImageServer imageServer;
+    private DetectorPool detectorPool;
+    private DetectionBatcher detectionBatcher;
+    private SamplingController samplingController;
+    private DetectionJournal detectionJournal;
+    private ImageCache imageCache;
+    private ThumbnailGenerator thumbnailGenerator;
+    private ImageStore imageStore;
+    private ScheduledExecutorService statusReporter;
     
     // Configuración
     private final String pythonScriptPath;
@@ -23,22 +41,52 @@ public class TestingServer {
     private final int logServerPort;
     private final int imageServerPort;
     private final int frameSkip;
+    private final int detectorWorkers;
+    private final boolean rawFrameTransport;
+    private final int maxBatchSize;
+    private final long maxBatchWaitMillis;
+    private final double inferenceBudgetFps;
+    private final String journalPath;
+    private final long journalSyncMillis;
+    private final int maxClients;
+    private final long imageCacheBytes;
+    private final long imageBudgetBytes;
+    private final long imageMaxAgeMillis;
     
     public TestingServer(String pythonScriptPath, 
                         String tempFramePath,
                         String detectionImagesPath,
                         int logServerPort,
                         int imageServerPort,
-                        int frameSkip) {
+                        int frameSkip,
+                        int detectorWorkers,
+                        boolean rawFrameTransport,
+                        int maxBatchSize,
+                        long maxBatchWaitMillis,
+                        double inferenceBudgetFps,
+                        String journalPath,
+                        long journalSyncMillis,
+                        int maxClients,
+                        long imageCacheBytes,
+                        long imageBudgetBytes,
+                        long imageMaxAgeMillis) {
         this.pythonScriptPath = pythonScriptPath;
         this.tempFramePath = tempFramePath;
         this.detectionImagesPath = detectionImagesPath;
         this.logServerPort = logServerPort;
         this.imageServerPort = imageServerPort;
         this.frameSkip = frameSkip;
-        
-        this.cameraThreads = new ArrayList<>();
-        this.cameraProcessors = new ArrayList<>();
+        this.detectorWorkers = detectorWorkers;
+        this.rawFrameTransport = rawFrameTransport;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchWaitMillis = maxBatchWaitMillis;
+        this.inferenceBudgetFps = inferenceBudgetFps;
+        this.journalPath = journalPath;
+        this.journalSyncMillis = journalSyncMillis;
+        this.maxClients = maxClients;
+        this.imageCacheBytes = imageCacheBytes;
+        this.imageBudgetBytes = imageBudgetBytes;
+        this.imageMaxAgeMillis = imageMaxAgeMillis;
     }
     
     /**
@@ -62,7 +110,18 @@ public class TestingServer {
         
         // Inicializar DetectionLog con límite de 30 detecciones
         System.out.println("[INIT] Inicializando sistema de logs...");
-        DetectionLog.getInstance();
+        DetectionLog detectionLog = DetectionLog.getInstance();
+        
+        // Journal en disco: recuperar las detecciones recientes antes de arrancar las cámaras
+        detectionJournal = new DetectionJournal(journalPath, JOURNAL_SEGMENT_BYTES, JOURNAL_MAX_SEGMENTS,
+            JOURNAL_SYNC_EVERY_RECORDS, journalSyncMillis);
+        try {
+            detectionJournal.open();
+            detectionLog.attachJournal(detectionJournal);
+        } catch (IOException e) {
+            System.err.println("[ERROR] No se pudo abrir el journal de detecciones: " + e.getMessage());
+            detectionJournal = null;
+        }
         
         // Cargar configuración de cámaras
         System.out.println("[INIT] Cargando configuración de cámaras...");
@@ -75,15 +134,50 @@ public class TestingServer {
         
         System.out.println("[INIT] Se encontraron " + cameras.size() + " cámaras");
         
+        // Iniciar pool de workers de detección (el modelo se carga una sola vez por worker)
+        System.out.println("\n[INIT] Iniciando pool de detección con " + detectorWorkers + " workers...");
+        detectorPool = new DetectorPool(pythonScriptPath, detectorWorkers);
+        detectorPool.start();
+        
+        // Planificador de lotes compartido por todas las cámaras
+        detectionBatcher = new DetectionBatcher(detectorPool, maxBatchSize, maxBatchWaitMillis);
+        detectionBatcher.start();
+        
+        // Reparto del presupuesto de inferencias entre cámaras
+        samplingController = new SamplingController(inferenceBudgetFps, detectionBatcher);
+        
+        // Caché de imágenes recientes compartida por cámaras y servidor de imágenes
+        imageCache = new ImageCache(imageCacheBytes);
+        
+        cameraScheduler = new CameraScheduler(config -> new CameraProcessor(
+            config,
+            detectionBatcher,
+            tempFramePath,
+            frameSkip,
+            rawFrameTransport,
+            cameraScheduler,
+            samplingController,
+            imageStore
+        ));
+        
+        // Miniaturas e imágenes de detección: las miniaturas se codifican en el pool
+        // de CPU del planificador; las imágenes, en los escritores del ImageStore
+        thumbnailGenerator = new ThumbnailGenerator(detectionImagesPath, THUMBNAIL_MAX_WIDTH,
+            cameraScheduler.getCpuExecutor());
+        imageStore = new ImageStore(detectionImagesPath, imageCache, thumbnailGenerator, detectionLog,
+            IMAGE_WRITER_THREADS, imageBudgetBytes, imageMaxAgeMillis);
+        imageStore.start();
+        
         // Iniciar servidor de logs (Puerto 9001)
         System.out.println("\n[INIT] Iniciando servidor de logs en puerto " + logServerPort + "...");
-        logServer = new LogServer(logServerPort);
+        logServer = new LogServer(logServerPort, maxClients, CLIENT_IDLE_TIMEOUT_MILLIS);
         logServerThread = new Thread(logServer);
         logServerThread.start();
         
         // Iniciar servidor de imágenes (Puerto 9002)
         System.out.println("[INIT] Iniciando servidor de imágenes en puerto " + imageServerPort + "...");
-        imageServer = new ImageServer(imageServerPort, detectionImagesPath);
+        imageServer = new ImageServer(imageServerPort, detectionImagesPath, imageCache, imageStore,
+            maxClients, CLIENT_IDLE_TIMEOUT_MILLIS);
         imageServerThread = new Thread(imageServer);
         imageServerThread.start();
         
@@ -94,61 +188,130 @@ public class TestingServer {
             // Ignorar
         }
         
-        // Iniciar procesadores de cámara (un hilo por cámara)
+        // Iniciar procesadores de cámara en paralelo desde el planificador
         System.out.println("\n[INIT] Iniciando procesamiento de cámaras...");
-        for (CameraConfig camera : cameras) {
-            CameraProcessor processor = new CameraProcessor(
-                camera.id,
-                camera.rtspUrl,
-                pythonScriptPath,
-                tempFramePath,
-                detectionImagesPath,
-                frameSkip
-            );
-            
-            Thread thread = new Thread(processor);
-            thread.setName("Camera-" + camera.id);
-            
-            cameraProcessors.add(processor);
-            cameraThreads.add(thread);
-            
-            thread.start();
-            
-            // Pequeña pausa entre cámaras para evitar saturación inicial
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                // Ignorar
-            }
-        }
+        System.out.println("[INIT] Hilos de cámara: " +
+            (CameraScheduler.virtualThreadsAvailable() ? "virtuales" : "pool de plataforma"));
+        
+        cameraScheduler.startAll(cameras);
+        
+        // Reporte periódico del estado del pool de detección
+        statusReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Status-Reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusReporter.scheduleAtFixedRate(this::printStatus,
+            STATUS_INTERVAL_SECONDS, STATUS_INTERVAL_SECONDS, TimeUnit.SECONDS);
         
         System.out.println("SERVIDOR INICIADO EXITOSAMENTE");
         System.out.println("Servidor de Logs:     Puerto " + logServerPort);
         System.out.println("Servidor de Imágenes: Puerto " + imageServerPort);
-        System.out.println("Cámaras activas:      " + cameras.size());
+        System.out.println("Clientes máximos:     " + maxClients + " por servidor (inactividad " + CLIENT_IDLE_TIMEOUT_MILLIS / 1000 + " s)");
+        System.out.println("Cámaras activas:      " + cameraScheduler.getCameraCount());
+        System.out.println("Workers detección:    " + detectorWorkers);
+        System.out.println("Envío de frames:      " + (rawFrameTransport ? "memoria (BGR)" : "JPEG temporal"));
+        System.out.println("Lotes de detección:   " + maxBatchSize + " frames / " + maxBatchWaitMillis + " ms");
+        System.out.println("Presupuesto IA:       " + inferenceBudgetFps + " inferencias/s");
         System.out.println("Directorio imágenes:  " + detectionImagesPath);
+        System.out.println("Caché de imágenes:    " + imageCacheBytes / (1024 * 1024) + " MB");
+        System.out.println("Retención imágenes:   " +
+            (imageBudgetBytes > 0 ? imageBudgetBytes / (1024 * 1024) + " MB" : "sin límite de tamaño") + " / " +
+            (imageMaxAgeMillis > 0 ? imageMaxAgeMillis / 3_600_000 + " h" : "sin límite de edad"));
+        System.out.println("Journal:              " + journalPath + " (sincronización cada " + journalSyncMillis + " ms)");
         System.out.println("\nPresiona Ctrl+C para detener el servidor\n");
     }
     
+    /**
+     * Imprime el estado de los componentes del servidor
+     */
+    private void printStatus() {
+        if (detectorPool != null) {
+            System.out.println("[STATUS] Pool de detección: " + detectorPool.getStatus());
+        }
+        
+        if (detectionBatcher != null) {
+            System.out.println("[STATUS] Lotes: " + detectionBatcher.getStatus());
+        }
+        
+        if (samplingController != null) {
+            System.out.println("[STATUS] Muestreo: " + samplingController.getStatus());
+        }
+        
+        if (detectionJournal != null) {
+            System.out.println("[STATUS] Journal: " + detectionJournal.getStatus());
+        }
+        
+        System.out.println("[STATUS] Índice: " + DetectionLog.getInstance().getIndex().getStatus());
+        
+        if (logServer != null) {
+            System.out.println("[STATUS] Servidor de logs: " + logServer.getStatus());
+        }
+        
+        if (imageServer != null) {
+            System.out.println("[STATUS] Servidor de imágenes: " + imageServer.getStatus());
+        }
+        
+        if (imageCache != null) {
+            System.out.println("[STATUS] Caché de imágenes: " + imageCache.getStatus());
+        }
+        
+        if (imageStore != null) {
+            System.out.println("[STATUS] Imágenes: " + imageStore.getStatus());
+        }
+        
+        if (thumbnailGenerator != null) {
+            System.out.println("[STATUS] Miniaturas: " + thumbnailGenerator.getStatus());
+        }
+        
+        if (cameraScheduler != null) {
+            for (CameraProcessor processor : cameraScheduler.getProcessors()) {
+                System.out.println("[STATUS] " + processor.getCameraId() + ": " + processor.getStatus());
+            }
+        }
+    }
+    
+    /**
+     * Planificador de cámaras: permite añadir, quitar y reiniciar cámaras en ejecución
+     */
+    public CameraScheduler getCameraScheduler() {
+        return cameraScheduler;
+    }
+    
     /**
      * Detiene el servidor y todos sus hilos
      */
     public void stop() {
         System.out.println("\n[SHUTDOWN] Deteniendo servidor...");
         
-        // Detener procesadores de cámara
+        if (statusReporter != null) {
+            statusReporter.shutdownNow();
+        }
+        
+        // Detener procesadores de cámara (espera hasta 5 segundos por cámara)
         System.out.println("[SHUTDOWN] Deteniendo procesamiento de cámaras...");
-        for (CameraProcessor processor : cameraProcessors) {
-            processor.stop();
+        if (cameraScheduler != null) {
+            cameraScheduler.stop();
         }
         
-        // Esperar a que terminen los hilos de cámaras
-        for (Thread thread : cameraThreads) {
-            try {
-                thread.join(5000); // Timeout de 5 segundos
-            } catch (InterruptedException e) {
-                // Ignorar
-            }
+        // Detener workers de detección
+        if (detectionBatcher != null) {
+            detectionBatcher.stop();
+        }
+        if (detectorPool != null) {
+            System.out.println("[SHUTDOWN] Deteniendo pool de detección...");
+            detectorPool.stop();
+        }
+        
+        // Escribir las imágenes pendientes (registran sus detecciones al terminar)
+        if (imageStore != null) {
+            System.out.println("[SHUTDOWN] Guardando imágenes pendientes...");
+            imageStore.stop(IMAGE_STORE_STOP_TIMEOUT_MILLIS);
+        }
+        
+        // Sincronizar el journal una vez que ya no llegan detecciones
+        if (detectionJournal != null) {
+            detectionJournal.close();
         }
         
         // Detener servidores de socket
@@ -189,20 +352,17 @@ public class TestingServer {
                     continue;
                 }
                 
-                String[] parts = line.split(",");
+                CameraConfig camera = CameraConfig.parse(line);
                 
-                if (parts.length < 2) {
+                if (camera == null) {
                     System.err.println("[CONFIG] Línea " + lineNumber + " inválida: " + line);
                     continue;
                 }
                 
-                String id = parts[0].trim();
-                String url = parts[1].trim();
-                
-                cameras.add(new CameraConfig(id, url));
-                System.out.println("[CONFIG] Cargada: " + id + " -> " + url);
+                cameras.add(camera);
+                System.out.println("[CONFIG] Cargada: " + camera);
             }
-            
+        
         } catch (IOException e) {
             System.err.println("[CONFIG] Error leyendo configuración: " + e.getMessage());
         }
@@ -211,22 +371,37 @@ public class TestingServer {
     }
     
     /**
-     * Clase interna para configuración de cámara
+     * Valor de una opción --nombre=valor (defaultValue si no se pasa)
      */
-    private static class CameraConfig {
-        String id;
-        String rtspUrl;
-        
-        CameraConfig(String id, String rtspUrl) {
-            this.id = id;
-            this.rtspUrl = rtspUrl;
+    private static long longOption(List<String> options, String name, long defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String option : options) {
+            if (option.startsWith(prefix)) {
+                return Long.parseLong(option.substring(prefix.length()).trim());
+            }
         }
+        return defaultValue;
     }
     
     /**
-     * Punto de entrada principal
+     * Punto de entrada principal.
+     * Argumentos posicionales (ver abajo) y opciones con nombre:
+     *   --max-disk-mb=N      espacio máximo de las imágenes en disco (2048; 0 = sin límite)
+     *   --retention-days=N   días que se conservan las imágenes (7; 0 = sin límite)
      */
-    public static void main(String[] args) {
+    public static void main(String[] commandLine) {
+        // Las opciones --nombre=valor pueden ir en cualquier posición
+        List<String> options = new ArrayList<>();
+        List<String> positional = new ArrayList<>();
+        for (String arg : commandLine) {
+            if (arg.startsWith("--")) {
+                options.add(arg);
+            } else {
+                positional.add(arg);
+            }
+        }
+        String[] args = positional.toArray(new String[0]);
+        
         // Configuración por defecto (puede ser modificada por argumentos)
         String pythonScript = args.length > 0 ? args[0] : "./detect.py";
         String tempPath = args.length > 1 ? args[1] : "./temp_frames";
@@ -234,6 +409,17 @@ public class TestingServer {
         int logPort = args.length > 3 ? Integer.parseInt(args[3]) : 9001;
         int imagePort = args.length > 4 ? Integer.parseInt(args[4]) : 9002;
         int frameSkip = args.length > 5 ? Integer.parseInt(args[5]) : 1; // Procesar todos los frames
+        int detectorWorkers = args.length > 6 ? Integer.parseInt(args[6]) : 2; // Procesos Python persistentes
+        boolean rawFrames = args.length > 7 ? !args[7].equalsIgnoreCase("file") : true; // "raw" o "file"
+        int maxBatch = args.length > 8 ? Integer.parseInt(args[8]) : 8; // Frames por lote (1 = sin lotes)
+        long maxBatchWait = args.length > 9 ? Long.parseLong(args[9]) : 30; // Espera máxima del lote en ms
+        double budgetFps = args.length > 10 ? Double.parseDouble(args[10]) : 10; // Inferencias por segundo en total
+        String journalPath = args.length > 11 ? args[11] : "./detection_journal";
+        long journalSync = args.length > 12 ? Long.parseLong(args[12]) : 1000; // Sincronización a disco en ms
+        int maxClients = args.length > 13 ? Integer.parseInt(args[13]) : 64; // Clientes simultáneos por servidor
+        long imageCacheMb = args.length > 14 ? Long.parseLong(args[14]) : 64; // Caché de imágenes en MB
+        long imageBudgetMb = longOption(options, "max-disk-mb", 2048); // Imágenes en disco en MB (0 = sin límite)
+        long imageRetentionDays = longOption(options, "retention-days", 7); // Edad máxima de las imágenes (0 = sin límite)
         
         final TestingServer server = new TestingServer(
             pythonScript,
@@ -241,7 +427,18 @@ public class TestingServer {
             imagesPath,
             logPort,
             imagePort,
-            frameSkip
+            frameSkip,
+            detectorWorkers,
+            rawFrames,
+            maxBatch,
+            maxBatchWait,
+            budgetFps,
+            journalPath,
+            journalSync,
+            maxClients,
+            imageCacheMb * 1024 * 1024,
+            imageBudgetMb * 1024 * 1024,
+            imageRetentionDays * 24 * 3_600_000
         );
         
         // Añadir shutdown hook para limpieza ordenada
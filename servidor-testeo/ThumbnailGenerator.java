@@ -0,0 +1,137 @@
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Genera las miniaturas de las imágenes de detección en el subdirectorio
+ * thumbs/ (mismo nombre de archivo y mismo reparto por día y cámara que la
+ * imagen original, ver ImageStore.relativePath).
+ * El frame se reduce en el hilo escritor del ImageStore que acaba de guardar
+ * la imagen (es barato y el frame copiado sigue siendo suyo), y la
+ * codificación JPEG y la escritura se hacen de forma asíncrona en el pool
+ * de CPU. Cada miniatura se escribe en un temporal y se renombra para que el
+ * servidor de imágenes nunca sirva un archivo a medias.
+ * Las miniaturas cuentan en el presupuesto de disco: su tamaño se suma al de
+ * la imagen en el ImageIndex. Si la retención ya borró la imagen, la
+ * miniatura no se genera, o se borra si terminó de escribirse después.
+ */
+public class ThumbnailGenerator {
+    public static final String DIRECTORY = "thumbs";
+    
+    private final File thumbsDir;
+    private final int maxWidth;
+    private final Executor executor;
+    
+    // Métricas
+    private final AtomicLong generated;
+    private final AtomicLong failed;
+    private final AtomicLong thumbnailBytes;
+    
+    public ThumbnailGenerator(String imagesPath, int maxWidth, Executor executor) {
+        this.thumbsDir = new File(imagesPath, DIRECTORY);
+        this.maxWidth = maxWidth;
+        this.executor = executor;
+        this.generated = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.thumbnailBytes = new AtomicLong();
+        
+        thumbsDir.mkdirs();
+    }
+    
+    /**
+     * Programa la miniatura de una imagen ya guardada e indexada en index.
+     * No bloquea: el frame puede reutilizarse en cuanto vuelve la llamada.
+     */
+    public void submit(String imageFileName, Mat frame, ImageIndex index) {
+        Mat thumbnail = scale(frame);
+        
+        try {
+            executor.execute(() -> {
+                try {
+                    write(imageFileName, thumbnail, index);
+                } finally {
+                    thumbnail.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // El pool se está cerrando
+            thumbnail.release();
+            failed.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Copia reducida del frame (ancho máximo maxWidth, conservando el aspecto)
+     */
+    private Mat scale(Mat frame) {
+        if (frame.cols() <= maxWidth) {
+            return frame.clone();
+        }
+        
+        Mat thumbnail = new Mat();
+        double height = Math.max(1, Math.round((double) frame.rows() * maxWidth / frame.cols()));
+        Imgproc.resize(frame, thumbnail, new Size(maxWidth, height), 0, 0, Imgproc.INTER_AREA);
+        return thumbnail;
+    }
+    
+    private void write(String imageFileName, Mat thumbnail, ImageIndex index) {
+        MatOfByte encoded = new MatOfByte();
+        
+        try {
+            if (index.get(imageFileName) == null) {
+                return; // La imagen ya se borró
+            }
+            
+            if (!Imgcodecs.imencode(".jpg", thumbnail, encoded)) {
+                failed.incrementAndGet();
+                return;
+            }
+            
+            byte[] jpeg = encoded.toArray();
+            Path target = getThumbnailFile(imageFileName).toPath();
+            Path temp = target.resolveSibling(imageFileName + ".tmp");
+            
+            Files.createDirectories(target.getParent());
+            Files.write(temp, jpeg);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            // Si la imagen se borró mientras tanto, su borrado no encontró la miniatura
+            if (!index.addThumbnail(imageFileName, jpeg.length)) {
+                Files.deleteIfExists(target);
+                return;
+            }
+            
+            generated.incrementAndGet();
+            thumbnailBytes.addAndGet(jpeg.length);
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            System.err.println("[THUMBS] ERROR guardando miniatura " + imageFileName + ": " + e.getMessage());
+        } finally {
+            encoded.release();
+        }
+    }
+    
+    public File getThumbnailFile(String imageFileName) {
+        return new File(thumbsDir, ImageStore.relativePath(imageFileName));
+    }
+    
+    /**
+     * Resumen del estado para el log del servidor
+     */
+    public String getStatus() {
+        long count = generated.get();
+        return String.format("generadas=%d fallidas=%d tamaño medio=%d bytes",
+            count, failed.get(), count == 0 ? 0 : thumbnailBytes.get() / count);
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.Objects;
+
+/**
+ * Comprobaciones de las pruebas del servidor de testeo (sin JUnit).
+ * Cada prueba es una clase con main que llama a estos métodos y termina
+ * con finish(), que sale con código 1 si alguna comprobación falló.
+ */
+final class Checks {
+    private static int passed;
+    private static int failed;
+    
+    private Checks() {
+    }
+    
+    static void check(boolean condition, String description) {
+        if (condition) {
+            passed++;
+        } else {
+            failed++;
+            System.err.println("[FALLO] " + description);
+        }
+    }
+    
+    static void equal(Object expected, Object actual, String description) {
+        check(Objects.equals(expected, actual), description + ": esperado <" + expected + "> obtenido <" + actual + ">");
+    }
+    
+    static void near(double expected, double actual, double tolerance, String description) {
+        check(Math.abs(expected - actual) <= tolerance, description + ": esperado <" + expected + "> obtenido <" + actual + ">");
+    }
+    
+    /**
+     * Resumen de la prueba; sale con código 1 si hubo fallos
+     */
+    static void finish(String testName) {
+        System.out.println("[TEST] " + testName + ": " + passed + " correctas, " + failed + " fallidas");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.List;
+
+/**
+ * Pruebas de DetectionIndex: consultas por cámara, clase, rango de tiempo y
+ * confianza, orden, paginación, descarte de las más antiguas al superar la
+ * capacidad y errores de la consulta de texto.
+ */
+public class DetectionIndexTest {
+    private static final long START = 1_763_301_600_000L;
+    private static final long MINUTE = 60_000L;
+    
+    private static long sequence;
+    
+    public static void main(String[] args) {
+        queriesByIndex();
+        pages();
+        evictsOldest();
+        parsesQueries();
+        Checks.finish("DetectionIndexTest");
+    }
+    
+    private static void queriesByIndex() {
+        DetectionIndex index = new DetectionIndex(100);
+        
+        // Minuto i: CAM1 alterna PERSONA/CARRO, CAM2 siempre PERSONA con confianza baja
+        for (int i = 0; i < 10; i++) {
+            index.add(detection("CAM1", i % 2 == 0 ? "PERSONA" : "CARRO", 0.9, START + i * MINUTE));
+            index.add(detection("CAM2", "PERSONA", 0.3, START + i * MINUTE));
+        }
+        Checks.equal(20, index.getSize(), "tamaño");
+        
+        List<Detection> camera = query(index, "camera=CAM1&limit=100");
+        Checks.equal(10, camera.size(), "cámara: detecciones");
+        Checks.check(camera.stream().allMatch(d -> d.getCamara().equals("CAM1")), "cámara: solo CAM1");
+        Checks.equal(START + 9 * MINUTE, camera.get(0).getTimestamp(), "cámara: la más reciente primero");
+        
+        List<Detection> objectClass = query(index, "class=persona&limit=100");
+        Checks.equal(15, objectClass.size(), "clase sin distinguir mayúsculas");
+        
+        List<Detection> both = query(index, "camera=CAM1&class=CARRO&limit=100");
+        Checks.equal(5, both.size(), "cámara y clase");
+        Checks.check(both.stream().allMatch(d -> d.getObjeto().equals("CARRO")), "cámara y clase: solo CARRO");
+        
+        List<Detection> range = query(index, "from=" + (START + 2 * MINUTE) + "&to=" + (START + 4 * MINUTE) + "&order=asc");
+        Checks.equal(6, range.size(), "rango: extremos incluidos");
+        Checks.equal(START + 2 * MINUTE, range.get(0).getTimestamp(), "rango: ascendente");
+        Checks.equal(START + 4 * MINUTE, range.get(5).getTimestamp(), "rango: último");
+        
+        Checks.equal(10, query(index, "minConf=0.5&limit=100").size(), "confianza mínima");
+        Checks.equal(0, query(index, "camera=CAM9").size(), "cámara sin detecciones");
+        Checks.equal(0, query(index, "class=PERRO").size(), "clase sin detecciones");
+        
+        // Mismo milisegundo: se desempata por secuencia, sin perder ninguna
+        index.add(detection("CAM3", "PERSONA", 0.9, START));
+        index.add(detection("CAM3", "PERSONA", 0.9, START));
+        List<Detection> sameInstant = query(index, "camera=CAM3&order=asc");
+        Checks.equal(2, sameInstant.size(), "mismo instante: ambas");
+        Checks.check(sameInstant.get(0).getSequence() < sameInstant.get(1).getSequence(), "mismo instante: por secuencia");
+    }
+    
+    private static void pages() {
+        DetectionIndex index = new DetectionIndex(100);
+        for (int i = 0; i < 25; i++) {
+            index.add(detection("CAM1", "PERSONA", 0.9, START + i * MINUTE));
+        }
+        
+        DetectionIndex.QueryResult first = index.query(DetectionIndex.Query.parse("limit=10&order=asc"));
+        Checks.equal(10, first.getDetections().size(), "página 1: detecciones");
+        Checks.check(first.hasMore(), "página 1: hay más");
+        Checks.equal(START, first.getDetections().get(0).getTimestamp(), "página 1: primera");
+        
+        DetectionIndex.QueryResult third = index.query(DetectionIndex.Query.parse("limit=10&offset=20&order=asc"));
+        Checks.equal(5, third.getDetections().size(), "página 3: detecciones");
+        Checks.check(!third.hasMore(), "página 3: no hay más");
+        Checks.equal(20, third.getOffset(), "página 3: desplazamiento");
+        Checks.equal(START + 20 * MINUTE, third.getDetections().get(0).getTimestamp(), "página 3: primera");
+        
+        // Justo el límite: no hay más
+        Checks.check(!index.query(DetectionIndex.Query.parse("limit=25")).hasMore(), "página exacta: no hay más");
+        
+        // El límite se acota a MAX_QUERY_LIMIT
+        Checks.equal(25, index.query(DetectionIndex.Query.parse("limit=100000")).getDetections().size(),
+            "límite acotado");
+    }
+    
+    private static void evictsOldest() {
+        DetectionIndex index = new DetectionIndex(5);
+        for (int i = 0; i < 8; i++) {
+            index.add(detection(i < 4 ? "CAM1" : "CAM2", "PERSONA", 0.9, START + i * MINUTE));
+        }
+        
+        Checks.equal(5, index.getSize(), "capacidad: tamaño");
+        List<Detection> all = query(index, "order=asc");
+        Checks.equal(START + 3 * MINUTE, all.get(0).getTimestamp(), "capacidad: se descartan las más antiguas");
+        
+        // Los índices secundarios también las pierden
+        Checks.equal(1, query(index, "camera=CAM1").size(), "capacidad: índice por cámara");
+        Checks.equal(5, query(index, "class=PERSONA&limit=100").size(), "capacidad: índice por clase");
+    }
+    
+    private static void parsesQueries() {
+        Checks.check(failsToParse("camera"), "parámetro sin valor");
+        Checks.check(failsToParse("color=rojo"), "parámetro desconocido");
+        Checks.check(failsToParse("from=2025-13-01T00:00"), "fecha inválida");
+        Checks.check(failsToParse("from=2000&to=1000"), "rango vacío");
+        Checks.check(!failsToParse("from=2025-11-16T02:00&to=2025-11-16T04:00&"), "fechas ISO locales");
+    }
+    
+    private static boolean failsToParse(String text) {
+        try {
+            DetectionIndex.Query.parse(text);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+    
+    private static List<Detection> query(DetectionIndex index, String text) {
+        return index.query(DetectionIndex.Query.parse(text)).getDetections();
+    }
+    
+    private static Detection detection(String camara, String objeto, double confidence, long timestamp) {
+        Detection detection = new Detection(camara, objeto, "img.jpg", confidence, timestamp);
+        detection.setSequence(++sequence);
+        return detection;
+    }
+}
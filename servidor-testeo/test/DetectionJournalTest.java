@@ -0,0 +1,241 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Pruebas de DetectionJournal: recuperación de registros de las versiones
+ * 1, 2 y 3 en el mismo segmento, continuación tras reabrir, rotación y
+ * registros corruptos (la lectura se detiene en ellos).
+ */
+public class DetectionJournalTest {
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    private static final long TIMESTAMP = 1_763_301_600_123L;
+    private static final long CAPTURE_NANOS = TIMESTAMP * 1_000_000L + 456_789;
+    
+    public static void main(String[] args) throws IOException {
+        File root = Files.createTempDirectory("journal-test").toFile();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            restoresAllVersions(new File(root, "versiones"));
+            stopsAtCorruptRecord(new File(root, "corrupto"));
+            rotatesSegments(new File(root, "rotacion"));
+        } finally {
+            System.setOut(out);
+            deleteAll(root);
+        }
+        Checks.finish("DetectionJournalTest");
+    }
+    
+    private static void restoresAllVersions(File directory) throws IOException {
+        // Segmento escrito por versiones anteriores del servidor
+        writeSegment(directory, 1, recordV1(1, "CAM1", "PERSONA", "cam_CAM1_1.jpg"),
+            recordV2(2, "CAM2", "CARRO", "cam_CAM2_2.jpg", "yolov8n-2025.11"));
+        
+        // La versión actual continúa al final del mismo segmento
+        DetectionJournal journal = new DetectionJournal(directory.getPath(), SEGMENT_BYTES, 4, 1, 0);
+        journal.open();
+        
+        Detection.FrameInfo frame = new Detection.FrameInfo(CAPTURE_NANOS, 42, 1500, null);
+        Detection current = new Detection("CAM1", "Cámara ñ", null, 0.75, frame, 10, 20, 30, 40);
+        current.setSequence(3);
+        current.setTrack(7, ObjectTracker.EVENT_DISAPPEAR);
+        journal.append(current);
+        journal.close();
+        
+        List<Detection> restored = journal.readTail(100);
+        Checks.equal(3, restored.size(), "versiones: registros");
+        
+        Detection v1 = restored.get(0);
+        Checks.equal(1L, v1.getSequence(), "v1: secuencia");
+        Checks.equal(TIMESTAMP, v1.getTimestamp(), "v1: timestamp");
+        Checks.equal(TIMESTAMP * 1_000_000L, v1.getCaptureNanos(), "v1: captura");
+        Checks.equal("CAM1", v1.getCamara(), "v1: cámara");
+        Checks.equal("PERSONA", v1.getObjeto(), "v1: clase");
+        Checks.equal("cam_CAM1_1.jpg", v1.getImagen(), "v1: imagen");
+        Checks.near(0.5, v1.getConfidence(), 1e-6, "v1: confianza");
+        Checks.check(!v1.hasBox(), "v1: sin caja");
+        Checks.equal(0L, v1.getFrameSequence(), "v1: sin frame");
+        Checks.equal(null, v1.getModelVersion(), "v1: sin modelo");
+        Checks.equal(0L, v1.getTrackId(), "v1: sin pista");
+        
+        Detection v2 = restored.get(1);
+        Checks.equal(2L, v2.getSequence(), "v2: secuencia");
+        Checks.equal(CAPTURE_NANOS, v2.getCaptureNanos(), "v2: captura");
+        Checks.equal(TIMESTAMP, v2.getTimestamp(), "v2: timestamp");
+        Checks.equal("CARRO", v2.getObjeto(), "v2: clase");
+        Checks.equal("cam_CAM2_2.jpg", v2.getImagen(), "v2: imagen");
+        Checks.equal(9L, v2.getFrameSequence(), "v2: frame");
+        Checks.equal(800L, v2.getLatencyMicros(), "v2: latencia");
+        Checks.equal(-5, v2.getBoxX(), "v2: caja x");
+        Checks.equal(60, v2.getBoxHeight(), "v2: caja alto");
+        Checks.equal("yolov8n-2025.11", v2.getModelVersion(), "v2: modelo");
+        Checks.equal(0L, v2.getTrackId(), "v2: sin pista");
+        Checks.equal(ObjectTracker.EVENT_NONE, v2.getEvent(), "v2: sin evento");
+        
+        Detection v3 = restored.get(2);
+        Checks.equal(3L, v3.getSequence(), "v3: secuencia");
+        Checks.equal(CAPTURE_NANOS, v3.getCaptureNanos(), "v3: captura");
+        Checks.equal("Cámara ñ", v3.getObjeto(), "v3: clase UTF-8");
+        Checks.equal(null, v3.getImagen(), "v3: sin imagen");
+        Checks.near(0.75, v3.getConfidence(), 1e-6, "v3: confianza");
+        Checks.equal(42L, v3.getFrameSequence(), "v3: frame");
+        Checks.equal(1500L, v3.getLatencyMicros(), "v3: latencia");
+        Checks.equal(10, v3.getBoxX(), "v3: caja x");
+        Checks.equal(20, v3.getBoxY(), "v3: caja y");
+        Checks.equal(30, v3.getBoxWidth(), "v3: caja ancho");
+        Checks.equal(40, v3.getBoxHeight(), "v3: caja alto");
+        Checks.equal(null, v3.getModelVersion(), "v3: sin modelo");
+        Checks.equal(7L, v3.getTrackId(), "v3: pista");
+        Checks.equal(ObjectTracker.EVENT_DISAPPEAR, v3.getEvent(), "v3: evento");
+        
+        // Al reabrir se sigue escribiendo detrás del último registro
+        DetectionJournal reopened = new DetectionJournal(directory.getPath(), SEGMENT_BYTES, 4, 1, 0);
+        reopened.open();
+        Detection next = new Detection("CAM1", "PERSONA", "cam_CAM1_4.jpg", 0.6, TIMESTAMP + 1000);
+        next.setSequence(4);
+        reopened.append(next);
+        reopened.close();
+        
+        List<Detection> afterReopen = reopened.readTail(100);
+        Checks.equal(4, afterReopen.size(), "reabierto: registros");
+        Checks.equal(3L, afterReopen.get(2).getSequence(), "reabierto: no sobrescribe");
+        Checks.equal(4L, afterReopen.get(3).getSequence(), "reabierto: nuevo registro");
+        Checks.equal(2, reopened.readTail(2).size(), "cola limitada");
+        Checks.equal(3L, reopened.readTail(2).get(0).getSequence(), "cola: las más recientes");
+    }
+    
+    private static void stopsAtCorruptRecord(File directory) throws IOException {
+        byte[] corrupt = recordV1(2, "CAM1", "PERSONA", "b.jpg");
+        corrupt[corrupt.length - 1] ^= 0x55; // El CRC ya no coincide
+        
+        writeSegment(directory, 1, recordV1(1, "CAM1", "PERSONA", "a.jpg"), corrupt,
+            recordV1(3, "CAM1", "PERSONA", "c.jpg"));
+        
+        DetectionJournal journal = new DetectionJournal(directory.getPath(), SEGMENT_BYTES, 4, 1, 0);
+        List<Detection> restored = journal.readTail(100);
+        Checks.equal(1, restored.size(), "corrupto: solo lo anterior");
+        Checks.equal(1L, restored.get(0).getSequence(), "corrupto: primer registro");
+        
+        // Lo nuevo se escribe en lugar del registro corrupto
+        journal.open();
+        Detection next = new Detection("CAM1", "PERSONA", "d.jpg", 0.6, TIMESTAMP);
+        next.setSequence(2);
+        journal.append(next);
+        journal.close();
+        
+        List<Detection> repaired = journal.readTail(100);
+        Checks.equal(2, repaired.size(), "corrupto: registro nuevo tras el válido");
+        Checks.equal("d.jpg", repaired.get(1).getImagen(), "corrupto: registro nuevo");
+    }
+    
+    private static void rotatesSegments(File directory) throws IOException {
+        // Segmentos pequeños: unos pocos registros por segmento, se conservan dos
+        DetectionJournal journal = new DetectionJournal(directory.getPath(), 512, 2, 1, 0);
+        journal.open();
+        for (int i = 1; i <= 40; i++) {
+            Detection detection = new Detection("CAM1", "PERSONA", "img_" + i + ".jpg", 0.5, TIMESTAMP + i);
+            detection.setSequence(i);
+            journal.append(detection);
+        }
+        journal.close();
+        
+        String[] segments = directory.list();
+        Checks.equal(2, segments.length, "rotación: segmentos conservados");
+        
+        List<Detection> restored = journal.readTail(1000);
+        Checks.check(!restored.isEmpty() && restored.size() < 40, "rotación: solo los segmentos recientes");
+        Checks.equal(40L, restored.get(restored.size() - 1).getSequence(), "rotación: último registro");
+        for (int i = 1; i < restored.size(); i++) {
+            Checks.equal(restored.get(i - 1).getSequence() + 1, restored.get(i).getSequence(), "rotación: orden " + i);
+        }
+    }
+    
+    /**
+     * Registro de la versión 1: timestamp en ms, sin metadatos del frame
+     */
+    private static byte[] recordV1(long sequence, String camara, String objeto, String imagen) {
+        ByteBuffer payload = ByteBuffer.allocate(256);
+        payload.put((byte) 1);
+        payload.putLong(sequence);
+        payload.putLong(TIMESTAMP);
+        payload.putFloat(0.5f);
+        putString(payload, camara);
+        putString(payload, objeto);
+        putString(payload, imagen);
+        return frame(payload);
+    }
+    
+    /**
+     * Registro de la versión 2: metadatos del frame y caja, sin pista ni evento
+     */
+    private static byte[] recordV2(long sequence, String camara, String objeto, String imagen, String modelo) {
+        ByteBuffer payload = ByteBuffer.allocate(256);
+        payload.put((byte) 2);
+        payload.putLong(sequence);
+        payload.putLong(CAPTURE_NANOS);
+        payload.putFloat(0.8f);
+        payload.putLong(9);
+        payload.putLong(800);
+        payload.putInt(-5);
+        payload.putInt(15);
+        payload.putInt(25);
+        payload.putInt(60);
+        putString(payload, camara);
+        putString(payload, objeto);
+        putString(payload, imagen);
+        putString(payload, modelo);
+        return frame(payload);
+    }
+    
+    /**
+     * [int32 longitud][int32 CRC32][contenido]
+     */
+    private static byte[] frame(ByteBuffer payload) {
+        payload.flip();
+        byte[] data = new byte[payload.remaining()];
+        payload.get(data);
+        
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        
+        return ByteBuffer.allocate(8 + data.length)
+            .putInt(data.length)
+            .putInt((int) crc.getValue())
+            .put(data)
+            .array();
+    }
+    
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+    
+    private static void writeSegment(File directory, long firstSequence, byte[]... records) throws IOException {
+        directory.mkdirs();
+        File file = new File(directory, String.format("journal-%020d.seg", firstSequence));
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+    }
+    
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pruebas de DetectionLog.readSince: lectura por cursor, cursor de otra
+ * ejecución, vuelta del buffer circular (hueco) y oyentes.
+ */
+public class DetectionLogTest {
+    
+    public static void main(String[] args) {
+        DetectionLog log = DetectionLog.getInstance();
+        int capacity = log.getCapacity();
+        
+        // Log vacío
+        DetectionLog.ReadResult empty = log.readSince(0, 10);
+        Checks.equal(0, empty.getDetections().size(), "vacío: detecciones");
+        Checks.equal(0L, empty.getNextSequence(), "vacío: cursor");
+        Checks.equal(0L, empty.getGap(), "vacío: hueco");
+        
+        List<Detection> received = new ArrayList<>();
+        log.addListener(received::add);
+        add(log, 10);
+        Checks.equal(10, received.size(), "oyente: detecciones");
+        Checks.equal(10L, log.getLastSequence(), "última secuencia");
+        
+        // Lectura por cursor
+        DetectionLog.ReadResult all = log.readSince(0, 100);
+        Checks.equal(10, all.getDetections().size(), "todo: detecciones");
+        Checks.equal(1L, all.getDetections().get(0).getSequence(), "todo: primera");
+        Checks.equal(10L, all.getNextSequence(), "todo: cursor");
+        
+        DetectionLog.ReadResult page = log.readSince(5, 3);
+        Checks.equal(3, page.getDetections().size(), "página: detecciones");
+        Checks.equal(6L, page.getDetections().get(0).getSequence(), "página: primera");
+        Checks.equal(8L, page.getNextSequence(), "página: cursor");
+        Checks.equal(0L, page.getGap(), "página: hueco");
+        
+        DetectionLog.ReadResult upToDate = log.readSince(10, 100);
+        Checks.equal(0, upToDate.getDetections().size(), "al día: detecciones");
+        Checks.equal(10L, upToDate.getNextSequence(), "al día: cursor");
+        
+        // Cursor mayor que la última secuencia (otra ejecución): desde el principio
+        DetectionLog.ReadResult restarted = log.readSince(1_000, 5);
+        Checks.equal(1L, restarted.getDetections().get(0).getSequence(), "cursor futuro: primera");
+        Checks.equal(5L, restarted.getNextSequence(), "cursor futuro: cursor");
+        
+        // El buffer da la vuelta: lo sobrescrito se informa como hueco
+        int total = capacity + 904;
+        add(log, total - 10);
+        long oldest = total - capacity + 1;
+        
+        DetectionLog.ReadResult wrapped = log.readSince(0, 10);
+        Checks.equal(oldest - 1, wrapped.getGap(), "vuelta: hueco desde el principio");
+        Checks.equal(oldest, wrapped.getDetections().get(0).getSequence(), "vuelta: primera retenida");
+        Checks.equal(oldest + 9, wrapped.getNextSequence(), "vuelta: cursor");
+        
+        DetectionLog.ReadResult behind = log.readSince(100, 5);
+        Checks.equal(oldest - 101, behind.getGap(), "vuelta: hueco desde un cursor");
+        Checks.equal(oldest, behind.getDetections().get(0).getSequence(), "vuelta: sigue en la primera retenida");
+        
+        DetectionLog.ReadResult inside = log.readSince(oldest + 100, 5);
+        Checks.equal(0L, inside.getGap(), "vuelta: cursor retenido sin hueco");
+        Checks.equal(oldest + 101, inside.getDetections().get(0).getSequence(), "vuelta: cursor retenido");
+        
+        Checks.equal(capacity, log.getSize(), "vuelta: tamaño");
+        List<Detection> last = log.getLastDetections(3);
+        Checks.equal((long) total - 2, last.get(0).getSequence(), "últimas: primera");
+        Checks.equal((long) total, last.get(2).getSequence(), "últimas: última");
+        Checks.equal(total, received.size(), "oyente: todas");
+        
+        Checks.finish("DetectionLogTest");
+    }
+    
+    /**
+     * Añade count detecciones sin el log por consola de cada una
+     */
+    private static void add(DetectionLog log, int count) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < count; i++) {
+                log.addDetection(new Detection("CAM1", "PERSONA", "img_" + i + ".jpg", 0.9));
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.List;
+
+/**
+ * Pruebas de DetectionParser: respuestas normales, línea MODEL, cajas
+ * parciales y líneas mal formadas (se ignoran y se cuentan).
+ */
+public class DetectionParserTest {
+    private static final long CAPTURE_NANOS = 1_763_301_600_123_456_789L;
+    
+    public static void main(String[] args) {
+        parsesBoxesAndFrameMetadata();
+        readsModelVersion();
+        ignoresMalformedLines();
+        parsesDecimals();
+        Checks.finish("DetectionParserTest");
+    }
+    
+    private static void parsesBoxesAndFrameMetadata() {
+        DetectionParser parser = new DetectionParser("CAM1");
+        List<Detection> detections = parser.parse("CARRO,0.95,100,200,50,30\r\nPERSONA , 0.5 \nPERRO,0.8,10\n",
+            "img.jpg", 7, CAPTURE_NANOS, 250);
+        
+        Checks.equal(3, detections.size(), "detecciones");
+        
+        Detection carro = detections.get(0);
+        Checks.equal("CARRO", carro.getObjeto(), "clase");
+        Checks.equal("CAM1", carro.getCamara(), "cámara");
+        Checks.equal("img.jpg", carro.getImagen(), "imagen");
+        Checks.near(0.95, carro.getConfidence(), 0, "confianza");
+        Checks.equal(100, carro.getBoxX(), "caja x");
+        Checks.equal(200, carro.getBoxY(), "caja y");
+        Checks.equal(50, carro.getBoxWidth(), "caja ancho");
+        Checks.equal(30, carro.getBoxHeight(), "caja alto");
+        Checks.equal(7L, carro.getFrameSequence(), "número de frame");
+        Checks.equal(250L, carro.getLatencyMicros(), "latencia");
+        Checks.equal(CAPTURE_NANOS, carro.getCaptureNanos(), "captura");
+        Checks.equal(CAPTURE_NANOS / 1_000_000, carro.getTimestamp(), "timestamp");
+        
+        Detection persona = detections.get(1);
+        Checks.equal("PERSONA", persona.getObjeto(), "clase con espacios");
+        Checks.near(0.5, persona.getConfidence(), 0, "confianza con espacios");
+        Checks.check(!persona.hasBox(), "sin caja");
+        Checks.check(carro.getFrameInfo() == persona.getFrameInfo(), "metadatos del frame compartidos");
+        
+        // Caja incompleta: se registra sin caja
+        Checks.check(!detections.get(2).hasBox(), "caja incompleta");
+        
+        // Los nombres de clase se reutilizan entre respuestas
+        List<Detection> again = parser.parse("CARRO,0.9", "img2.jpg", 8, CAPTURE_NANOS, 0);
+        Checks.check(again.get(0).getObjeto() == carro.getObjeto(), "nombre de clase reutilizado");
+        Checks.equal(0L, parser.getMalformedLines(), "sin líneas mal formadas");
+    }
+    
+    private static void readsModelVersion() {
+        DetectionParser parser = new DetectionParser("CAM1");
+        Checks.equal(null, parser.getModelVersion(), "sin versión de modelo");
+        
+        List<Detection> detections = parser.parse("MODEL:yolov8n-2025.11\nCARRO,0.9,1,2,3,4", "a.jpg", 1, CAPTURE_NANOS, 0);
+        Checks.equal("yolov8n-2025.11", parser.getModelVersion(), "versión de modelo");
+        Checks.equal("yolov8n-2025.11", detections.get(0).getModelVersion(), "versión en la detección");
+        
+        // Respuesta sin detecciones: se actualiza igualmente la versión
+        Checks.equal(0, parser.parse("MODEL:v2\nNO_DETECTIONS\n", "b.jpg", 2, CAPTURE_NANOS, 0).size(),
+            "sin detecciones");
+        Checks.equal("v2", parser.getModelVersion(), "versión nueva");
+    }
+    
+    private static void ignoresMalformedLines() {
+        DetectionParser parser = new DetectionParser("CAM1");
+        String response = "CARRO,abc,1,2,3,4\n" +
+            "PERRO,0.8,1,x,3,4\n" +
+            "\n" +
+            "   \n" +
+            "NO_DETECTIONS\n" +
+            "CARRO,\n" +
+            "BICI,0.01\n" +
+            "GATO,0.7";
+        
+        List<Detection> detections = parser.parse(response, "c.jpg", 3, CAPTURE_NANOS, 0);
+        
+        Checks.equal(1, detections.size(), "solo la línea válida");
+        Checks.equal("GATO", detections.get(0).getObjeto(), "línea válida tras las mal formadas");
+        Checks.equal(3L, parser.getMalformedLines(), "líneas mal formadas contadas");
+        Checks.equal(0, parser.parse("", "d.jpg", 4, CAPTURE_NANOS, 0).size(), "respuesta vacía");
+    }
+    
+    private static void parsesDecimals() {
+        Checks.near(0.95, DetectionParser.parseDecimal("0.95", 0, 4), 0, "decimal");
+        Checks.near(-1.5, DetectionParser.parseDecimal("-1.5", 0, 4), 0, "negativo");
+        Checks.near(12, DetectionParser.parseDecimal("x12x", 1, 3), 0, "rango");
+        Checks.near(0.001, DetectionParser.parseDecimal("1e-3", 0, 4), 0, "exponente");
+        Checks.near(0.12345678901234568, DetectionParser.parseDecimal("0.12345678901234568", 0, 19), 1e-17,
+            "muchos dígitos");
+        
+        boolean failed = false;
+        try {
+            DetectionParser.parseDecimal("-", 0, 1);
+        } catch (NumberFormatException e) {
+            failed = true;
+        }
+        Checks.check(failed, "número vacío");
+    }
+}
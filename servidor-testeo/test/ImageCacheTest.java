@@ -0,0 +1,101 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pruebas de ImageCache: expulsión LRU por presupuesto de bytes, tamaño
+ * máximo por imagen, vistas independientes, admisión de las imágenes leídas
+ * del disco a partir de la segunda petición e invalidación.
+ */
+public class ImageCacheTest {
+    
+    public static void main(String[] args) {
+        evictsLeastRecentlyUsed();
+        rejectsLargeImages();
+        returnsIndependentViews();
+        admitsOnSecondMiss();
+        Checks.finish("ImageCacheTest");
+    }
+    
+    private static void evictsLeastRecentlyUsed() {
+        // Presupuesto de 1000 bytes: cada imagen puede ocupar hasta 250
+        ImageCache cache = new ImageCache(1000);
+        for (int i = 0; i < 4; i++) {
+            cache.put("img_" + i + ".jpg", bytes(250, i));
+        }
+        Checks.check(cache.getStatus().contains("imágenes=4 bytes=1000/1000"), "lleno: " + cache.getStatus());
+        
+        // Usar la más antigua la convierte en la más reciente
+        Checks.check(cache.get("img_0.jpg") != null, "acierto");
+        cache.put("img_4.jpg", bytes(250, 4));
+        
+        Checks.check(cache.get("img_1.jpg") == null, "se expulsa la menos usada");
+        Checks.check(cache.get("img_0.jpg") != null, "la usada se conserva");
+        Checks.check(cache.get("img_4.jpg") != null, "la nueva está");
+        Checks.equal(1L, cache.getEvictions(), "expulsiones");
+        Checks.equal(3L, cache.getHits(), "aciertos");
+        Checks.equal(1L, cache.getMisses(), "fallos");
+        
+        // Reemplazar una imagen no cuenta dos veces sus bytes
+        cache.put("img_4.jpg", bytes(100, 9));
+        Checks.check(cache.getStatus().contains("imágenes=4 bytes=850/1000"), "reemplazo: " + cache.getStatus());
+        Checks.equal(9, (int) cache.get("img_4.jpg").get(0), "reemplazo: bytes nuevos");
+        
+        cache.invalidate("img_4.jpg");
+        Checks.check(cache.get("img_4.jpg") == null, "invalidada");
+        Checks.check(cache.getStatus().contains("imágenes=3 bytes=750/1000"), "invalidada: " + cache.getStatus());
+    }
+    
+    private static void rejectsLargeImages() {
+        ImageCache cache = new ImageCache(1000);
+        Checks.check(cache.accepts(250), "admite la cuarta parte del presupuesto");
+        Checks.check(!cache.accepts(251), "rechaza más de la cuarta parte");
+        
+        cache.put("grande.jpg", bytes(251, 1));
+        Checks.check(cache.get("grande.jpg") == null, "grande: no se guarda");
+        
+        ImageCache disabled = new ImageCache(0);
+        disabled.put("img.jpg", bytes(1, 1));
+        Checks.check(disabled.get("img.jpg") == null, "caché desactivada");
+    }
+    
+    private static void returnsIndependentViews() {
+        ImageCache cache = new ImageCache(1000);
+        byte[] original = bytes(100, 7);
+        cache.put("img.jpg", original);
+        original[0] = 0; // La caché guarda una copia
+        
+        ByteBuffer first = cache.get("img.jpg");
+        ByteBuffer second = cache.get("img.jpg");
+        Checks.equal(100, first.remaining(), "vista: tamaño");
+        Checks.equal(7, (int) first.get(0), "vista: copia de los bytes");
+        Checks.check(first.isReadOnly(), "vista: solo lectura");
+        
+        first.position(50);
+        Checks.equal(0, second.position(), "vista: posición propia");
+    }
+    
+    private static void admitsOnSecondMiss() {
+        ImageCache cache = new ImageCache(1000);
+        Checks.check(!cache.admitOnMiss("a.jpg"), "primera petición: se sirve del disco");
+        Checks.check(cache.admitOnMiss("a.jpg"), "segunda petición: se cachea");
+        Checks.check(!cache.admitOnMiss("a.jpg"), "tras admitirla se vuelve a contar desde cero");
+        
+        // Borrar la imagen olvida también la petición anterior
+        Checks.check(!cache.admitOnMiss("b.jpg"), "b: primera petición");
+        cache.invalidate("b.jpg");
+        Checks.check(!cache.admitOnMiss("b.jpg"), "b: invalidada, de nuevo primera petición");
+        
+        // Solo se recuerdan las últimas peticiones únicas
+        for (int i = 0; i < 5000; i++) {
+            cache.admitOnMiss("unica_" + i + ".jpg");
+        }
+        Checks.check(!cache.admitOnMiss("unica_0.jpg"), "las más antiguas se olvidan");
+        Checks.check(cache.admitOnMiss("unica_4999.jpg"), "las recientes se recuerdan");
+    }
+    
+    private static byte[] bytes(int size, int value) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
@@ -0,0 +1,137 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pruebas de ImageIndex: páginas con cursor (after) y con desplazamiento,
+ * filtros por cámara, prefijo y rango de tiempo (un prefijo con día limita
+ * el rango), orden, altas y bajas, y bytes en disco con las miniaturas.
+ */
+public class ImageIndexTest {
+    private static final long MINUTE = 60_000L;
+    private static final long DAY_1 = LocalDate.of(2025, 11, 16).atStartOfDay(ZoneId.systemDefault())
+        .toInstant().toEpochMilli();
+    private static final long DAY_2 = DAY_1 + 24 * 60 * MINUTE;
+    
+    public static void main(String[] args) {
+        ImageIndex index = new ImageIndex();
+        
+        // Día 1: CAM1 y CAM2 alternas cada minuto; día 2: una de CAM1; y una antigua sin día ni cámara
+        for (int i = 0; i < 30; i++) {
+            index.add(entry("20251116_CAM" + (i % 2 + 1) + "_" + i + ".jpg", 100, DAY_1 + 60 * MINUTE + i * MINUTE));
+        }
+        index.add(entry("20251117_CAM1_0.jpg", 100, DAY_2 + 10 * MINUTE));
+        index.add(entry("antigua.jpg", 50, DAY_1 - 1000 * MINUTE));
+        
+        Checks.equal(32, index.getSize(), "tamaño");
+        Checks.equal(3150L, index.getBytes(), "bytes");
+        Checks.equal("antigua.jpg", index.oldest().getName(), "la más antigua");
+        
+        pagesWithCursor(index);
+        filters(index);
+        addsAndRemoves(index);
+        
+        Checks.finish("ImageIndexTest");
+    }
+    
+    private static void pagesWithCursor(ImageIndex index) {
+        // Recorrer todo con after: cada página empieza justo tras la anterior
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        ImageIndex.QueryResult page;
+        do {
+            page = index.query(ImageIndex.Query.parse("limit=7&order=asc" + (after != null ? "&after=" + after : "")));
+            for (ImageIndex.Entry entry : page.getImages()) {
+                seen.add(entry.getName());
+            }
+            after = page.getImages().get(page.getImages().size() - 1).getName();
+            pages++;
+        } while (page.hasMore());
+        
+        Checks.equal(5, pages, "cursor: páginas");
+        Checks.equal(32, seen.size(), "cursor: todas las imágenes");
+        Checks.equal(32L, seen.stream().distinct().count(), "cursor: sin repetir");
+        Checks.equal("antigua.jpg", seen.get(0), "cursor: ascendente");
+        Checks.equal("20251117_CAM1_0.jpg", seen.get(31), "cursor: la más reciente al final");
+        
+        // Por defecto, lo más reciente primero
+        Checks.equal("20251117_CAM1_0.jpg", index.query(ImageIndex.Query.parse("limit=1")).getImages().get(0).getName(),
+            "descendente");
+        
+        // Desplazamiento: mismo resultado que el cursor
+        ImageIndex.QueryResult offset = index.query(ImageIndex.Query.parse("limit=7&offset=7&order=asc"));
+        Checks.equal(seen.get(7), offset.getImages().get(0).getName(), "desplazamiento: primera");
+        Checks.equal(7, offset.getOffset(), "desplazamiento");
+        
+        boolean failed = false;
+        try {
+            index.query(ImageIndex.Query.parse("after=no_existe.jpg"));
+        } catch (IllegalArgumentException e) {
+            failed = true;
+        }
+        Checks.check(failed, "cursor desconocido");
+    }
+    
+    private static void filters(ImageIndex index) {
+        List<ImageIndex.Entry> camera = index.query(ImageIndex.Query.parse("camera=CAM1&limit=100")).getImages();
+        Checks.equal(16, camera.size(), "cámara: imágenes");
+        Checks.check(camera.stream().allMatch(e -> e.getCamera().equals("CAM1")), "cámara: solo CAM1");
+        
+        // El filtro de cámara se sanea como los nombres ('_' no puede aparecer)
+        Checks.equal(0, index.query(ImageIndex.Query.parse("camera=CAM_1")).getImages().size(), "cámara saneada");
+        
+        // Prefijo con día: solo ese día
+        List<ImageIndex.Entry> day = index.query(ImageIndex.Query.parse("prefix=20251117&limit=100")).getImages();
+        Checks.equal(1, day.size(), "prefijo de día");
+        Checks.equal("20251117_CAM1_0.jpg", day.get(0).getName(), "prefijo de día: imagen");
+        
+        List<ImageIndex.Entry> dayAndCamera = index.query(ImageIndex.Query.parse("prefix=20251116_CAM2&limit=100"))
+            .getImages();
+        Checks.equal(15, dayAndCamera.size(), "prefijo de día y cámara");
+        
+        // Rango de tiempo, extremos incluidos
+        ImageIndex.Query range = ImageIndex.Query.parse("from=" + (DAY_1 + 60 * MINUTE) + "&to=" + (DAY_1 + 64 * MINUTE));
+        Checks.equal(5, index.query(range).getImages().size(), "rango");
+        
+        Checks.equal(0, index.query(ImageIndex.Query.parse("camera=CAM9")).getImages().size(), "cámara sin imágenes");
+        Checks.check(failsToParse("prefix=20251116&to=1000"), "prefijo de día fuera del rango");
+        Checks.check(failsToParse("orden=asc"), "parámetro desconocido");
+    }
+    
+    private static void addsAndRemoves(ImageIndex index) {
+        ImageIndex.Entry entry = index.get("20251117_CAM1_0.jpg");
+        
+        Checks.check(index.addThumbnail(entry.getName(), 20), "miniatura de una imagen indexada");
+        Checks.equal(3170L, index.getBytes(), "bytes con miniatura");
+        Checks.equal(100L, entry.getSize(), "el tamaño de la imagen no incluye la miniatura");
+        
+        // Añadir el mismo nombre otra vez no duplica
+        index.add(entry("20251117_CAM1_0.jpg", 100, DAY_2 + 10 * MINUTE));
+        Checks.equal(32, index.getSize(), "duplicada: se ignora");
+        
+        Checks.check(index.remove(entry), "baja");
+        Checks.check(!index.remove(entry), "baja repetida");
+        Checks.equal(3050L, index.getBytes(), "baja: sin la imagen ni su miniatura");
+        Checks.equal(null, index.get(entry.getName()), "baja: ya no está");
+        Checks.equal(0, index.query(ImageIndex.Query.parse("prefix=20251117")).getImages().size(), "baja: ni en las consultas");
+        
+        // Miniatura escrita después de borrar la imagen: quien la escribió debe borrarla
+        Checks.check(!index.addThumbnail(entry.getName(), 20), "miniatura de una imagen borrada");
+        Checks.equal(3050L, index.getBytes(), "miniatura huérfana: no cuenta");
+    }
+    
+    private static boolean failsToParse(String text) {
+        try {
+            ImageIndex.Query.parse(text);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+    
+    private static ImageIndex.Entry entry(String name, long size, long timestamp) {
+        return new ImageIndex.Entry(name, size, timestamp, new ArrayList<>());
+    }
+}
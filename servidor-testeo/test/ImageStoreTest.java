@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pruebas de ImageStore sin OpenCV (no se codifica ningún frame):
+ * retención por presupuesto de bytes (imágenes y miniaturas) y por edad al
+ * arrancar, miniaturas huérfanas, detecciones del journal cuya imagen ya no
+ * existe, y orden de registro por cámara con varios escritores.
+ */
+public class ImageStoreTest {
+    private static final long MINUTE = 60_000L;
+    
+    public static void main(String[] args) throws IOException {
+        File root = Files.createTempDirectory("image-store-test").toFile();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            enforcesByteBudget(new File(root, "presupuesto"));
+            enforcesMaxAge(new File(root, "edad"));
+            keepsCameraOrder(new File(root, "orden"));
+        } finally {
+            System.setOut(out);
+            deleteAll(root);
+        }
+        Checks.finish("ImageStoreTest");
+    }
+    
+    private static void enforcesByteBudget(File directory) throws IOException {
+        long now = System.currentTimeMillis();
+        
+        // Seis imágenes de 200 bytes (la 0 es la más reciente); las cuatro más recientes con miniatura de 50
+        for (int i = 0; i < 6; i++) {
+            String name = "20251116_CAM1_" + i + ".jpg";
+            writeFile(new File(directory, ImageStore.relativePath(name)), 200, now - i * MINUTE);
+            if (i < 4) {
+                writeFile(thumbnail(directory, name), 50, now - i * MINUTE);
+            }
+        }
+        File orphan = thumbnail(directory, "20251116_CAM1_borrada.jpg");
+        writeFile(orphan, 50, now);
+        
+        // 1400 bytes con un presupuesto de 1000: se borran las dos más antiguas
+        ImageStore store = newStore(directory, 1, 1000, 0);
+        store.start();
+        store.stop(1000);
+        
+        Checks.equal(4, store.getIndex().getSize(), "presupuesto: imágenes conservadas");
+        Checks.equal(1000L, store.getIndex().getBytes(), "presupuesto: bytes con miniaturas");
+        Checks.check(!imageFile(directory, 5).exists() && !imageFile(directory, 4).exists(), "presupuesto: las más antiguas");
+        Checks.check(imageFile(directory, 3).exists() && imageFile(directory, 0).exists(), "presupuesto: las recientes");
+        Checks.check(thumbnail(directory, "20251116_CAM1_3.jpg").exists(), "presupuesto: miniatura conservada");
+        Checks.check(!orphan.exists(), "miniatura huérfana borrada");
+    }
+    
+    private static void enforcesMaxAge(File directory) throws IOException {
+        long now = System.currentTimeMillis();
+        DetectionLog log = DetectionLog.getInstance();
+        
+        String recent = "20251116_CAM2_reciente.jpg";
+        String old = "20251116_CAM2_antigua.jpg";
+        writeFile(new File(directory, ImageStore.relativePath(recent)), 100, now - MINUTE);
+        writeFile(new File(directory, ImageStore.relativePath(old)), 100, now - 120 * MINUTE);
+        writeFile(thumbnail(directory, old), 10, now - 120 * MINUTE);
+        
+        // Detecciones recuperadas del journal antes de arrancar el almacén
+        Detection withRecent = new Detection("CAM2", "PERSONA", recent, 0.9, now - MINUTE);
+        Detection withOld = new Detection("CAM2", "PERSONA", old, 0.9, now - 120 * MINUTE);
+        Detection withMissing = new Detection("CAM2", "PERSONA", "20251116_CAM2_perdida.jpg", 0.9, now);
+        log.addDetection(withRecent);
+        log.addDetection(withOld);
+        log.addDetection(withMissing);
+        long expiredBefore = log.getExpiredImages();
+        
+        ImageStore store = newStore(directory, 1, 0, 60 * MINUTE);
+        store.start();
+        store.stop(1000);
+        
+        Checks.equal(1, store.getIndex().getSize(), "edad: imágenes conservadas");
+        Checks.check(store.getImageFile(recent).exists(), "edad: la reciente sigue");
+        Checks.check(!store.getImageFile(old).exists(), "edad: la antigua se borra");
+        Checks.check(!thumbnail(directory, old).exists(), "edad: con su miniatura");
+        Checks.equal(recent, withRecent.getImagen(), "edad: detección con imagen");
+        Checks.equal(null, withOld.getImagen(), "edad: detección de la imagen borrada");
+        Checks.equal(null, withMissing.getImagen(), "detección del journal sin imagen en disco");
+        Checks.equal(expiredBefore + 2, log.getExpiredImages(), "imágenes expiradas");
+    }
+    
+    private static void keepsCameraOrder(File directory) {
+        DetectionLog log = DetectionLog.getInstance();
+        List<Detection> registered = Collections.synchronizedList(new ArrayList<>());
+        log.addListener(registered::add);
+        
+        // Varios escritores y cámaras intercaladas: cada cámara va siempre al mismo escritor
+        ImageStore store = newStore(directory, 3, 0, 0);
+        store.start();
+        int cameras = 5;
+        int rounds = 300;
+        for (int round = 0; round < rounds; round++) {
+            for (int camera = 0; camera < cameras; camera++) {
+                List<Detection> events = new ArrayList<>();
+                events.add(new Detection("CAM" + camera, String.valueOf(round), null, 0.9, round));
+                store.register("CAM" + camera, events);
+            }
+        }
+        store.stop(10_000);
+        
+        // Después de parar se registran en el momento
+        List<Detection> late = new ArrayList<>();
+        late.add(new Detection("CAM0", String.valueOf(rounds), null, 0.9, rounds));
+        store.register("CAM0", late);
+        
+        Checks.equal(cameras * rounds + 1, registered.size(), "orden: todas registradas");
+        
+        Map<String, Integer> lastRound = new HashMap<>();
+        Map<String, Long> lastSequence = new HashMap<>();
+        int outOfOrder = 0;
+        for (Detection detection : new ArrayList<>(registered)) {
+            int round = Integer.parseInt(detection.getObjeto());
+            if (round != lastRound.getOrDefault(detection.getCamara(), -1) + 1
+                    || detection.getSequence() <= lastSequence.getOrDefault(detection.getCamara(), 0L)) {
+                outOfOrder++;
+            }
+            lastRound.put(detection.getCamara(), round);
+            lastSequence.put(detection.getCamara(), detection.getSequence());
+        }
+        Checks.equal(0, outOfOrder, "orden: por cámara, en el orden de llegada");
+        Checks.equal(rounds, (int) lastRound.get("CAM0"), "orden: la registrada tras parar");
+    }
+    
+    private static ImageStore newStore(File directory, int writers, long maxBytes, long maxAgeMillis) {
+        ThumbnailGenerator thumbnails = new ThumbnailGenerator(directory.getPath(), 160, Runnable::run);
+        return new ImageStore(directory.getPath(), new ImageCache(1 << 20), thumbnails, DetectionLog.getInstance(),
+            writers, maxBytes, maxAgeMillis);
+    }
+    
+    private static File imageFile(File directory, int i) {
+        return new File(directory, ImageStore.relativePath("20251116_CAM1_" + i + ".jpg"));
+    }
+    
+    private static File thumbnail(File directory, String name) {
+        return new File(new File(directory, ThumbnailGenerator.DIRECTORY), ImageStore.relativePath(name));
+    }
+    
+    private static void writeFile(File file, int size, long lastModified) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[size]);
+        file.setLastModified(lastModified);
+    }
+    
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+}
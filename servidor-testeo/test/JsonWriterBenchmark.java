@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Medición de la serialización de una respuesta GET_LOGS de 100 detecciones:
+ * el camino anterior (String.format por registro, concatenación en un
+ * StringBuilder y getBytes) frente a JsonWriter (bytes UTF-8 directos con un
+ * escritor del pool). Ambos escriben los mismos seis campos que tenía el
+ * registro antes de añadir cajas y metadatos del frame, y se comprueba que
+ * la salida es idéntica antes de medir.
+ * No es una prueba: no se ejecuta con test-testing. Los tiempos dependen de
+ * la máquina; lo relevante es la proporción entre ambos caminos.
+ * Uso: java JsonWriterBenchmark [rondas] [respuestas por ronda]
+ */
+public class JsonWriterBenchmark {
+    private static final int DETECTIONS = 100;
+    private static final long START = 1_763_301_600_000L;
+    
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int responses = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        
+        // El camino anterior usaba la configuración regional por defecto: con
+        // es_ES "%.2f" escribía "0,95" (JSON inválido). Se fija ROOT para comparar
+        Locale.setDefault(Locale.ROOT);
+        
+        List<Detection> detections = new ArrayList<>();
+        for (int i = 0; i < DETECTIONS; i++) {
+            Detection detection = new Detection("CAM" + (i % 4 + 1), i % 3 == 0 ? "CARRO" : "PERSONA",
+                "cam_CAM" + (i % 4 + 1) + "_" + i + ".jpg", 0.5 + (i % 50) / 100.0, START + i * 1_000L);
+            detection.setSequence(i + 1);
+            detections.add(detection);
+        }
+        
+        byte[] before = formatResponse(detections);
+        byte[] after = writerResponse(detections);
+        if (!Arrays.equals(before, after)) {
+            System.err.println("[BENCH] Las salidas no coinciden:\n" +
+                new String(before, StandardCharsets.UTF_8) + "\n" + new String(after, StandardCharsets.UTF_8));
+            System.exit(1);
+        }
+        System.out.println("[BENCH] Respuesta de " + DETECTIONS + " detecciones: " + after.length +
+            " bytes, idéntica en ambos caminos");
+        
+        OutputStream sink = OutputStream.nullOutputStream();
+        for (int round = 1; round <= rounds; round++) {
+            // La primera mitad de las rondas sirve de calentamiento
+            String label = round <= rounds / 2 ? "calentamiento" : "ronda " + round;
+            
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < responses; i++) {
+                sink.write(formatResponse(detections));
+            }
+            report(label, "String.format", start, allocated, responses);
+            
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < responses; i++) {
+                JsonWriter json = JsonWriter.acquire();
+                try {
+                    writeResponse(json, detections).newline().writeTo(sink);
+                } finally {
+                    json.release();
+                }
+            }
+            report(label, "JsonWriter", start, allocated, responses);
+        }
+    }
+    
+    /**
+     * El camino anterior: Detection.toJSON con String.format, unido en un
+     * StringBuilder (DetectionLog.toJSON) y convertido a bytes al enviar
+     */
+    private static byte[] formatResponse(List<Detection> detections) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < detections.size(); i++) {
+            Detection d = detections.get(i);
+            json.append(String.format(
+                "{\"seq\":%d,\"camara\":\"%s\",\"objeto\":\"%s\",\"fecha\":\"%s\",\"imagen\":\"%s\",\"confidence\":%.2f}",
+                d.getSequence(), d.getCamara(), d.getObjeto(), d.getFecha(), d.getImagen(), d.getConfidence()
+            ));
+            if (i < detections.size() - 1) {
+                json.append(",");
+            }
+        }
+        json.append("]");
+        return (json.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static byte[] writerResponse(List<Detection> detections) {
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            return writeResponse(json, detections).newline().toString().getBytes(StandardCharsets.UTF_8);
+        } finally {
+            json.release();
+        }
+    }
+    
+    private static JsonWriter writeResponse(JsonWriter json, List<Detection> detections) {
+        json.beginArray();
+        for (Detection d : detections) {
+            json.beginObject()
+                .name("seq").value(d.getSequence())
+                .name("camara").value(d.getCamara())
+                .name("objeto").value(d.getObjeto())
+                .name("fecha").value(d.getFecha())
+                .name("imagen").value(d.getImagen())
+                .name("confidence").value(d.getConfidence(), 2)
+                .endObject();
+        }
+        return json.endArray();
+    }
+    
+    private static void report(String label, String path, long start, long allocated, int responses) {
+        double micros = (System.nanoTime() - start) / 1_000.0 / responses;
+        long bytes = allocatedBytes();
+        String allocation = bytes < 0 || allocated < 0 ? "n/d"
+            : String.format(Locale.ROOT, "%,d B", (bytes - allocated) / responses);
+        System.out.println(String.format(Locale.ROOT, "[BENCH] %-13s %-13s %8.1f us/respuesta  %s/respuesta",
+            label, path, micros, allocation));
+    }
+    
+    /**
+     * Bytes asignados por este hilo (-1 si la JVM no lo permite)
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pruebas de SUBSCRIBE en LogServer sobre un socket real: historial con
+ * after y filtros seguido de las detecciones nuevas sin duplicados,
+ * historial de varios bloques, cursor de otra ejecución (se envía desde el
+ * principio) y desconexión de un suscriptor que no lee.
+ */
+public class LogServerSubscribeTest {
+    private static final Pattern SEQUENCE = Pattern.compile("\"seq\":(\\d+)");
+    private static final int TIMEOUT_MILLIS = 10_000;
+    
+    private static int port;
+    private static long base; // Última secuencia antes de cada prueba
+    
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        
+        port = freePort();
+        LogServer server = new LogServer(port, 8, 60_000);
+        Thread thread = new Thread(server, "log-server-test");
+        thread.setDaemon(true);
+        thread.start();
+        
+        try {
+            // Primero, para que no haya otras suscripciones activas
+            dropsSlowSubscriber(server);
+            sendsBacklogThenLive();
+            sendsLongBacklog();
+            replaysStaleCursor();
+        } finally {
+            server.stop();
+            System.setOut(out);
+        }
+        Checks.finish("LogServerSubscribeTest");
+    }
+    
+    private static void sendsBacklogThenLive() throws IOException {
+        DetectionLog log = DetectionLog.getInstance();
+        base = log.getLastSequence();
+        
+        // Secuencias base+1..base+10: CAM1 las impares, CAM2 las pares
+        for (int i = 0; i < 10; i++) {
+            add(i % 2 == 0 ? "CAM1" : "CAM2");
+        }
+        
+        try (Subscription subscription = subscribe("SUBSCRIBE after=" + (base + 5) + " camera=CAM1")) {
+            Checks.equal("SUBSCRIBED:" + (base + 10), subscription.header, "cabecera con la última secuencia");
+            
+            // Llegan mientras (o después de que) se envía el historial
+            for (int i = 0; i < 4; i++) {
+                add(i % 2 == 0 ? "CAM1" : "CAM2");
+            }
+            
+            List<Long> received = subscription.read(4);
+            Checks.equal(sequences(7, 9, 11, 13), received, "historial tras after y nuevas, solo CAM1");
+            Checks.equal(base + 14, log.getLastSequence(), "última secuencia");
+        }
+    }
+    
+    private static void sendsLongBacklog() throws IOException {
+        // Más de un bloque de MAX_SINCE_ITEMS (500)
+        for (int i = 0; i < 1200; i++) {
+            add("CAM1");
+        }
+        
+        try (Subscription subscription = subscribe("SUBSCRIBE after=" + (base + 14))) {
+            Checks.equal("SUBSCRIBED:" + (base + 1214), subscription.header, "historial largo: cabecera");
+            
+            List<Long> received = subscription.read(1200);
+            Checks.equal(1200, received.size(), "historial largo: detecciones");
+            Checks.equal(base + 15, received.get(0), "historial largo: primera");
+            Checks.check(consecutive(received), "historial largo: en orden y sin huecos ni duplicados");
+        }
+    }
+    
+    private static void replaysStaleCursor() throws IOException {
+        // El cliente guardó un cursor de una ejecución anterior con más detecciones.
+        // Las de CAM2 son solo las de sendsBacklogThenLive (las anteriores son de CAM1)
+        try (Subscription subscription = subscribe("SUBSCRIBE after=100000000 camera=CAM2")) {
+            Checks.equal("SUBSCRIBED:" + (base + 1214), subscription.header, "cursor de otra ejecución: cabecera");
+            
+            add("CAM2");
+            List<Long> received = subscription.read(8);
+            Checks.equal(sequences(2, 4, 6, 8, 10, 12, 14, 1215), received,
+                "cursor de otra ejecución: desde el principio y después las nuevas");
+        }
+    }
+    
+    private static void dropsSlowSubscriber(LogServer server) throws Exception {
+        try (Subscription subscription = subscribe("SUBSCRIBE")) {
+            Checks.check(subscription.header.startsWith("SUBSCRIBED:"), "suscriptor lento: cabecera");
+            Checks.check(server.getStatus().contains("suscriptores=1 "), "suscriptor lento: activo");
+            
+            // El cliente no lee: se llenan los buffers del socket y después la cola
+            int added = 0;
+            while (!server.getStatus().contains("lentos=1") && added < 2_000_000) {
+                for (int i = 0; i < 1000; i++) {
+                    add("CAM1");
+                }
+                added += 1000;
+            }
+            Checks.check(server.getStatus().contains("lentos=1"), "suscriptor lento: contado");
+            
+            // Lo que quedó en los buffers se puede leer; después, fin de la conexión
+            int received = 0;
+            boolean closed = false;
+            try {
+                String line;
+                while ((line = subscription.in.readLine()) != null) {
+                    if (!line.equals("HEARTBEAT")) {
+                        received++;
+                    }
+                }
+                closed = true;
+            } catch (SocketTimeoutException e) {
+                closed = false;
+            } catch (IOException e) {
+                closed = true; // Conexión reiniciada por el servidor
+            }
+            Checks.check(closed, "suscriptor lento: conexión cerrada");
+            Checks.check(received < added, "suscriptor lento: no recibe todo (" + received + " de " + added + ")");
+        }
+        
+        // El hilo de la suscripción termina y deja de contar como activo
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!server.getStatus().contains("suscriptores=0") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Checks.check(server.getStatus().contains("suscriptores=0"), "suscriptor lento: dado de baja");
+    }
+    
+    /**
+     * Secuencias relativas a base
+     */
+    private static List<Long> sequences(long... offsets) {
+        List<Long> sequences = new ArrayList<>();
+        for (long offset : offsets) {
+            sequences.add(base + offset);
+        }
+        return sequences;
+    }
+    
+    private static boolean consecutive(List<Long> sequences) {
+        for (int i = 1; i < sequences.size(); i++) {
+            if (sequences.get(i) != sequences.get(i - 1) + 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static void add(String camara) {
+        DetectionLog.getInstance().addDetection(new Detection(camara, "PERSONA", "img.jpg", 0.9));
+    }
+    
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+    
+    /**
+     * Conecta (reintentando mientras el servidor arranca), envía el comando
+     * y lee la cabecera SUBSCRIBED
+     */
+    private static Subscription subscribe(String command) throws IOException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                // Buffer de recepción pequeño para que un cliente que no lee se note pronto
+                socket.setReceiveBufferSize(4096);
+                socket.connect(new InetSocketAddress("localhost", port), TIMEOUT_MILLIS);
+                return new Subscription(socket, command);
+            } catch (IOException e) {
+                socket.close();
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Conexión de una suscripción de texto
+     */
+    private static final class Subscription implements AutoCloseable {
+        final Socket socket;
+        final BufferedReader in;
+        final String header;
+        
+        Subscription(Socket socket, String command) throws IOException {
+            this.socket = socket;
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            socket.getOutputStream().write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.header = in.readLine();
+        }
+        
+        /**
+         * Secuencias de las siguientes count detecciones (sin contar HEARTBEAT)
+         */
+        List<Long> read(int count) throws IOException {
+            List<Long> sequences = new ArrayList<>();
+            
+            while (sequences.size() < count) {
+                String line = in.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (line.equals("HEARTBEAT")) {
+                    continue;
+                }
+                
+                Matcher matcher = SEQUENCE.matcher(line);
+                sequences.add(matcher.find() ? Long.parseLong(matcher.group(1)) : -1L);
+            }
+            return sequences;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
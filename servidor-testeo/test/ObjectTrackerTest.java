@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pruebas de ObjectTracker: secuencias de aparición, supresión, evento
+ * periódico, cambio de clase y desaparición de un objeto, varios objetos a
+ * la vez, detecciones sin caja y seguimiento desactivado.
+ */
+public class ObjectTrackerTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final long START = 1_763_301_600_000_000_000L;
+    
+    private static long frameSequence;
+    
+    public static void main(String[] args) {
+        followsOneObject();
+        keepsObjectsApart();
+        emitsDetectionsWithoutBox();
+        passesEverythingWhenDisabled();
+        Checks.finish("ObjectTrackerTest");
+    }
+    
+    private static void followsOneObject() {
+        ObjectTracker tracker = new ObjectTracker("CAM1", 30);
+        Checks.check(tracker.isEnabled(), "seguimiento activo");
+        
+        // Aparece
+        List<Detection> events = update(tracker, START, detection("PERSONA", 100, 100, 50, 100));
+        Checks.equal(1, events.size(), "aparece: eventos");
+        Detection appear = events.get(0);
+        Checks.equal(ObjectTracker.EVENT_APPEAR, appear.getEvent(), "aparece: evento");
+        long trackId = appear.getTrackId();
+        Checks.check(trackId > 0, "aparece: pista asignada");
+        
+        // Sigue visible y se mueve un poco: se suprime
+        for (int i = 1; i <= 5; i++) {
+            events = update(tracker, START + i * SECOND, detection("PERSONA", 100 + 4 * i, 100, 50, 100));
+            Checks.equal(0, events.size(), "visible " + i + " s: suprimida");
+        }
+        
+        // Pasado el intervalo: evento periódico de la misma pista
+        events = update(tracker, START + 31 * SECOND, detection("PERSONA", 122, 100, 50, 100));
+        Checks.equal(1, events.size(), "sigue: eventos");
+        Checks.equal(ObjectTracker.EVENT_VISIBLE, events.get(0).getEvent(), "sigue: evento");
+        Checks.equal(trackId, events.get(0).getTrackId(), "sigue: misma pista");
+        
+        // Cambia de clase en el mismo sitio
+        events = update(tracker, START + 32 * SECOND, detection("CARRO", 124, 100, 50, 100));
+        Checks.equal(1, events.size(), "cambia: eventos");
+        Checks.equal(ObjectTracker.EVENT_CLASS_CHANGE, events.get(0).getEvent(), "cambia: evento");
+        Checks.equal(trackId, events.get(0).getTrackId(), "cambia: misma pista");
+        
+        // Dos frames sin verlo: la pista sigue abierta
+        Checks.equal(0, update(tracker, START + 33 * SECOND).size(), "sin ver 1");
+        Checks.equal(0, update(tracker, START + 34 * SECOND).size(), "sin ver 2");
+        Checks.equal(1, tracker.getActiveTracks(), "pista abierta");
+        
+        // Al tercero desaparece, sin imagen y con la última caja y clase
+        events = update(tracker, START + 35 * SECOND);
+        Checks.equal(1, events.size(), "desaparece: eventos");
+        Detection gone = events.get(0);
+        Checks.equal(ObjectTracker.EVENT_DISAPPEAR, gone.getEvent(), "desaparece: evento");
+        Checks.equal(trackId, gone.getTrackId(), "desaparece: misma pista");
+        Checks.equal(null, gone.getImagen(), "desaparece: sin imagen");
+        Checks.equal("CARRO", gone.getObjeto(), "desaparece: última clase");
+        Checks.equal(124, gone.getBoxX(), "desaparece: última caja");
+        Checks.equal(START + 35 * SECOND, gone.getCaptureNanos(), "desaparece: instante del frame");
+        Checks.equal(0, tracker.getActiveTracks(), "pista cerrada");
+        
+        // Si vuelve, es una pista nueva
+        events = update(tracker, START + 36 * SECOND, detection("CARRO", 124, 100, 50, 100));
+        Checks.equal(ObjectTracker.EVENT_APPEAR, events.get(0).getEvent(), "reaparece: evento");
+        Checks.check(events.get(0).getTrackId() != trackId, "reaparece: pista nueva");
+        
+        Checks.equal(5L, tracker.getSuppressedDetections(), "suprimidas");
+        Checks.equal(ObjectTracker.eventName(ObjectTracker.EVENT_DISAPPEAR), "desaparece", "nombre del evento");
+    }
+    
+    private static void keepsObjectsApart() {
+        ObjectTracker tracker = new ObjectTracker("CAM1", 30);
+        
+        List<Detection> events = update(tracker, START,
+            detection("PERSONA", 100, 100, 40, 80), detection("PERSONA", 400, 100, 40, 80));
+        Checks.equal(2, events.size(), "dos objetos: aparecen");
+        long left = events.get(0).getTrackId();
+        long right = events.get(1).getTrackId();
+        Checks.check(left != right, "dos objetos: pistas distintas");
+        
+        // Se mueven (llegan en otro orden) y siguen asociados a su pista
+        update(tracker, START + SECOND, detection("PERSONA", 410, 100, 40, 80), detection("PERSONA", 110, 100, 40, 80));
+        
+        // Uno sale de escena: solo desaparece su pista
+        update(tracker, START + 2 * SECOND, detection("PERSONA", 120, 100, 40, 80));
+        update(tracker, START + 3 * SECOND, detection("PERSONA", 130, 100, 40, 80));
+        events = update(tracker, START + 4 * SECOND, detection("PERSONA", 140, 100, 40, 80));
+        Checks.equal(1, events.size(), "uno sale: eventos");
+        Checks.equal(ObjectTracker.EVENT_DISAPPEAR, events.get(0).getEvent(), "uno sale: evento");
+        Checks.equal(right, events.get(0).getTrackId(), "uno sale: su pista");
+        Checks.equal(410, events.get(0).getBoxX(), "uno sale: su última caja");
+        Checks.equal(1, tracker.getActiveTracks(), "queda una pista");
+    }
+    
+    private static void emitsDetectionsWithoutBox() {
+        ObjectTracker tracker = new ObjectTracker("CAM1", 30);
+        
+        for (int i = 0; i < 3; i++) {
+            List<Detection> events = update(tracker, START + i * SECOND, detection("PERSONA", 0, 0, 0, 0));
+            Checks.equal(1, events.size(), "sin caja " + i + ": se emite");
+            Checks.equal(0L, events.get(0).getTrackId(), "sin caja " + i + ": sin pista");
+            Checks.equal(ObjectTracker.EVENT_NONE, events.get(0).getEvent(), "sin caja " + i + ": sin evento");
+        }
+        Checks.equal(0, tracker.getActiveTracks(), "sin caja: sin pistas");
+    }
+    
+    private static void passesEverythingWhenDisabled() {
+        ObjectTracker tracker = new ObjectTracker("CAM1", 0);
+        Checks.check(!tracker.isEnabled(), "seguimiento desactivado");
+        
+        for (int i = 0; i < 3; i++) {
+            List<Detection> detections = Arrays.asList(detection("PERSONA", 100, 100, 50, 100));
+            List<Detection> events = tracker.update(detections, frame(START + i * SECOND));
+            Checks.check(events == detections, "desactivado " + i + ": todas");
+            Checks.equal(0L, events.get(0).getTrackId(), "desactivado " + i + ": sin pista");
+        }
+    }
+    
+    private static List<Detection> update(ObjectTracker tracker, long captureNanos, Detection... detections) {
+        return tracker.update(new ArrayList<>(Arrays.asList(detections)), frame(captureNanos));
+    }
+    
+    private static Detection.FrameInfo frame(long captureNanos) {
+        return new Detection.FrameInfo(captureNanos, ++frameSequence, 0, null);
+    }
+    
+    private static Detection detection(String objeto, int x, int y, int width, int height) {
+        return new Detection("CAM1", objeto, "frame.jpg", 0.9, frame(START), x, y, width, height);
+    }
+}
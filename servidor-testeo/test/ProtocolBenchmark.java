@@ -0,0 +1,127 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Medición del protocolo de texto frente al binario (PROTOCOL:BINARY) del
+ * lado del servidor: bytes por respuesta y coste de codificación de
+ * respuestas de 100 y 1000 detecciones (4 cámaras, 3 clases, con caja y
+ * metadatos del frame, como en una conexión real).
+ * En binario se mide la primera respuesta de una conexión (define los
+ * diccionarios) y las siguientes (solo referencias).
+ * Si se indica un directorio escribe también las respuestas
+ * (detections-N.json, detections-N.bin) para medir su decodificación en el
+ * cliente con ProtocolParseBenchmark (cliente-vigilante/test).
+ * No es una prueba: no se ejecuta con test-testing.
+ * Uso: java ProtocolBenchmark [directorio] [respuestas por medida]
+ */
+public class ProtocolBenchmark {
+    private static final int[] SIZES = {100, 1000};
+    private static final String[] CAMERAS = {"CAM1", "CAM2", "CAM3", "CAM4"};
+    private static final String[] CLASSES = {"PERSONA", "CARRO", "PERRO"};
+    private static final long START = 1_763_301_600_000L;
+    
+    public static void main(String[] args) throws IOException {
+        File directory = args.length > 0 ? new File(args[0]) : null;
+        int responses = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        
+        for (int size : SIZES) {
+            List<Detection> detections = detections(size);
+            
+            byte[] text = text(detections);
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            BinaryProtocol.Encoder connection = new BinaryProtocol.Encoder();
+            connection.writeDetections(binary, size, 0, false, detections);
+            int first = binary.size();
+            connection.writeDetections(binary, size, 0, false, detections);
+            int next = binary.size() - first;
+            
+            System.out.println(String.format(Locale.ROOT,
+                "[BENCH] %4d detecciones: texto %,9d B  binario %,9d B (1.ª respuesta) %,9d B (siguientes)  %.1f%%",
+                size, text.length, first, next, 100.0 * next / text.length));
+            
+            if (directory != null) {
+                write(new File(directory, "detections-" + size + ".json"), text);
+                write(new File(directory, "detections-" + size + ".bin"), binary.toByteArray());
+            }
+            
+            // Calentamiento y medida
+            for (int round = 0; round < 2; round++) {
+                boolean measure = round == 1;
+                OutputStream sink = OutputStream.nullOutputStream();
+                
+                long start = System.nanoTime();
+                for (int i = 0; i < responses; i++) {
+                    JsonWriter json = JsonWriter.acquire();
+                    try {
+                        DetectionLog.writeJSON(json, detections).newline().writeTo(sink);
+                    } finally {
+                        json.release();
+                    }
+                }
+                long textNanos = System.nanoTime() - start;
+                
+                BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder();
+                start = System.nanoTime();
+                for (int i = 0; i < responses; i++) {
+                    encoder.writeDetections(sink, size, 0, false, detections);
+                }
+                long binaryNanos = System.nanoTime() - start;
+                
+                if (measure) {
+                    System.out.println(String.format(Locale.ROOT,
+                        "[BENCH] %4d detecciones: codificar texto %8.1f us  binario %8.1f us por respuesta",
+                        size, textNanos / 1_000.0 / responses, binaryNanos / 1_000.0 / responses));
+                }
+            }
+        }
+        
+        if (directory != null) {
+            System.out.println("[BENCH] Respuestas escritas en " + directory.getPath());
+        }
+    }
+    
+    private static List<Detection> detections(int count) {
+        List<Detection> detections = new ArrayList<>(count);
+        
+        for (int i = 0; i < count; i++) {
+            String camera = CAMERAS[i % CAMERAS.length];
+            long timestamp = START + i * 250L;
+            Detection.FrameInfo frame = new Detection.FrameInfo(timestamp * 1_000_000L + 123_456, i / 2 + 1,
+                1_000 + i % 700, "yolov8n-2025.11");
+            Detection detection = new Detection(camera, CLASSES[i % CLASSES.length],
+                "cam_" + camera + "_" + (i / 2 + 1) + ".jpg", 0.4 + (i % 60) / 100.0, frame,
+                10 + i % 600, 20 + i % 400, 40 + i % 80, 80 + i % 120);
+            detection.setSequence(i + 1);
+            detection.setTrack(i % 20 + 1, i % 20 == 0 ? ObjectTracker.EVENT_APPEAR : ObjectTracker.EVENT_VISIBLE);
+            detections.add(detection);
+        }
+        return detections;
+    }
+    
+    private static byte[] text(List<Detection> detections) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = JsonWriter.acquire();
+        try {
+            DetectionLog.writeJSON(json, detections).newline().writeTo(out);
+        } finally {
+            json.release();
+        }
+        return out.toByteArray();
+    }
+    
+    private static void write(File file, byte[] content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Genera las respuestas del servidor para la prueba de ida y vuelta del
+ * cliente (ProtocolRoundTripTest en cliente-vigilante/test), que decodifica
+ * con sus propios lectores:
+ *   detections.bin   dos tramas DETECTIONS de una misma conexión (BinaryProtocol)
+ *   detections.json  la respuesta JSON de GET_LOGS (JsonWriter)
+ *   expected.txt     los campos que el cliente debe obtener, uno por línea
+ * Uso: java ProtocolFixtures <directorio>
+ */
+public class ProtocolFixtures {
+    private static final long TIMESTAMP = 1_763_301_600_123L;
+    
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "fixtures");
+        directory.mkdirs();
+        
+        List<Detection> first = new ArrayList<>();
+        List<Detection> second = new ArrayList<>();
+        
+        // Todos los metadatos: caja, frame, latencia, modelo y pista
+        Detection.FrameInfo frame = new Detection.FrameInfo(TIMESTAMP * 1_000_000L + 456_789, 42, 1500, "yolov8n-2025.11");
+        first.add(detection(10, "CAM1", "PERSONA", "cam_CAM1_42.jpg", 0.8765, frame, 320, 240, 64, 128,
+            1, ObjectTracker.EVENT_APPEAR));
+        first.add(detection(11, "CAM1", "CARRO", "cam_CAM1_42.jpg", 0.5, frame, -5, 0, 10, 10,
+            2, ObjectTracker.EVENT_APPEAR));
+        
+        // Solo el instante, como las detecciones recuperadas de un journal v1
+        first.add(detection(15, "CAM2", "PERSONA", "cam_CAM2_7.jpg", 0.02, Detection.FrameInfo.at(TIMESTAMP + 5_000),
+            0, 0, 0, 0, 0, ObjectTracker.EVENT_NONE));
+        
+        // Secuencia y timestamp menores que los anteriores (deltas negativos) y sin imagen
+        Detection.FrameInfo earlier = new Detection.FrameInfo((TIMESTAMP - 60_000) * 1_000_000L + 1, 7, 0, "yolov8n-2025.11");
+        first.add(detection(12, "CAM1", "PERSONA", null, 0.99, earlier, 300, 200, 50, 100,
+            1, ObjectTracker.EVENT_DISAPPEAR));
+        
+        // Segunda trama: referencias a los diccionarios de la primera y texto con escapes y UTF-8
+        Detection.FrameInfo later = new Detection.FrameInfo((TIMESTAMP + 90_000) * 1_000_000L, 43, 900, "yolov8n-2025.12");
+        second.add(detection(16, "CAM1", "PERSONA", "cam_CAM1_43.jpg", 1.0, later, 330, 240, 64, 128,
+            1, ObjectTracker.EVENT_VISIBLE));
+        second.add(detection(17, "Cámara \"norte\"", "Señal\\Tráfico", "cam_norte_1.jpg", 0.3333, later, 1, 2, 3, 4,
+            3, ObjectTracker.EVENT_CLASS_CHANGE));
+        
+        BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder();
+        try (OutputStream out = new FileOutputStream(new File(directory, "detections.bin"))) {
+            encoder.writeDetections(out, 15, 0, true, first);
+            encoder.writeDetections(out, 17, 3, false, second);
+        }
+        
+        List<Detection> all = new ArrayList<>(first);
+        all.addAll(second);
+        
+        JsonWriter json = JsonWriter.acquire();
+        try (OutputStream out = new FileOutputStream(new File(directory, "detections.json"))) {
+            DetectionLog.writeJSON(json, all).newline().writeTo(out);
+        } finally {
+            json.release();
+        }
+        
+        try (PrintWriter out = new PrintWriter(new File(directory, "expected.txt"), StandardCharsets.UTF_8)) {
+            for (Detection detection : all) {
+                out.println(expected(detection));
+            }
+        }
+        
+        System.out.println("[TEST] " + all.size() + " detecciones escritas en " + directory.getPath());
+    }
+    
+    private static Detection detection(long sequence, String camara, String objeto, String imagen, double confidence,
+                                       Detection.FrameInfo frame, int x, int y, int width, int height,
+                                       long trackId, int event) {
+        Detection detection = new Detection(camara, objeto, imagen, confidence, frame, x, y, width, height);
+        detection.setSequence(sequence);
+        detection.setTrack(trackId, event);
+        return detection;
+    }
+    
+    /**
+     * Campos separados por tabuladores, en el orden del constructor de
+     * DetectionDTO (imagen vacía si no hay; modelo "null" si no se conoce)
+     */
+    private static String expected(Detection detection) {
+        return String.join("\t", Arrays.asList(
+            String.valueOf(detection.getSequence()),
+            detection.getCamara(),
+            detection.getObjeto(),
+            detection.getFecha(),
+            detection.getImagen() != null ? detection.getImagen() : "",
+            String.valueOf(detection.getConfidence()),
+            String.valueOf(detection.getCaptureNanos()),
+            String.valueOf(detection.getFrameSequence()),
+            String.valueOf(detection.getLatencyMicros()),
+            String.valueOf(detection.getModelVersion()),
+            String.valueOf(detection.hasBox() ? detection.getBoxX() : 0),
+            String.valueOf(detection.hasBox() ? detection.getBoxY() : 0),
+            String.valueOf(detection.hasBox() ? detection.getBoxWidth() : 0),
+            String.valueOf(detection.hasBox() ? detection.getBoxHeight() : 0),
+            String.valueOf(detection.getTrackId()),
+            ObjectTracker.eventName(detection.getEvent())));
+    }
+}